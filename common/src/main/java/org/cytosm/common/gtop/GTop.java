@@ -45,6 +45,20 @@ public class GTop {
         this.implementationLevel = implementationLevel;
     }
 
+    /***
+     * Generates a gtop of the given version.
+     *
+     * @param version Graph Topology version.
+     * @param abstractionLevel Abstraction Level gtop to be used.
+     * @param implementationLevel Implementation Level gtop to be used.
+     */
+    public GTop(final String version, final AbstractionLevelGtop abstractionLevel,
+            final ImplementationLevelGtop implementationLevel) {
+        this.version = version;
+        this.abstractionLevel = abstractionLevel;
+        this.implementationLevel = implementationLevel;
+    }
+
     /**
      * @return the version
      */
@@ -0,0 +1,293 @@
+package org.cytosm.common.gtop;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+
+import org.cytosm.common.gtop.abstraction.AbstractionEdge;
+import org.cytosm.common.gtop.abstraction.AbstractionNode;
+import org.cytosm.common.gtop.implementation.relational.ImplementationEdge;
+import org.cytosm.common.gtop.implementation.relational.ImplementationNode;
+import org.cytosm.common.gtop.io.LazyElementList;
+
+/***
+ * Lookup tables of a gTop, used by {@link GTopInterfaceImpl} to answer its queries without scanning
+ * the nodes and edges of the gTop on every call.
+ *
+ * Elements are indexed by type, lower cased where the queries ignore the case, and abstraction edges
+ * by the types of their source and destination nodes. The tables hold the positions of the elements
+ * in the gTop, so answers keep the order of the gTop and elements of a {@link LazyElementList} are
+ * only decoded when they are part of an answer.
+ *
+ * The index does not see changes made inside the elements of the gTop, such as new types, nor an
+ * element replaced in place with {@link List#set(int, Object)}. It is only rebuilt when a list of
+ * elements of the gTop is replaced or changes size.
+ *
+ *
+ */
+final class GTopIndex {
+
+    private final List<AbstractionNode> abstractionNodes;
+    private final List<AbstractionEdge> abstractionEdges;
+    private final List<ImplementationNode> implementationNodes;
+    private final List<ImplementationEdge> implementationEdges;
+    private final int[] sizes;
+
+    private final List<String> allNodeTypes;
+    private final List<String> allEdgeTypes;
+
+    private final Map<String, List<Integer>> abstractionNodesByLowerType;
+    private final Map<String, List<Integer>> abstractionNodesByType;
+    private final Map<String, List<Integer>> abstractionEdgesByLowerType;
+    private final Map<String, List<Integer>> abstractionEdgesBySourceType;
+    private final Map<String, List<Integer>> abstractionEdgesByDestinationType;
+    private final Map<String, List<Integer>> implementationNodesByLowerType;
+    private final Map<String, List<Integer>> implementationNodesByType;
+    private final Map<String, List<Integer>> implementationEdgesByLowerType;
+    private final Map<String, List<Integer>> implementationEdgesByType;
+
+    /***
+     * Index the provided gTop.
+     *
+     * @param gtop gtop to index
+     */
+    GTopIndex(final GTop gtop) {
+        abstractionNodes = gtop.getAbstractionLevel().getAbstractionNodes();
+        abstractionEdges = gtop.getAbstractionLevel().getAbstractionEdges();
+        implementationNodes = gtop.getImplementationLevel().getImplementationNodes();
+        implementationEdges = gtop.getImplementationLevel().getImplementationEdges();
+        sizes = sizes(gtop);
+
+        allNodeTypes = distinctTypes(abstractionNodes, AbstractionNode::getTypes);
+        allEdgeTypes = distinctTypes(abstractionEdges, AbstractionEdge::getTypes);
+
+        abstractionNodesByLowerType = indexByTypes(abstractionNodes, AbstractionNode::getTypes, true);
+        abstractionNodesByType = indexByTypes(abstractionNodes, AbstractionNode::getTypes, false);
+        abstractionEdgesByLowerType = indexByTypes(abstractionEdges, AbstractionEdge::getTypes, true);
+        abstractionEdgesBySourceType = index(abstractionEdges, AbstractionEdge::getSourceType, true);
+        abstractionEdgesByDestinationType = index(abstractionEdges, AbstractionEdge::getDestinationType, true);
+        implementationNodesByLowerType = indexByTypes(implementationNodes, ImplementationNode::getTypes, true);
+        implementationNodesByType = indexByTypes(implementationNodes, ImplementationNode::getTypes, false);
+        implementationEdgesByLowerType = indexByTypes(implementationEdges, ImplementationEdge::getTypes, true);
+        implementationEdgesByType = indexByTypes(implementationEdges, ImplementationEdge::getTypes, false);
+    }
+
+    /***
+     * @param gtop gtop to check
+     * @return true if the index still describes the lists of elements of the gtop
+     */
+    boolean isCurrent(final GTop gtop) {
+        return abstractionNodes == gtop.getAbstractionLevel().getAbstractionNodes()
+                && abstractionEdges == gtop.getAbstractionLevel().getAbstractionEdges()
+                && implementationNodes == gtop.getImplementationLevel().getImplementationNodes()
+                && implementationEdges == gtop.getImplementationLevel().getImplementationEdges()
+                && Arrays.equals(sizes, sizes(gtop));
+    }
+
+    List<String> getAllNodeTypes() {
+        return new ArrayList<>(allNodeTypes);
+    }
+
+    List<String> getAllEdgeTypes() {
+        return new ArrayList<>(allEdgeTypes);
+    }
+
+    List<AbstractionNode> getAbstractionNodesByType(final String type) {
+        return elements(abstractionNodes, abstractionNodesByLowerType.get(type.toLowerCase()));
+    }
+
+    List<AbstractionEdge> getAbstractionEdgesByType(final String type) {
+        return elements(abstractionEdges, abstractionEdgesByLowerType.get(type.toLowerCase()));
+    }
+
+    List<ImplementationNode> getImplementationNodesByType(final String type) {
+        return elements(implementationNodes, implementationNodesByLowerType.get(type.toLowerCase()));
+    }
+
+    List<ImplementationEdge> getImplementationEdgesByType(final String type) {
+        return elements(implementationEdges, implementationEdgesByLowerType.get(type.toLowerCase()));
+    }
+
+    /***
+     * @param types types, compared with case
+     * @return the abstraction nodes sharing a type with the provided ones
+     */
+    List<AbstractionNode> getAbstractionNodesSharingTypes(final Collection<String> types) {
+        return elements(abstractionNodes, union(types, abstractionNodesByType));
+    }
+
+    /***
+     * @param types types, compared with case
+     * @return the implementation nodes sharing a type with the provided ones
+     */
+    List<ImplementationNode> getImplementationNodesSharingTypes(final Collection<String> types) {
+        return elements(implementationNodes, union(types, implementationNodesByType));
+    }
+
+    /***
+     * @param types types, compared with case
+     * @return the implementation edges sharing a type with the provided ones
+     */
+    List<ImplementationEdge> getImplementationEdgesSharingTypes(final Collection<String> types) {
+        return elements(implementationEdges, union(types, implementationEdgesByType));
+    }
+
+    /***
+     * @param types lower cased types of nodes
+     * @return the abstraction edges whose source is one of the types
+     */
+    List<AbstractionEdge> getAbstractionEdgesFrom(final Collection<String> types) {
+        return elements(abstractionEdges, union(types, abstractionEdgesBySourceType));
+    }
+
+    /***
+     * @param types lower cased types of nodes
+     * @return the abstraction edges whose destination is one of the types
+     */
+    List<AbstractionEdge> getAbstractionEdgesTo(final Collection<String> types) {
+        return elements(abstractionEdges, union(types, abstractionEdgesByDestinationType));
+    }
+
+    /***
+     * @param types lower cased types of nodes
+     * @return the abstraction edges whose source or destination is one of the types
+     */
+    List<AbstractionEdge> getAbstractionEdgesIncidentTo(final Collection<String> types) {
+        return elements(abstractionEdges,
+                union(types, abstractionEdgesBySourceType, abstractionEdgesByDestinationType));
+    }
+
+    /***
+     * The edge does not need to be an element of the gTop: an edge with the same types, attributes, node
+     * types and direction, in any order, is one of its edges. Only the edges sharing a type with it are
+     * compared.
+     *
+     * @param edge edge to look for
+     * @return true if the edge is one of the abstraction edges of the gTop
+     */
+    boolean contains(final AbstractionEdge edge) {
+        if (edge == null) {
+            return false;
+        }
+        List<AbstractionEdge> candidates = edge.getTypes() == null || edge.getTypes().isEmpty() ? abstractionEdges
+                : elements(abstractionEdges, union(lowerCase(edge.getTypes()), abstractionEdgesByLowerType));
+        for (AbstractionEdge candidate : candidates) {
+            if (candidate == edge || sameContent(candidate, edge)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean sameContent(final AbstractionEdge a, final AbstractionEdge b) {
+        return a.isDirected() == b.isDirected() && sameElements(a.getTypes(), b.getTypes())
+                && sameElements(a.getAttributes(), b.getAttributes())
+                && sameElements(a.getSourceType(), b.getSourceType())
+                && sameElements(a.getDestinationType(), b.getDestinationType());
+    }
+
+    private static boolean sameElements(final List<String> a, final List<String> b) {
+        if (a == null || b == null) {
+            return a == b;
+        }
+        return a.size() == b.size() && new HashSet<>(a).equals(new HashSet<>(b));
+    }
+
+    private static List<String> lowerCase(final List<String> types) {
+        List<String> result = new ArrayList<>(types.size());
+        for (String type : types) {
+            if (type != null) {
+                result.add(type.toLowerCase());
+            }
+        }
+        return result;
+    }
+
+    /***
+     * Index elements by their types. Types of a {@link LazyElementList} are read without decoding the
+     * elements.
+     */
+    private static <T> Map<String, List<Integer>> indexByTypes(final List<T> elements,
+            final Function<T, List<String>> types, final boolean lowerCase) {
+        if (elements instanceof LazyElementList) {
+            return index(elements.size(), ((LazyElementList<T>) elements)::getTypes, lowerCase);
+        }
+        return index(elements, types, lowerCase);
+    }
+
+    private static <T> Map<String, List<Integer>> index(final List<T> elements, final Function<T, List<String>> keys,
+            final boolean lowerCase) {
+        return index(elements.size(), i -> keys.apply(elements.get(i)), lowerCase);
+    }
+
+    private static Map<String, List<Integer>> index(final int size, final IntFunction<List<String>> keys,
+            final boolean lowerCase) {
+        Map<String, List<Integer>> index = new HashMap<>();
+        for (int i = 0; i < size; i++) {
+            List<String> elementTypes = keys.apply(i);
+            if (elementTypes == null) {
+                continue;
+            }
+            for (String type : elementTypes) {
+                if (type == null) {
+                    continue;
+                }
+                List<Integer> bucket =
+                        index.computeIfAbsent(lowerCase ? type.toLowerCase() : type, k -> new ArrayList<>());
+                if (bucket.isEmpty() || bucket.get(bucket.size() - 1) != i) {
+                    bucket.add(i);
+                }
+            }
+        }
+        return index;
+    }
+
+    private static <T> List<String> distinctTypes(final List<T> elements, final Function<T, List<String>> types) {
+        Set<String> distinct = new LinkedHashSet<>();
+        elements.forEach(element -> distinct.addAll(types.apply(element)));
+        return new ArrayList<>(distinct);
+    }
+
+    /***
+     * @return the positions of the elements having one of the keys, in the order of the gTop
+     */
+    @SafeVarargs
+    private static Collection<Integer> union(final Collection<String> keys,
+            final Map<String, List<Integer>>... indexes) {
+        Set<Integer> positions = new TreeSet<>();
+        if (keys != null) {
+            for (String key : keys) {
+                for (Map<String, List<Integer>> index : indexes) {
+                    positions.addAll(index.getOrDefault(key, Collections.emptyList()));
+                }
+            }
+        }
+        return positions;
+    }
+
+    private static <T> List<T> elements(final List<T> elements, final Collection<Integer> positions) {
+        if (positions == null) {
+            return new ArrayList<>();
+        }
+        List<T> result = new ArrayList<>(positions.size());
+        positions.forEach(position -> result.add(elements.get(position)));
+        return result;
+    }
+
+    private static int[] sizes(final GTop gtop) {
+        return new int[] {gtop.getAbstractionLevel().getAbstractionNodes().size(),
+            gtop.getAbstractionLevel().getAbstractionEdges().size(),
+            gtop.getImplementationLevel().getImplementationNodes().size(),
+            gtop.getImplementationLevel().getImplementationEdges().size()};
+    }
+}
@@ -2,7 +2,9 @@ package org.cytosm.common.gtop;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
@@ -16,6 +18,9 @@ import org.cytosm.common.gtop.implementation.relational.ImplementationNode;
 /***
  * Implementation of gTop Interface.
  *
+ * Lookups go through an index of the gtop. It is rebuilt when a list of elements is replaced, for
+ * instance with {@link #setAbstractionNodes(List)}, or changes size. It isn't when an element is
+ * modified or replaced in place in its list: replace the list to change the elements.
  *
  */
 public abstract class GTopInterfaceImpl implements GTopInterface {
@@ -25,6 +30,23 @@ public abstract class GTopInterfaceImpl implements GTopInterface {
      */
     protected GTop gtop = null;
 
+    /**
+     * Lookup tables of the gtop, built on first use.
+     */
+    private volatile GTopIndex index = null;
+
+    /**
+     * @return the index of the gtop, rebuilt if a list of elements of the gtop has been replaced or resized.
+     */
+    GTopIndex index() {
+        GTopIndex current = index;
+        if (current == null || !current.isCurrent(gtop)) {
+            current = new GTopIndex(gtop);
+            index = current;
+        }
+        return current;
+    }
+
     // Interface Implementation:
 
     // Implementation-independent:
@@ -95,16 +117,7 @@ public abstract class GTopInterfaceImpl implements GTopInterface {
     @Override
     @JsonIgnore
     public List<String> getAllEdgeTypes() {
-        final List<String> withDuplicationsAllEdgeTypes = new ArrayList<>();
-
-        gtop.getAbstractionLevel().getAbstractionEdges()
-                .forEach(edge -> withDuplicationsAllEdgeTypes.addAll(edge.getTypes()));
-
-        // de-duplicate:
-        List<String> allEdgesTypes =
-                withDuplicationsAllEdgeTypes.stream().distinct().collect(Collectors.toList());
-
-        return allEdgesTypes;
+        return index().getAllEdgeTypes();
     }
 
     /***
@@ -113,16 +126,7 @@ public abstract class GTopInterfaceImpl implements GTopInterface {
     @Override
     @JsonIgnore
     public List<String> getAllNodeTypes() {
-        final List<String> withDuplucationsAllNodeTypes = new ArrayList<>();
-
-        gtop.getAbstractionLevel().getAbstractionNodes()
-                .forEach(node -> withDuplucationsAllNodeTypes.addAll(node.getTypes()));
-
-        // de-duplicate:
-        List<String> allNodesTypes =
-                withDuplucationsAllNodeTypes.stream().distinct().collect(Collectors.toList());
-
-        return allNodesTypes;
+        return index().getAllNodeTypes();
     }
 
     /***
@@ -134,16 +138,7 @@ public abstract class GTopInterfaceImpl implements GTopInterface {
     @Override
     @JsonIgnore
     public List<AbstractionEdge> getAbstractionEdgesByTypes(final String types) {
-
-        List<AbstractionEdge> edgeList = new ArrayList<>();
-        String typeLower = types.toLowerCase();
-
-        edgeList = gtop
-                .getAbstractionLevel().getAbstractionEdges().stream().filter(edge -> edge.getTypes().stream()
-                        .map(String::toLowerCase).collect(Collectors.toList()).contains(typeLower))
-                .collect(Collectors.toList());
-
-        return edgeList;
+        return index().getAbstractionEdgesByType(types);
     }
 
     /**
@@ -155,16 +150,7 @@ public abstract class GTopInterfaceImpl implements GTopInterface {
     @Override
     @JsonIgnore
     public List<AbstractionNode> getAbstractionNodesByTypes(final String types) {
-
-        List<AbstractionNode> nodeList = new ArrayList<>();
-        String typeLower = types.toLowerCase();
-
-        nodeList = gtop
-                .getAbstractionLevel().getAbstractionNodes().stream().filter(node -> node.getTypes().stream()
-                        .map(String::toLowerCase).collect(Collectors.toList()).contains(typeLower))
-                .collect(Collectors.toList());
-
-        return nodeList;
+        return index().getAbstractionNodesByType(types);
     }
 
     /***
@@ -176,15 +162,8 @@ public abstract class GTopInterfaceImpl implements GTopInterface {
     @Override
     @JsonIgnore
     public List<AbstractionNode> findNodeAbstractions(final ImplementationNode node) {
-        List<AbstractionNode> abstractions = new ArrayList<>();
-
         // if the abstraction matches any of the implementation level types, append to list.
-        abstractions = gtop.getAbstractionLevel().getAbstractionNodes().stream()
-                .filter(filteredNode -> !Collections.disjoint(filteredNode.getTypes(), node.getTypes()))
-                .collect(Collectors.toList());
-
-
-        return abstractions;
+        return index().getAbstractionNodesSharingTypes(node.getTypes());
     }
 
     /**
@@ -222,20 +201,11 @@ public abstract class GTopInterfaceImpl implements GTopInterface {
     @JsonIgnore
     public List<AbstractionEdge> getAllAbstractEdgesForNodeTypes(final List<String> types) {
 
-        List<AbstractionEdge> edgeList = new ArrayList<>();
-
-        if (types != null && !types.isEmpty()) {
-            for (AbstractionEdge edge : gtop.getAbstractionLevel().getAbstractionEdges()) {
-                if (edge.getSourceType().stream()
-                        .anyMatch(type -> types.contains(type.toLowerCase()) || type.toCharArray().equals("all"))
-                        || edge.getDestinationType().stream().anyMatch(
-                                type -> types.contains(type.toLowerCase()) || type.toCharArray().equals("all"))) {
-                    edgeList.add(edge);
-                }
-            }
+        if (types == null || types.isEmpty()) {
+            return new ArrayList<>();
         }
 
-        return edgeList;
+        return index().getAbstractionEdgesIncidentTo(types);
     }
 
     /**
@@ -250,21 +220,18 @@ public abstract class GTopInterfaceImpl implements GTopInterface {
     public List<AbstractionEdge> getDirectedAbstractEdgesBetweenTwoNodes(final AbstractionNode sourceNode,
             final AbstractionNode destinationNode) {
 
-        List<AbstractionEdge> edgeList = new ArrayList<>();
-
-        if (sourceNode != null && destinationNode != null) {
-            for (AbstractionEdge edge : gtop.getAbstractionLevel().getAbstractionEdges()) {
-                if (edge.getSourceType().stream()
-                        .anyMatch(type -> sourceNode.getTypes().contains(type.toLowerCase())
-                                || type.toCharArray().equals("all"))
-                        && edge.getDestinationType().stream()
-                                .anyMatch(type -> destinationNode.getTypes().contains(type.toLowerCase())
-                                        || type.toCharArray().equals("all"))) {
-                    edgeList.add(edge);
-                }
-            }
+        if (sourceNode == null || destinationNode == null) {
+            return new ArrayList<>();
         }
 
+        // edges leaving the source, kept if they also reach the destination.
+        GTopIndex gtopIndex = index();
+        Set<AbstractionEdge> reachingDestination = Collections.newSetFromMap(new IdentityHashMap<>());
+        reachingDestination.addAll(gtopIndex.getAbstractionEdgesTo(destinationNode.getTypes()));
+
+        List<AbstractionEdge> edgeList = gtopIndex.getAbstractionEdgesFrom(sourceNode.getTypes());
+        edgeList.removeIf(edge -> !reachingDestination.contains(edge));
+
         return edgeList;
     }
 
@@ -280,18 +247,9 @@ public abstract class GTopInterfaceImpl implements GTopInterface {
 
         final List<AbstractionNode> duplicatedEdgeNodes = new ArrayList<>();
 
-        for (AbstractionEdge edge : this.getAbstractionEdges()) {
-            if (edge.equals(analyzedEdge)) {
-                List<String> sourceTypes = analyzedEdge.getSourceType();
-
-                if (sourceTypes.stream().anyMatch(type -> type.toCharArray().equals("all"))) {
-                    // All nodes have that edge.
-                    duplicatedEdgeNodes.addAll(this.getAbstractionNodes());
-                } else {
-                    edge.getSourceType().stream()
-                            .forEach(type -> duplicatedEdgeNodes.addAll(this.getAbstractionNodesByTypes(type)));
-                }
-            }
+        if (index().contains(analyzedEdge)) {
+            analyzedEdge.getSourceType()
+                    .forEach(type -> duplicatedEdgeNodes.addAll(this.getAbstractionNodesByTypes(type)));
         }
 
         // deduplicates:
@@ -311,18 +269,9 @@ public abstract class GTopInterfaceImpl implements GTopInterface {
     public List<AbstractionNode> getDestinationNodesForEdge(final AbstractionEdge analyzedEdge) {
         final List<AbstractionNode> duplicatedEdgeNodes = new ArrayList<>();
 
-        for (AbstractionEdge edge : this.getAbstractionEdges()) {
-            if (edge.equals(analyzedEdge)) {
-                List<String> destinationTypes = analyzedEdge.getDestinationType();
-
-                if (destinationTypes.stream().anyMatch(type -> type.toCharArray().equals("all"))) {
-                    // All nodes have that edge.
-                    duplicatedEdgeNodes.addAll(this.getAbstractionNodes());
-                } else {
-                    edge.getDestinationType().stream()
-                            .forEach(type -> duplicatedEdgeNodes.addAll(this.getAbstractionNodesByTypes(type)));
-                }
-            }
+        if (index().contains(analyzedEdge)) {
+            analyzedEdge.getDestinationType()
+                    .forEach(type -> duplicatedEdgeNodes.addAll(this.getAbstractionNodesByTypes(type)));
         }
 
         // deduplicates:
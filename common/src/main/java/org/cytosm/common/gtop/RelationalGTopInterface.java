@@ -3,7 +3,6 @@ package org.cytosm.common.gtop;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -16,6 +15,8 @@ import org.cytosm.common.gtop.abstraction.AbstractionNode;
 import org.cytosm.common.gtop.implementation.relational.ImplementationEdge;
 import org.cytosm.common.gtop.implementation.relational.ImplementationLevelGtop;
 import org.cytosm.common.gtop.implementation.relational.ImplementationNode;
+import org.cytosm.common.gtop.io.GTopSnapshot;
+import org.cytosm.common.gtop.io.GTopStreamReader;
 
 /***
  * Relational implementation of gTop.
@@ -36,7 +37,11 @@ public class RelationalGTopInterface extends GTopInterfaceImpl {
     }
 
     /**
-     * Reads GTop from a file.
+     * Reads GTop from a file, either JSON or a {@link GTopSnapshot}.
+     *
+     * The implementation nodes and edges are decoded when they are first used: one that can't be
+     * mapped to the gtop model is reported then, with an {@link java.io.UncheckedIOException}, rather
+     * than by this constructor. A JSON gtop is kept in memory until all of them have been decoded.
      *
      * @param fileObj gtop file
      * @throws IOException I/O Exception
@@ -47,9 +52,11 @@ public class RelationalGTopInterface extends GTopInterfaceImpl {
 
         GTop gtopLoaded = null;
 
-        ObjectMapper mapper = new ObjectMapper();
-
-        gtopLoaded = mapper.readValue(fileObj, GTop.class);
+        if (GTopSnapshot.isSnapshot(fileObj)) {
+            gtopLoaded = GTopSnapshot.open(fileObj).toGTop();
+        } else {
+            gtopLoaded = GTopStreamReader.read(fileObj);
+        }
 
         gtop = gtopLoaded;
 
@@ -57,7 +64,8 @@ public class RelationalGTopInterface extends GTopInterfaceImpl {
 
 
     /**
-     * Reads Gtop from a string.
+     * Reads Gtop from a string. As with a file, the implementation nodes and edges are decoded, and
+     * their errors reported, when they are first used.
      *
      * @param gTopStr gtop file in a string
      */
@@ -65,10 +73,9 @@ public class RelationalGTopInterface extends GTopInterfaceImpl {
 
         GTop gtopLoaded = null;
 
-        ObjectMapper mapper = new ObjectMapper();
         try {
             System.out.println("Printing gtop: " + gTopStr);
-            gtopLoaded = mapper.readValue(gTopStr, GTop.class);
+            gtopLoaded = GTopStreamReader.read(gTopStr);
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -145,10 +152,7 @@ public class RelationalGTopInterface extends GTopInterfaceImpl {
         if (type == null) {
             return foundNodes;
         }
-        foundNodes = gtop
-                .getImplementationLevel().getImplementationNodes().stream().filter(node -> node.getTypes().stream()
-                        .map(String::toLowerCase).collect(Collectors.toList()).contains(type.toLowerCase()))
-                .collect(Collectors.toList());
+        foundNodes = index().getImplementationNodesByType(type);
 
         return foundNodes;
     }
@@ -167,10 +171,7 @@ public class RelationalGTopInterface extends GTopInterfaceImpl {
             return foundEdge;
         }
 
-        foundEdge = gtop
-                .getImplementationLevel().getImplementationEdges().stream().filter(edge -> edge.getTypes().stream()
-                        .map(String::toLowerCase).collect(Collectors.toList()).contains(type.toLowerCase()))
-                .collect(Collectors.toList());
+        foundEdge = index().getImplementationEdgesByType(type);
 
         return foundEdge;
     }
@@ -184,14 +185,8 @@ public class RelationalGTopInterface extends GTopInterfaceImpl {
     @Override
     @JsonIgnore
     public List<ImplementationNode> findNodeImplementations(final AbstractionNode node) {
-        List<ImplementationNode> implementation = new ArrayList<>();
-
         // if the implementation matches any of the abstraction level types, append to list.
-        implementation = gtop.getImplementationLevel().getImplementationNodes().stream()
-                .filter(filteredNode -> !Collections.disjoint(filteredNode.getTypes(), node.getTypes()))
-                .collect(Collectors.toList());
-
-        return implementation;
+        return index().getImplementationNodesSharingTypes(node.getTypes());
     }
 
 
@@ -205,16 +200,10 @@ public class RelationalGTopInterface extends GTopInterfaceImpl {
     @Override
     @JsonIgnore
     public ImplementationEdge findEdgeImplementation(final AbstractionEdge edge) {
-        ImplementationEdge implementation = null;
-
-        for (ImplementationEdge analyzedEdge : gtop.getImplementationLevel().getImplementationEdges()) {
-            if (!Collections.disjoint(edge.getTypes(), analyzedEdge.getTypes())) {
-                implementation = analyzedEdge;
-                break;
-            }
-        }
+        // the first implementation sharing a type with the edge.
+        List<ImplementationEdge> implementations = index().getImplementationEdgesSharingTypes(edge.getTypes());
 
-        return implementation;
+        return implementations.isEmpty() ? null : implementations.get(0);
     }
 
     // Utils:
@@ -1,7 +1,6 @@
 package org.cytosm.common.gtop.abstraction;
 
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 
 /***
@@ -97,10 +96,10 @@ public class AbstractionEdge extends AbstractionGraphComponent {
     @SuppressWarnings("checkstyle:magicnumber")
     public int hashCode() {
         // In order to produce the same hash code.
-        Collections.sort(types);
-        Collections.sort(attributes);
-        Collections.sort(sourceType);
-        Collections.sort(destinationType);
+        sortIfNeeded(types);
+        sortIfNeeded(attributes);
+        sortIfNeeded(sourceType);
+        sortIfNeeded(destinationType);
 
         int result = types != null ? types.hashCode() : 0;
         result = 31 * result + (attributes != null ? attributes.hashCode() : 0);
@@ -1,6 +1,7 @@
 package org.cytosm.common.gtop.abstraction;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -47,4 +48,23 @@ public abstract class AbstractionGraphComponent {
     public void setAttributes(final List<String> attributes) {
         this.attributes = attributes;
     }
+
+    /**
+     * Sorts the list in place unless it is already sorted. Hash codes are computed on sorted
+     * lists: skipping the sort when it isn't needed means that hashing a component that has
+     * already been hashed once does not modify it, so it can be done from several threads.
+     *
+     * @param list list to sort
+     */
+    protected static void sortIfNeeded(final List<String> list) {
+        if (list == null) {
+            return;
+        }
+        for (int i = 1; i < list.size(); i++) {
+            if (list.get(i - 1).compareTo(list.get(i)) > 0) {
+                Collections.sort(list);
+                return;
+            }
+        }
+    }
 }
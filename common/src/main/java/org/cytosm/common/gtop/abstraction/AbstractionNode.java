@@ -1,7 +1,6 @@
 package org.cytosm.common.gtop.abstraction;
 
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 
 /***
@@ -33,8 +32,8 @@ public class AbstractionNode extends AbstractionGraphComponent {
     @SuppressWarnings("checkstyle:magicnumber")
     public int hashCode() {
         // In order to produce the same hash-code.
-        Collections.sort(types);
-        Collections.sort(attributes);
+        sortIfNeeded(types);
+        sortIfNeeded(attributes);
 
         int result = types != null ? types.hashCode() : 0;
         result = 31 * result + (attributes != null ? attributes.hashCode() : 0);
@@ -0,0 +1,75 @@
+package org.cytosm.common.gtop.frozen;
+
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import org.cytosm.common.gtop.abstraction.AbstractionEdge;
+
+/***
+ * Abstraction edge that can't be modified. Created by a {@link GTopInterner}.
+ *
+ */
+public final class FrozenAbstractionEdge extends AbstractionEdge implements Interned {
+
+    private final int internId;
+
+    private final int hash;
+
+    /***
+     * Freezes a copy of the edge. Its lists are sorted, as hashing the edge would do.
+     *
+     * @param internId id of the edge
+     * @param edge edge to copy
+     */
+    FrozenAbstractionEdge(final int internId, final AbstractionEdge edge) {
+        super(GTopInterner.sortedCopy(edge.getTypes()), GTopInterner.sortedCopy(edge.getAttributes()),
+                GTopInterner.sortedCopy(edge.getSourceType()), GTopInterner.sortedCopy(edge.getDestinationType()),
+                edge.isDirected());
+        this.internId = internId;
+        this.hash = super.hashCode();
+    }
+
+    @Override
+    @JsonIgnore
+    public int getInternId() {
+        return internId;
+    }
+
+    @Override
+    public void setTypes(final List<String> types) {
+        throw new UnsupportedOperationException("A frozen gTop can't be modified.");
+    }
+
+    @Override
+    public void setAttributes(final List<String> attributes) {
+        throw new UnsupportedOperationException("A frozen gTop can't be modified.");
+    }
+
+    @Override
+    public void setSourceType(final List<String> sourceType) {
+        throw new UnsupportedOperationException("A frozen gTop can't be modified.");
+    }
+
+    @Override
+    public void setDestinationType(final List<String> destinationType) {
+        throw new UnsupportedOperationException("A frozen gTop can't be modified.");
+    }
+
+    @Override
+    public void setDirected(final boolean directed) {
+        throw new UnsupportedOperationException("A frozen gTop can't be modified.");
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    /**
+     * Same instance for frozen edges, the base equality otherwise so that it stays symmetric.
+     */
+    @Override
+    public boolean equals(final Object o) {
+        return this == o || (!(o instanceof Interned) && super.equals(o));
+    }
+}
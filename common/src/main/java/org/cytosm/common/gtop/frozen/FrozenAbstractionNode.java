@@ -0,0 +1,60 @@
+package org.cytosm.common.gtop.frozen;
+
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import org.cytosm.common.gtop.abstraction.AbstractionNode;
+
+/***
+ * Abstraction node that can't be modified. Created by a {@link GTopInterner}.
+ *
+ */
+public final class FrozenAbstractionNode extends AbstractionNode implements Interned {
+
+    private final int internId;
+
+    private final int hash;
+
+    /***
+     * Freezes a copy of the node. Types and attributes are sorted, as hashing the node would do.
+     *
+     * @param internId id of the node
+     * @param node node to copy
+     */
+    FrozenAbstractionNode(final int internId, final AbstractionNode node) {
+        super(GTopInterner.sortedCopy(node.getTypes()), GTopInterner.sortedCopy(node.getAttributes()));
+        this.internId = internId;
+        this.hash = super.hashCode();
+    }
+
+    @Override
+    @JsonIgnore
+    public int getInternId() {
+        return internId;
+    }
+
+    @Override
+    public void setTypes(final List<String> types) {
+        throw new UnsupportedOperationException("A frozen gTop can't be modified.");
+    }
+
+    @Override
+    public void setAttributes(final List<String> attributes) {
+        throw new UnsupportedOperationException("A frozen gTop can't be modified.");
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    /**
+     * Frozen nodes are only equal to themselves: the interner gives the same instance to equal nodes.
+     * Against a node that isn't frozen, the content is compared like {@link AbstractionNode#equals(Object)}
+     * does, so that both sides agree.
+     */
+    @Override
+    public boolean equals(final Object o) {
+        return this == o || (!(o instanceof Interned) && super.equals(o));
+    }
+}
@@ -0,0 +1,63 @@
+package org.cytosm.common.gtop.frozen;
+
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import org.cytosm.common.gtop.implementation.relational.ImplementationEdge;
+import org.cytosm.common.gtop.implementation.relational.TraversalPath;
+
+/***
+ * Implementation edge that can't be modified. Created by a {@link GTopInterner}.
+ *
+ * Its lists can't be modified either, but the paths they hold are shared with the edge that was
+ * frozen.
+ *
+ */
+public final class FrozenImplementationEdge extends ImplementationEdge implements Interned {
+
+    private final int internId;
+
+    private final int hash;
+
+    /***
+     * Freezes a copy of the edge.
+     *
+     * @param internId id of the edge
+     * @param edge edge to copy
+     * @param hash hash of the content of the edge
+     */
+    FrozenImplementationEdge(final int internId, final ImplementationEdge edge, final int hash) {
+        super(GTopInterner.copy(edge.getTypes()), GTopInterner.copy(edge.getPaths()));
+        this.internId = internId;
+        this.hash = hash;
+    }
+
+    @Override
+    @JsonIgnore
+    public int getInternId() {
+        return internId;
+    }
+
+    @Override
+    public void setTypes(final List<String> types) {
+        throw new UnsupportedOperationException("A frozen gTop can't be modified.");
+    }
+
+    @Override
+    public void setPaths(final List<TraversalPath> paths) {
+        throw new UnsupportedOperationException("A frozen gTop can't be modified.");
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    /**
+     * Same instance for frozen edges, the base equality otherwise so that it stays symmetric.
+     */
+    @Override
+    public boolean equals(final Object o) {
+        return this == o || (!(o instanceof Interned) && super.equals(o));
+    }
+}
@@ -0,0 +1,81 @@
+package org.cytosm.common.gtop.frozen;
+
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import org.cytosm.common.gtop.implementation.relational.Attribute;
+import org.cytosm.common.gtop.implementation.relational.ImplementationNode;
+import org.cytosm.common.gtop.implementation.relational.NodeIdImplementation;
+import org.cytosm.common.gtop.implementation.relational.RestrictionClauses;
+
+/***
+ * Implementation node that can't be modified. Created by a {@link GTopInterner}.
+ *
+ * Its lists can't be modified either, but the ids, attributes and restrictions they hold are shared
+ * with the node that was frozen.
+ *
+ */
+public final class FrozenImplementationNode extends ImplementationNode implements Interned {
+
+    private final int internId;
+
+    private final int hash;
+
+    /***
+     * Freezes a copy of the node.
+     *
+     * @param internId id of the node
+     * @param node node to copy
+     * @param hash hash of the content of the node
+     */
+    FrozenImplementationNode(final int internId, final ImplementationNode node, final int hash) {
+        super(GTopInterner.copy(node.getTypes()), node.getTableName(), GTopInterner.copy(node.getId()),
+                GTopInterner.copy(node.getAttributes()), GTopInterner.copy(node.getRestrictions()));
+        this.internId = internId;
+        this.hash = hash;
+    }
+
+    @Override
+    @JsonIgnore
+    public int getInternId() {
+        return internId;
+    }
+
+    @Override
+    public void setAttributes(final List<Attribute> attributes) {
+        throw new UnsupportedOperationException("A frozen gTop can't be modified.");
+    }
+
+    @Override
+    public void setTypes(final List<String> types) {
+        throw new UnsupportedOperationException("A frozen gTop can't be modified.");
+    }
+
+    @Override
+    public void setRestrictions(final List<RestrictionClauses> restrictions) {
+        throw new UnsupportedOperationException("A frozen gTop can't be modified.");
+    }
+
+    @Override
+    public void setTableName(final String tableName) {
+        throw new UnsupportedOperationException("A frozen gTop can't be modified.");
+    }
+
+    @Override
+    public void setId(final List<NodeIdImplementation> id) {
+        throw new UnsupportedOperationException("A frozen gTop can't be modified.");
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    /**
+     * Same instance for frozen nodes, the base equality otherwise so that it stays symmetric.
+     */
+    @Override
+    public boolean equals(final Object o) {
+        return this == o || (!(o instanceof Interned) && super.equals(o));
+    }
+}
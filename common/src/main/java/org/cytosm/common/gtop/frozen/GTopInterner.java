@@ -0,0 +1,202 @@
+package org.cytosm.common.gtop.frozen;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.cytosm.common.gtop.GTop;
+import org.cytosm.common.gtop.abstraction.AbstractionEdge;
+import org.cytosm.common.gtop.abstraction.AbstractionLevelGtop;
+import org.cytosm.common.gtop.abstraction.AbstractionNode;
+import org.cytosm.common.gtop.implementation.relational.ImplementationEdge;
+import org.cytosm.common.gtop.implementation.relational.ImplementationLevelGtop;
+import org.cytosm.common.gtop.implementation.relational.ImplementationNode;
+
+/***
+ * Freezes gtops: their elements are replaced by {@link Interned} copies that can't be modified.
+ *
+ * Elements with the same content are frozen only once, so gtops frozen by the same interner share
+ * their elements. Each frozen element gets a dense id and computes its hash code once. Equality
+ * of frozen elements is identity, which is what the content equality of the gtop elements amounts
+ * to once they are interned. A frozen element compared to one that isn't frozen uses the equality
+ * of the gtop element, whichever side it is called on.
+ *
+ * The lists of types and attributes of abstraction elements are sorted, as hashing them would do.
+ * The content of implementation elements is compared through their JSON form.
+ *
+ * An interner keeps every element it froze. The {@link #shared()} interner lives as long as the
+ * application and should be used for gtops that do too.
+ *
+ * Interners are thread safe.
+ *
+ */
+public final class GTopInterner {
+
+    private static final GTopInterner SHARED = new GTopInterner();
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final Pool<AbstractionNode, FrozenAbstractionNode> abstractionNodes = new Pool<>();
+    private final Pool<AbstractionEdge, FrozenAbstractionEdge> abstractionEdges = new Pool<>();
+    private final Pool<ImplementationNode, FrozenImplementationNode> implementationNodes = new Pool<>();
+    private final Pool<ImplementationEdge, FrozenImplementationEdge> implementationEdges = new Pool<>();
+
+    /***
+     * @return the interner shared by the whole application
+     */
+    public static GTopInterner shared() {
+        return SHARED;
+    }
+
+    /***
+     * Freezes the gtop.
+     *
+     * @param gtop gtop to freeze, it isn't modified
+     * @return a gtop holding the frozen elements of the provided one, in the same order, in lists
+     *         that can't be modified
+     */
+    public GTop freeze(final GTop gtop) {
+        AbstractionLevelGtop abstractionLevel = gtop.getAbstractionLevel();
+        ImplementationLevelGtop implementationLevel = gtop.getImplementationLevel();
+
+        AbstractionLevelGtop frozenAbstractionLevel =
+                new AbstractionLevelGtop(internAll(abstractionLevel.getAbstractionNodes(), this::intern),
+                        internAll(abstractionLevel.getAbstractionEdges(), this::intern));
+        ImplementationLevelGtop frozenImplementationLevel =
+                new ImplementationLevelGtop(implementationLevel.getGraphMetadata(),
+                        internAll(implementationLevel.getImplementationNodes(), this::intern),
+                        internAll(implementationLevel.getImplementationEdges(), this::intern));
+
+        return new GTop(gtop.getVersion(), frozenAbstractionLevel, frozenImplementationLevel);
+    }
+
+    /***
+     * @param node node to intern
+     * @return the frozen node with the same types and attributes
+     */
+    public FrozenAbstractionNode intern(final AbstractionNode node) {
+        AbstractionNode sorted = new AbstractionNode(sortedCopy(node.getTypes()), sortedCopy(node.getAttributes()));
+        return abstractionNodes.intern(toJson(sorted), node, FrozenAbstractionNode::new);
+    }
+
+    /***
+     * @param edge edge to intern
+     * @return the frozen edge with the same content
+     */
+    public FrozenAbstractionEdge intern(final AbstractionEdge edge) {
+        AbstractionEdge sorted = new AbstractionEdge(sortedCopy(edge.getTypes()), sortedCopy(edge.getAttributes()),
+                sortedCopy(edge.getSourceType()), sortedCopy(edge.getDestinationType()), edge.isDirected());
+        return abstractionEdges.intern(toJson(sorted), edge, FrozenAbstractionEdge::new);
+    }
+
+    /***
+     * @param node node to intern
+     * @return the frozen node with the same content
+     */
+    public FrozenImplementationNode intern(final ImplementationNode node) {
+        String key = toJson(node);
+        return implementationNodes.intern(key, node, (id, n) -> new FrozenImplementationNode(id, n, key.hashCode()));
+    }
+
+    /***
+     * @param edge edge to intern
+     * @return the frozen edge with the same content
+     */
+    public FrozenImplementationEdge intern(final ImplementationEdge edge) {
+        String key = toJson(edge);
+        return implementationEdges.intern(key, edge, (id, e) -> new FrozenImplementationEdge(id, e, key.hashCode()));
+    }
+
+    /***
+     * @return number of abstraction nodes interned, the next id of an abstraction node
+     */
+    public int getAbstractionNodeCount() {
+        return abstractionNodes.size();
+    }
+
+    /***
+     * @return number of abstraction edges interned, the next id of an abstraction edge
+     */
+    public int getAbstractionEdgeCount() {
+        return abstractionEdges.size();
+    }
+
+    /***
+     * @return number of implementation nodes interned, the next id of an implementation node
+     */
+    public int getImplementationNodeCount() {
+        return implementationNodes.size();
+    }
+
+    /***
+     * @return number of implementation edges interned, the next id of an implementation edge
+     */
+    public int getImplementationEdgeCount() {
+        return implementationEdges.size();
+    }
+
+    static List<String> sortedCopy(final List<String> list) {
+        if (list == null) {
+            return null;
+        }
+        List<String> sorted = new ArrayList<>(list);
+        Collections.sort(sorted);
+        return Collections.unmodifiableList(sorted);
+    }
+
+    static <T> List<T> copy(final List<T> list) {
+        return list == null ? null : Collections.unmodifiableList(new ArrayList<>(list));
+    }
+
+    private static <T, F extends T> List<T> internAll(final List<T> elements, final Function<T, F> intern) {
+        if (elements == null) {
+            return null;
+        }
+        List<T> frozen = new ArrayList<>(elements.size());
+        elements.forEach(element -> frozen.add(intern.apply(element)));
+        return Collections.unmodifiableList(frozen);
+    }
+
+    private static String toJson(final Object element) {
+        try {
+            return MAPPER.writeValueAsString(element);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Can't intern this gTop element: " + e.getMessage(), e);
+        }
+    }
+
+    /***
+     * Frozen elements of a kind, by content.
+     */
+    private static final class Pool<T, F extends T> {
+
+        private final ConcurrentMap<String, F> elements = new ConcurrentHashMap<>();
+
+        private final AtomicInteger nextId = new AtomicInteger();
+
+        /***
+         * Ids are taken inside computeIfAbsent, which runs at most once per key, so they stay dense.
+         */
+        F intern(final String key, final T element, final Freezer<T, F> freezer) {
+            return elements.computeIfAbsent(key, k -> freezer.freeze(nextId.getAndIncrement(), element));
+        }
+
+        int size() {
+            return nextId.get();
+        }
+    }
+
+    /***
+     * Builds the frozen copy of an element.
+     */
+    @FunctionalInterface
+    private interface Freezer<T, F> {
+        F freeze(int id, T element);
+    }
+}
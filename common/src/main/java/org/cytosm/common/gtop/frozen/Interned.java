@@ -0,0 +1,17 @@
+package org.cytosm.common.gtop.frozen;
+
+/***
+ * Element of a gtop interned by a {@link GTopInterner}.
+ *
+ * Interned elements can't be modified. Two interned elements of the same interner are equal only
+ * if they are the same instance, and their hash code is computed once.
+ *
+ */
+public interface Interned {
+
+    /***
+     * @return the id of the element, unique among the elements of the same kind of its interner.
+     *         Ids are dense: they start at 0 and follow the order in which elements were interned.
+     */
+    int getInternId();
+}
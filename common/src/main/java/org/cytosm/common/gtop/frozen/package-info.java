@@ -0,0 +1,3 @@
+/**
+ */
+package org.cytosm.common.gtop.frozen;
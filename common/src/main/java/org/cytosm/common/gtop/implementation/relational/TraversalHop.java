@@ -3,6 +3,7 @@ package org.cytosm.common.gtop.implementation.relational;
 import java.util.ArrayList;
 import java.util.List;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import org.apache.commons.lang3.StringUtils;
 
 /***
@@ -165,6 +166,30 @@ public class TraversalHop {
         this.attributes = attributes;
     }
 
+    /**
+     * The step number isn't part of the JSON form of the hop.
+     *
+     * @return the stepNumber
+     */
+    @JsonIgnore
+    public int getStepNumber() {
+        return stepNumber;
+    }
+
+    /**
+     * @return the restrictions a row of the join table satisfies to represent this hop.
+     */
+    public List<RestrictionClauses> getRestriction() {
+        return restriction;
+    }
+
+    /**
+     * @param restriction the restriction to set
+     */
+    public void setRestriction(final List<RestrictionClauses> restriction) {
+        this.restriction = restriction;
+    }
+
     /**
      * @return the sourceTableName
      */
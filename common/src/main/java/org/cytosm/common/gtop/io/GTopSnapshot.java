@@ -0,0 +1,718 @@
+package org.cytosm.common.gtop.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+import org.cytosm.common.gtop.GTop;
+import org.cytosm.common.gtop.abstraction.AbstractionEdge;
+import org.cytosm.common.gtop.abstraction.AbstractionLevelGtop;
+import org.cytosm.common.gtop.abstraction.AbstractionNode;
+import org.cytosm.common.gtop.implementation.graphmetadata.BackendSystem;
+import org.cytosm.common.gtop.implementation.graphmetadata.GraphMetadata;
+import org.cytosm.common.gtop.implementation.graphmetadata.SnapshotConcatenationUnit;
+import org.cytosm.common.gtop.implementation.graphmetadata.StorageLayout;
+import org.cytosm.common.gtop.implementation.relational.Attribute;
+import org.cytosm.common.gtop.implementation.relational.EdgeAttribute;
+import org.cytosm.common.gtop.implementation.relational.ImplementationEdge;
+import org.cytosm.common.gtop.implementation.relational.ImplementationLevelGtop;
+import org.cytosm.common.gtop.implementation.relational.ImplementationNode;
+import org.cytosm.common.gtop.implementation.relational.NodeIdImplementation;
+import org.cytosm.common.gtop.implementation.relational.RestrictionClause;
+import org.cytosm.common.gtop.implementation.relational.RestrictionClauses;
+import org.cytosm.common.gtop.implementation.relational.TraversalHop;
+import org.cytosm.common.gtop.implementation.relational.TraversalPath;
+
+/***
+ * Compiled, binary form of a gtop, meant to be loaded much faster than its JSON form.
+ *
+ * A snapshot is written once from a loaded gtop with {@link #write(GTop, File)} and opened with
+ * {@link #open(File)}, which maps the file in memory and decodes nothing upfront. Strings are stored
+ * once in a string table and nodes, edges and traversal hops are stored in sections indexed by their
+ * position. An element is decoded the first time it is read and the same instance is returned
+ * afterwards.
+ *
+ * Layout, in big endian:
+ *
+ * <pre>
+ * header:   magic, format version, gtop version (string id), graph metadata,
+ *           start of each section
+ * section:  element count, offset of each element from the end of the offsets, elements
+ * </pre>
+ *
+ * Strings are referenced by their id in the string table and lists are stored as their size followed
+ * by their elements. Null strings and lists are stored as -1. Traversal paths reference their hops by
+ * id.
+ *
+ * Decoded elements are ordinary gtop elements and can be modified, but the lists of the gtop returned
+ * by {@link #toGTop()} can't. They are {@link LazyElementList}s.
+ *
+ *
+ */
+public final class GTopSnapshot {
+
+    /***
+     * First bytes of a snapshot: "GTOP".
+     */
+    static final int MAGIC = 0x47544F50;
+
+    /***
+     * Version of the layout, bumped on any incompatible change.
+     */
+    static final int FORMAT_VERSION = 1;
+
+    private static final int NULL = -1;
+
+    private static final int STRINGS = 0;
+    private static final int ABSTRACTION_NODES = 1;
+    private static final int ABSTRACTION_EDGES = 2;
+    private static final int IMPLEMENTATION_NODES = 3;
+    private static final int IMPLEMENTATION_EDGES = 4;
+    private static final int HOPS = 5;
+    private static final int SECTION_COUNT = 6;
+
+    @SuppressWarnings("checkstyle:magicnumber")
+    private static final int HEADER_SIZE = 4 * (8 + SECTION_COUNT);
+
+    private final ByteBuffer buffer;
+
+    private final String version;
+    private final GraphMetadata graphMetadata;
+
+    private final int[] sectionStarts = new int[SECTION_COUNT];
+    private final int[] counts = new int[SECTION_COUNT];
+
+    private final AtomicReferenceArray<String> strings;
+    private final AtomicReferenceArray<AbstractionNode> abstractionNodes;
+    private final AtomicReferenceArray<AbstractionEdge> abstractionEdges;
+    private final AtomicReferenceArray<ImplementationNode> implementationNodes;
+    private final AtomicReferenceArray<ImplementationEdge> implementationEdges;
+    private final AtomicReferenceArray<TraversalHop> hops;
+
+    /***
+     * Reads the header of a snapshot.
+     *
+     * @param buffer content of the snapshot
+     * @throws IOException if the content isn't a snapshot this version can read
+     */
+    @SuppressWarnings("checkstyle:magicnumber")
+    GTopSnapshot(final ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+
+        if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a gTop snapshot.");
+        }
+        if (buffer.getInt(4) != FORMAT_VERSION) {
+            throw new IOException("Unsupported gTop snapshot format: " + buffer.getInt(4) + ".");
+        }
+
+        for (int section = 0; section < SECTION_COUNT; section++) {
+            sectionStarts[section] = buffer.getInt(32 + 4 * section);
+            if (sectionStarts[section] < HEADER_SIZE || sectionStarts[section] + 4 > buffer.limit()) {
+                throw new IOException("Truncated gTop snapshot.");
+            }
+            counts[section] = buffer.getInt(sectionStarts[section]);
+        }
+
+        strings = new AtomicReferenceArray<>(counts[STRINGS]);
+        abstractionNodes = new AtomicReferenceArray<>(counts[ABSTRACTION_NODES]);
+        abstractionEdges = new AtomicReferenceArray<>(counts[ABSTRACTION_EDGES]);
+        implementationNodes = new AtomicReferenceArray<>(counts[IMPLEMENTATION_NODES]);
+        implementationEdges = new AtomicReferenceArray<>(counts[IMPLEMENTATION_EDGES]);
+        hops = new AtomicReferenceArray<>(counts[HOPS]);
+
+        version = string(buffer.getInt(8));
+        graphMetadata = new GraphMetadata();
+        graphMetadata.setStorageLayout(constant(StorageLayout.values(), buffer.getInt(12)));
+        graphMetadata.setBackendSystem(constant(BackendSystem.values(), buffer.getInt(16)));
+        graphMetadata.setSnapshotConcatenationUnit(constant(SnapshotConcatenationUnit.values(), buffer.getInt(20)));
+        graphMetadata.setSnapshotConcatenationFactor(buffer.getInt(24) == NULL ? null : buffer.getInt(28));
+    }
+
+    /***
+     * Maps a snapshot in memory.
+     *
+     * @param file snapshot file
+     * @return the snapshot, nothing is decoded yet
+     * @throws IOException if the file can't be read or isn't a snapshot
+     */
+    public static GTopSnapshot open(final File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+            return new GTopSnapshot(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /***
+     * Reads a snapshot held in memory.
+     *
+     * @param content snapshot content
+     * @return the snapshot, nothing is decoded yet
+     * @throws IOException if the content isn't a snapshot
+     */
+    public static GTopSnapshot open(final byte[] content) throws IOException {
+        return new GTopSnapshot(ByteBuffer.wrap(content));
+    }
+
+    /***
+     * @param file file to check
+     * @return true if the file starts like a snapshot
+     */
+    @SuppressWarnings("checkstyle:magicnumber")
+    public static boolean isSnapshot(final File file) {
+        try (InputStream in = new FileInputStream(file)) {
+            byte[] magic = new byte[4];
+            return in.read(magic) == 4 && ByteBuffer.wrap(magic).getInt() == MAGIC;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /***
+     * Writes the snapshot of a gtop.
+     *
+     * @param gtop gtop to write
+     * @param file destination file
+     * @throws IOException if the file can't be written
+     */
+    public static void write(final GTop gtop, final File file) throws IOException {
+        try (OutputStream out = new FileOutputStream(file)) {
+            write(gtop, out);
+        }
+    }
+
+    /***
+     * Writes the snapshot of a gtop.
+     *
+     * @param gtop gtop to write
+     * @param out destination, not closed
+     * @throws IOException if the stream can't be written
+     */
+    public static void write(final GTop gtop, final OutputStream out) throws IOException {
+        new Writer(gtop).writeTo(out);
+    }
+
+    /***
+     * @param gtop gtop to write
+     * @return the snapshot of the gtop
+     */
+    public static byte[] toBytes(final GTop gtop) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            write(gtop, out);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return out.toByteArray();
+    }
+
+    /***
+     * @return a gtop whose elements are decoded from the snapshot when they are first read
+     */
+    public GTop toGTop() {
+        AbstractionLevelGtop abstractionLevel = new AbstractionLevelGtop(
+                new LazyList<>(ABSTRACTION_NODES, abstractionNodes, this::getAbstractionNode,
+                        AbstractionNode::getTypes),
+                new LazyList<>(ABSTRACTION_EDGES, abstractionEdges, this::getAbstractionEdge,
+                        AbstractionEdge::getTypes));
+        ImplementationLevelGtop implementationLevel = new ImplementationLevelGtop(graphMetadata,
+                new LazyList<>(IMPLEMENTATION_NODES, implementationNodes, this::getImplementationNode,
+                        ImplementationNode::getTypes),
+                new LazyList<>(IMPLEMENTATION_EDGES, implementationEdges, this::getImplementationEdge,
+                        ImplementationEdge::getTypes));
+        return new GTop(version, abstractionLevel, implementationLevel);
+    }
+
+    /***
+     * @return the version of the gtop
+     */
+    public String getVersion() {
+        return version;
+    }
+
+    /***
+     * @return the number of abstraction nodes
+     */
+    public int getAbstractionNodeCount() {
+        return counts[ABSTRACTION_NODES];
+    }
+
+    /***
+     * @return the number of abstraction edges
+     */
+    public int getAbstractionEdgeCount() {
+        return counts[ABSTRACTION_EDGES];
+    }
+
+    /***
+     * @return the number of implementation nodes
+     */
+    public int getImplementationNodeCount() {
+        return counts[IMPLEMENTATION_NODES];
+    }
+
+    /***
+     * @return the number of implementation edges
+     */
+    public int getImplementationEdgeCount() {
+        return counts[IMPLEMENTATION_EDGES];
+    }
+
+    /***
+     * @return the number of distinct traversal hops
+     */
+    public int getHopCount() {
+        return counts[HOPS];
+    }
+
+    /***
+     * @param id position of the node in the gtop
+     * @return the abstraction node
+     */
+    public AbstractionNode getAbstractionNode(final int id) {
+        return decode(abstractionNodes, ABSTRACTION_NODES, id, reader -> {
+            List<String> types = reader.strings();
+            List<String> attributes = reader.strings();
+            return new AbstractionNode(types, attributes);
+        });
+    }
+
+    /***
+     * @param id position of the edge in the gtop
+     * @return the abstraction edge
+     */
+    public AbstractionEdge getAbstractionEdge(final int id) {
+        return decode(abstractionEdges, ABSTRACTION_EDGES, id, reader -> {
+            List<String> types = reader.strings();
+            List<String> attributes = reader.strings();
+            List<String> sourceType = reader.strings();
+            List<String> destinationType = reader.strings();
+            boolean directed = reader.integer() != 0;
+            return new AbstractionEdge(types, attributes, sourceType, destinationType, directed);
+        });
+    }
+
+    /***
+     * @param id position of the node in the gtop
+     * @return the implementation node
+     */
+    public ImplementationNode getImplementationNode(final int id) {
+        return decode(implementationNodes, IMPLEMENTATION_NODES, id, reader -> {
+            List<String> types = reader.strings();
+            String tableName = reader.string();
+            List<NodeIdImplementation> ids = reader.list(() -> new NodeIdImplementation(reader.string(),
+                    reader.string(), reader.nullableInteger()));
+            List<Attribute> attributes = reader.list(() -> new Attribute(reader.string(), reader.string(),
+                    reader.string()));
+            List<RestrictionClauses> restrictions = reader.restrictions();
+            return new ImplementationNode(types, tableName, ids, attributes, restrictions);
+        });
+    }
+
+    /***
+     * @param id position of the edge in the gtop
+     * @return the implementation edge
+     */
+    public ImplementationEdge getImplementationEdge(final int id) {
+        return decode(implementationEdges, IMPLEMENTATION_EDGES, id, reader -> {
+            List<String> types = reader.strings();
+            List<TraversalPath> paths = reader.list(() -> new TraversalPath(reader.list(() ->
+                    getHop(reader.integer()))));
+            return new ImplementationEdge(types, paths);
+        });
+    }
+
+    /***
+     * @param id id of the hop
+     * @return the traversal hop
+     */
+    public TraversalHop getHop(final int id) {
+        return decode(hops, HOPS, id, reader -> {
+            String sourceTableName = reader.string();
+            String sourceTableColumn = reader.string();
+            String joinTableSourceColumn = reader.string();
+            String joinTableName = reader.string();
+            String joinTableDestinationColumn = reader.string();
+            String destinationTableColumn = reader.string();
+            String destinationTableName = reader.string();
+            List<EdgeAttribute> attributes = reader.list(() -> new EdgeAttribute(reader.string(), reader.string(),
+                    reader.string(), reader.string()));
+            int stepNumber = reader.integer();
+            List<RestrictionClauses> restriction = reader.restrictions();
+            return new TraversalHop(sourceTableName, sourceTableColumn, joinTableSourceColumn, joinTableName,
+                    joinTableDestinationColumn, destinationTableColumn, destinationTableName, attributes, stepNumber,
+                    restriction);
+        });
+    }
+
+    /***
+     * @param id id of the string
+     * @return the string, null for {@link #NULL}
+     */
+    String string(final int id) {
+        if (id == NULL) {
+            return null;
+        }
+        String string = strings.get(id);
+        if (string == null) {
+            int position = elementPosition(STRINGS, id);
+            int length = buffer.getInt(position);
+            byte[] bytes = new byte[length];
+            ByteBuffer view = buffer.duplicate();
+            view.position(position + Integer.BYTES);
+            view.get(bytes);
+            strings.compareAndSet(id, null, new String(bytes, StandardCharsets.UTF_8));
+            string = strings.get(id);
+        }
+        return string;
+    }
+
+    /***
+     * Decodes an element the first time it is read. Concurrent readers all get the element that was
+     * stored first.
+     */
+    private <T> T decode(final AtomicReferenceArray<T> decoded, final int section, final int id,
+            final Decoder<T> decoder) {
+        T element = decoded.get(id);
+        if (element == null) {
+            decoded.compareAndSet(id, null, decoder.decode(new Reader(elementPosition(section, id))));
+            element = decoded.get(id);
+        }
+        return element;
+    }
+
+    private int elementPosition(final int section, final int id) {
+        if (id < 0 || id >= counts[section]) {
+            throw new IndexOutOfBoundsException("No element " + id + " in section " + section + " of the snapshot.");
+        }
+        int offsets = sectionStarts[section] + Integer.BYTES;
+        return offsets + counts[section] * Integer.BYTES + buffer.getInt(offsets + id * Integer.BYTES);
+    }
+
+    private static <E extends Enum<E>> E constant(final E[] values, final int ordinal) {
+        return ordinal == NULL ? null : values[ordinal];
+    }
+
+    /***
+     * Decodes an element from its record.
+     */
+    @FunctionalInterface
+    private interface Decoder<T> {
+        T decode(Reader reader);
+    }
+
+    /***
+     * Reads the record of an element, field after field.
+     */
+    private final class Reader {
+
+        private int position;
+
+        Reader(final int position) {
+            this.position = position;
+        }
+
+        int integer() {
+            int value = buffer.getInt(position);
+            position += Integer.BYTES;
+            return value;
+        }
+
+        Integer nullableInteger() {
+            boolean present = integer() != NULL;
+            int value = integer();
+            return present ? value : null;
+        }
+
+        String string() {
+            return GTopSnapshot.this.string(integer());
+        }
+
+        List<String> strings() {
+            return list(this::string);
+        }
+
+        <T> List<T> list(final Supplier<T> element) {
+            int size = integer();
+            if (size == NULL) {
+                return null;
+            }
+            List<T> list = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                list.add(element.get());
+            }
+            return list;
+        }
+
+        List<RestrictionClauses> restrictions() {
+            return list(() -> new RestrictionClauses(list(() -> new RestrictionClause(string(), string(),
+                    string()))));
+        }
+    }
+
+    /***
+     * List of the elements of a section, decoded when they are read. Every record starts with the
+     * types of its element.
+     */
+    private final class LazyList<T> extends AbstractList<T> implements LazyElementList<T>, RandomAccess {
+
+        private final int section;
+        private final AtomicReferenceArray<T> decoded;
+        private final IntFunction<T> element;
+        private final Function<T, List<String>> types;
+
+        LazyList(final int section, final AtomicReferenceArray<T> decoded, final IntFunction<T> element,
+                final Function<T, List<String>> types) {
+            this.section = section;
+            this.decoded = decoded;
+            this.element = element;
+            this.types = types;
+        }
+
+        @Override
+        public T get(final int index) {
+            return element.apply(index);
+        }
+
+        @Override
+        public int size() {
+            return counts[section];
+        }
+
+        @Override
+        public List<String> getTypes(final int index) {
+            T decodedElement = decoded.get(index);
+            if (decodedElement != null) {
+                return types.apply(decodedElement);
+            }
+            return new Reader(elementPosition(section, index)).strings();
+        }
+
+        @Override
+        public boolean isDecoded(final int index) {
+            return decoded.get(index) != null;
+        }
+    }
+
+    /***
+     * Encodes a gtop. Each section is encoded apart and the string table is filled along the way.
+     */
+    private static final class Writer {
+
+        private final GTop gtop;
+
+        private final Map<String, Integer> stringIds = new LinkedHashMap<>();
+        private final Map<TraversalHop, Integer> hopIds = new IdentityHashMap<>();
+        private final List<TraversalHop> hops = new ArrayList<>();
+
+        private final Section[] sections = new Section[SECTION_COUNT];
+
+        Writer(final GTop gtop) {
+            this.gtop = gtop;
+            for (int section = 0; section < SECTION_COUNT; section++) {
+                sections[section] = new Section();
+            }
+        }
+
+        @SuppressWarnings("checkstyle:magicnumber")
+        void writeTo(final OutputStream out) throws IOException {
+            AbstractionLevelGtop abstractionLevel = gtop.getAbstractionLevel();
+            ImplementationLevelGtop implementationLevel = gtop.getImplementationLevel();
+
+            for (AbstractionNode node : orEmpty(abstractionLevel.getAbstractionNodes())) {
+                DataOutputStream record = sections[ABSTRACTION_NODES].next();
+                strings(record, node.getTypes());
+                strings(record, node.getAttributes());
+            }
+            for (AbstractionEdge edge : orEmpty(abstractionLevel.getAbstractionEdges())) {
+                DataOutputStream record = sections[ABSTRACTION_EDGES].next();
+                strings(record, edge.getTypes());
+                strings(record, edge.getAttributes());
+                strings(record, edge.getSourceType());
+                strings(record, edge.getDestinationType());
+                record.writeInt(edge.isDirected() ? 1 : 0);
+            }
+            for (ImplementationNode node : orEmpty(implementationLevel.getImplementationNodes())) {
+                DataOutputStream record = sections[IMPLEMENTATION_NODES].next();
+                strings(record, node.getTypes());
+                string(record, node.getTableName());
+                size(record, node.getId());
+                for (NodeIdImplementation id : orEmpty(node.getId())) {
+                    string(record, id.getColumnName());
+                    string(record, id.getDatatype());
+                    nullableInteger(record, id.getConcatenationPosition());
+                }
+                size(record, node.getAttributes());
+                for (Attribute attribute : orEmpty(node.getAttributes())) {
+                    string(record, attribute.getColumnName());
+                    string(record, attribute.getAbstractionLevelName());
+                    string(record, attribute.getDataType());
+                }
+                restrictions(record, node.getRestrictions());
+            }
+            for (ImplementationEdge edge : orEmpty(implementationLevel.getImplementationEdges())) {
+                DataOutputStream record = sections[IMPLEMENTATION_EDGES].next();
+                strings(record, edge.getTypes());
+                size(record, edge.getPaths());
+                for (TraversalPath path : orEmpty(edge.getPaths())) {
+                    size(record, path.getTraversalHops());
+                    for (TraversalHop hop : orEmpty(path.getTraversalHops())) {
+                        record.writeInt(hopId(hop));
+                    }
+                }
+            }
+            // hops are numbered while writing the edges and can't reference other hops.
+            for (TraversalHop hop : hops) {
+                DataOutputStream record = sections[HOPS].next();
+                string(record, hop.getSourceTableName());
+                string(record, hop.getSourceTableColumn());
+                string(record, hop.getJoinTableSourceColumn());
+                string(record, hop.getJoinTableName());
+                string(record, hop.getJoinTableDestinationColumn());
+                string(record, hop.getDestinationTableColumn());
+                string(record, hop.getDestinationTableName());
+                size(record, hop.getAttributes());
+                for (EdgeAttribute attribute : orEmpty(hop.getAttributes())) {
+                    string(record, attribute.getColumnName());
+                    string(record, attribute.getAbstractionLevelName());
+                    string(record, attribute.getDataType());
+                    string(record, attribute.getTableName());
+                }
+                record.writeInt(hop.getStepNumber());
+                restrictions(record, hop.getRestriction());
+            }
+
+            GraphMetadata metadata = implementationLevel.getGraphMetadata();
+            int versionId = stringId(gtop.getVersion());
+
+            // the string table is complete once everything else is encoded.
+            for (String string : stringIds.keySet()) {
+                byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+                DataOutputStream record = sections[STRINGS].next();
+                record.writeInt(bytes.length);
+                record.write(bytes);
+            }
+
+            DataOutputStream header = new DataOutputStream(out);
+            header.writeInt(MAGIC);
+            header.writeInt(FORMAT_VERSION);
+            header.writeInt(versionId);
+            header.writeInt(ordinal(metadata == null ? null : metadata.getStorageLayout()));
+            header.writeInt(ordinal(metadata == null ? null : metadata.getBackendSystem()));
+            header.writeInt(ordinal(metadata == null ? null : metadata.getSnapshotConcatenationUnit()));
+            nullableInteger(header, metadata == null ? null : metadata.getSnapshotConcatenationFactor());
+
+            int start = HEADER_SIZE;
+            for (Section section : sections) {
+                header.writeInt(start);
+                start += section.size();
+            }
+            for (Section section : sections) {
+                section.writeTo(header);
+            }
+            header.flush();
+        }
+
+        private int stringId(final String string) {
+            if (string == null) {
+                return NULL;
+            }
+            return stringIds.computeIfAbsent(string, s -> stringIds.size());
+        }
+
+        private int hopId(final TraversalHop hop) {
+            return hopIds.computeIfAbsent(hop, h -> {
+                hops.add(h);
+                return hops.size() - 1;
+            });
+        }
+
+        private void string(final DataOutputStream record, final String string) throws IOException {
+            record.writeInt(stringId(string));
+        }
+
+        private void strings(final DataOutputStream record, final List<String> strings) throws IOException {
+            size(record, strings);
+            for (String string : orEmpty(strings)) {
+                string(record, string);
+            }
+        }
+
+        private void restrictions(final DataOutputStream record, final List<RestrictionClauses> restrictions)
+                throws IOException {
+            size(record, restrictions);
+            for (RestrictionClauses clauses : orEmpty(restrictions)) {
+                size(record, clauses.getRestrictionClause());
+                for (RestrictionClause clause : orEmpty(clauses.getRestrictionClause())) {
+                    string(record, clause.getTableName());
+                    string(record, clause.getColumnName());
+                    string(record, clause.getPattern());
+                }
+            }
+        }
+
+        private static void size(final DataOutputStream record, final List<?> list) throws IOException {
+            record.writeInt(list == null ? NULL : list.size());
+        }
+
+        private static void nullableInteger(final DataOutputStream record, final Integer value) throws IOException {
+            record.writeInt(value == null ? NULL : 0);
+            record.writeInt(value == null ? 0 : value);
+        }
+
+        private static int ordinal(final Enum<?> constant) {
+            return constant == null ? NULL : constant.ordinal();
+        }
+
+        private static <T> List<T> orEmpty(final List<T> list) {
+            return list == null ? new ArrayList<>() : list;
+        }
+    }
+
+    /***
+     * Records of a section, encoded in memory until the sizes of all the sections are known.
+     */
+    private static final class Section {
+
+        private final ByteArrayOutputStream records = new ByteArrayOutputStream();
+        private final DataOutputStream recordsOut = new DataOutputStream(records);
+        private final List<Integer> offsets = new ArrayList<>();
+
+        DataOutputStream next() {
+            offsets.add(recordsOut.size());
+            return recordsOut;
+        }
+
+        int size() {
+            return Integer.BYTES * (1 + offsets.size()) + recordsOut.size();
+        }
+
+        void writeTo(final DataOutputStream out) throws IOException {
+            out.writeInt(offsets.size());
+            for (int offset : offsets) {
+                out.writeInt(offset);
+            }
+            recordsOut.flush();
+            records.writeTo(out);
+        }
+    }
+}
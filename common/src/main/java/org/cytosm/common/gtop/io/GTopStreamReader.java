@@ -0,0 +1,266 @@
+package org.cytosm.common.gtop.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.cytosm.common.gtop.GTop;
+import org.cytosm.common.gtop.abstraction.AbstractionLevelGtop;
+import org.cytosm.common.gtop.implementation.graphmetadata.GraphMetadata;
+import org.cytosm.common.gtop.implementation.relational.ImplementationEdge;
+import org.cytosm.common.gtop.implementation.relational.ImplementationLevelGtop;
+import org.cytosm.common.gtop.implementation.relational.ImplementationNode;
+
+/***
+ * Reads a JSON gtop with the streaming API of Jackson, without building the implementation level
+ * upfront.
+ *
+ * The version, the abstraction level and the graph metadata are read eagerly. The implementation
+ * nodes and edges are only scanned: the reader keeps where each of them is in the JSON and its types.
+ * An element is decoded the first time it is read from its list, a {@link LazyElementList}, and the
+ * same instance is returned afterwards. Looking up the elements of a type only decodes the elements of
+ * that type.
+ *
+ * The whole JSON is checked when it is read, but an implementation element that can't be mapped to
+ * the gtop model only fails when it is decoded, with an {@link UncheckedIOException}. Reading every
+ * element of the lists decodes them upfront and reports these errors at once.
+ *
+ * The JSON is kept until every element of both lists has been decoded, and released afterwards.
+ *
+ *
+ */
+public final class GTopStreamReader {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    /**
+     * Default constructor.
+     */
+    private GTopStreamReader() {}
+
+    /***
+     * Reads a gtop from a JSON file.
+     *
+     * @param file gtop file
+     * @return the gtop
+     * @throws IOException if the file can't be read or isn't a gtop
+     */
+    public static GTop read(final File file) throws IOException {
+        return read(Files.readAllBytes(file.toPath()));
+    }
+
+    /***
+     * Reads a gtop from a JSON string.
+     *
+     * @param gTopStr gtop in a string
+     * @return the gtop
+     * @throws IOException if the string isn't a gtop
+     */
+    public static GTop read(final String gTopStr) throws IOException {
+        return read(gTopStr.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /***
+     * Reads a gtop from UTF-8 encoded JSON. The content is kept until the implementation elements are
+     * decoded and must not be modified.
+     *
+     * @param content gtop JSON
+     * @return the gtop
+     * @throws IOException if the content isn't a gtop
+     */
+    public static GTop read(final byte[] content) throws IOException {
+        String version = new GTop().getVersion();
+        AbstractionLevelGtop abstractionLevel = new AbstractionLevelGtop();
+        ImplementationLevelGtop implementationLevel = new ImplementationLevelGtop();
+
+        try (JsonParser parser = MAPPER.getFactory().createParser(content)) {
+            expect(parser, parser.nextToken(), JsonToken.START_OBJECT);
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                switch (field) {
+                    case "version":
+                        version = parser.getValueAsString();
+                        parser.skipChildren();
+                        break;
+                    case "abstractionLevel":
+                        abstractionLevel = value == JsonToken.VALUE_NULL ? null
+                                : MAPPER.readValue(parser, AbstractionLevelGtop.class);
+                        break;
+                    case "implementationLevel":
+                        implementationLevel = value == JsonToken.VALUE_NULL ? null
+                                : readImplementationLevel(parser, content);
+                        break;
+                    default:
+                        throw new JsonParseException("Unknown gTop field: " + field, parser.getCurrentLocation());
+                }
+            }
+            expect(parser, parser.getCurrentToken(), JsonToken.END_OBJECT);
+        }
+
+        return new GTop(version, abstractionLevel, implementationLevel);
+    }
+
+    private static ImplementationLevelGtop readImplementationLevel(final JsonParser parser, final byte[] content)
+            throws IOException {
+        expect(parser, parser.getCurrentToken(), JsonToken.START_OBJECT);
+        ImplementationLevelGtop implementationLevel = new ImplementationLevelGtop();
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            switch (field) {
+                case "graphMetadata":
+                    implementationLevel.setGraphMetadata(value == JsonToken.VALUE_NULL ? null
+                            : MAPPER.readValue(parser, GraphMetadata.class));
+                    break;
+                case "implementationNodes":
+                    implementationLevel.setImplementationNodes(
+                            scan(parser, content, ImplementationNode.class, ImplementationNode::getTypes));
+                    break;
+                case "implementationEdges":
+                    implementationLevel.setImplementationEdges(
+                            scan(parser, content, ImplementationEdge.class, ImplementationEdge::getTypes));
+                    break;
+                default:
+                    throw new JsonParseException("Unknown implementation level field: " + field,
+                            parser.getCurrentLocation());
+            }
+        }
+        return implementationLevel;
+    }
+
+    /***
+     * Scans an array of elements, keeping where each element is and its types.
+     */
+    private static <T> List<T> scan(final JsonParser parser, final byte[] content, final Class<T> type,
+            final Function<T, List<String>> types) throws IOException {
+        if (parser.getCurrentToken() == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        expect(parser, parser.getCurrentToken(), JsonToken.START_ARRAY);
+
+        List<Integer> starts = new ArrayList<>();
+        List<Integer> ends = new ArrayList<>();
+        List<List<String>> scannedTypes = new ArrayList<>();
+
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+            // the parser is right after the opening brace of the element.
+            int start = (int) parser.getCurrentLocation().getByteOffset() - 1;
+            if (start < 0 || content[start] != '{') {
+                throw new JsonParseException("Can't locate the element in the gTop", parser.getCurrentLocation());
+            }
+            starts.add(start);
+            // elements without types have an empty list of types once decoded.
+            List<String> elementTypes = new ArrayList<>();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if ("types".equals(field) && value == JsonToken.START_ARRAY) {
+                    elementTypes = new ArrayList<>();
+                    while (parser.nextToken() != JsonToken.END_ARRAY) {
+                        elementTypes.add(parser.getValueAsString());
+                    }
+                } else if ("types".equals(field) && value == JsonToken.VALUE_NULL) {
+                    elementTypes = null;
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            ends.add((int) parser.getCurrentLocation().getByteOffset());
+            scannedTypes.add(elementTypes);
+        }
+        expect(parser, parser.getCurrentToken(), JsonToken.END_ARRAY);
+
+        return new LazyJsonList<>(content, type, types, starts, ends, scannedTypes);
+    }
+
+    private static void expect(final JsonParser parser, final JsonToken actual, final JsonToken expected)
+            throws JsonParseException {
+        if (actual != expected) {
+            throw new JsonParseException("Expected " + expected + " but found " + actual, parser.getCurrentLocation());
+        }
+    }
+
+    /***
+     * Elements of the implementation level, decoded from their JSON when they are read.
+     */
+    private static final class LazyJsonList<T> extends AbstractList<T> implements LazyElementList<T>, RandomAccess {
+
+        /** JSON of the elements, released once they are all decoded. */
+        private volatile byte[] content;
+        private final Class<T> type;
+        private final Function<T, List<String>> types;
+        private final int[] starts;
+        private final int[] ends;
+        private final List<List<String>> scannedTypes;
+        private final AtomicReferenceArray<T> decoded;
+        private final AtomicInteger undecoded;
+
+        LazyJsonList(final byte[] content, final Class<T> type, final Function<T, List<String>> types,
+                final List<Integer> starts, final List<Integer> ends, final List<List<String>> scannedTypes) {
+            this.content = starts.isEmpty() ? null : content;
+            this.type = type;
+            this.types = types;
+            this.starts = starts.stream().mapToInt(Integer::intValue).toArray();
+            this.ends = ends.stream().mapToInt(Integer::intValue).toArray();
+            this.scannedTypes = scannedTypes;
+            this.decoded = new AtomicReferenceArray<>(this.starts.length);
+            this.undecoded = new AtomicInteger(this.starts.length);
+        }
+
+        @Override
+        public T get(final int index) {
+            T element = decoded.get(index);
+            // the content is only released after the last element has been decoded.
+            byte[] json = content;
+            if (element == null && json != null) {
+                try {
+                    if (decoded.compareAndSet(index, null,
+                            MAPPER.readValue(json, starts[index], ends[index] - starts[index], type))
+                            && undecoded.decrementAndGet() == 0) {
+                        content = null;
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Can't decode element " + index + " of the gTop: "
+                            + e.getMessage(), e);
+                }
+                element = decoded.get(index);
+            }
+            return element;
+        }
+
+        @Override
+        public int size() {
+            return starts.length;
+        }
+
+        @Override
+        public List<String> getTypes(final int index) {
+            T element = decoded.get(index);
+            if (element != null) {
+                return types.apply(element);
+            }
+            List<String> elementTypes = scannedTypes.get(index);
+            return elementTypes == null ? null : new ArrayList<>(elementTypes);
+        }
+
+        @Override
+        public boolean isDecoded(final int index) {
+            return decoded.get(index) != null;
+        }
+    }
+}
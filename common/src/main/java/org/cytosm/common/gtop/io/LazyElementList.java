@@ -0,0 +1,29 @@
+package org.cytosm.common.gtop.io;
+
+import java.util.List;
+
+/***
+ * List of gtop elements decoded on first use, such as the lists of the gtops read by
+ * {@link GTopStreamReader} or {@link GTopSnapshot}.
+ *
+ * The types of an element are known without decoding it, which is what indexing the elements by type
+ * needs. The list can't be modified.
+ *
+ * @param <T> type of the elements
+ *
+ *
+ */
+public interface LazyElementList<T> extends List<T> {
+
+    /***
+     * @param index position of the element
+     * @return the types of the element, read without decoding it if it isn't decoded yet
+     */
+    List<String> getTypes(int index);
+
+    /***
+     * @param index position of the element
+     * @return true if the element was already decoded
+     */
+    boolean isDecoded(int index);
+}
@@ -18,7 +18,11 @@ public final class SerializationInterface {
     private SerializationInterface() {}
 
     /**
-     * Reads a GTop from a file.
+     * Reads a GTop from a file, either JSON or a {@link GTopSnapshot}.
+     *
+     * The implementation nodes and edges are decoded when they are first used: one that can't be
+     * mapped to the gtop model is reported then, with an {@link java.io.UncheckedIOException}. A JSON
+     * gtop is kept in memory until all of them have been decoded.
      *
      * @param fileObj The file object
      * @return the corresponding GTop
@@ -27,10 +31,12 @@ public final class SerializationInterface {
 
         GTop gtop = null;
 
-        ObjectMapper mapper = new ObjectMapper();
-
         try {
-            gtop = mapper.readValue(fileObj, GTop.class);
+            if (GTopSnapshot.isSnapshot(fileObj)) {
+                gtop = GTopSnapshot.open(fileObj).toGTop();
+            } else {
+                gtop = GTopStreamReader.read(fileObj);
+            }
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -39,7 +45,8 @@ public final class SerializationInterface {
     }
 
     /**
-     * Reads a GTop from a string.
+     * Reads a GTop from a string. The implementation nodes and edges are decoded, and their errors
+     * reported, when they are first used.
      *
      * @param gTopStr The strip to construct a GTop from
      * @return the corresponding GTop
@@ -48,9 +55,8 @@ public final class SerializationInterface {
 
         GTop gtop = null;
 
-        ObjectMapper mapper = new ObjectMapper();
         try {
-            gtop = mapper.readValue(gTopStr, GTop.class);
+            gtop = GTopStreamReader.read(gTopStr);
         } catch (Exception e) {
             e.printStackTrace();
         }
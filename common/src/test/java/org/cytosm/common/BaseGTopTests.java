@@ -0,0 +1,24 @@
+package org.cytosm.common;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.commons.io.FileUtils;
+import org.cytosm.common.gtop.GTop;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Tests sharing the small social network gTop of the test resources.
+ */
+public class BaseGTopTests {
+
+    protected static String gtopJson() throws IOException {
+        String path = "src" + File.separatorChar + "test" + File.separatorChar + "resources";
+        return FileUtils.readFileToString(new File(path + "/social.gtop"), "UTF-8");
+    }
+
+    protected static GTop gtop() throws IOException {
+        return new ObjectMapper().readValue(gtopJson(), GTop.class);
+    }
+}
@@ -0,0 +1,132 @@
+package org.cytosm.common;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.cytosm.common.gtop.GTop;
+import org.cytosm.common.gtop.GTopInterfaceImpl;
+import org.cytosm.common.gtop.RelationalGTopInterface;
+import org.cytosm.common.gtop.abstraction.AbstractionEdge;
+import org.cytosm.common.gtop.abstraction.AbstractionLevelGtop;
+import org.cytosm.common.gtop.abstraction.AbstractionNode;
+import org.cytosm.common.gtop.implementation.graphmetadata.BackendSystem;
+import org.cytosm.common.gtop.implementation.graphmetadata.GraphMetadata;
+import org.cytosm.common.gtop.implementation.graphmetadata.StorageLayout;
+import org.cytosm.common.gtop.implementation.relational.ImplementationEdge;
+import org.cytosm.common.gtop.implementation.relational.ImplementationLevelGtop;
+import org.cytosm.common.gtop.implementation.relational.ImplementationNode;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class GTopIndexTest {
+
+    private AbstractionNode person;
+    private AbstractionNode post;
+    private AbstractionNode comment;
+    private AbstractionEdge knows;
+    private AbstractionEdge likes;
+    private AbstractionEdge hasCreator;
+    private ImplementationNode personTable;
+    private ImplementationNode postTable;
+    private ImplementationEdge knowsTable;
+    private ImplementationEdge likesTable;
+    private GTopInterfaceImpl gTopInterface;
+
+    @Before
+    public void setUp() {
+        person = new AbstractionNode(Arrays.asList("Person"), Arrays.asList("id"));
+        post = new AbstractionNode(Arrays.asList("Post", "Message"), Arrays.asList("id"));
+        comment = new AbstractionNode(Arrays.asList("Comment", "Message"), Arrays.asList("id"));
+        knows = new AbstractionEdge(Arrays.asList("KNOWS"), Collections.emptyList(), Arrays.asList("person"),
+                Arrays.asList("person"), false);
+        likes = new AbstractionEdge(Arrays.asList("LIKES"), Collections.emptyList(), Arrays.asList("person"),
+                Arrays.asList("post", "comment"), true);
+        hasCreator = new AbstractionEdge(Arrays.asList("HAS_CREATOR"), Collections.emptyList(),
+                Arrays.asList("message"), Arrays.asList("person"), true);
+
+        personTable = new ImplementationNode(Arrays.asList("Person"), "person", new ArrayList<>(),
+                new ArrayList<>(), new ArrayList<>());
+        postTable = new ImplementationNode(Arrays.asList("Post", "Message"), "post", new ArrayList<>(),
+                new ArrayList<>(), new ArrayList<>());
+        knowsTable = new ImplementationEdge(Arrays.asList("KNOWS"), new ArrayList<>());
+        likesTable = new ImplementationEdge(Arrays.asList("LIKES"), new ArrayList<>());
+
+        AbstractionLevelGtop abstractionLevel = new AbstractionLevelGtop(
+                new ArrayList<>(Arrays.asList(person, post, comment)),
+                new ArrayList<>(Arrays.asList(knows, likes, hasCreator)));
+        ImplementationLevelGtop implementationLevel = new ImplementationLevelGtop(
+                new GraphMetadata(StorageLayout.IGNORETIME, BackendSystem.RELATIONAL),
+                new ArrayList<>(Arrays.asList(personTable, postTable)),
+                new ArrayList<>(Arrays.asList(knowsTable, likesTable)));
+        gTopInterface = new RelationalGTopInterface(new GTop(abstractionLevel, implementationLevel));
+    }
+
+    @Test
+    public void typesAreDistinctAndInOrder() {
+        Assert.assertEquals(Arrays.asList("Person", "Post", "Message", "Comment"), gTopInterface.getAllNodeTypes());
+        Assert.assertEquals(Arrays.asList("KNOWS", "LIKES", "HAS_CREATOR"), gTopInterface.getAllEdgeTypes());
+    }
+
+    @Test
+    public void lookupsByTypeIgnoreCase() {
+        Assert.assertEquals(Arrays.asList(post, comment), gTopInterface.getAbstractionNodesByTypes("MESSAGE"));
+        Assert.assertEquals(Arrays.asList(likes), gTopInterface.getAbstractionEdgesByTypes("likes"));
+        Assert.assertEquals(Arrays.asList(postTable), gTopInterface.getImplementationNodesByType("message"));
+        Assert.assertEquals(Arrays.asList(knowsTable), gTopInterface.getImplementationEdgeByType("Knows"));
+        Assert.assertTrue(gTopInterface.getAbstractionNodesByTypes("Forum").isEmpty());
+        Assert.assertTrue(gTopInterface.getImplementationNodesByType(null).isEmpty());
+    }
+
+    @Test
+    public void lookupsBetweenLevelsShareTypes() {
+        Assert.assertEquals(Arrays.asList(post, comment), gTopInterface.findNodeAbstractions(postTable));
+        Assert.assertEquals(Arrays.asList(postTable), gTopInterface.findNodeImplementations(comment));
+        Assert.assertSame(likesTable, gTopInterface.findEdgeImplementation(likes));
+        Assert.assertNull(gTopInterface.findEdgeImplementation(hasCreator));
+    }
+
+    @Test
+    public void edgesAreFoundByTheTypesOfTheirNodes() {
+        Assert.assertEquals(Arrays.asList(knows, likes, hasCreator),
+                gTopInterface.getAllAbstractEdgesForNodeTypes(Arrays.asList("person")));
+        Assert.assertEquals(Arrays.asList(likes, hasCreator),
+                gTopInterface.getAllAbstractEdgesForNodeTypes(Arrays.asList("comment", "message")));
+        Assert.assertTrue(gTopInterface.getAllAbstractEdgesForNodeTypes(Collections.emptyList()).isEmpty());
+
+        AbstractionNode from = new AbstractionNode(Arrays.asList("person"), Collections.emptyList());
+        AbstractionNode to = new AbstractionNode(Arrays.asList("comment"), Collections.emptyList());
+        Assert.assertEquals(Arrays.asList(likes), gTopInterface.getDirectedAbstractEdgesBetweenTwoNodes(from, to));
+        Assert.assertTrue(gTopInterface.getDirectedAbstractEdgesBetweenTwoNodes(to, from).isEmpty());
+        Assert.assertTrue(gTopInterface.getDirectedAbstractEdgesBetweenTwoNodes(null, to).isEmpty());
+    }
+
+    @Test
+    public void nodesAreFoundFromTheirEdges() {
+        Assert.assertEquals(Arrays.asList(post, comment), gTopInterface.getSourceNodesForEdge(hasCreator));
+        Assert.assertEquals(Arrays.asList(post, comment), gTopInterface.getDestinationNodesForEdge(likes));
+
+        AbstractionEdge unknown = new AbstractionEdge(Arrays.asList("LIKES"), Collections.emptyList(),
+                Arrays.asList("person"), Arrays.asList("post"), true);
+        Assert.assertTrue(gTopInterface.getSourceNodesForEdge(unknown).isEmpty());
+
+        // A copy of an edge of the gTop is found by its content.
+        AbstractionEdge copy = new AbstractionEdge(Arrays.asList("LIKES"), Collections.emptyList(),
+                Arrays.asList("person"), Arrays.asList("comment", "post"), true);
+        Assert.assertEquals(Arrays.asList(person), gTopInterface.getSourceNodesForEdge(copy));
+        Assert.assertEquals(Arrays.asList(comment, post), gTopInterface.getDestinationNodesForEdge(copy));
+    }
+
+    @Test
+    public void indexFollowsChangesOfTheGTop() {
+        AbstractionNode forum = new AbstractionNode(Arrays.asList("Forum"), Arrays.asList("id"));
+        gTopInterface.setAbstractionNodes(new ArrayList<>(Arrays.asList(person, forum)));
+        Assert.assertEquals(Arrays.asList(forum), gTopInterface.getAbstractionNodesByTypes("forum"));
+        Assert.assertTrue(gTopInterface.getAbstractionNodesByTypes("message").isEmpty());
+
+        gTopInterface.getImplementationEdges().remove(knowsTable);
+        Assert.assertTrue(gTopInterface.getImplementationEdgeByType("KNOWS").isEmpty());
+    }
+}
@@ -0,0 +1,126 @@
+package org.cytosm.common;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.cytosm.common.gtop.GTop;
+import org.cytosm.common.gtop.abstraction.AbstractionEdge;
+import org.cytosm.common.gtop.abstraction.AbstractionNode;
+import org.cytosm.common.gtop.frozen.GTopInterner;
+import org.cytosm.common.gtop.frozen.Interned;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class GTopInternerTest extends BaseGTopTests {
+
+    @Test
+    public void frozenGTopHasTheSameContent() throws Exception {
+        GTop original = gtop();
+        GTop frozen = new GTopInterner().freeze(original);
+
+        ObjectMapper mapper = new ObjectMapper();
+        original.getAbstractionLevel().getAbstractionNodes().forEach(AbstractionNode::hashCode);
+        original.getAbstractionLevel().getAbstractionEdges().forEach(AbstractionEdge::hashCode);
+        Assert.assertEquals(mapper.writeValueAsString(original), mapper.writeValueAsString(frozen));
+        Assert.assertEquals("1.1", frozen.getVersion());
+        Assert.assertEquals(original.getAbstractionLevel().getAbstractionNodes().get(0).hashCode(),
+                frozen.getAbstractionLevel().getAbstractionNodes().get(0).hashCode());
+    }
+
+    @Test
+    public void equalElementsAreShared() throws IOException {
+        GTopInterner interner = new GTopInterner();
+        GTop first = interner.freeze(gtop());
+        GTop second = interner.freeze(gtop());
+
+        AbstractionNode person = first.getAbstractionLevel().getAbstractionNodes().get(0);
+        Assert.assertSame(person, second.getAbstractionLevel().getAbstractionNodes().get(0));
+        Assert.assertSame(first.getAbstractionLevel().getAbstractionEdges().get(0),
+                second.getAbstractionLevel().getAbstractionEdges().get(0));
+        Assert.assertSame(first.getImplementationLevel().getImplementationNodes().get(0),
+                second.getImplementationLevel().getImplementationNodes().get(0));
+        Assert.assertSame(first.getImplementationLevel().getImplementationEdges().get(0),
+                second.getImplementationLevel().getImplementationEdges().get(0));
+
+        AbstractionNode reordered = new AbstractionNode(Arrays.asList("Person"), Arrays.asList("firstName", "id"));
+        Assert.assertSame(person, interner.intern(reordered));
+        Assert.assertSame(person, interner.intern(person));
+    }
+
+    @Test
+    public void idsAreDense() throws IOException {
+        GTopInterner interner = new GTopInterner();
+        GTop frozen = interner.freeze(gtop());
+        interner.freeze(gtop());
+
+        Set<Integer> ids = new HashSet<>();
+        frozen.getAbstractionLevel().getAbstractionNodes().forEach(node -> ids.add(((Interned) node).getInternId()));
+        Assert.assertEquals(new HashSet<>(Arrays.asList(0, 1, 2)), ids);
+        Assert.assertEquals(3, interner.getAbstractionNodeCount());
+        Assert.assertEquals(3, interner.getAbstractionEdgeCount());
+        Assert.assertEquals(3, interner.getImplementationNodeCount());
+        Assert.assertEquals(3, interner.getImplementationEdgeCount());
+    }
+
+    @Test
+    public void equalityWithElementsThatArentFrozenIsSymmetric() throws IOException {
+        GTop original = gtop();
+        GTop frozen = new GTopInterner().freeze(original);
+
+        AbstractionNode node = original.getAbstractionLevel().getAbstractionNodes().get(0);
+        AbstractionNode frozenNode = frozen.getAbstractionLevel().getAbstractionNodes().get(0);
+        Assert.assertEquals(node, frozenNode);
+        Assert.assertEquals(frozenNode, node);
+
+        AbstractionNode other = original.getAbstractionLevel().getAbstractionNodes().get(1);
+        Assert.assertNotEquals(other, frozenNode);
+        Assert.assertNotEquals(frozenNode, other);
+
+        AbstractionEdge edge = original.getAbstractionLevel().getAbstractionEdges().get(0);
+        AbstractionEdge frozenEdge = frozen.getAbstractionLevel().getAbstractionEdges().get(0);
+        Assert.assertEquals(edge.equals(frozenEdge), frozenEdge.equals(edge));
+        Object implementationNode = original.getImplementationLevel().getImplementationNodes().get(0);
+        Object frozenImplementationNode = frozen.getImplementationLevel().getImplementationNodes().get(0);
+        Assert.assertEquals(implementationNode.equals(frozenImplementationNode),
+                frozenImplementationNode.equals(implementationNode));
+    }
+
+    @Test
+    public void equalityIsIdentity() throws IOException {
+        GTop first = new GTopInterner().freeze(gtop());
+        GTop second = new GTopInterner().freeze(gtop());
+
+        AbstractionNode node = first.getAbstractionLevel().getAbstractionNodes().get(0);
+        AbstractionNode other = second.getAbstractionLevel().getAbstractionNodes().get(0);
+        Assert.assertEquals(node.hashCode(), other.hashCode());
+        Assert.assertNotEquals(node, other);
+        Assert.assertEquals(node, node);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void frozenElementsCantBeModified() throws IOException {
+        GTop frozen = new GTopInterner().freeze(gtop());
+        frozen.getAbstractionLevel().getAbstractionEdges().get(0).setDirected(false);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void frozenListsCantBeModified() throws IOException {
+        GTop frozen = new GTopInterner().freeze(gtop());
+        List<String> types = frozen.getImplementationLevel().getImplementationNodes().get(0).getTypes();
+        types.addAll(Collections.singletonList("Forum"));
+    }
+
+    @Test
+    public void originalIsNotModified() throws IOException {
+        GTop original = gtop();
+        new GTopInterner().freeze(original);
+        Assert.assertEquals(Arrays.asList("id", "firstName"),
+                original.getAbstractionLevel().getAbstractionNodes().get(0).getAttributes());
+    }
+}
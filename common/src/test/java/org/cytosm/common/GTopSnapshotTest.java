@@ -0,0 +1,83 @@
+package org.cytosm.common;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import org.cytosm.common.gtop.GTop;
+import org.cytosm.common.gtop.GTopInterfaceImpl;
+import org.cytosm.common.gtop.RelationalGTopInterface;
+import org.cytosm.common.gtop.implementation.relational.TraversalHop;
+import org.cytosm.common.gtop.implementation.relational.TraversalPath;
+import org.cytosm.common.gtop.io.GTopSnapshot;
+import org.cytosm.common.gtop.io.SerializationInterface;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class GTopSnapshotTest extends BaseGTopTests {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void snapshotHasTheContentOfTheGTop() throws IOException {
+        GTop original = gtop();
+        File file = folder.newFile("ldbc.gtopb");
+        GTopSnapshot.write(original, file);
+
+        GTop loaded = GTopSnapshot.open(file).toGTop();
+
+        ObjectMapper mapper = new ObjectMapper();
+        Assert.assertEquals(mapper.writeValueAsString(original), mapper.writeValueAsString(loaded));
+        Assert.assertEquals("1.1", loaded.getVersion());
+    }
+
+    @Test
+    public void elementsAreDecodedOnce() throws IOException {
+        // A path repeating the hop of another path.
+        GTop original = gtop();
+        List<TraversalPath> knows = original.getImplementationLevel().getImplementationEdges().get(0).getPaths();
+        TraversalHop knowsHop = knows.get(0).getTraversalHops().get(0);
+        knows.add(new TraversalPath(Arrays.asList(knowsHop, knowsHop)));
+
+        GTopSnapshot snapshot = GTopSnapshot.open(GTopSnapshot.toBytes(original));
+        Assert.assertEquals(3, snapshot.getImplementationEdgeCount());
+        Assert.assertEquals(2, snapshot.getHopCount());
+
+        GTop loaded = snapshot.toGTop();
+        Assert.assertSame(loaded.getAbstractionLevel().getAbstractionEdges().get(1), snapshot.getAbstractionEdge(1));
+        Assert.assertSame(loaded.getImplementationLevel().getImplementationNodes().get(0),
+                snapshot.getImplementationNode(0));
+
+        List<TraversalPath> paths = snapshot.getImplementationEdge(0).getPaths();
+        Assert.assertSame(paths.get(0).getTraversalHops().get(0), paths.get(1).getTraversalHops().get(1));
+    }
+
+    @Test
+    public void snapshotsAreLoadedLikeJson() throws IOException {
+        File file = folder.newFile("ldbc.gtopb");
+        GTopSnapshot.write(gtop(), file);
+
+        GTopInterfaceImpl gTopInterface = new RelationalGTopInterface(file);
+        Assert.assertEquals(Arrays.asList("Person", "Post", "Message", "Comment"), gTopInterface.getAllNodeTypes());
+        Assert.assertEquals("post", gTopInterface.getImplementationNodesByType("message").get(0).getTableName());
+        Assert.assertSame(gTopInterface.getImplementationEdges().get(1),
+                gTopInterface.findEdgeImplementation(gTopInterface.getAbstractionEdges().get(1)));
+
+        Assert.assertEquals(3, SerializationInterface.read(file).getAbstractionLevel().getAbstractionEdges().size());
+    }
+
+    @Test(expected = IOException.class)
+    public void jsonIsNotASnapshot() throws IOException {
+        File file = folder.newFile("ldbc.gtop");
+        new ObjectMapper().writeValue(file, gtop());
+        Assert.assertFalse(GTopSnapshot.isSnapshot(file));
+        GTopSnapshot.open(Files.readAllBytes(file.toPath()));
+    }
+}
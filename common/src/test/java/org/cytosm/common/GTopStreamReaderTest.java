@@ -0,0 +1,72 @@
+package org.cytosm.common;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.cytosm.common.gtop.GTop;
+import org.cytosm.common.gtop.GTopInterfaceImpl;
+import org.cytosm.common.gtop.RelationalGTopInterface;
+import org.cytosm.common.gtop.implementation.graphmetadata.StorageLayout;
+import org.cytosm.common.gtop.implementation.relational.ImplementationNode;
+import org.cytosm.common.gtop.io.GTopStreamReader;
+import org.cytosm.common.gtop.io.LazyElementList;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class GTopStreamReaderTest extends BaseGTopTests {
+
+    @Test
+    public void streamedGTopHasTheContentOfTheJson() throws IOException {
+        ObjectMapper mapper = new ObjectMapper();
+        String json = gtopJson();
+
+        GTop streamed = GTopStreamReader.read(json);
+
+        Assert.assertEquals(mapper.writeValueAsString(mapper.readValue(json, GTop.class)),
+                mapper.writeValueAsString(streamed));
+        Assert.assertEquals("1.1", streamed.getVersion());
+        Assert.assertEquals(StorageLayout.SNAPSHOT,
+                streamed.getImplementationLevel().getGraphMetadata().getStorageLayout());
+    }
+
+    @Test
+    public void onlyTheElementsOfTheTypeAreDecoded() throws IOException {
+        GTopInterfaceImpl gTopInterface = new RelationalGTopInterface(gtopJson());
+
+        LazyElementList<ImplementationNode> nodes = (LazyElementList<ImplementationNode>) gTopInterface
+                .getImplementationNodes();
+        Assert.assertFalse(nodes.isDecoded(0));
+        Assert.assertEquals(Arrays.asList("Comment", "Message"), nodes.getTypes(2));
+
+        List<ImplementationNode> persons = gTopInterface.getImplementationNodesByType("person");
+        Assert.assertEquals("person", persons.get(0).getTableName());
+        Assert.assertTrue(nodes.isDecoded(0));
+        Assert.assertFalse(nodes.isDecoded(1));
+        Assert.assertFalse(nodes.isDecoded(2));
+        Assert.assertSame(persons.get(0), nodes.get(0));
+    }
+
+    @Test
+    public void malformedElementsAreReportedWhenDecoded() throws IOException {
+        GTop gtop = GTopStreamReader.read("{\"version\": \"1.0\", \"implementationLevel\": "
+                + "{\"implementationNodes\": [{\"types\": [\"Person\"], \"tableName\": [1]}]}}");
+
+        List<ImplementationNode> nodes = gtop.getImplementationLevel().getImplementationNodes();
+        Assert.assertEquals(Arrays.asList("Person"), ((LazyElementList<ImplementationNode>) nodes).getTypes(0));
+        try {
+            nodes.get(0);
+            Assert.fail("the element can't be decoded");
+        } catch (UncheckedIOException e) {
+            Assert.assertTrue(e.getMessage().startsWith("Can't decode element 0 of the gTop"));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void unknownFieldsAreRejected() throws IOException {
+        GTopStreamReader.read("{\"version\": \"1.0\", \"extra\": 1}");
+    }
+}
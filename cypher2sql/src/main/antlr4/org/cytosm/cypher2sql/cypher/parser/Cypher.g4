@@ -104,10 +104,19 @@ pattern returns [Pattern res]: pp+=patternPart (sp? ',' sp? pp+=patternPart)* {
 };
 
 patternPart returns [PatternPart res]:
-    (v=variable sp? '=' sp?) pe=patternElement  { $res = new NamedPatternPart($pe.res, $v.res);
-                                                  $pe.res.span = makeSpan($pe.start, $pe.stop); }
-   | pe=patternElement                          { $res = new PatternPart($pe.res);
-                                                  $pe.res.span = makeSpan($pe.start, $pe.stop); };
+    (v=variable sp? '=' sp?) ap=anonymousPatternPart { $res = new NamedPatternPart($ap.res.element, $v.res);
+                                                       $res.selector = $ap.res.selector; }
+   | ap=anonymousPatternPart                         { $res = $ap.res; };
+
+anonymousPatternPart returns [PatternPart res]:
+    SHORTESTPATH sp? '(' sp? pe=patternElement sp? ')'     { $res = new PatternPart($pe.res);
+                                                             $res.selector = PatternPart.Selector.SHORTEST_PATH;
+                                                             $pe.res.span = makeSpan($pe.start, $pe.stop); }
+   | ALLSHORTESTPATHS sp? '(' sp? pe=patternElement sp? ')' { $res = new PatternPart($pe.res);
+                                                             $res.selector = PatternPart.Selector.ALL_SHORTEST_PATHS;
+                                                             $pe.res.span = makeSpan($pe.start, $pe.stop); }
+   | pe=patternElement                                     { $res = new PatternPart($pe.res);
+                                                             $pe.res.span = makeSpan($pe.start, $pe.stop); };
 
 patternElement returns [PatternElement res]
    : (np=nodePattern (sp? pc+=patternElementChain)*) {
@@ -157,10 +166,11 @@ relationshipDetail returns [RelationshipPattern res]
 
 range returns [Optional<Range> res = Optional.empty()]
     : sp? (ilit=integerLit sp? { $res = Optional.of(new Range($ilit.res, $ilit.res)); })?
-         ('..' sp? (ilit=integerLit sp? {
+         ('..' sp? {
             $res = Optional.of($res.orElseGet(() -> new Range(null, null)));
-            $res.get().upper = ($ilit.res == null) ? Optional.empty(): Optional.of($ilit.res);
-            })?
+            $res.get().upper = Optional.empty();
+            }
+            (ulit=integerLit sp? { $res.get().upper = Optional.of($ulit.res); })?
          )?;
 
 props returns [MapExpression res]: m=mapLiteral { $res = $m.res; };
@@ -236,7 +246,7 @@ expression10 returns [Expression res]: l=expression9 (sp AND sp oths+=expression
     });
 };
 
-expression9 returns [Expression res]: (sp nt+=NOT sp)* e=expression8 {
+expression9 returns [Expression res]: (sp? nt+=NOT sp?)* e=expression8 {
     $e.res.span = makeSpan($e.start, $e.stop);
     $res = $nt.stream().map(_i -> (Expression) null).reduce($e.res, (lhs, _i) -> new Unary.Not(lhs));
 };
@@ -347,21 +357,37 @@ partialComparisonExpression returns [Binary res]
 
 atom returns [Expression res]
     : n=numberLit { $res = $n.res; }
-    | s=StringLit { $res = new Literal.StringLiteral($s.text); }
+    | s=StringLit { $res = new Literal.StringLiteral($s.text); $res.span = makeSpan($s, $s); }
     | TRUE        { $res = new Literal.True(); }
     | FALSE       { $res = new Literal.False(); }
     | NULL        { $res = new Literal.Null(); }
     | (COUNT '(' '*' ')')       { $res = null;   } // TODO
     | m=mapLiteral              { $res = $m.res; }
     | l=listLiteral             { $res = $l.res; }
+    | r=relationshipsPattern    { $res = $r.res; $res.span = makeSpan($r.start, $r.stop); }
     | p=parenthesizedExpression { $res = $p.res; }
     | f=functionInvocation      { $res = $f.res; }
+    | pr=parameter              { $res = $pr.res; }
     | v=variable                { $res = $v.res; };
 
+parameter returns [Parameter res]
+    : '$' s=symbolicName  { $res = new Parameter($s.res); $res.span = makeSpan($start, $s.stop); }
+    | '$' d=DecimalInteger { $res = new Parameter($d.text); $res.span = makeSpan($start, $d); };
+
+relationshipsPattern returns [PatternExpression res]: np=nodePattern (sp? pc+=patternElementChain)+ {
+    $np.res.span = makeSpan($np.start, $np.stop);
+    $pc.forEach(rc -> rc.res.span = makeSpan(rc.start, rc.stop));
+    $res = new PatternExpression((RelationshipChain) $pc.stream().map(rc -> (PatternElement) rc.res)
+        .reduce($np.res, (leftpe, rc) -> {
+            ((RelationshipChain) rc).element = leftpe;
+            return rc;
+        }));
+};
+
 parenthesizedExpression returns [Expression res]: '(' sp? e=expression sp? ')' { $res = $e.res; };
 
 functionInvocation returns [FunctionInvocation res]
-    : fn=functionName sp? '(' sp? DISTINCT? ( args+=expression ( ',' sp? args+=expression )* )? sp? ')' {
+    : fn=functionName sp? '(' sp? ( DISTINCT sp? )? ( args+=expression ( ',' sp? args+=expression )* )? sp? ')' {
         $res = new FunctionInvocation($fn.res, $DISTINCT != null,
             $args.stream().map(arg -> arg.res).collect(Collectors.toList())
         );
@@ -435,6 +461,8 @@ symbols: UnescapedSymbolicName
        | FALSE
        | COUNT
        | FILTER
-       | EXTRACT;
+       | EXTRACT
+       | SHORTESTPATH
+       | ALLSHORTESTPATHS;
 
 sp: (WHITESPACE)+;
\ No newline at end of file
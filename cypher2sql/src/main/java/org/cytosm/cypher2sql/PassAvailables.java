@@ -1,19 +1,30 @@
 package org.cytosm.cypher2sql;
 
 import org.cytosm.common.gtop.GTopInterfaceImpl;
-import org.cytosm.cypher2sql.expandpaths.ExpandCypher;
+import org.cytosm.common.gtop.abstraction.AbstractionEdge;
+import org.cytosm.common.gtop.abstraction.AbstractionNode;
+import org.cytosm.cypher2sql.cache.TranslationCache;
+import org.cytosm.cypher2sql.cypher.constexpr.LiteralExtractor;
+import org.cytosm.cypher2sql.expandpaths.ExpandStatement;
+import org.cytosm.cypher2sql.expandpaths.ExpansionBudget;
+import org.cytosm.cypher2sql.expandpaths.ExpansionIterator;
+import org.cytosm.cypher2sql.expandpaths.VariableLengthTranslation;
 import org.cytosm.cypher2sql.lowering.*;
 import org.cytosm.cypher2sql.lowering.exceptions.Cypher2SqlException;
+import org.cytosm.cypher2sql.lowering.exceptions.ExpansionBudgetExceeded;
+import org.cytosm.cypher2sql.lowering.rendering.ParameterizedSQL;
 import org.cytosm.cypher2sql.lowering.sqltree.ScopeSelect;
 import org.cytosm.cypher2sql.lowering.typeck.ComputeAliasVarType;
 import org.cytosm.cypher2sql.lowering.typeck.VarDependencies;
 import org.cytosm.cypher2sql.cypher.ast.Statement;
 import org.cytosm.cypher2sql.cypher.parser.ASTBuilder;
 
-import static org.cytosm.cypher2sql.lowering.exceptions.fns.LambdaExceptionUtil.rethrowFunction;
-
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 
 /**
  */
@@ -33,8 +44,9 @@ public class PassAvailables {
      * pass and the SelectTreeBuilder pass.
      * @param cypher is the cypher to parse.
      * @return Returns the SQL tree.
+     * @throws Cypher2SqlException if the cypher can't be translated.
      */
-    public static ScopeSelect buildQueryTree(String cypher) {
+    public static ScopeSelect buildQueryTree(String cypher) throws Cypher2SqlException {
         Statement st = parseCypher(cypher);
         VarDependencies vars = new VarDependencies(st);
         return SelectTreeBuilder.createQueryTree(vars, st);
@@ -48,10 +60,37 @@ public class PassAvailables {
      */
     public static ScopeSelect cypher2sqlOnExpandedPaths(final GTopInterfaceImpl gTopInterface, String cypher)
             throws Cypher2SqlException
+    {
+        return cypher2sqlOnExpandedPaths(gTopInterface, cypher, new CompilationContext());
+    }
+
+    /**
+     * Convert the provided Cypher into SQL.
+     * @param gTopInterface gtop implementation.
+     * @param cypher is the cypher to convert.
+     * @param ctx is the compilation context of the translation.
+     * @return Returns a SQL tree.
+     */
+    public static ScopeSelect cypher2sqlOnExpandedPaths(final GTopInterfaceImpl gTopInterface, String cypher,
+                                                        final CompilationContext ctx)
+            throws Cypher2SqlException
     {
         // First pass, convert the cypher into an AST.
-        Statement st = parseCypher(cypher);
+        return cypher2sqlOnExpandedPaths(gTopInterface, parseCypher(cypher), ctx);
+    }
 
+    /**
+     * Convert the provided expanded AST into SQL. The AST is only read,
+     * it can be shared with other translations.
+     * @param gTopInterface gtop implementation.
+     * @param st is the AST of the expanded cypher to convert.
+     * @param ctx is the compilation context of the translation.
+     * @return Returns a SQL tree.
+     */
+    public static ScopeSelect cypher2sqlOnExpandedPaths(final GTopInterfaceImpl gTopInterface, final Statement st,
+                                                        final CompilationContext ctx)
+            throws Cypher2SqlException
+    {
         // Extract from the AST the dependencies between variables.
         VarDependencies vars = new VarDependencies(st);
 
@@ -60,20 +99,18 @@ public class PassAvailables {
         ComputeAliasVarType.computeAliasVarTypes(vars);
 
         // TODO: Add a pass that parse the Cypher and do
-        // TODO: something useful with PatternExpressions.
-
         // Build the canonical SQL tree. At this point, only
         // the structure from the SQL tree as been created.
         // The data structure is mostly empty.
         ScopeSelect tree = SelectTreeBuilder.createQueryTree(vars, st);
 
         // This pass will provide sub query name for each WithSelect.
-        NameSubqueries.nameSubqueries(tree);
+        NameSubqueries.nameSubqueries(tree, ctx);
 
         // We now compute all the FROM and JOIN. We do so by computing
         // dependencies between SELECTs by transposing variables
         // dependencies they use or they indirectly depend on.
-        ComputeFromItems.computeFromItems(tree, vars);
+        ComputeFromItems.computeFromItems(tree, vars, ctx);
 
         // We move restrictions on NodeVar as Where conditions
         // or JOIN conditions if there's any JOINS.
@@ -83,7 +120,7 @@ public class PassAvailables {
 
         // Provide a tableName where appropriate for each FromItem
         // using the provided gTop.
-        tree = ExpandNodeVarWithGtop.computeTableNamesOnFromItems(tree, gTopInterface);
+        tree = ExpandNodeVarWithGtop.computeTableNamesOnFromItems(tree, gTopInterface, ctx);
 
         // So far, FROM and JOINS are mixed and all stored within
         // the 'fromItems' property of each SimpleSelect. We move
@@ -91,7 +128,7 @@ public class PassAvailables {
         // of relationships.
         // This pass also resolve table names for NodeVar using
         // the labels visible on them.
-        tree = PopulateJoins.populateJoins(tree, vars, gTopInterface);
+        tree = PopulateJoins.populateJoins(tree, vars, gTopInterface, ctx);
 
         // Compute exports add to the tree the last piece
         // of information missing in the tree.
@@ -99,14 +136,17 @@ public class PassAvailables {
         // necessary. Variables have been attached at appropriate locations.
         ComputeExports.computeExports(tree, vars);
 
+        // Patterns used as predicates become EXISTS subqueries
+        // over the join tables of their relationships.
+        LowerPatternPredicates.lowerPatternPredicates(tree, gTopInterface, ctx);
+
         // TODO: Add a pass here that converts Return Expression returning variables
         // TODO: into a usable form.
 
-        // This pass converts all "count" functions calls into an appropriate
-        // form. This mean any ScopeSelect that leaves in the tree will
-        // be turned into a "count" and everything that is above will
-        // be turned into a "sum".
-        TransformFunctions.convertCypherCountFn(tree, gTopInterface);
+        // This pass gives their SQL name to the aggregate functions.
+        // They are combined across UNIONs once the expanded cyphers
+        // are merged.
+        TransformFunctions.convertCypherAggregateFns(tree, gTopInterface);
 
         // We can now unwrap every property access that we see in the tree.
         // This means essentially unwrapping property access on aliases.
@@ -136,6 +176,18 @@ public class PassAvailables {
         // to only the Expr. Otherwise this break exports.
         UnwrapAliasExpr.visitAndUnwrap(tree);
 
+        // Filter the rows as soon as possible: move the conditions
+        // of the WHERE into the selects providing their variables.
+        PushDownPredicates.pushDown(tree);
+
+        // Remove the WithSelects that only forward the columns
+        // of the previous one, such as the ones of WITH chains.
+        InlinePassThroughSelects.inline(tree);
+
+        // Remove the branches of the UNIONs that can't return any
+        // row given their WHERE and the restrictions of the gTop.
+        EliminateDeadBranches.eliminate(tree, gTopInterface);
+
         // Return the tree!
         return tree;
     }
@@ -144,6 +196,9 @@ public class PassAvailables {
      * Root method for calling the cypher to sql parser. It takes a GTOP implementation and cypher string and returns a
      * SQL statement.
      *
+     * Query parameters such as <pre>$name</pre> are rendered as JDBC placeholders. Use
+     * {@link #cypher2sqlWithParameters(GTopInterfaceImpl, String)} to know which
+     * parameter goes where.
      *
      * @param gtopInterface gtop implementaton
      * @param originalCypher cypher string to convert to sql
@@ -152,20 +207,296 @@ public class PassAvailables {
     public static String cypher2sql(final GTopInterfaceImpl gtopInterface, final String originalCypher)
             throws Cypher2SqlException
     {
-        List<String> cyphers = ExpandCypher.expandCypher(gtopInterface, originalCypher);
+        return cypher2sqlWithParameters(gtopInterface, originalCypher).sql;
+    }
+
+    /**
+     * Same as {@link #cypher2sql(GTopInterfaceImpl, String)} but also returns
+     * the ordered list of parameters that needs to be bound to the placeholders.
+     *
+     * @param gtopInterface gtop implementaton
+     * @param originalCypher cypher string to convert to sql
+     * @return SQL statement with its parameters.
+     */
+    public static ParameterizedSQL cypher2sqlWithParameters(final GTopInterfaceImpl gtopInterface,
+                                                            final String originalCypher)
+            throws Cypher2SqlException
+    {
+        return cypher2sqlWithParameters(gtopInterface, originalCypher, null);
+    }
+
+    /**
+     * Same as {@link #cypher2sqlWithParameters(GTopInterfaceImpl, String)} but the
+     * expanded cyphers are lowered concurrently on the provided executor. The SQL
+     * produced is exactly the same as the one of the sequential translation.
+     *
+     * The gTop is read from several threads, it must not be modified during
+     * the translation. The lists of its abstraction nodes and edges are sorted
+     * before the lowerings start.
+     *
+     * @param gtopInterface gtop implementaton
+     * @param originalCypher cypher string to convert to sql
+     * @param executor is the executor used to lower expanded cyphers, null lowers them sequentially.
+     * @return SQL statement with its parameters.
+     */
+    public static ParameterizedSQL cypher2sqlWithParameters(final GTopInterfaceImpl gtopInterface,
+                                                            final String originalCypher,
+                                                            final Executor executor)
+            throws Cypher2SqlException
+    {
+        return cypher2sqlWithParameters(gtopInterface, originalCypher, executor, ExpansionBudget.UNLIMITED);
+    }
+
+    /**
+     * Same as {@link #cypher2sqlWithParameters(GTopInterfaceImpl, String, Executor)} but
+     * the expansion of the cypher into its variants is limited by the provided budget.
+     *
+     * @param gtopInterface gtop implementaton
+     * @param originalCypher cypher string to convert to sql
+     * @param executor is the executor used to lower expanded cyphers, null lowers them sequentially.
+     * @param budget is the budget of the expansion.
+     * @return SQL statement with its parameters.
+     * @throws ExpansionBudgetExceeded if the query expands into too many variants or takes too long to expand.
+     */
+    public static ParameterizedSQL cypher2sqlWithParameters(final GTopInterfaceImpl gtopInterface,
+                                                            final String originalCypher,
+                                                            final Executor executor,
+                                                            final ExpansionBudget budget)
+            throws Cypher2SqlException
+    {
+        return cypher2sqlWithParameters(gtopInterface, originalCypher, executor, budget,
+                VariableLengthTranslation.EXPAND);
+    }
+
+    /**
+     * Same as {@link #cypher2sqlWithParameters(GTopInterfaceImpl, String, Executor, ExpansionBudget)} but
+     * the variable length relationships are translated as requested.
+     *
+     * @param gtopInterface gtop implementaton
+     * @param originalCypher cypher string to convert to sql
+     * @param executor is the executor used to lower expanded cyphers, null lowers them sequentially.
+     * @param budget is the budget of the expansion.
+     * @param variableLength is how the variable length relationships are translated.
+     * @return SQL statement with its parameters.
+     * @throws ExpansionBudgetExceeded if the query expands into too many variants or takes too long to expand.
+     */
+    public static ParameterizedSQL cypher2sqlWithParameters(final GTopInterfaceImpl gtopInterface,
+                                                            final String originalCypher,
+                                                            final Executor executor,
+                                                            final ExpansionBudget budget,
+                                                            final VariableLengthTranslation variableLength)
+            throws Cypher2SqlException
+    {
+        // All the state mutated by the passes lives here. Nothing
+        // is shared with other translations.
+        CompilationContext ctx = new CompilationContext();
+
+        // Expand the paths on the AST: the cypher is only parsed once
+        // and variants are produced while they are lowered.
+        ExpansionIterator cyphers = ExpandStatement.expand(gtopInterface, originalCypher, budget, variableLength);
 
-        List<ScopeSelect> allQ = cyphers.stream()
-                .<ScopeSelect>map(rethrowFunction(cypher -> cypher2sqlOnExpandedPaths(gtopInterface, cypher)))
-                .collect(Collectors.toList());
+        List<DisjointBranches> branches = new ArrayList<>();
+        List<ScopeSelect> allQ = lowerExpandedCyphers(gtopInterface, cyphers, ctx, executor, branches);
+        removeEmptyQueries(gtopInterface, allQ, branches);
 
         // Merge expanded cypher together.
-        ScopeSelect query = MergeExpandedCyphers.merge(allQ);
+        ScopeSelect query = MergeExpandedCyphers.merge(allQ, branches, ctx);
 
-        // TODO: ORDER BY, LIMIT and SKIP needs to be handled here
-        // TODO: will be the same as the one ran in 'cypher2sqlOnExpandedPaths'
+        // Compute the aggregates of the RETURN on each branch of the
+        // UNIONs and combine them above.
+        DecomposeAggregates.decompose(query, DisjointBranches.aggregatesDisjoint(branches), ctx);
+
+        // Remove the columns that aren't used once merged.
+        PruneUnusedColumns.prune(query);
 
         // Last pass: Render the tree into SQL!
-        return query.toSQLString();
+        return ParameterizedSQL.fromRenderedSQL(query.toSQLString());
+    }
+
+    /**
+     * The hash codes of the abstraction nodes and edges sort their lists in
+     * place. Sort them all before the gTop is read from several threads:
+     * the lowerings then only read them.
+     */
+    private static void sortAbstractionLevel(final GTopInterfaceImpl gtopInterface) {
+        gtopInterface.getAbstractionNodes().forEach(AbstractionNode::hashCode);
+        gtopInterface.getAbstractionEdges().forEach(AbstractionEdge::hashCode);
+    }
+
+    /**
+     * Lower each expanded cypher into a SQL tree. The trees are returned in
+     * the order of the cyphers whether they are lowered sequentially or not.
+     *
+     * @param gtopInterface gtop implementaton
+     * @param cyphers are the ASTs of the expanded cyphers.
+     * @param ctx is the compilation context of the translation.
+     * @param executor is the executor to use or null to lower sequentially.
+     * @param branches receives the analysis of each expanded cypher, in the same order.
+     * @return Returns one SQL tree per expanded cypher.
+     */
+    private static List<ScopeSelect> lowerExpandedCyphers(final GTopInterfaceImpl gtopInterface,
+                                                          final ExpansionIterator cyphers,
+                                                          final CompilationContext ctx,
+                                                          final Executor executor,
+                                                          final List<DisjointBranches> branches)
+            throws Cypher2SqlException
+    {
+        if (!cyphers.hasNext()) {
+            return Collections.emptyList();
+        }
+        Statement first = analyze(gtopInterface, cyphers.next(), branches);
+        if (!cyphers.hasNext()) {
+            return Collections.singletonList(cypher2sqlOnExpandedPaths(gtopInterface, first, ctx));
+        }
+
+        // Each expanded cypher gets its own branch of the context so that
+        // the names generated don't depend on the order of the lowering.
+        if (executor == null) {
+            List<ScopeSelect> allQ = new ArrayList<>();
+            allQ.add(cypher2sqlOnExpandedPaths(gtopInterface, first, ctx.branch(0)));
+            for (int i = 1; cyphers.hasNext(); i++) {
+                allQ.add(cypher2sqlOnExpandedPaths(gtopInterface,
+                        analyze(gtopInterface, cyphers.next(), branches), ctx.branch(i)));
+            }
+            return allQ;
+        }
+
+        // Variants are handed to the executor as soon as they are expanded.
+        sortAbstractionLevel(gtopInterface);
+        List<CompletableFuture<ScopeSelect>> lowerings = new ArrayList<>();
+        try {
+            lowerings.add(lowerAsync(gtopInterface, first, ctx.branch(0), executor));
+            for (int i = 1; cyphers.hasNext(); i++) {
+                lowerings.add(lowerAsync(gtopInterface,
+                        analyze(gtopInterface, cyphers.next(), branches), ctx.branch(i), executor));
+            }
+        } catch (ExpansionBudgetExceeded e) {
+            lowerings.forEach(lowering -> lowering.cancel(false));
+            throw e;
+        }
+
+        List<ScopeSelect> allQ = new ArrayList<>(lowerings.size());
+        for (CompletableFuture<ScopeSelect> lowering: lowerings) {
+            try {
+                allQ.add(lowering.join());
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof Cypher2SqlException) {
+                    throw (Cypher2SqlException) e.getCause();
+                }
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw e;
+            }
+        }
+        return allQ;
+    }
+
+    /**
+     * Remove the expanded cyphers that can't return any row along with their
+     * analysis. If none of them can, the first one is kept: the SQL still
+     * needs to return the columns of the RETURN.
+     */
+    private static void removeEmptyQueries(final GTopInterfaceImpl gtopInterface, final List<ScopeSelect> allQ,
+                                           final List<DisjointBranches> branches) {
+        for (int i = allQ.size() - 1; i >= 0 && allQ.size() > 1; i--) {
+            if (EliminateDeadBranches.isEmpty(allQ.get(i), gtopInterface)) {
+                allQ.remove(i);
+                branches.remove(i);
+            }
+        }
+    }
+
+    private static Statement analyze(final GTopInterfaceImpl gtopInterface, final Statement cypher,
+                                     final List<DisjointBranches> branches) {
+        branches.add(DisjointBranches.of(cypher, gtopInterface));
+        return cypher;
+    }
+
+    private static CompletableFuture<ScopeSelect> lowerAsync(final GTopInterfaceImpl gtopInterface,
+                                                             final Statement cypher,
+                                                             final CompilationContext ctx,
+                                                             final Executor executor)
+    {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return cypher2sqlOnExpandedPaths(gtopInterface, cypher, ctx);
+            } catch (Cypher2SqlException e) {
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+
+    /**
+     * Same as {@link #cypher2sql(GTopInterfaceImpl, String)} but the translation
+     * is looked up first in the provided cache.
+     *
+     * @param cache is the translation cache to use.
+     * @param gtopInterface gtop implementaton
+     * @param originalCypher cypher string to convert to sql
+     * @return SQL statement.
+     */
+    public static String cypher2sql(final TranslationCache<String> cache, final GTopInterfaceImpl gtopInterface,
+                                    final String originalCypher)
+            throws Cypher2SqlException
+    {
+        return cache.get(gtopInterface, originalCypher, PassAvailables::cypher2sql);
+    }
+
+    /**
+     * Same as {@link #cypher2sqlWithParameters(GTopInterfaceImpl, String)} but the
+     * translation is looked up first in the provided cache.
+     *
+     * @param cache is the translation cache to use.
+     * @param gtopInterface gtop implementaton
+     * @param originalCypher cypher string to convert to sql
+     * @return SQL statement with its parameters.
+     */
+    public static ParameterizedSQL cypher2sqlWithParameters(final TranslationCache<ParameterizedSQL> cache,
+                                                            final GTopInterfaceImpl gtopInterface,
+                                                            final String originalCypher)
+            throws Cypher2SqlException
+    {
+        return cache.get(gtopInterface, originalCypher, PassAvailables::cypher2sqlWithParameters);
+    }
+
+    /**
+     * Same as {@link #cypher2sqlWithParameters(GTopInterfaceImpl, String)} but the
+     * string and number literals of the cypher are first lifted into parameters
+     * (see {@link LiteralExtractor}). The returned SQL only depends on the shape
+     * of the query, the values of the literals are in {@link ParameterizedSQL#constants}.
+     * The literals that can make a branch empty, on the gTop restrictions or on
+     * a property compared to several literals, stay in the query.
+     *
+     * @param gtopInterface gtop implementaton
+     * @param originalCypher cypher string to convert to sql
+     * @return SQL statement with its parameters.
+     */
+    public static ParameterizedSQL cypher2sqlAutoParameterized(final GTopInterfaceImpl gtopInterface,
+                                                               final String originalCypher)
+            throws Cypher2SqlException
+    {
+        LiteralExtractor.Extraction extraction = LiteralExtractor.extract(originalCypher, gtopInterface);
+        return cypher2sqlWithParameters(gtopInterface, extraction.cypher).withConstants(extraction.values);
+    }
+
+    /**
+     * Same as {@link #cypher2sqlAutoParameterized(GTopInterfaceImpl, String)} but the
+     * translation is looked up first in the provided cache. As the cache is keyed on the
+     * rewritten cypher, queries that only differ by their literals share the same entry.
+     *
+     * @param cache is the translation cache to use.
+     * @param gtopInterface gtop implementaton
+     * @param originalCypher cypher string to convert to sql
+     * @return SQL statement with its parameters.
+     */
+    public static ParameterizedSQL cypher2sqlAutoParameterized(final TranslationCache<ParameterizedSQL> cache,
+                                                               final GTopInterfaceImpl gtopInterface,
+                                                               final String originalCypher)
+            throws Cypher2SqlException
+    {
+        LiteralExtractor.Extraction extraction = LiteralExtractor.extract(originalCypher, gtopInterface);
+        return cypher2sqlWithParameters(cache, gtopInterface, extraction.cypher).withConstants(extraction.values);
     }
 
     // This class shouldn't be instantiated.
@@ -0,0 +1,66 @@
+package org.cytosm.cypher2sql.cache;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.cytosm.common.gtop.GTop;
+import org.cytosm.common.gtop.GTopInterfaceImpl;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Computes a fingerprint of a gTop. Two gTops with the same
+ * content have the same fingerprint. The fingerprint is what
+ * the {@link TranslationCache} uses to tell apart translations
+ * made against different gTops.
+ *
+ * Fingerprints are memoized per {@link GTopInterfaceImpl} instance:
+ * a gTop mutated after being used for a translation will keep its
+ * old fingerprint.
+ */
+public final class GTopFingerprint {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static final Map<GTopInterfaceImpl, String> MEMOIZED =
+            Collections.synchronizedMap(new WeakHashMap<>());
+
+    private GTopFingerprint() {}
+
+    /**
+     * Returns the fingerprint of the given gTop.
+     * @param gTopInterface is the gTop.
+     * @return Returns an hexadecimal SHA-256 digest of the gTop content.
+     */
+    public static String of(final GTopInterfaceImpl gTopInterface) {
+        return MEMOIZED.computeIfAbsent(gTopInterface, GTopFingerprint::compute);
+    }
+
+    private static String compute(final GTopInterfaceImpl gTopInterface) {
+        GTop gtop = new GTop(gTopInterface.getAbstractionLevel(), gTopInterface.getImplementationLevel());
+        try {
+            return digest(gTopInterface.getVersion() + "\n" + MAPPER.writeValueAsString(gtop));
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Can't fingerprint this gTop: " + e.getMessage(), e);
+        }
+    }
+
+    private static String digest(final String content) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            byte[] hash = md.digest(content.getBytes(StandardCharsets.UTF_8));
+            StringBuilder builder = new StringBuilder(hash.length * 2);
+            for (byte b: hash) {
+                builder.append(String.format("%02x", b));
+            }
+            return builder.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-256 is required to be supported by every JVM.
+            throw new IllegalStateException(e);
+        }
+    }
+}
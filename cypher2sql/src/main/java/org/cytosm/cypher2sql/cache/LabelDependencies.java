@@ -0,0 +1,247 @@
+package org.cytosm.cypher2sql.cache;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.cytosm.common.gtop.GTopInterfaceImpl;
+import org.cytosm.common.gtop.abstraction.AbstractionNode;
+import org.cytosm.cypher2sql.cypher.ast.Statement;
+import org.cytosm.cypher2sql.cypher.ast.clause.match.pattern.LabelName;
+import org.cytosm.cypher2sql.cypher.ast.clause.match.pattern.NodePattern;
+import org.cytosm.cypher2sql.cypher.ast.clause.match.pattern.Pattern;
+import org.cytosm.cypher2sql.cypher.ast.clause.match.pattern.PatternPart;
+import org.cytosm.cypher2sql.cypher.ast.clause.match.pattern.RelTypeName;
+import org.cytosm.cypher2sql.cypher.ast.clause.match.pattern.RelationshipPattern;
+import org.cytosm.cypher2sql.cypher.ast.expression.CaseExpression;
+import org.cytosm.cypher2sql.cypher.ast.expression.Expression;
+import org.cytosm.cypher2sql.cypher.ast.expression.FunctionInvocation;
+import org.cytosm.cypher2sql.cypher.ast.expression.Literal;
+import org.cytosm.cypher2sql.cypher.ast.expression.MapExpression;
+import org.cytosm.cypher2sql.cypher.ast.expression.PatternExpression;
+import org.cytosm.cypher2sql.cypher.ast.expression.Property;
+import org.cytosm.cypher2sql.cypher.ast.expression.Variable;
+import org.cytosm.cypher2sql.cypher.parser.ASTBuilder;
+import org.cytosm.cypher2sql.cypher.visitor.Walk;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Relates translations to the labels of the gTop they depend on.
+ *
+ * A translation only reads the definitions of the labels and relationship
+ * types written in its cypher, and of the labels at the ends of those
+ * relationships. A label is read through the abstraction nodes having it,
+ * and the implementation nodes sharing a type with them, so the labels of
+ * these nodes are dependencies too. The definition of a label is every
+ * node and edge, at both levels of the gTop, that has this label. When a
+ * gTop is replaced, the translations that don't depend on a label whose
+ * definition changed are still valid for the new gTop.
+ *
+ * Labels are compared in lower case, like the gTop lookups. An empty
+ * result stands for every label: queries with a relationship without type
+ * or a node without label nor relationship can depend on any label, and a
+ * change of the gTop version or of its graph metadata affects all of them.
+ */
+public final class LabelDependencies {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private LabelDependencies() {}
+
+    /**
+     * Returns the labels the translation of the cypher depends on.
+     * @param gTopInterface is the gTop the cypher is translated with.
+     * @param cypher is the cypher.
+     * @return Returns the labels in lower case or empty if the translation can depend on any label.
+     */
+    public static Optional<Set<String>> ofQuery(final GTopInterfaceImpl gTopInterface, final String cypher) {
+        LabelCollector collector = new LabelCollector();
+        try {
+            Statement st = ASTBuilder.parse(cypher);
+            Walk.walk(collector, st.query);
+        } catch (RuntimeException e) {
+            return Optional.empty();
+        }
+        if (collector.anyLabel) {
+            return Optional.empty();
+        }
+
+        Set<String> labels = new HashSet<>(collector.labels);
+        for (String type: collector.relationshipTypes) {
+            labels.add(type);
+            gTopInterface.getAbstractionEdgesByTypes(type).forEach(edge -> {
+                addLowerCase(labels, edge.getSourceType());
+                addLowerCase(labels, edge.getDestinationType());
+            });
+        }
+        for (String label: new ArrayList<>(labels)) {
+            for (AbstractionNode node: gTopInterface.getAbstractionNodesByTypes(label)) {
+                addLowerCase(labels, node.getTypes());
+                gTopInterface.findNodeImplementations(node)
+                        .forEach(implementation -> addLowerCase(labels, implementation.getTypes()));
+            }
+        }
+        return Optional.of(labels);
+    }
+
+    /**
+     * Returns the labels whose definition differs between the two gTops.
+     * Labels only defined in one of them are part of the result.
+     * @param before is the gTop being replaced.
+     * @param after is the new gTop.
+     * @return Returns the labels in lower case or empty if every label must be considered changed.
+     */
+    public static Optional<Set<String>> changedLabels(final GTopInterfaceImpl before, final GTopInterfaceImpl after) {
+        if (!json(before.getVersion()).equals(json(after.getVersion()))
+                || !json(before.getImplementationLevel().getGraphMetadata())
+                        .equals(json(after.getImplementationLevel().getGraphMetadata()))) {
+            return Optional.empty();
+        }
+
+        Map<String, StringBuilder> definitionsBefore = definitions(before);
+        Map<String, StringBuilder> definitionsAfter = definitions(after);
+
+        Set<String> changed = new HashSet<>();
+        Stream.concat(definitionsBefore.keySet().stream(), definitionsAfter.keySet().stream()).forEach(label -> {
+            StringBuilder definitionBefore = definitionsBefore.get(label);
+            StringBuilder definitionAfter = definitionsAfter.get(label);
+            if (definitionBefore == null || definitionAfter == null
+                    || !definitionBefore.toString().equals(definitionAfter.toString())) {
+                changed.add(label);
+            }
+        });
+        return Optional.of(changed);
+    }
+
+    private static Map<String, StringBuilder> definitions(final GTopInterfaceImpl gTopInterface) {
+        Map<String, StringBuilder> definitions = new HashMap<>();
+        gTopInterface.getAbstractionNodes().forEach(node -> define(definitions, node.getTypes(), node));
+        gTopInterface.getAbstractionEdges().forEach(edge -> define(definitions, edge.getTypes(), edge));
+        gTopInterface.getImplementationNodes().forEach(node -> define(definitions, node.getTypes(), node));
+        gTopInterface.getImplementationEdges().forEach(edge -> define(definitions, edge.getTypes(), edge));
+        return definitions;
+    }
+
+    private static void define(final Map<String, StringBuilder> definitions, final List<String> types,
+                               final Object element) {
+        if (types == null) {
+            return;
+        }
+        String json = json(element);
+        for (String type: types) {
+            definitions.computeIfAbsent(type.toLowerCase(), k -> new StringBuilder()).append(json).append('\n');
+        }
+    }
+
+    private static String json(final Object value) {
+        try {
+            return MAPPER.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Can't compare this gTop: " + e.getMessage(), e);
+        }
+    }
+
+    private static void addLowerCase(final Set<String> labels, final Collection<String> types) {
+        if (types != null) {
+            types.forEach(type -> labels.add(type.toLowerCase()));
+        }
+    }
+
+    /**
+     * Collects the labels and relationship types of the patterns,
+     * including the ones used as predicates.
+     */
+    private static class LabelCollector extends Walk.BaseRootVisitor {
+
+        private final Set<String> labels = new HashSet<>();
+        private final Set<String> relationshipTypes = new HashSet<>();
+        private boolean anyLabel = false;
+
+        @Override
+        public void visitPattern(final Pattern pattern) {
+            for (PatternPart part: pattern.patternParts) {
+                // A node alone in its pattern isn't bound by any relationship.
+                if (part.element instanceof NodePattern && ((NodePattern) part.element).labels.isEmpty()) {
+                    anyLabel = true;
+                }
+                Walk.walk(this, part.element);
+            }
+        }
+
+        @Override
+        public void visitLabelName(final LabelName labelName) {
+            labels.add(labelName.name.toLowerCase());
+        }
+
+        @Override
+        public void visitRelTypeName(final RelTypeName relTypeName) {
+            relationshipTypes.add(relTypeName.name.toLowerCase());
+        }
+
+        @Override
+        public void visitRelationshipPattern(final RelationshipPattern relationshipPattern) {
+            if (relationshipPattern.types.isEmpty()) {
+                anyLabel = true;
+            }
+            super.visitRelationshipPattern(relationshipPattern);
+        }
+
+        @Override
+        public void visitExpression(final Expression expression) {
+            Walk.walkExpression(new PatternPredicateCollector(this), expression);
+        }
+    }
+
+    /**
+     * Hands the patterns found in expressions back to the label collector.
+     */
+    private static class PatternPredicateCollector extends Walk.BaseExpressionVisitor {
+
+        private final LabelCollector collector;
+
+        PatternPredicateCollector(final LabelCollector collector) {
+            this.collector = collector;
+        }
+
+        @Override
+        public void visitPatternExpression(final PatternExpression patternExpression) {
+            Walk.walk(collector, patternExpression.element);
+        }
+
+        @Override
+        public void visitProperty(final Property property) {
+            Walk.walkExpression(this, property.map);
+        }
+
+        @Override
+        public void visitMapExpression(final MapExpression mapExpression) {
+            mapExpression.props.forEach(item -> Walk.walkExpression(this, item.getValue()));
+        }
+
+        @Override
+        public void visitFunctionInvocation(final FunctionInvocation functionInvocation) {
+            functionInvocation.args.forEach(arg -> Walk.walkExpression(this, arg));
+        }
+
+        @Override
+        public void visitCaseExpression(final CaseExpression caseExpression) {
+            caseExpression.default_.ifPresent(d -> Walk.walkExpression(this, d));
+            caseExpression.expression.ifPresent(d -> Walk.walkExpression(this, d));
+            caseExpression.alternatives.stream().flatMap(p -> Stream.of(p.getKey(), p.getValue()))
+                    .forEach(alternative -> Walk.walkExpression(this, alternative));
+        }
+
+        @Override
+        public void visitVariable(final Variable variable) {}
+
+        @Override
+        public void visitLiteral(final Literal literal) {}
+    }
+}
@@ -0,0 +1,246 @@
+package org.cytosm.cypher2sql.cache;
+
+import org.cytosm.common.gtop.GTopInterfaceImpl;
+import org.cytosm.cypher2sql.lowering.exceptions.Cypher2SqlException;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * Bounded cache of Cypher to SQL translations.
+ *
+ * Entries are keyed by the normalized Cypher text (see {@link #normalize(String)})
+ * and the fingerprint of the gTop used for the translation (see {@link GTopFingerprint}).
+ * When the cache is full, the least recently used entry is evicted.
+ *
+ * The cache is safe to share between threads. The translation itself is run
+ * outside of the cache lock, so two threads missing on the same key at the
+ * same time will both translate it and the last one wins. Failed translations
+ * are never cached.
+ */
+public class TranslationCache<T> {
+
+    /**
+     * Maximum number of entries used by the default constructor.
+     */
+    public static final int DEFAULT_MAXIMUM_SIZE = 1024;
+
+    /**
+     * The function being cached.
+     */
+    @FunctionalInterface
+    public interface Translator<T> {
+        T translate(GTopInterfaceImpl gTopInterface, String cypher) throws Cypher2SqlException;
+    }
+
+    private final int maximumSize;
+    private final Map<Key, T> entries;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public TranslationCache() {
+        this(DEFAULT_MAXIMUM_SIZE);
+    }
+
+    /**
+     * Create a new cache.
+     * @param maximumSize is the maximum number of translations kept.
+     */
+    public TranslationCache(final int maximumSize) {
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("The maximum size of the cache must be positive.");
+        }
+        this.maximumSize = maximumSize;
+        this.entries = new LinkedHashMap<Key, T>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, T> eldest) {
+                if (size() > TranslationCache.this.maximumSize) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Returns the translation of the cypher for the given gTop. If the translation
+     * isn't in the cache it is computed with the translator and stored.
+     *
+     * @param gTopInterface is the gTop to use.
+     * @param cypher is the cypher to translate.
+     * @param translator is the function used on a cache miss.
+     * @return Returns the translation.
+     * @throws Cypher2SqlException if the translator fails.
+     */
+    public T get(final GTopInterfaceImpl gTopInterface, final String cypher, final Translator<T> translator)
+            throws Cypher2SqlException
+    {
+        Key key = new Key(normalize(cypher), GTopFingerprint.of(gTopInterface));
+        T translation;
+        synchronized (entries) {
+            translation = entries.get(key);
+        }
+        if (translation != null) {
+            hits.incrementAndGet();
+            return translation;
+        }
+        misses.incrementAndGet();
+        translation = translator.translate(gTopInterface, cypher);
+        synchronized (entries) {
+            entries.put(key, translation);
+        }
+        return translation;
+    }
+
+    /**
+     * Remove all entries from the cache. Counters are left untouched.
+     */
+    public void invalidateAll() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    /**
+     * Copy the translations made against a gTop into another cache, as translations
+     * made against a new gTop. Only the translations accepted by the filter are copied,
+     * from the least to the most recently used. This cache isn't modified.
+     *
+     * @param target is the cache receiving the translations.
+     * @param from is the gTop the translations were made against.
+     * @param to is the gTop the copied translations are valid for.
+     * @param keep tells from the normalized cypher whether its translation is still valid.
+     * @return Returns the number of translations copied.
+     */
+    public int copyTo(final TranslationCache<T> target, final GTopInterfaceImpl from, final GTopInterfaceImpl to,
+                      final Predicate<String> keep)
+    {
+        String fromFingerprint = GTopFingerprint.of(from);
+        String toFingerprint = GTopFingerprint.of(to);
+        List<Map.Entry<Key, T>> candidates;
+        synchronized (entries) {
+            candidates = new ArrayList<>(entries.entrySet());
+        }
+
+        int copied = 0;
+        for (Map.Entry<Key, T> entry: candidates) {
+            Key key = entry.getKey();
+            if (key.gTopFingerprint.equals(fromFingerprint) && keep.test(key.cypher)) {
+                synchronized (target.entries) {
+                    target.entries.put(new Key(key.cypher, toFingerprint), entry.getValue());
+                }
+                copied++;
+            }
+        }
+        return copied;
+    }
+
+    /**
+     * @return Returns the number of translations currently cached.
+     */
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * @return Returns the maximum number of translations kept.
+     */
+    public int maximumSize() {
+        return maximumSize;
+    }
+
+    /**
+     * @return Returns the number of lookups answered from the cache.
+     */
+    public long hitCount() {
+        return hits.get();
+    }
+
+    /**
+     * @return Returns the number of lookups that required a translation.
+     */
+    public long missCount() {
+        return misses.get();
+    }
+
+    /**
+     * @return Returns the number of entries evicted because the cache was full.
+     */
+    public long evictionCount() {
+        return evictions.get();
+    }
+
+    /**
+     * Normalize the cypher text so that queries that only differ in
+     * their layout share the same cache entry. Every run of whitespace
+     * outside of a quoted section is replaced by a single space and
+     * leading and trailing whitespace is removed.
+     *
+     * @param cypher is the cypher to normalize.
+     * @return Returns the normalized cypher.
+     */
+    public static String normalize(final String cypher) {
+        StringBuilder builder = new StringBuilder(cypher.length());
+        char quote = 0;
+        boolean pendingSpace = false;
+        for (int i = 0; i < cypher.length(); i++) {
+            char c = cypher.charAt(i);
+            if (quote != 0) {
+                builder.append(c);
+                if (c == '\\' && i + 1 < cypher.length()) {
+                    builder.append(cypher.charAt(++i));
+                } else if (c == quote) {
+                    quote = 0;
+                }
+            } else if (Character.isWhitespace(c)) {
+                pendingSpace = builder.length() > 0;
+            } else {
+                if (pendingSpace) {
+                    builder.append(' ');
+                    pendingSpace = false;
+                }
+                if (c == '\'' || c == '"' || c == '`') {
+                    quote = c;
+                }
+                builder.append(c);
+            }
+        }
+        return builder.toString();
+    }
+
+    private static final class Key {
+        private final String cypher;
+        private final String gTopFingerprint;
+
+        Key(final String cypher, final String gTopFingerprint) {
+            this.cypher = cypher;
+            this.gTopFingerprint = gTopFingerprint;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return cypher.equals(other.cypher) && gTopFingerprint.equals(other.gTopFingerprint);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * cypher.hashCode() + gTopFingerprint.hashCode();
+        }
+    }
+}
@@ -6,7 +6,26 @@ import org.cytosm.cypher2sql.cypher.ast.ASTNode;
  */
 public class PatternPart extends ASTNode {
 
+    /**
+     * Which of the paths matching the element are kept.
+     */
+    public enum Selector {
+        /**
+         * Every path.
+         */
+        EVERY_PATH,
+        /**
+         * <code>shortestPath(...)</code>: one of the shortest paths.
+         */
+        SHORTEST_PATH,
+        /**
+         * <code>allShortestPaths(...)</code>: all the shortest paths.
+         */
+        ALL_SHORTEST_PATHS
+    }
+
     public PatternElement element;
+    public Selector selector = Selector.EVERY_PATH;
 
     public PatternPart(final PatternElement element) {
         this.element = element;
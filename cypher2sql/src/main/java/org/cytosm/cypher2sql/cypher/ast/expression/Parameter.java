@@ -0,0 +1,14 @@
+package org.cytosm.cypher2sql.cypher.ast.expression;
+
+/**
+ * A query parameter such as <pre>$name</pre> or <pre>$0</pre>.
+ * Its value is only known when the generated SQL is executed.
+ */
+public class Parameter extends Expression {
+
+    public String name;
+
+    public Parameter(final String name) {
+        this.name = name;
+    }
+}
@@ -491,6 +491,28 @@ public class ConstExpressionFolder implements Walk.ExpressionFolder<ConstExpress
         }
     }
 
+    /**
+     * A parameter is not a constant but it can still be carried around,
+     * in particular in the property maps used by the path expansion.
+     */
+    private static class ConstParam extends BaseConstExprValue implements ConstExprValue {
+        public String name;
+
+        ConstParam(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Object asObject() throws ConstExprException {
+            return "$" + this.name;
+        }
+
+        @Override
+        public String className() {
+            return "ConstParam";
+        }
+    }
+
     private ConstExpressionFolder() {}
 
     /**
@@ -527,6 +549,25 @@ public class ConstExpressionFolder implements Walk.ExpressionFolder<ConstExpress
         }
     }
 
+    /**
+     * Eval the given literal into the Java value that a JDBC driver
+     * would expect for it: a Long, a Double or a String.
+     * @param literal the literal to eval.
+     * @return Returns the value of the literal.
+     * @throws ConstExprException if the literal has no such value (booleans, null).
+     */
+    public static Object evalLiteral(Literal literal) throws ConstExprException {
+        ConstExprValue value = Walk.foldExpression(new ConstExpressionFolder(), literal);
+        if (value instanceof ConstLong) {
+            return ((ConstLong) value).value;
+        } else if (value instanceof ConstDouble) {
+            return ((ConstDouble) value).value;
+        } else if (value instanceof ConstStr) {
+            return ((ConstStr) value).value;
+        }
+        throw new ConversionException(value.className(), "jdbc value");
+    }
+
     public ConstExprValue foldProperty(final Property expression) throws ConstExprException {
         ConstExprValue val = Walk.foldExpression(this, expression.map);
         String fieldName = expression.propertyKey.name;
@@ -571,6 +612,9 @@ public class ConstExpressionFolder implements Walk.ExpressionFolder<ConstExpress
         // FIXME
         throw new UnimplementedException();
     }
+    public ConstExprValue foldParameter(final Parameter expression) throws ConstExprException {
+        return new ConstParam(expression.name);
+    }
     public ConstExprValue foldFunctionInvocation(final FunctionInvocation expression) throws ConstExprException {
         // FIXME
         throw new UnimplementedException();
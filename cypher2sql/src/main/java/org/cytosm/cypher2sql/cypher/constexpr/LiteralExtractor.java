@@ -0,0 +1,353 @@
+package org.cytosm.cypher2sql.cypher.constexpr;
+
+import org.cytosm.common.gtop.GTopInterfaceImpl;
+import org.cytosm.common.gtop.implementation.relational.ImplementationEdge;
+import org.cytosm.common.gtop.implementation.relational.ImplementationNode;
+import org.cytosm.common.gtop.implementation.relational.RestrictionClause;
+import org.cytosm.common.gtop.implementation.relational.RestrictionClauses;
+import org.cytosm.common.gtop.implementation.relational.TraversalHop;
+import org.cytosm.common.gtop.implementation.relational.TraversalPath;
+import org.cytosm.cypher2sql.cypher.ast.Statement;
+import org.cytosm.cypher2sql.cypher.ast.clause.Where;
+import org.cytosm.cypher2sql.cypher.ast.clause.match.pattern.NodePattern;
+import org.cytosm.cypher2sql.cypher.ast.clause.match.pattern.Pattern;
+import org.cytosm.cypher2sql.cypher.ast.clause.match.pattern.RelationshipPattern;
+import org.cytosm.cypher2sql.cypher.ast.expression.*;
+import org.cytosm.cypher2sql.cypher.ast.expression.Binary.*;
+import org.cytosm.cypher2sql.cypher.parser.ASTBuilder;
+import org.cytosm.cypher2sql.cypher.visitor.Walk;
+import org.cytosm.cypher2sql.cypher.constexpr.ConstExpressionFolder.ConstExprException;
+
+import java.util.*;
+
+/**
+ * Lift the literals of a Cypher query into synthetic parameters.
+ *
+ * Two queries that only differ by their constants are turned into
+ * the same Cypher text, which can then be translated (and cached) once.
+ * For instance:
+ *
+ * <pre>
+ *     MATCH (a:Person {id: 42}) WHERE a.firstName = 'Jan' RETURN a.id
+ * </pre>
+ *
+ * becomes
+ *
+ * <pre>
+ *     MATCH (a:Person {id: $lit0}) WHERE a.firstName = $lit1 RETURN a.id
+ * </pre>
+ *
+ * with the values <pre>{lit0: 42, lit1: "Jan"}</pre>.
+ *
+ * Only string and number literals found in WHERE clauses and in the
+ * property maps of patterns are lifted. Labels, relationship types and
+ * range bounds are left untouched as they drive the path expansion.
+ * Literals in projections, SKIP, LIMIT and function arguments are also
+ * kept because the lowering expect them to be constants.
+ *
+ * The literals that can prove a branch of the translation empty are
+ * kept too, so that {@link org.cytosm.cypher2sql.lowering.EliminateDeadBranches}
+ * still removes it: the literals compared to a property restricted by the
+ * gTop, such as <code>type = 'post'</code>, and the ones compared to a
+ * property that is compared to other literals, such as
+ * <code>age &gt; 10 AND age &lt; 5</code>. Queries with those literals
+ * get a translation for each of their values.
+ */
+public class LiteralExtractor {
+
+    /**
+     * Prefix of the synthetic parameter names.
+     */
+    public static final String PARAMETER_PREFIX = "lit";
+
+    /**
+     * The rewritten cypher and the values of the lifted literals.
+     */
+    public static class Extraction {
+
+        /**
+         * The cypher where literals have been replaced by parameters.
+         */
+        public final String cypher;
+
+        /**
+         * Value of each synthetic parameter.
+         */
+        public final Map<String, Object> values;
+
+        Extraction(final String cypher, final Map<String, Object> values) {
+            this.cypher = cypher;
+            this.values = Collections.unmodifiableMap(values);
+        }
+    }
+
+    private LiteralExtractor() {}
+
+    /**
+     * Lift the literals of the provided cypher.
+     * @param cypher is the cypher to rewrite.
+     * @return Returns the rewritten cypher with the extracted values.
+     */
+    public static Extraction extract(final String cypher) {
+        return extract(cypher, Collections.emptySet());
+    }
+
+    /**
+     * Lift the literals of the provided cypher, except the ones compared
+     * to a property restricted by the gTop.
+     * @param cypher is the cypher to rewrite.
+     * @param gTopInterface is the gTop the cypher is translated with.
+     * @return Returns the rewritten cypher with the extracted values.
+     */
+    public static Extraction extract(final String cypher, final GTopInterfaceImpl gTopInterface) {
+        return extract(cypher, restrictedColumns(gTopInterface));
+    }
+
+    private static Extraction extract(final String cypher, final Set<String> restrictedColumns) {
+        Statement st = ASTBuilder.parse(cypher);
+        LiteralCollector collector = new LiteralCollector();
+        Walk.walk(collector, st.query);
+
+        Set<Literal> kept = collector.literals.comparisons.keptLiterals(restrictedColumns);
+        List<Literal> literals = new ArrayList<>(collector.literals.found);
+        literals.removeIf(kept::contains);
+        literals.sort(Comparator.comparingInt(l -> l.span.lo));
+
+        StringBuilder builder = new StringBuilder(cypher.length());
+        Map<String, Object> values = new LinkedHashMap<>();
+        int last = 0;
+        int counter = 0;
+        for (Literal literal: literals) {
+            Object value;
+            try {
+                value = ConstExpressionFolder.evalLiteral(literal);
+            } catch (ConstExprException e) {
+                continue;
+            }
+            String name;
+            do {
+                name = PARAMETER_PREFIX + counter++;
+            } while (collector.parameters.contains(name));
+            values.put(name, value);
+            builder.append(cypher, last, literal.span.lo);
+            builder.append('$').append(name);
+            last = literal.span.hi;
+        }
+        builder.append(cypher, last, cypher.length());
+        return new Extraction(builder.toString(), values);
+    }
+
+    /**
+     * The columns, in lower case, restricted on a table of the gTop.
+     */
+    private static Set<String> restrictedColumns(final GTopInterfaceImpl gTopInterface) {
+        List<RestrictionClauses> restrictions = new ArrayList<>();
+        for (ImplementationNode node: gTopInterface.getImplementationNodes()) {
+            addAll(restrictions, node.getRestrictions());
+        }
+        for (ImplementationEdge edge: gTopInterface.getImplementationEdges()) {
+            for (TraversalPath path: edge.getPaths()) {
+                for (TraversalHop hop: path.getTraversalHops()) {
+                    addAll(restrictions, hop.getRestriction());
+                }
+            }
+        }
+        Set<String> columns = new HashSet<>();
+        for (RestrictionClauses clauses: restrictions) {
+            if (clauses != null && clauses.getRestrictionClause() != null) {
+                for (RestrictionClause clause: clauses.getRestrictionClause()) {
+                    if (clause.getColumnName() != null) {
+                        columns.add(clause.getColumnName().toLowerCase());
+                    }
+                }
+            }
+        }
+        return columns;
+    }
+
+    private static <T> void addAll(final List<T> list, final List<T> values) {
+        if (values != null) {
+            list.addAll(values);
+        }
+    }
+
+    /**
+     * The literals compared to the properties of the variables.
+     */
+    private static class Comparisons {
+        final Map<String, List<Literal>> byProperty = new HashMap<>();
+        final Map<String, String> propertyNames = new HashMap<>();
+
+        void add(final Expression lhs, final Expression rhs) {
+            if (lhs instanceof Property && rhs instanceof Literal) {
+                add((Property) lhs, (Literal) rhs);
+            } else if (rhs instanceof Property && lhs instanceof Literal) {
+                add((Property) rhs, (Literal) lhs);
+            }
+        }
+
+        void add(final Property property, final Literal literal) {
+            if (property.map instanceof Variable) {
+                add(((Variable) property.map).name, property.propertyKey.name, literal);
+            }
+        }
+
+        void add(final String variable, final String property, final Literal literal) {
+            String key = variable + "." + property;
+            byProperty.computeIfAbsent(key, k -> new ArrayList<>()).add(literal);
+            propertyNames.put(key, property.toLowerCase());
+        }
+
+        /**
+         * @return Returns the literals that can make a branch empty.
+         */
+        Set<Literal> keptLiterals(final Set<String> restrictedColumns) {
+            Set<Literal> kept = Collections.newSetFromMap(new IdentityHashMap<>());
+            byProperty.forEach((key, literals) -> {
+                if (literals.size() > 1 || restrictedColumns.contains(propertyNames.get(key))) {
+                    kept.addAll(literals);
+                }
+            });
+            return kept;
+        }
+    }
+
+    private static class LiteralCollector extends Walk.BaseRootVisitor {
+        final Set<String> parameters = new HashSet<>();
+        final ExpressionCollector literals = new ExpressionCollector(parameters, true);
+        final ExpressionCollector others = new ExpressionCollector(parameters, false);
+
+        @Override
+        public void visitWhere(final Where where) {
+            Walk.walkExpression(literals, where.expression);
+        }
+
+        @Override
+        public void visitPattern(final Pattern pattern) {
+            pattern.patternParts.forEach(pp -> Walk.walk(this, pp.element));
+        }
+
+        @Override
+        public void visitNodePattern(final NodePattern nodePattern) {
+            nodePattern.properties.ifPresent(p -> {
+                nodePattern.variable.ifPresent(variable -> p.props.stream()
+                        .filter(prop -> prop.getValue() instanceof Literal)
+                        .forEach(prop -> literals.comparisons.add(variable.name, prop.getKey().name,
+                                (Literal) prop.getValue())));
+                Walk.walkExpression(literals, p);
+            });
+        }
+
+        @Override
+        public void visitRelationshipPattern(final RelationshipPattern relationshipPattern) {
+            relationshipPattern.properties.ifPresent(p -> Walk.walkExpression(literals, p));
+        }
+
+        @Override
+        public void visitExpression(final Expression expression) {
+            Walk.walkExpression(others, expression);
+        }
+    }
+
+    /**
+     * Collect literals (if asked to) and the names of the parameters already
+     * present in the query so that the synthetic ones do not clash with them.
+     */
+    private static class ExpressionCollector extends Walk.BaseExpressionVisitor {
+        final List<Literal> found = new ArrayList<>();
+        final Comparisons comparisons = new Comparisons();
+        final Set<String> parameters;
+        final boolean collectLiterals;
+
+        ExpressionCollector(final Set<String> parameters, final boolean collectLiterals) {
+            this.parameters = parameters;
+            this.collectLiterals = collectLiterals;
+        }
+
+        @Override
+        public void visitLiteral(final Literal literal) {
+            if (collectLiterals && literal.span != null) {
+                found.add(literal);
+            }
+        }
+
+        @Override
+        public void visitParameter(final Parameter parameter) {
+            parameters.add(parameter.name);
+        }
+
+        @Override
+        public void visitProperty(final Property property) {
+            Walk.walkExpression(this, property.map);
+        }
+
+        @Override
+        public void visitMapExpression(final MapExpression mapExpression) {
+            mapExpression.props.forEach(p -> Walk.walkExpression(this, p.getValue()));
+        }
+
+        @Override
+        public void visitVariable(final Variable variable) {}
+
+        @Override
+        public void visitEquals(final Equals expression) {
+            comparisons.add(expression.lhs, expression.rhs);
+            super.visitEquals(expression);
+        }
+
+        @Override
+        public void visitNotEquals(final NotEquals expression) {
+            comparisons.add(expression.lhs, expression.rhs);
+            super.visitNotEquals(expression);
+        }
+
+        @Override
+        public void visitInvalidNotEquals(final InvalidNotEquals expression) {
+            comparisons.add(expression.lhs, expression.rhs);
+            super.visitInvalidNotEquals(expression);
+        }
+
+        @Override
+        public void visitLessThan(final LessThan expression) {
+            comparisons.add(expression.lhs, expression.rhs);
+            super.visitLessThan(expression);
+        }
+
+        @Override
+        public void visitLessThanOrEqual(final LessThanOrEqual expression) {
+            comparisons.add(expression.lhs, expression.rhs);
+            super.visitLessThanOrEqual(expression);
+        }
+
+        @Override
+        public void visitGreaterThan(final GreaterThan expression) {
+            comparisons.add(expression.lhs, expression.rhs);
+            super.visitGreaterThan(expression);
+        }
+
+        @Override
+        public void visitGreaterThanOrEqual(final GreaterThanOrEqual expression) {
+            comparisons.add(expression.lhs, expression.rhs);
+            super.visitGreaterThanOrEqual(expression);
+        }
+
+        @Override
+        public void visitFunctionInvocation(final FunctionInvocation functionInvocation) {
+            ExpressionCollector args = collectLiterals ? new ExpressionCollector(parameters, false) : this;
+            functionInvocation.args.forEach(arg -> Walk.walkExpression(args, arg));
+        }
+
+        @Override
+        public void visitCaseExpression(final CaseExpression caseExpression) {
+            caseExpression.expression.ifPresent(e -> Walk.walkExpression(this, e));
+            caseExpression.alternatives.forEach(p -> {
+                Walk.walkExpression(this, p.getKey());
+                Walk.walkExpression(this, p.getValue());
+            });
+            caseExpression.default_.ifPresent(e -> Walk.walkExpression(this, e));
+        }
+
+        @Override
+        public void visitPatternExpression(final PatternExpression patternExpression) {}
+    }
+}
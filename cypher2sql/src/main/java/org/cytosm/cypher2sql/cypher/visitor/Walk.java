@@ -47,6 +47,7 @@ public class Walk {
         void visitInvalidNotEquals(final InvalidNotEquals invalidNotEquals);
         void visitMapExpression(final MapExpression mapExpression);
         void visitVariable(final Variable variable);
+        void visitParameter(final Parameter parameter);
         void visitLiteral(final Literal literal);
         void visitFunctionInvocation(final FunctionInvocation functionInvocation);
         void visitCaseExpression(final CaseExpression caseExpression);
@@ -220,6 +221,8 @@ public class Walk {
             visitor.visitProperty((Property) expression);
         } else if (expression instanceof Variable) {
             visitor.visitVariable((Variable) expression);
+        } else if (expression instanceof Parameter) {
+            visitor.visitParameter((Parameter) expression);
 
         // N-ary operators
         } else if (expression instanceof CaseExpression) {
@@ -630,6 +633,9 @@ public class Walk {
                 Walk.walkExpression(this, iter.next());
             }
         }
+
+        @Override
+        public void visitParameter(Parameter parameter) {}
     }
 
     // ==================================================================
@@ -655,6 +661,7 @@ public class Walk {
         T foldInvalidNotEquals(final InvalidNotEquals  expression) throws E;
         T foldMapExpression(final MapExpression  expression) throws E;
         T foldVariable(final Variable  expression) throws E;
+        T foldParameter(final Parameter  expression) throws E;
         T foldFunctionInvocation(final FunctionInvocation  expression) throws E;
         T foldCaseExpression(final CaseExpression  expression) throws E;
         T foldIsNull(final Unary.IsNull  expression) throws E;
@@ -735,6 +742,8 @@ public class Walk {
             return folder.foldProperty((Property) expression);
         } else if (expression instanceof Variable) {
             return folder.foldVariable((Variable) expression);
+        } else if (expression instanceof Parameter) {
+            return folder.foldParameter((Parameter) expression);
 
             // N-ary operators
         } else if (expression instanceof CaseExpression) {
@@ -0,0 +1,209 @@
+package org.cytosm.cypher2sql.engine;
+
+import org.cytosm.common.gtop.GTop;
+import org.cytosm.common.gtop.GTopInterfaceImpl;
+import org.cytosm.common.gtop.RelationalGTopInterface;
+import org.cytosm.common.gtop.frozen.GTopInterner;
+import org.cytosm.cypher2sql.PassAvailables;
+import org.cytosm.cypher2sql.cache.GTopFingerprint;
+import org.cytosm.cypher2sql.cache.TranslationCache;
+import org.cytosm.cypher2sql.cypher.constexpr.LiteralExtractor;
+import org.cytosm.cypher2sql.expandpaths.ExpansionBudget;
+import org.cytosm.cypher2sql.lowering.exceptions.Cypher2SqlException;
+import org.cytosm.cypher2sql.lowering.rendering.ParameterizedSQL;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Long-lived translator bound to a single gTop.
+ *
+ * The static methods of {@link PassAvailables} derive everything they need from
+ * the gTop on each call. An engine is built once per gTop instead: the gTop
+ * is frozen by an interner, the shared {@link GTopInterner} by default, so
+ * engines built on gTops with the same elements share them, the gTop is indexed and read-only (see
+ * {@link PrecompiledGTop}), its fingerprint is computed upfront and the engine
+ * owns its translation cache.
+ *
+ * An engine is immutable and all the translate methods can be called
+ * concurrently. Use {@link #builder(GTopInterfaceImpl)} to create one:
+ *
+ * <pre>
+ *     Cypher2SqlEngine engine = Cypher2SqlEngine.builder(gtop)
+ *          .cacheSize(4096)
+ *          .build();
+ *     String sql = engine.translate("MATCH (a:Person) RETURN a.id");
+ * </pre>
+ *
+ * The gTop provided must not be modified once the engine is built.
+ */
+public final class Cypher2SqlEngine {
+
+    private final PrecompiledGTop gTop;
+    private final String fingerprint;
+    private final TranslationCache<ParameterizedSQL> cache;
+    private final Executor executor;
+    private final ExpansionBudget budget;
+
+    private Cypher2SqlEngine(final Builder builder) {
+        this.gTop = new PrecompiledGTop(freeze(builder.gTop, builder.interner));
+        this.fingerprint = GTopFingerprint.of(this.gTop);
+        this.cache = builder.cacheSize > 0 ? new TranslationCache<>(builder.cacheSize) : null;
+        this.executor = builder.executor;
+        this.budget = builder.budget;
+    }
+
+    private static GTopInterfaceImpl freeze(final GTopInterfaceImpl gTop, final GTopInterner interner) {
+        GTop gtop = new GTop(gTop.getVersion(), gTop.getAbstractionLevel(), gTop.getImplementationLevel());
+        return new RelationalGTopInterface(interner.freeze(gtop));
+    }
+
+    /**
+     * Create a builder for an engine using the given gTop.
+     * @param gTop is the gTop used by the engine.
+     * @return Returns a new builder.
+     */
+    public static Builder builder(final GTopInterfaceImpl gTop) {
+        return new Builder(gTop);
+    }
+
+    /**
+     * Translate the cypher into SQL. Query parameters are rendered as JDBC placeholders.
+     * @param cypher is the cypher to translate.
+     * @return Returns the SQL statement.
+     * @throws Cypher2SqlException if the translation fails.
+     */
+    public String translate(final String cypher) throws Cypher2SqlException {
+        return translateWithParameters(cypher).sql;
+    }
+
+    /**
+     * Translate the cypher into SQL and return the parameters to bind.
+     * See {@link PassAvailables#cypher2sqlWithParameters(GTopInterfaceImpl, String, Executor, ExpansionBudget)}.
+     * @param cypher is the cypher to translate.
+     * @return Returns the SQL statement with its parameters.
+     * @throws Cypher2SqlException if the translation fails.
+     */
+    public ParameterizedSQL translateWithParameters(final String cypher) throws Cypher2SqlException {
+        if (cache == null) {
+            return PassAvailables.cypher2sqlWithParameters(gTop, cypher, executor, budget);
+        }
+        return cache.get(gTop, cypher, (g, c) -> PassAvailables.cypher2sqlWithParameters(g, c, executor, budget));
+    }
+
+    /**
+     * Translate the cypher into SQL after lifting its literals into parameters.
+     * See {@link PassAvailables#cypher2sqlAutoParameterized(GTopInterfaceImpl, String)}.
+     * @param cypher is the cypher to translate.
+     * @return Returns the SQL statement with its parameters and the extracted constants.
+     * @throws Cypher2SqlException if the translation fails.
+     */
+    public ParameterizedSQL translateAutoParameterized(final String cypher) throws Cypher2SqlException {
+        LiteralExtractor.Extraction extraction = LiteralExtractor.extract(cypher, gTop);
+        return translateWithParameters(extraction.cypher).withConstants(extraction.values);
+    }
+
+    /**
+     * @return Returns the frozen and precomputed gTop used by this engine.
+     */
+    public GTopInterfaceImpl getGTop() {
+        return gTop;
+    }
+
+    /**
+     * @return Returns the fingerprint of the gTop used by this engine.
+     */
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * @return Returns the translation cache of this engine or null if caching is disabled.
+     */
+    public TranslationCache<ParameterizedSQL> getCache() {
+        return cache;
+    }
+
+    /**
+     * Configuration of a {@link Cypher2SqlEngine}.
+     */
+    public static final class Builder {
+
+        private final GTopInterfaceImpl gTop;
+        private int cacheSize = TranslationCache.DEFAULT_MAXIMUM_SIZE;
+        private Executor executor = null;
+        private ExpansionBudget budget = ExpansionBudget.UNLIMITED;
+        private GTopInterner interner = GTopInterner.shared();
+
+        private Builder(final GTopInterfaceImpl gTop) {
+            if (gTop == null) {
+                throw new IllegalArgumentException("An engine requires a gTop.");
+            }
+            this.gTop = gTop;
+        }
+
+        /**
+         * Set the number of translations kept by the engine.
+         * @param cacheSize is the maximum number of cached translations, 0 disables caching.
+         * @return Returns this builder.
+         */
+        public Builder cacheSize(final int cacheSize) {
+            if (cacheSize < 0) {
+                throw new IllegalArgumentException("The cache size can't be negative.");
+            }
+            this.cacheSize = cacheSize;
+            return this;
+        }
+
+        /**
+         * Lower the expanded cyphers of a query concurrently on the given executor,
+         * for instance a {@link java.util.concurrent.ForkJoinPool}. The SQL produced
+         * doesn't depend on it. By default expanded cyphers are lowered sequentially
+         * on the calling thread.
+         * @param executor is the executor to use, null to lower sequentially.
+         * @return Returns this builder.
+         */
+        public Builder executor(final Executor executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        /**
+         * Limit the number of variants a query can expand into and the time spent
+         * expanding it. Translations over budget fail with
+         * {@link org.cytosm.cypher2sql.lowering.exceptions.ExpansionBudgetExceeded}.
+         * By default there is no limit.
+         * @param budget is the budget of each expansion.
+         * @return Returns this builder.
+         */
+        public Builder expansionBudget(final ExpansionBudget budget) {
+            if (budget == null) {
+                throw new IllegalArgumentException("The expansion budget can't be null.");
+            }
+            this.budget = budget;
+            return this;
+        }
+
+        /**
+         * Freeze the gTop with the given interner. The interner keeps the elements
+         * it froze: the {@link GTopInterner#shared()} one, used by default, suits
+         * gTops living as long as the application.
+         * @param interner is the interner freezing the gTop.
+         * @return Returns this builder.
+         */
+        public Builder interner(final GTopInterner interner) {
+            if (interner == null) {
+                throw new IllegalArgumentException("The interner can't be null.");
+            }
+            this.interner = interner;
+            return this;
+        }
+
+        /**
+         * Build the engine. This is where the gTop is frozen and precomputed.
+         * @return Returns the new engine.
+         */
+        public Cypher2SqlEngine build() {
+            return new Cypher2SqlEngine(this);
+        }
+    }
+}
@@ -0,0 +1,323 @@
+package org.cytosm.cypher2sql.engine;
+
+import org.cytosm.common.gtop.GTopInterfaceImpl;
+import org.cytosm.common.gtop.RelationalGTopInterface;
+import org.cytosm.common.gtop.abstraction.AbstractionEdge;
+import org.cytosm.common.gtop.frozen.GTopInterner;
+import org.cytosm.common.gtop.implementation.relational.ImplementationEdge;
+import org.cytosm.common.gtop.implementation.relational.ImplementationNode;
+import org.cytosm.common.gtop.io.GTopStreamReader;
+import org.cytosm.cypher2sql.cache.LabelDependencies;
+import org.cytosm.cypher2sql.cache.TranslationCache;
+import org.cytosm.cypher2sql.lowering.exceptions.Cypher2SqlException;
+import org.cytosm.cypher2sql.lowering.rendering.ParameterizedSQL;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
+
+/**
+ * Holds the current gTop of a translator and replaces it without stopping
+ * the translations.
+ *
+ * Each gTop loaded is published as a {@link Version}: an immutable pair of a
+ * version number and a {@link Cypher2SqlEngine}. A reload reads the new gTop,
+ * validates it and builds its engine on the calling thread, or on an executor
+ * with the async variants, then swaps the current version atomically. A
+ * translation uses the version current when it starts until it is done: call
+ * {@link #current()} once and keep the returned version to run several
+ * translations against the same gTop.
+ *
+ * The translations cached by the replaced engine are copied into the new one,
+ * except the ones depending on a label whose definition changed (see
+ * {@link LabelDependencies}). Reloads are serialized, so version numbers follow
+ * the order in which the gTops are published.
+ *
+ * Each version freezes its gTop with its own {@link GTopInterner} rather than
+ * the shared one, which would keep the elements of every gTop ever loaded. The
+ * elements of a replaced version are collected along with it.
+ *
+ * <pre>
+ *     GTopRegistry registry = new GTopRegistry(gtop);
+ *     String sql = registry.translate("MATCH (a:Person) RETURN a.id");
+ *     registry.reloadAsync(new File("ldbc.gtop"), executor);
+ * </pre>
+ */
+public final class GTopRegistry {
+
+    private final UnaryOperator<Cypher2SqlEngine.Builder> configuration;
+    private final AtomicReference<Version> current = new AtomicReference<>();
+    private final Object reloadLock = new Object();
+
+    /**
+     * Create a registry with engines using the default configuration.
+     * @param gTop is the first gTop published.
+     */
+    public GTopRegistry(final GTopInterfaceImpl gTop) {
+        this(gTop, UnaryOperator.identity());
+    }
+
+    /**
+     * Create a registry.
+     * @param gTop is the first gTop published.
+     * @param configuration configures the builder of the engine of each version.
+     */
+    public GTopRegistry(final GTopInterfaceImpl gTop, final UnaryOperator<Cypher2SqlEngine.Builder> configuration) {
+        if (configuration == null) {
+            throw new IllegalArgumentException("A registry requires an engine configuration.");
+        }
+        this.configuration = configuration;
+        reload(gTop);
+    }
+
+    /**
+     * @return Returns the version currently published.
+     */
+    public Version current() {
+        return current.get();
+    }
+
+    /**
+     * Translate the cypher with the current version.
+     * See {@link Cypher2SqlEngine#translate(String)}.
+     * @param cypher is the cypher to translate.
+     * @return Returns the SQL statement.
+     * @throws Cypher2SqlException if the translation fails.
+     */
+    public String translate(final String cypher) throws Cypher2SqlException {
+        return current().getEngine().translate(cypher);
+    }
+
+    /**
+     * Translate the cypher with the current version and return the parameters to bind.
+     * See {@link Cypher2SqlEngine#translateWithParameters(String)}.
+     * @param cypher is the cypher to translate.
+     * @return Returns the SQL statement with its parameters.
+     * @throws Cypher2SqlException if the translation fails.
+     */
+    public ParameterizedSQL translateWithParameters(final String cypher) throws Cypher2SqlException {
+        return current().getEngine().translateWithParameters(cypher);
+    }
+
+    /**
+     * Publish a new gTop. The gTop provided must not be modified afterwards.
+     * @param gTop is the new gTop.
+     * @return Returns the version published.
+     * @throws IllegalArgumentException if the gTop isn't valid. The current version is kept.
+     */
+    public Version reload(final GTopInterfaceImpl gTop) {
+        validate(gTop);
+        Cypher2SqlEngine.Builder builder = Cypher2SqlEngine.builder(gTop).interner(new GTopInterner());
+        Cypher2SqlEngine engine = configuration.apply(builder).build();
+
+        synchronized (reloadLock) {
+            Version previous = current.get();
+            Version version;
+            if (previous == null) {
+                version = new Version(1, engine, Optional.empty(), 0);
+            } else {
+                Optional<Set<String>> changedLabels = LabelDependencies.changedLabels(previous.getGTop(),
+                        engine.getGTop());
+                int retained = retainTranslations(previous.getEngine(), engine, changedLabels);
+                version = new Version(previous.getNumber() + 1, engine, changedLabels, retained);
+            }
+            current.set(version);
+            return version;
+        }
+    }
+
+    /**
+     * Publish the gTop of a file, JSON or binary snapshot.
+     * @param file is the gTop file.
+     * @return Returns the version published.
+     * @throws IOException if the file can't be read. The current version is kept.
+     * @throws IllegalArgumentException if the gTop isn't valid. The current version is kept.
+     */
+    public Version reload(final File file) throws IOException {
+        return reload(new RelationalGTopInterface(file));
+    }
+
+    /**
+     * Publish the gTop of a JSON string.
+     * @param gTopStr is the gTop in a string.
+     * @return Returns the version published.
+     * @throws IOException if the string isn't a gTop. The current version is kept.
+     * @throws IllegalArgumentException if the gTop isn't valid. The current version is kept.
+     */
+    public Version reload(final String gTopStr) throws IOException {
+        return reload(new RelationalGTopInterface(GTopStreamReader.read(gTopStr)));
+    }
+
+    /**
+     * Publish the gTop of a file in the background. Translations keep using
+     * the current version until the new one is published.
+     * @param file is the gTop file.
+     * @param executor is the executor loading the gTop.
+     * @return Returns the version published, or fails with the error of {@link #reload(File)}
+     *         wrapped in an {@link UncheckedIOException} for I/O errors.
+     */
+    public CompletableFuture<Version> reloadAsync(final File file, final Executor executor) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return reload(file);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, executor);
+    }
+
+    /**
+     * Publish the gTop of a JSON string in the background. Translations keep
+     * using the current version until the new one is published.
+     * @param gTopStr is the gTop in a string.
+     * @param executor is the executor loading the gTop.
+     * @return Returns the version published, or fails with the error of {@link #reload(String)}
+     *         wrapped in an {@link UncheckedIOException} for I/O errors.
+     */
+    public CompletableFuture<Version> reloadAsync(final String gTopStr, final Executor executor) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return reload(gTopStr);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, executor);
+    }
+
+    /**
+     * Copy into the new engine the cached translations that don't depend on a changed label.
+     */
+    private static int retainTranslations(final Cypher2SqlEngine previous, final Cypher2SqlEngine engine,
+                                          final Optional<Set<String>> changedLabels) {
+        TranslationCache<ParameterizedSQL> previousCache = previous.getCache();
+        if (!changedLabels.isPresent() || previousCache == null || engine.getCache() == null) {
+            return 0;
+        }
+        Set<String> changed = changedLabels.get();
+        return previousCache.copyTo(engine.getCache(), previous.getGTop(), engine.getGTop(), cypher -> {
+            Optional<Set<String>> dependencies = LabelDependencies.ofQuery(previous.getGTop(), cypher);
+            return dependencies.isPresent() && Collections.disjoint(dependencies.get(), changed);
+        });
+    }
+
+    /**
+     * Check that the gTop can be used for translations. Every element is read,
+     * which reports the elements of lazily read gTops that can't be decoded.
+     */
+    private static void validate(final GTopInterfaceImpl gTop) {
+        if (gTop == null || gTop.getAbstractionLevel() == null || gTop.getImplementationLevel() == null) {
+            throw new IllegalArgumentException("Invalid gTop: both levels are required.");
+        }
+        if (gTop.getImplementationLevel().getGraphMetadata() == null) {
+            throw new IllegalArgumentException("Invalid gTop: the graph metadata is missing.");
+        }
+
+        Set<String> nodeTypes = new HashSet<>();
+        try {
+            gTop.getAbstractionNodes().forEach(node -> requireTypes(node.getTypes(), "abstraction node"));
+            gTop.getAllNodeTypes().forEach(type -> nodeTypes.add(type.toLowerCase()));
+            for (AbstractionEdge edge: gTop.getAbstractionEdges()) {
+                requireTypes(edge.getTypes(), "abstraction edge");
+                requireNodeTypes(nodeTypes, edge.getSourceType(), edge);
+                requireNodeTypes(nodeTypes, edge.getDestinationType(), edge);
+            }
+            for (ImplementationNode node: gTop.getImplementationNodes()) {
+                requireTypes(node.getTypes(), "implementation node");
+                if (node.getTableName() == null || node.getTableName().isEmpty()) {
+                    throw new IllegalArgumentException("Invalid gTop: the implementation node " + node.getTypes()
+                            + " has no table.");
+                }
+            }
+            for (ImplementationEdge edge: gTop.getImplementationEdges()) {
+                requireTypes(edge.getTypes(), "implementation edge");
+            }
+        } catch (UncheckedIOException e) {
+            throw new IllegalArgumentException("Invalid gTop: " + e.getMessage(), e);
+        }
+    }
+
+    private static void requireTypes(final List<String> types, final String element) {
+        if (types == null || types.isEmpty()) {
+            throw new IllegalArgumentException("Invalid gTop: an " + element + " has no type.");
+        }
+    }
+
+    private static void requireNodeTypes(final Set<String> nodeTypes, final List<String> types,
+                                         final AbstractionEdge edge) {
+        if (types == null) {
+            return;
+        }
+        for (String type: types) {
+            if (!nodeTypes.contains(type.toLowerCase())) {
+                throw new IllegalArgumentException("Invalid gTop: the edge " + edge.getTypes()
+                        + " refers to the unknown node type " + type + ".");
+            }
+        }
+    }
+
+    /**
+     * A gTop published by a registry, along with the engine translating with it.
+     */
+    public static final class Version {
+
+        private final long number;
+        private final Cypher2SqlEngine engine;
+        private final Optional<Set<String>> changedLabels;
+        private final int retainedTranslations;
+
+        private Version(final long number, final Cypher2SqlEngine engine, final Optional<Set<String>> changedLabels,
+                        final int retainedTranslations) {
+            this.number = number;
+            this.engine = engine;
+            this.changedLabels = changedLabels.map(Collections::unmodifiableSet);
+            this.retainedTranslations = retainedTranslations;
+        }
+
+        /**
+         * @return Returns the version number, starting at 1 for the first gTop of the registry.
+         */
+        public long getNumber() {
+            return number;
+        }
+
+        /**
+         * @return Returns the engine translating with this version.
+         */
+        public Cypher2SqlEngine getEngine() {
+            return engine;
+        }
+
+        /**
+         * @return Returns the frozen gTop of this version.
+         */
+        public GTopInterfaceImpl getGTop() {
+            return engine.getGTop();
+        }
+
+        /**
+         * Caches of results depending on the gTop, such as paths, can be kept
+         * across versions for the labels that didn't change.
+         * @return Returns the labels, in lower case, whose definition changed since
+         *         the previous version or empty if every label must be considered changed.
+         */
+        public Optional<Set<String>> getChangedLabels() {
+            return changedLabels;
+        }
+
+        /**
+         * @return Returns the number of cached translations carried over from the previous version.
+         */
+        public int getRetainedTranslations() {
+            return retainedTranslations;
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package org.cytosm.cypher2sql.engine;
+
+import org.cytosm.common.gtop.GTop;
+import org.cytosm.common.gtop.GTopInterfaceImpl;
+import org.cytosm.common.gtop.abstraction.AbstractionEdge;
+import org.cytosm.common.gtop.abstraction.AbstractionNode;
+import org.cytosm.common.gtop.implementation.relational.ImplementationEdge;
+import org.cytosm.common.gtop.implementation.relational.ImplementationNode;
+
+import java.util.List;
+
+/**
+ * Read-only view of a gTop shared by the translations of an engine.
+ *
+ * The lookups are answered by the wrapped gTop from its index, which
+ * is built when the view is created. The index only holds positions,
+ * so the elements of a lazily read gTop are still decoded on use.
+ *
+ * The wrapped gTop must not be modified once the view exists. All the
+ * setters throw {@link UnsupportedOperationException}. The view can be
+ * shared by concurrent translations when the elements of the wrapped
+ * gTop are frozen (see {@link org.cytosm.common.gtop.frozen.GTopInterner}).
+ */
+public class PrecompiledGTop extends GTopInterfaceImpl {
+
+    private final GTopInterfaceImpl delegate;
+
+    /**
+     * Build the view of the provided gTop.
+     * @param delegate is the gTop to wrap.
+     */
+    public PrecompiledGTop(final GTopInterfaceImpl delegate) {
+        this.delegate = delegate;
+        this.gtop = new GTop(delegate.getVersion(), delegate.getAbstractionLevel(), delegate.getImplementationLevel());
+
+        // Build the index now rather than during the first translations.
+        delegate.getAllNodeTypes();
+    }
+
+    @Override
+    public String getVersion() {
+        return delegate.getVersion();
+    }
+
+    @Override
+    public List<String> getAllEdgeTypes() {
+        return delegate.getAllEdgeTypes();
+    }
+
+    @Override
+    public List<String> getAllNodeTypes() {
+        return delegate.getAllNodeTypes();
+    }
+
+    @Override
+    public List<AbstractionEdge> getAbstractionEdgesByTypes(final String types) {
+        return delegate.getAbstractionEdgesByTypes(types);
+    }
+
+    @Override
+    public List<AbstractionNode> getAbstractionNodesByTypes(final String types) {
+        return delegate.getAbstractionNodesByTypes(types);
+    }
+
+    @Override
+    public List<ImplementationNode> getImplementationNodesByType(final String type) {
+        return delegate.getImplementationNodesByType(type);
+    }
+
+    @Override
+    public List<ImplementationEdge> getImplementationEdgeByType(final String type) {
+        return delegate.getImplementationEdgeByType(type);
+    }
+
+    @Override
+    public List<AbstractionEdge> getAllAbstractEdgesForNodeTypes(final List<String> types) {
+        return delegate.getAllAbstractEdgesForNodeTypes(types);
+    }
+
+    @Override
+    public List<AbstractionEdge> getAllAbstractEdgesBetweenTwoNodes(final AbstractionNode nodeA,
+                                                                    final AbstractionNode nodeB) {
+        return delegate.getAllAbstractEdgesBetweenTwoNodes(nodeA, nodeB);
+    }
+
+    @Override
+    public List<AbstractionEdge> getDirectedAbstractEdgesBetweenTwoNodes(final AbstractionNode sourceNode,
+                                                                         final AbstractionNode destinationNode) {
+        return delegate.getDirectedAbstractEdgesBetweenTwoNodes(sourceNode, destinationNode);
+    }
+
+    @Override
+    public List<AbstractionNode> getSourceNodesForEdge(final AbstractionEdge analyzedEdge) {
+        return delegate.getSourceNodesForEdge(analyzedEdge);
+    }
+
+    @Override
+    public List<AbstractionNode> getDestinationNodesForEdge(final AbstractionEdge analyzedEdge) {
+        return delegate.getDestinationNodesForEdge(analyzedEdge);
+    }
+
+    @Override
+    public List<ImplementationNode> findNodeImplementations(final AbstractionNode node) {
+        return delegate.findNodeImplementations(node);
+    }
+
+    @Override
+    public List<AbstractionNode> findNodeAbstractions(final ImplementationNode node) {
+        return delegate.findNodeAbstractions(node);
+    }
+
+    @Override
+    public ImplementationEdge findEdgeImplementation(final AbstractionEdge edge) {
+        return delegate.findEdgeImplementation(edge);
+    }
+
+    @Override
+    public List<ImplementationNode> getImplementationNodes() {
+        return delegate.getImplementationNodes();
+    }
+
+    @Override
+    public List<ImplementationEdge> getImplementationEdges() {
+        return delegate.getImplementationEdges();
+    }
+
+    @Override
+    public AbstractionNode createAbstractionNodeFromImplementation(final ImplementationNode node) {
+        return delegate.createAbstractionNodeFromImplementation(node);
+    }
+
+    @Override
+    public AbstractionEdge createAbstractionEdgeFromImplementation(final ImplementationEdge edge) {
+        return delegate.createAbstractionEdgeFromImplementation(edge);
+    }
+
+    @Override
+    public void setAbstractionNodes(final List<AbstractionNode> nodes) {
+        throw new UnsupportedOperationException("A precompiled gTop can't be modified.");
+    }
+
+    @Override
+    public void setAbstractionEdges(final List<AbstractionEdge> edges) {
+        throw new UnsupportedOperationException("A precompiled gTop can't be modified.");
+    }
+
+    @Override
+    public void setImplementationNodes(final List<ImplementationNode> nodes) {
+        throw new UnsupportedOperationException("A precompiled gTop can't be modified.");
+    }
+
+    @Override
+    public void setImplementationEdges(final List<ImplementationEdge> edges) {
+        throw new UnsupportedOperationException("A precompiled gTop can't be modified.");
+    }
+}
@@ -1,20 +1,17 @@
 package org.cytosm.cypher2sql.expandpaths;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import org.cytosm.pathfinder.PathFinder;
-import org.apache.commons.lang3.StringUtils;
 import org.apache.log4j.Logger;
 
 import org.cytosm.common.gtop.GTopInterfaceImpl;
 import org.cytosm.pathfinder.CanonicalRoutes;
 import org.cytosm.pathfinder.output.PathSerializer;
 import org.cytosm.pathfinder.output.Serializer;
+import org.cytosm.pathfinder.routeelements.ExpansionElement;
 
 /**
  * This class expands a cypher query using the GTOP into multiple cypher queries, removing any anonymous nodes/edges and
@@ -76,12 +73,14 @@ public final class ExpandCypher {
 
 
         List<List<String>> querySegments = new ArrayList<>();
+        List<List<List<LabelBindings.Binding>>> segmentBindings = new ArrayList<>();
         int last = 0;
         for (PathPlusHints pathAndHints : paths) {
             if (pathAndHints.getPath().toLowerCase().startsWith("with")) {
                 List<String> item = new ArrayList<>();
                 item.add(" " + pathAndHints.getPath());
                 querySegments.add(item);
+                segmentBindings.add(noBindings(item));
                 last += pathAndHints.getPath().length();
             } else {
                 String bit = query.substring(last, query.indexOf(pathAndHints.getPath(), last));
@@ -90,113 +89,74 @@ public final class ExpandCypher {
                 List<String> queryList = new ArrayList<>();
                 queryList.add(bit);
                 querySegments.add(queryList);
+                segmentBindings.add(noBindings(queryList));
                 matcher.getInputFormat().addExternalContext(pathAndHints.getHintsIntoList());
                 CanonicalRoutes expandedPaths = matcher.enumerate(pathAndHints.getPath(), gtopInterface);
-                List<String> items = serializer.serialize(expandedPaths.getAllPossibleRoutes());
+                List<List<ExpansionElement>> routes = expandedPaths.getAllPossibleRoutes();
+                List<String> items = serializer.serialize(routes);
                 if (items.size() == 0) {
                     System.out.println(pathAndHints.getPath());
                 }
                 querySegments.add(items);
+                List<List<LabelBindings.Binding>> itemBindings = new ArrayList<>(routes.size());
+                for (List<ExpansionElement> route : routes) {
+                    itemBindings.add(LabelBindings.of(route));
+                }
+                segmentBindings.add(itemBindings);
             }
         }
         if (last < query.length()) {
             List<String> queryList = new ArrayList<>();
             queryList.add(query.substring(last, query.length()));
             querySegments.add(queryList);
+            segmentBindings.add(noBindings(queryList));
         }
 
         List<String> newQueries = new ArrayList<>();
-        computeAllPaths(newQueries, "", querySegments, 0);
-
-        List<String> validQueries = new ArrayList<>();
-        for (String qry : newQueries) {
-            if (queryValid(qry)) {
-                validQueries.add(qry);
-            } else {
-                LOGGER.info("Rejecting query as it isn't valid with this gTop:" + qry);
-            }
-        }
-        //        int count = 0;
-        //        for (String sql : validQueries) {
-        //            System.out.println(count + " --> " + sql);
-        //            count++;
-        //        }
+        computeAllPaths(newQueries, "", querySegments, segmentBindings, new LabelBindings(), 0);
 
-        return validQueries;
+        return newQueries;
     }
 
-    /**
-     * Takes a query, parses out all the types, and if they aren't consistent it rejects it.
-     *
-     * @param query the query to validate
-     */
-    // FIXME: This code is plain wrong.
-    public static boolean queryValid(final String query) {
-        Map<String, String> mappings = new HashMap<>();
-        Pattern pattern = Pattern.compile("\\((.*?)\\)");
-        Matcher matcher = pattern.matcher(query);
-        while (matcher.find()) {
-            if (matcher.group(0).contains(":")) {
-                StringBuffer sb = new StringBuffer();
-                sb.append(matcher.group(0));
-                sb.reverse();
-                int pos = sb.toString().lastIndexOf(":");
-                String variable = sb.toString().substring(pos + 1, sb.toString().indexOf("(", pos));
-                if (variable.contains("=")) {
-                    variable = variable.substring(0, variable.indexOf("="));
-                }
-                if (variable.contains(" ")) {
-                    variable = variable.substring(0, variable.indexOf(" "));
-                }
-                int i = matcher.group(0).indexOf(":");
-
-                //                System.out.println(matcher.group(0));
-                //                StringBuffer s = new StringBuffer(variable);
-                //                s.reverse();
-                //                System.out.println(s);
-
-                String type = matcher.group(0).trim().substring(i + 1, matcher.group(0).length() - 1);
-                // -1 as there is a ) at the end
-                if (!StringUtils.isEmpty(variable)) {
-                    String existingType = mappings.get(variable);
-                    if (existingType == null) {
-                        mappings.put(variable, type);
-                    } else {
-                        if (!existingType.startsWith(type) && !type.startsWith(existingType)) {
-                            return false;
-                        }
-                    }
-                }
-            }
-        }
-        return true;
+    private static List<List<LabelBindings.Binding>> noBindings(final List<String> items) {
+        return Collections.nCopies(items.size(), Collections.emptyList());
     }
 
-
     /**
      * Expands all the paths into multiple queries.
      *
      * It does this by iterating through every query added every other query to it.
+     * A segment is only appended if the labels of its named nodes agree with the
+     * labels given to the same variables by the segments already appended, so
+     * invalid combinations are rejected before their string is built.
      *
      * @param newQueries newQueries we have created
      * @param current the current query we are processing
      * @param queryList list of queries to expand
+     * @param bindingsList labels of the named nodes of each query in the queryList
+     * @param labels labels bound by the segments of the current query
      * @param index index though the queryList
      */
     private static void computeAllPaths(final List<String> newQueries, final String current,
-            final List<List<String>> queryList, final int index) {
+            final List<List<String>> queryList, final List<List<List<LabelBindings.Binding>>> bindingsList,
+            final LabelBindings labels, final int index) {
         if (index >= queryList.size()) {
             newQueries.add(current);
             return;
         }
-        if (!queryValid(current)) {
-            return;
-        }
         List<String> currentList = queryList.get(index);
-
-        for (String query : currentList) {
-            String part = current + " " + query;
-            computeAllPaths(newQueries, part, queryList, index + 1);
+        List<List<LabelBindings.Binding>> currentBindings = bindingsList.get(index);
+
+        for (int i = 0; i < currentList.size(); i++) {
+            int mark = labels.mark();
+            if (!labels.bindAll(currentBindings.get(i))) {
+                LOGGER.debug("Rejecting segment as its labels aren't consistent with this gTop: "
+                        + currentList.get(i));
+                continue;
+            }
+            computeAllPaths(newQueries, current + " " + currentList.get(i), queryList, bindingsList, labels,
+                    index + 1);
+            labels.undo(mark);
         }
     }
 
@@ -0,0 +1,387 @@
+package org.cytosm.cypher2sql.expandpaths;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+import org.apache.log4j.Logger;
+
+import org.cytosm.common.gtop.abstraction.AbstractionGraphComponent;
+import org.cytosm.common.gtop.GTopInterfaceImpl;
+import org.cytosm.common.gtop.implementation.relational.ImplementationEdge;
+import org.cytosm.common.gtop.implementation.relational.TraversalHop;
+import org.cytosm.cypher2sql.cypher.ast.*;
+import org.cytosm.cypher2sql.cypher.ast.clause.match.pattern.*;
+import org.cytosm.cypher2sql.cypher.ast.clause.match.pattern.RelationshipPattern.SemanticDirection;
+import org.cytosm.cypher2sql.cypher.ast.expression.Variable;
+import org.cytosm.cypher2sql.cypher.parser.ASTBuilder;
+import org.cytosm.cypher2sql.lowering.exceptions.Cypher2SqlException;
+import org.cytosm.cypher2sql.lowering.exceptions.ExpansionBudgetExceeded;
+import org.cytosm.cypher2sql.lowering.exceptions.UnsupportedPattern;
+import org.cytosm.pathfinder.CanonicalRoutes;
+import org.cytosm.pathfinder.PathFinder;
+import org.cytosm.pathfinder.routeelements.ExpansionEdge;
+import org.cytosm.pathfinder.routeelements.ExpansionElement;
+
+/**
+ * Expands a cypher query using the gTop, like {@link ExpandCypher}, but
+ * directly on the AST.
+ *
+ * The query is parsed once. For each pattern part, the routes found by the
+ * {@link PathFinder} are turned into new pattern elements where labels and
+ * relationship types are the ones resolved on the gTop. Every combination of
+ * those pattern parts gives a new {@link Statement} that shares all the other
+ * clauses with the original AST. No cypher string is built or parsed again.
+ * Combinations are produced lazily by an {@link ExpansionIterator}.
+ *
+ * The new pattern elements keep the variables, the properties and the spans
+ * of the elements they replace. Elements that are introduced by the expansion
+ * of variable length relationships get spans located after the end of the query
+ * so that the names derived from them are unique.
+ *
+ * When a route can't be mapped back onto the AST (for instance with more than
+ * one variable length relationship in the same pattern part) the expansion falls
+ * back on {@link ExpandCypher#expandCypher(GTopInterfaceImpl, String)}.
+ *
+ * With {@link VariableLengthTranslation#RECURSIVE_CTE}, the variable length
+ * relationships that can be translated into a recursive query are looked up as a
+ * single hop and keep their range on the new pattern elements. So are the
+ * relationships of <code>shortestPath(...)</code> and <code>allShortestPaths(...)</code>
+ * whatever the translation.
+ */
+public final class ExpandStatement {
+
+    private ExpandStatement() {}
+
+    private static final Logger LOGGER = Logger.getLogger(ExpandStatement.class.getName());
+
+    private static final java.util.regex.Pattern RANGE = java.util.regex.Pattern.compile("\\*[\\s0-9.]*");
+
+    /**
+     * Takes a cypher query and gTop and returns the ASTs of all the
+     * queries this query has been expanded into.
+     *
+     * @param gtopInterface gTop file to use for cypher expansion
+     * @param queryStr Cypher query to expand
+     * @return List of statements this query have become having been expanded
+     * @throws IllegalArgumentException if a shortest path of the query can't be translated
+     */
+    public static List<Statement> expandStatement(final GTopInterfaceImpl gtopInterface, final String queryStr) {
+        try {
+            return expand(gtopInterface, queryStr, ExpansionBudget.UNLIMITED).toList();
+        } catch (ExpansionBudgetExceeded e) {
+            // Can't happen without limits.
+            throw new IllegalStateException(e);
+        } catch (Cypher2SqlException e) {
+            throw new IllegalArgumentException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Takes a cypher query and gTop and returns an iterator over the ASTs of all
+     * the queries this query expands into. Each pattern part is resolved on the gTop
+     * right away, but the combinations are only built when they are iterated over.
+     *
+     * @param gtopInterface gTop file to use for cypher expansion
+     * @param queryStr Cypher query to expand
+     * @param budget limits of the expansion
+     * @return Iterator over the statements this query expands into
+     * @throws ExpansionBudgetExceeded if the time budget is exhausted while resolving the pattern parts
+     * @throws UnsupportedPattern if a shortest path can't be translated
+     */
+    public static ExpansionIterator expand(final GTopInterfaceImpl gtopInterface, final String queryStr,
+                                           final ExpansionBudget budget)
+            throws Cypher2SqlException
+    {
+        return expand(gtopInterface, queryStr, budget, VariableLengthTranslation.EXPAND);
+    }
+
+    /**
+     * Same as {@link #expand(GTopInterfaceImpl, String, ExpansionBudget)} but the
+     * variable length relationships are translated as requested.
+     *
+     * @param gtopInterface gTop file to use for cypher expansion
+     * @param queryStr Cypher query to expand
+     * @param budget limits of the expansion
+     * @param variableLength how the variable length relationships are translated
+     * @return Iterator over the statements this query expands into
+     * @throws ExpansionBudgetExceeded if the time budget is exhausted while resolving the pattern parts
+     * @throws UnsupportedPattern if a shortest path can't be translated
+     */
+    public static ExpansionIterator expand(final GTopInterfaceImpl gtopInterface, final String queryStr,
+                                           final ExpansionBudget budget,
+                                           final VariableLengthTranslation variableLength)
+            throws Cypher2SqlException
+    {
+        long start = System.nanoTime();
+        String query = queryStr.trim();
+        Statement statement = ASTBuilder.parse(query);
+
+        List<PathPlusHints> paths = new ExtractPath().split(statement, query);
+        PathFinder matcher = new PathFinder(new CypherConverter());
+        SyntheticSpans spans = new SyntheticSpans(query.length());
+
+        List<PatternPart> originals = new ArrayList<>(paths.size());
+        List<List<PatternPart>> alternatives = new ArrayList<>(paths.size());
+        for (PathPlusHints pathAndHints : paths) {
+            Set<RelationshipPattern> recursive = Collections.newSetFromMap(new IdentityHashMap<>());
+            if (variableLength == VariableLengthTranslation.RECURSIVE_CTE
+                    || pathAndHints.getPatternPart().selector != PatternPart.Selector.EVERY_PATH) {
+                recursive.addAll(recursiveRelationships(pathAndHints.getPatternPart(), gtopInterface));
+            }
+            String path = withoutRanges(pathAndHints.getPath(), pathAndHints.getPatternPart(), recursive);
+
+            matcher.getInputFormat().addExternalContext(pathAndHints.getHintsIntoList());
+            CanonicalRoutes expandedPaths = matcher.enumerate(path, gtopInterface);
+            ExpansionIterator.checkTime(budget, start);
+
+            List<PatternPart> parts = new ArrayList<>();
+            for (List<ExpansionElement> route : expandedPaths.getAllPossibleRoutes()) {
+                PatternPart part = substitute(pathAndHints.getPatternPart(), route, spans, recursive);
+                if (part == null) {
+                    LOGGER.info("Can't expand the AST of this query, falling back on the cypher expansion: "
+                            + query);
+                    List<Statement> variants = ExpandCypher.expandCypher(gtopInterface, query).stream()
+                            .map(ASTBuilder::parse)
+                            .collect(Collectors.toList());
+                    return new ExpansionIterator(variants, budget, start);
+                }
+                parts.add(part);
+            }
+            originals.add(pathAndHints.getPatternPart());
+            alternatives.add(parts);
+        }
+
+        return new ExpansionIterator(statement, originals, alternatives, budget, start);
+    }
+
+    /**
+     * Finds the variable length relationships of the pattern part that can be
+     * translated into a recursive query: their type must be implemented by a
+     * single join table between rows of the same table. Relationships that are
+     * named, have properties, can have a length of 0 or belong to a named path
+     * are expanded. The relationship of a shortest path always is a candidate.
+     *
+     * @throws UnsupportedPattern if the relationship of a shortest path can't be searched recursively
+     */
+    private static List<RelationshipPattern> recursiveRelationships(final PatternPart part,
+            final GTopInterfaceImpl gtopInterface) throws UnsupportedPattern {
+        List<RelationshipPattern> result = new ArrayList<>();
+        if (part instanceof NamedPatternPart && part.selector == PatternPart.Selector.EVERY_PATH) {
+            return result;
+        }
+        boolean shortest = part.selector != PatternPart.Selector.EVERY_PATH;
+        List<RelationshipChain> chains = new ArrayList<>();
+        flatten(part.element, new ArrayList<>(), chains);
+        for (RelationshipChain chain : chains) {
+            RelationshipPattern relationship = chain.relationship;
+            if (!relationship.length.isPresent()) {
+                continue;
+            }
+            String unsupported = unsupportedRecursion(relationship, gtopInterface);
+            if (unsupported == null) {
+                result.add(relationship);
+            } else if (shortest) {
+                throw new UnsupportedPattern("shortestPath requires " + unsupported);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return why the variable length relationship can't be translated into
+     *         a recursive query or null if it can.
+     */
+    private static String unsupportedRecursion(final RelationshipPattern relationship,
+            final GTopInterfaceImpl gtopInterface) {
+        if (relationship.variable.isPresent() || relationship.properties.isPresent()) {
+            return "a relationship without variable nor properties.";
+        }
+        if (relationship.types.size() != 1) {
+            return "a relationship with a single type.";
+        }
+        Optional<Range> range = relationship.length.get();
+        long lower = range.flatMap(r -> r.lower).map(l -> l.value).orElse(1L);
+        long upper = range.flatMap(r -> r.upper).map(u -> u.value).orElse(Long.MAX_VALUE);
+        if (lower < 1 || upper < lower) {
+            return "a relationship of at least one hop.";
+        }
+        List<ImplementationEdge> edges = gtopInterface.getImplementationEdgeByType(relationship.types.get(0).name);
+        if (edges.size() != 1 || edges.get(0).getPaths().size() != 1
+                || edges.get(0).getPaths().get(0).getTraversalHops().size() != 1) {
+            return "a relationship implemented by a single hop.";
+        }
+        // A hop without join table follows a foreign key, as with an empty join table name.
+        TraversalHop hop = edges.get(0).getPaths().get(0).getTraversalHops().get(0);
+        if (hop.getJoinTableName() == null || hop.getJoinTableName().isEmpty()
+                || !hop.getSourceTableName().equals(hop.getDestinationTableName())) {
+            return "a relationship implemented by a join table between the same table.";
+        }
+        return null;
+    }
+
+    /**
+     * Removes the ranges of the given relationships from the text of the
+     * path so that they are looked up as a single hop.
+     */
+    private static String withoutRanges(final String path, final PatternPart part,
+            final Set<RelationshipPattern> relationships) {
+        StringBuilder result = new StringBuilder(path);
+        relationships.stream()
+                .sorted(Comparator.comparingInt((RelationshipPattern r) -> r.span.lo).reversed())
+                .forEach(relationship -> {
+                    int lo = relationship.span.lo - part.element.span.lo;
+                    int hi = relationship.span.hi - part.element.span.lo;
+                    result.replace(lo, hi, RANGE.matcher(result.substring(lo, hi)).replaceFirst(""));
+                });
+        return result.toString();
+    }
+
+    /**
+     * Maps a route onto the pattern part it has been found for.
+     *
+     * @return the new pattern part or null if the route doesn't match the pattern part.
+     */
+    private static PatternPart substitute(final PatternPart original, final List<ExpansionElement> route,
+            final SyntheticSpans spans, final Set<RelationshipPattern> recursive) {
+        List<NodePattern> nodes = new ArrayList<>();
+        List<RelationshipChain> chains = new ArrayList<>();
+        flatten(original.element, nodes, chains);
+
+        if (route.size() % 2 == 0) {
+            return null;
+        }
+        int extraHops = (route.size() - 1) / 2 - chains.size();
+        List<RelationshipChain> variableLength = chains.stream()
+                .filter(chain -> chain.relationship.length.isPresent() && !recursive.contains(chain.relationship))
+                .collect(Collectors.toList());
+        if (extraHops < 0 || (extraHops > 0 && variableLength.size() != 1)) {
+            return null;
+        }
+
+        PatternElement element = substituteNode(nodes.get(0), route.get(0), nodes.get(0).span);
+        int position = 0;
+        for (int i = 0; i < chains.size() && element != null; i++) {
+            RelationshipChain chain = chains.get(i);
+            NodePattern rightNode = nodes.get(i + 1);
+            int hops = extraHops > 0 && chain == variableLength.get(0) ? extraHops + 1 : 1;
+            for (int hop = 0; hop < hops && element != null; hop++) {
+                ExpansionElement edge = route.get(position + 1);
+                ExpansionElement node = route.get(position + 2);
+                position += 2;
+
+                boolean lastHop = hop == hops - 1;
+                RelationshipPattern relationship = substituteRelationship(chain.relationship, edge,
+                        hop == 0 ? chain.relationship.span : spans.next());
+                if (relationship != null && recursive.contains(chain.relationship)) {
+                    relationship.length = chain.relationship.length;
+                }
+                NodePattern newNode = lastHop
+                        ? substituteNode(rightNode, node, rightNode.span)
+                        : anonymousNode(node, spans.next());
+                if (relationship == null || newNode == null) {
+                    return null;
+                }
+                element = new RelationshipChain(element, relationship, newNode);
+                element.span = chain.span;
+            }
+        }
+        if (element == null) {
+            return null;
+        }
+
+        PatternPart part;
+        if (original instanceof NamedPatternPart) {
+            part = new NamedPatternPart(element, ((NamedPatternPart) original).variable);
+        } else {
+            part = new PatternPart(element);
+        }
+        part.span = original.span;
+        part.selector = original.selector;
+        return part;
+    }
+
+    private static void flatten(final PatternElement element, final List<NodePattern> nodes,
+            final List<RelationshipChain> chains) {
+        if (element instanceof NodePattern) {
+            nodes.add((NodePattern) element);
+        } else {
+            RelationshipChain chain = (RelationshipChain) element;
+            flatten(chain.element, nodes, chains);
+            chains.add(chain);
+            nodes.add(chain.rightNode);
+        }
+    }
+
+    private static NodePattern substituteNode(final NodePattern original, final ExpansionElement node,
+            final Span span) {
+        String type = materializedType(node);
+        if (!node.isNode() || type == null || !sameVariable(original.variable, node.getVariable())) {
+            return null;
+        }
+        NodePattern result = new NodePattern(original.variable.orElse(null),
+                Collections.singletonList(new LabelName(type)), original.properties.orElse(null));
+        result.span = span;
+        return result;
+    }
+
+    private static NodePattern anonymousNode(final ExpansionElement node, final Span span) {
+        String type = materializedType(node);
+        if (!node.isNode() || type == null) {
+            return null;
+        }
+        NodePattern result = new NodePattern(null, Collections.singletonList(new LabelName(type)), null);
+        result.span = span;
+        return result;
+    }
+
+    private static RelationshipPattern substituteRelationship(final RelationshipPattern original,
+            final ExpansionElement element, final Span span) {
+        String type = materializedType(element);
+        if (element.isNode() || type == null || !sameVariable(original.variable, element.getVariable())) {
+            return null;
+        }
+        ExpansionEdge edge = (ExpansionEdge) element;
+        RelationshipPattern result = new RelationshipPattern(original.variable.orElse(null), null,
+                original.properties.orElse(null), Collections.singletonList(new RelTypeName(type)));
+        if (!edge.isDirected()) {
+            result.direction = SemanticDirection.BOTH;
+        } else if (edge.isToLeft()) {
+            result.direction = SemanticDirection.INCOMING;
+        } else {
+            result.direction = SemanticDirection.OUTGOING;
+        }
+        result.span = span;
+        return result;
+    }
+
+    private static String materializedType(final ExpansionElement element) {
+        AbstractionGraphComponent component = (AbstractionGraphComponent) element.getEquivalentMaterializedGtop();
+        if (component == null || component.getTypes().isEmpty()) {
+            return null;
+        }
+        return component.getTypes().get(0);
+    }
+
+    private static boolean sameVariable(final Optional<Variable> variable, final String name) {
+        String expected = variable.map(v -> v.name).orElse("");
+        return expected.equals(name == null ? "" : name);
+    }
+
+    /**
+     * Spans given to the elements introduced by the expansion. They
+     * start after the end of the query and never overlap.
+     */
+    private static class SyntheticSpans {
+        private int next;
+
+        SyntheticSpans(final int queryLength) {
+            this.next = queryLength + 1;
+        }
+
+        Span next() {
+            Span span = new Span(next, next);
+            next++;
+            return span;
+        }
+    }
+}
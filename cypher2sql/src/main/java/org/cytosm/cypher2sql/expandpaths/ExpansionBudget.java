@@ -0,0 +1,62 @@
+package org.cytosm.cypher2sql.expandpaths;
+
+/**
+ * Limits the expansion of a query into its variants. A query with
+ * several unlabeled patterns can expand into a very large number
+ * of variants: the budget makes the translation fail early instead.
+ *
+ * A budget is immutable. A limit of 0 means no limit.
+ */
+public final class ExpansionBudget {
+
+    /**
+     * A budget without any limit.
+     */
+    public static final ExpansionBudget UNLIMITED = new ExpansionBudget(0, 0);
+
+    private final long maxVariants;
+    private final long maxMillis;
+
+    /**
+     * Create a new budget.
+     * @param maxVariants is the maximum number of variants produced, 0 for no limit.
+     * @param maxMillis is the maximum time spent expanding in milliseconds, 0 for no limit.
+     */
+    public ExpansionBudget(final long maxVariants, final long maxMillis) {
+        if (maxVariants < 0 || maxMillis < 0) {
+            throw new IllegalArgumentException("The limits of an expansion budget can't be negative.");
+        }
+        this.maxVariants = maxVariants;
+        this.maxMillis = maxMillis;
+    }
+
+    /**
+     * @param maxVariants is the maximum number of variants produced, 0 for no limit.
+     * @return Returns a budget limited to the given number of variants.
+     */
+    public static ExpansionBudget ofVariants(final long maxVariants) {
+        return new ExpansionBudget(maxVariants, 0);
+    }
+
+    /**
+     * @param maxMillis is the maximum time spent expanding in milliseconds, 0 for no limit.
+     * @return Returns a budget limited in time.
+     */
+    public static ExpansionBudget ofMillis(final long maxMillis) {
+        return new ExpansionBudget(0, maxMillis);
+    }
+
+    /**
+     * @return Returns the maximum number of variants, 0 if there is no limit.
+     */
+    public long getMaxVariants() {
+        return maxVariants;
+    }
+
+    /**
+     * @return Returns the maximum time spent expanding in milliseconds, 0 if there is no limit.
+     */
+    public long getMaxMillis() {
+        return maxMillis;
+    }
+}
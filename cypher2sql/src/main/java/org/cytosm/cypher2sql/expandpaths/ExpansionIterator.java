@@ -0,0 +1,232 @@
+package org.cytosm.cypher2sql.expandpaths;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+import org.cytosm.cypher2sql.cypher.ast.Query;
+import org.cytosm.cypher2sql.cypher.ast.SingleQuery;
+import org.cytosm.cypher2sql.cypher.ast.Statement;
+import org.cytosm.cypher2sql.cypher.ast.clause.Clause;
+import org.cytosm.cypher2sql.cypher.ast.clause.match.Match;
+import org.cytosm.cypher2sql.cypher.ast.clause.match.pattern.*;
+import org.cytosm.cypher2sql.lowering.exceptions.ExpansionBudgetExceeded;
+
+/**
+ * Produces the variants of an expanded query on demand.
+ *
+ * The variants are the combinations of the alternatives found for each
+ * pattern part of the query. They are enumerated depth first in the order
+ * of the pattern parts, so a variant only exists in memory once it's been
+ * asked for. Partial combinations where a variable already has two different
+ * labels are pruned before going any deeper.
+ *
+ * The {@link ExpansionBudget} is checked while enumerating: as soon as a limit
+ * is reached, {@link ExpansionBudgetExceeded} is thrown.
+ *
+ * An iterator is meant to be used by one thread.
+ */
+public final class ExpansionIterator {
+
+    private final Statement statement;
+    private final List<PatternPart> originals;
+    private final List<List<PatternPart>> alternatives;
+    private final Iterator<Statement> precomputed;
+
+    private final ExpansionBudget budget;
+    private final long start;
+    private long produced = 0;
+
+    // Index of the alternative chosen at each level, -1 when none.
+    private final int[] positions;
+    // Labels of the named nodes of each alternative.
+    private final List<List<List<LabelBindings.Binding>>> segments;
+    // Labels bound by the alternatives currently chosen.
+    private final LabelBindings bindings = new LabelBindings();
+    // Mark of the bindings taken before binding the alternative chosen at each level.
+    private final int[] marks;
+    private final Map<PatternPart, PatternPart> chosen = new IdentityHashMap<>();
+    private int level = 0;
+
+    private Statement next = null;
+    private boolean started = false;
+
+    /**
+     * @param statement the original statement
+     * @param originals pattern parts of the original statement
+     * @param alternatives for each original pattern part, the pattern parts that can replace it
+     * @param budget the budget of the expansion
+     * @param start value of {@link System#nanoTime()} when the expansion started
+     */
+    ExpansionIterator(final Statement statement, final List<PatternPart> originals,
+                      final List<List<PatternPart>> alternatives, final ExpansionBudget budget,
+                      final long start) {
+        this.statement = statement;
+        this.originals = originals;
+        this.alternatives = alternatives;
+        this.precomputed = null;
+        this.budget = budget;
+        this.start = start;
+        this.positions = new int[originals.size()];
+        Arrays.fill(this.positions, -1);
+        this.marks = new int[originals.size()];
+        this.segments = alternatives.stream()
+                .map(parts -> parts.stream()
+                        .map(part -> LabelBindings.of(part.element))
+                        .collect(Collectors.toList()))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Iterate over variants that have already been computed.
+     *
+     * @param variants the variants
+     * @param budget the budget of the expansion
+     * @param start value of {@link System#nanoTime()} when the expansion started
+     */
+    ExpansionIterator(final List<Statement> variants, final ExpansionBudget budget, final long start) {
+        this.statement = null;
+        this.originals = Collections.emptyList();
+        this.alternatives = Collections.emptyList();
+        this.precomputed = variants.iterator();
+        this.budget = budget;
+        this.start = start;
+        this.positions = new int[0];
+        this.marks = new int[0];
+        this.segments = Collections.emptyList();
+    }
+
+    /**
+     * @return Returns true if there's another variant.
+     * @throws ExpansionBudgetExceeded if the budget is exceeded while looking for it.
+     */
+    public boolean hasNext() throws ExpansionBudgetExceeded {
+        if (next == null) {
+            next = advance();
+            if (next != null) {
+                produced += 1;
+                if (budget.getMaxVariants() > 0 && produced > budget.getMaxVariants()) {
+                    throw new ExpansionBudgetExceeded("The query expands into more than "
+                            + budget.getMaxVariants() + " variants.");
+                }
+            }
+        }
+        return next != null;
+    }
+
+    /**
+     * @return Returns the next variant.
+     * @throws ExpansionBudgetExceeded if the budget is exceeded while looking for it.
+     */
+    public Statement next() throws ExpansionBudgetExceeded {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Statement result = next;
+        next = null;
+        return result;
+    }
+
+    /**
+     * @return Returns all the remaining variants.
+     * @throws ExpansionBudgetExceeded if the budget is exceeded.
+     */
+    public List<Statement> toList() throws ExpansionBudgetExceeded {
+        List<Statement> result = new ArrayList<>();
+        while (hasNext()) {
+            result.add(next());
+        }
+        return result;
+    }
+
+    /**
+     * @return Returns the number of variants produced so far.
+     */
+    public long producedCount() {
+        return produced;
+    }
+
+    /**
+     * Throws if the time budget of an expansion is exhausted.
+     * @param budget the budget of the expansion
+     * @param start value of {@link System#nanoTime()} when the expansion started
+     * @throws ExpansionBudgetExceeded if there is no time left.
+     */
+    static void checkTime(final ExpansionBudget budget, final long start) throws ExpansionBudgetExceeded {
+        if (budget.getMaxMillis() > 0 && System.nanoTime() - start > budget.getMaxMillis() * 1_000_000L) {
+            throw new ExpansionBudgetExceeded("The expansion of the query took more than "
+                    + budget.getMaxMillis() + " ms.");
+        }
+    }
+
+    private Statement advance() throws ExpansionBudgetExceeded {
+        if (precomputed != null) {
+            checkTime(budget, start);
+            return precomputed.hasNext() ? precomputed.next() : null;
+        }
+        if (originals.isEmpty()) {
+            // Nothing to expand, the statement is its only variant.
+            if (started) {
+                return null;
+            }
+            started = true;
+            return statement;
+        }
+        started = true;
+        while (level >= 0) {
+            checkTime(budget, start);
+            if (positions[level] >= 0) {
+                // Forget the labels of the previous alternative of this level.
+                bindings.undo(marks[level]);
+            }
+            int position = ++positions[level];
+            List<PatternPart> candidates = alternatives.get(level);
+            if (position >= candidates.size()) {
+                positions[level] = -1;
+                chosen.remove(originals.get(level));
+                level -= 1;
+                continue;
+            }
+            marks[level] = bindings.mark();
+            if (!bindings.bindAll(segments.get(level).get(position))) {
+                continue;
+            }
+            chosen.put(originals.get(level), candidates.get(position));
+            if (level == originals.size() - 1) {
+                // Stay on the last level: the next call moves on to the next alternative.
+                return rebuild(statement, chosen);
+            }
+            level += 1;
+        }
+        return null;
+    }
+
+    /**
+     * Creates a new statement where pattern parts are replaced. Only the nodes
+     * leading to the pattern parts are copied, everything else is shared.
+     */
+    private static Statement rebuild(final Statement statement, final Map<PatternPart, PatternPart> replacements) {
+        SingleQuery singleQuery = (SingleQuery) statement.query.part;
+        List<Clause> clauses = new ArrayList<>(singleQuery.clauses.size());
+        for (Clause clause : singleQuery.clauses) {
+            if (clause instanceof Match) {
+                Match match = (Match) clause;
+                Pattern pattern = new Pattern(match.pattern.patternParts.stream()
+                        .map(pp -> replacements.getOrDefault(pp, pp))
+                        .collect(Collectors.toList()));
+                pattern.span = match.pattern.span;
+                Match newMatch = new Match(match.optional, pattern, match.where.orElse(null));
+                newMatch.span = match.span;
+                clauses.add(newMatch);
+            } else {
+                clauses.add(clause);
+            }
+        }
+        SingleQuery newSingleQuery = new SingleQuery(clauses);
+        newSingleQuery.span = singleQuery.span;
+        Query query = new Query(newSingleQuery);
+        query.span = statement.query.span;
+        Statement result = new Statement(query);
+        result.span = statement.span;
+        return result;
+    }
+}
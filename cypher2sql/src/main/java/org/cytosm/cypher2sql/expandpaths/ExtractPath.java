@@ -34,8 +34,20 @@ public class ExtractPath {
      * @return the paths and hints for this query
      */
     public List<PathPlusHints> split(final String query) {
+        return split(ASTBuilder.parse(query), query);
+    }
+
+    /**
+     * Same as {@link #split(String)} on an already parsed query. Each path
+     * also references the {@link org.cytosm.cypher2sql.cypher.ast.clause.match.pattern.PatternPart}
+     * of the AST it has been extracted from.
+     *
+     * @param ast the parsed query
+     * @param query query the AST has been parsed from
+     * @return the paths and hints for this query
+     */
+    public List<PathPlusHints> split(final Statement ast, final String query) {
 
-        Statement ast = ASTBuilder.parse(query);
         // After this statements all column fields will be the offset after.
         Iterator<Clause> clauses = ((SingleQuery) ast.query.part).clauses.iterator();
 
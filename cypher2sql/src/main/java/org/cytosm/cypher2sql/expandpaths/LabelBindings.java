@@ -0,0 +1,147 @@
+package org.cytosm.cypher2sql.expandpaths;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.cytosm.common.gtop.abstraction.AbstractionGraphComponent;
+import org.cytosm.cypher2sql.cypher.ast.clause.match.pattern.NodePattern;
+import org.cytosm.cypher2sql.cypher.ast.clause.match.pattern.PatternElement;
+import org.cytosm.cypher2sql.cypher.ast.clause.match.pattern.RelationshipChain;
+import org.cytosm.pathfinder.routeelements.ExpansionElement;
+
+/**
+ * Label given to each node variable by the segments of a query
+ * being expanded.
+ *
+ * When the expansion combines the segments of a query, a variable
+ * that appears in several segments must have the same label in all
+ * of them. Segments are bound one after the other while going down
+ * the combinations and unbound when going back up:
+ *
+ * <pre>
+ *     int mark = bindings.mark();
+ *     if (bindings.bindAll(segment)) {
+ *         // go deeper
+ *     }
+ *     bindings.undo(mark);
+ * </pre>
+ *
+ * Binding or unbinding a segment costs O(variables of the segment).
+ */
+public final class LabelBindings {
+
+    /**
+     * A node variable and its label.
+     */
+    public static final class Binding {
+        public final String variable;
+        public final String label;
+
+        public Binding(final String variable, final String label) {
+            this.variable = variable;
+            this.label = label;
+        }
+    }
+
+    private final Map<String, String> labels = new HashMap<>();
+    private final List<String> trail = new ArrayList<>();
+
+    /**
+     * @return Returns a mark that can be given to {@link #undo(int)}.
+     */
+    public int mark() {
+        return trail.size();
+    }
+
+    /**
+     * Bind the variable to the label.
+     * @param variable is the name of the variable.
+     * @param label is the label.
+     * @return Returns false if the variable is already bound to another label.
+     */
+    public boolean bind(final String variable, final String label) {
+        String existing = labels.putIfAbsent(variable, label);
+        if (existing == null) {
+            trail.add(variable);
+            return true;
+        }
+        return existing.equals(label);
+    }
+
+    /**
+     * Bind all the variables of a segment. Nothing is bound if it fails.
+     * @param bindings are the bindings of the segment.
+     * @return Returns false if one of the variables is already bound to another label.
+     */
+    public boolean bindAll(final List<Binding> bindings) {
+        int mark = mark();
+        for (Binding binding : bindings) {
+            if (!bind(binding.variable, binding.label)) {
+                undo(mark);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Remove the bindings made since the mark was taken.
+     * @param mark is the value returned by {@link #mark()}.
+     */
+    public void undo(final int mark) {
+        for (int i = trail.size() - 1; i >= mark; i--) {
+            labels.remove(trail.remove(i));
+        }
+    }
+
+    /**
+     * @param variable is the name of the variable.
+     * @return Returns the label of the variable or null if it isn't bound.
+     */
+    public String get(final String variable) {
+        return labels.get(variable);
+    }
+
+    /**
+     * @param element is an expanded pattern element.
+     * @return Returns the labels of its named nodes.
+     */
+    public static List<Binding> of(final PatternElement element) {
+        List<Binding> result = new ArrayList<>();
+        collect(element, result);
+        return result;
+    }
+
+    /**
+     * @param route is a route found by the path finder.
+     * @return Returns the labels resolved for its named nodes.
+     */
+    public static List<Binding> of(final List<ExpansionElement> route) {
+        List<Binding> result = new ArrayList<>();
+        for (ExpansionElement element : route) {
+            String variable = element.getVariable();
+            AbstractionGraphComponent component = (AbstractionGraphComponent) element.getEquivalentMaterializedGtop();
+            if (element.isNode() && variable != null && !variable.isEmpty()
+                    && component != null && !component.getTypes().isEmpty()) {
+                result.add(new Binding(variable, component.getTypes().get(0)));
+            }
+        }
+        return result.isEmpty() ? Collections.emptyList() : result;
+    }
+
+    private static void collect(final PatternElement element, final List<Binding> result) {
+        if (element instanceof RelationshipChain) {
+            RelationshipChain chain = (RelationshipChain) element;
+            collect(chain.element, result);
+            collect(chain.rightNode, result);
+        } else {
+            NodePattern node = (NodePattern) element;
+            if (node.variable.isPresent() && !node.labels.isEmpty()) {
+                result.add(new Binding(node.variable.get().name, node.labels.get(0).name));
+            }
+        }
+    }
+}
@@ -2,6 +2,8 @@ package org.cytosm.cypher2sql.expandpaths;
 
 import java.util.*;
 
+import org.cytosm.cypher2sql.cypher.ast.clause.match.pattern.PatternPart;
+
 /**
  * Contains the path from the Cypher plus any corresponding hints, for example match (a) where
  * a.name = 'test'.
@@ -11,6 +13,7 @@ import java.util.*;
  */
 public class PathPlusHints {
     private String path = null;
+    private PatternPart patternPart = null;
     private Map<String, Set<String>> hints = new HashMap<>();
 
     /**
@@ -22,6 +25,17 @@ public class PathPlusHints {
         this.path = path;
     }
 
+    /**
+     * Constructor that takes the path and the pattern part it comes from.
+     *
+     * @param path the path
+     * @param patternPart the pattern part in the AST of the query
+     */
+    public PathPlusHints(final String path, final PatternPart patternPart) {
+        this.path = path;
+        this.patternPart = patternPart;
+    }
+
     /**
      * Add a hint to this path.
      *
@@ -83,6 +97,15 @@ public class PathPlusHints {
         return path;
     }
 
+    /**
+     * The pattern part of the query AST this path comes from.
+     *
+     * @return the pattern part or null if unknown
+     */
+    public PatternPart getPatternPart() {
+        return patternPart;
+    }
+
     @Override
     public String toString() {
         return "Paths: " + path + "Hints: " + hints;
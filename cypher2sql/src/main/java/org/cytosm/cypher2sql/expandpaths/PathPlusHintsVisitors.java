@@ -7,7 +7,6 @@ import org.cytosm.cypher2sql.cypher.ast.clause.match.pattern.*;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Collectors;
 
 /**
  * Collect all the relationship chains that exists.
@@ -16,7 +15,7 @@ public class PathPlusHintsVisitors {
 
     private static class ClauseVisitor extends Walk.BaseRootVisitor {
         String originalCypher;
-        List<String> relationshipchains = new ArrayList<>();
+        List<PathPlusHints> relationshipchains = new ArrayList<>();
 
         ClauseVisitor(String originalCypher) {
             this.originalCypher = originalCypher;
@@ -24,7 +23,7 @@ public class PathPlusHintsVisitors {
 
         @Override
         public void visitPattern(Pattern pattern) {
-            pattern.patternParts.forEach(pp -> addRelchain(pp.span));
+            pattern.patternParts.forEach(this::addRelchain);
         }
 
         @Override
@@ -34,8 +33,10 @@ public class PathPlusHintsVisitors {
             Walk.walk(this, clause);
         }
 
-        private void addRelchain(Span span) {
-            relationshipchains.add(originalCypher.substring(span.lo, span.hi));
+        private void addRelchain(PatternPart pp) {
+            // The element excludes the name of the path and the shortestPath(...) wrapper.
+            Span span = pp.element.span;
+            relationshipchains.add(new PathPlusHints(originalCypher.substring(span.lo, span.hi), pp));
         }
 
     }
@@ -43,7 +44,6 @@ public class PathPlusHintsVisitors {
     public static void parse(ASTNode clause, List<PathPlusHints> matches, String originalCypher) {
         ClauseVisitor matchVisitor = new ClauseVisitor(originalCypher);
         matchVisitor.parseClause(clause);
-        matches.addAll(matchVisitor.relationshipchains.stream()
-                .map(PathPlusHints::new).collect(Collectors.toList()));
+        matches.addAll(matchVisitor.relationshipchains);
     }
 }
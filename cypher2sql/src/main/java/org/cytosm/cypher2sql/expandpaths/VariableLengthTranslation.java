@@ -0,0 +1,25 @@
+package org.cytosm.cypher2sql.expandpaths;
+
+/**
+ * How the variable length relationships of a query, such as
+ * <code>-[:KNOWS*1..3]-</code>, are translated.
+ */
+public enum VariableLengthTranslation {
+
+    /**
+     * Each possible length gives a new variant of the query. The
+     * number of variants grows with the upper bound and an upper
+     * bound is required.
+     */
+    EXPAND,
+
+    /**
+     * A variable length relationship whose type is implemented by a single
+     * join table between the same table is kept as one hop, translated
+     * into a recursive common table expression. The size of the SQL doesn't
+     * depend on the bounds and the upper bound is optional.
+     *
+     * The other variable length relationships are expanded.
+     */
+    RECURSIVE_CTE
+}
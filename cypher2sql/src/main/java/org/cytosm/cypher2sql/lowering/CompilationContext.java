@@ -0,0 +1,70 @@
+package org.cytosm.cypher2sql.lowering;
+
+/**
+ * State owned by a single translation.
+ *
+ * Every name generated while lowering a query comes from here
+ * (FROM item aliases, temporary variables and sub query names).
+ * Because a new context is created for each translation, two
+ * translations never share any mutable state and translating the
+ * same query twice produces exactly the same SQL.
+ *
+ * A context is meant to be used by one thread at a time. When
+ * several expanded queries are lowered concurrently, each one uses
+ * its own {@link #branch(int)} of the translation context.
+ */
+public class CompilationContext {
+
+    private static final String SOURCE_PREFIX = "__src";
+    private static final String TEMPORARY_PREFIX = "__tmp";
+    private static final String SUBQUERY_PREFIX = "SUB_";
+
+    private final String namespace;
+
+    private int lastSourceName = 0;
+    private int lastTemporary = 0;
+    private long lastSubquery = 0;
+
+    public CompilationContext() {
+        this("");
+    }
+
+    private CompilationContext(final String namespace) {
+        this.namespace = namespace;
+    }
+
+    /**
+     * Create the context of one expanded query. Names generated by
+     * the returned context never clash with the ones generated by this
+     * context or by its other branches, and only depend on the index.
+     * This is what makes the lowering of expanded queries independent
+     * of the order in which they are lowered.
+     *
+     * @param index is the position of the expanded query.
+     * @return Returns a new context.
+     */
+    public CompilationContext branch(final int index) {
+        return new CompilationContext(namespace + index + "_");
+    }
+
+    /**
+     * @return Returns a new name for a {@link org.cytosm.cypher2sql.lowering.sqltree.from.FromItem}.
+     */
+    public String genFromItemName() {
+        return SOURCE_PREFIX + namespace + lastSourceName++;
+    }
+
+    /**
+     * @return Returns a new name for a {@link org.cytosm.cypher2sql.lowering.typeck.var.TempVar}.
+     */
+    public String genTempVarName() {
+        return TEMPORARY_PREFIX + namespace + lastTemporary++;
+    }
+
+    /**
+     * @return Returns a new name for a {@link org.cytosm.cypher2sql.lowering.sqltree.WithSelect}.
+     */
+    public String genSubqueryName() {
+        return SUBQUERY_PREFIX + namespace + lastSubquery++;
+    }
+}
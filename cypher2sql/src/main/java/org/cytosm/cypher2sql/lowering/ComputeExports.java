@@ -15,6 +15,8 @@ import org.cytosm.cypher2sql.lowering.typeck.expr.ExprWalk;
 
 import static org.cytosm.cypher2sql.lowering.exceptions.fns.LambdaExceptionUtil.rethrowConsumer;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.stream.Collectors;
 
 /**
@@ -74,6 +76,7 @@ public class ComputeExports {
 
     private static class MutateExportsInSelects extends Walk.BaseSQLNodeVisitor {
         private final VarDependencies vars;
+        private boolean root = true;
 
         MutateExportsInSelects(final VarDependencies vars) {
             this.vars = vars;
@@ -87,10 +90,45 @@ public class ComputeExports {
 
         @Override
         public void visitScopeSelect(ScopeSelect scopeSelect) throws Cypher2SqlException {
+            boolean nested = !root;
+            root = false;
             scopeSelect.withQueries.forEach(rethrowConsumer(this::visitWithSelect));
 
             scopeSelect.ret.exportedItems = vars.getReturnExprs();
+            if (nested) {
+                // A nested ScopeSelect is a branch of a UNION and the select reading
+                // the UNION has the same ORDER BY. It might sort on expressions that
+                // aren't returned: export them as well. The branch then only needs
+                // to return its top rows.
+                List<Expr> exportedItems = new ArrayList<>(vars.getReturnExprs());
+                for (SimpleSelect.OrderItem oi: scopeSelect.ret.orderBy) {
+                    if (exportedItems.stream().noneMatch(e -> sameValue(e, oi.item))) {
+                        exportedItems.add(oi.item);
+                    }
+                }
+                scopeSelect.ret.exportedItems = exportedItems;
+                scopeSelect.ret.restrictToTopRows();
+            }
+        }
+    }
+
+    /**
+     * Returns true if both expressions are known to be the same
+     * variable or the same property of a variable.
+     */
+    private static boolean sameValue(Expr a, Expr b) {
+        if (a instanceof ExprTree.AliasExpr) {
+            return sameValue(((ExprTree.AliasExpr) a).expr, b);
+        }
+        if (a instanceof ExprVar && b instanceof ExprVar) {
+            return ((ExprVar) a).var == ((ExprVar) b).var;
+        }
+        if (a instanceof ExprTree.PropertyAccess && b instanceof ExprTree.PropertyAccess) {
+            ExprTree.PropertyAccess pa = (ExprTree.PropertyAccess) a;
+            ExprTree.PropertyAccess pb = (ExprTree.PropertyAccess) b;
+            return pa.propertyAccessed.equals(pb.propertyAccessed) && sameValue(pa.expression, pb.expression);
         }
+        return false;
     }
 
     /**
@@ -42,15 +42,19 @@ public class ComputeFromItems {
      *
      * @param sqltree is the root of the SQL tree.
      * @param vars is the var dependencies analysis ran previously.
+     * @param ctx is the compilation context.
      */
-    public static void computeFromItems(ScopeSelect sqltree, VarDependencies vars) throws Cypher2SqlException {
-        SQLTreeVisitor visitor = new SQLTreeVisitor(vars);
+    public static void computeFromItems(ScopeSelect sqltree, VarDependencies vars, CompilationContext ctx)
+            throws Cypher2SqlException
+    {
+        SQLTreeVisitor visitor = new SQLTreeVisitor(vars, ctx);
         Walk.walkSQLNode(visitor, sqltree);
     }
 
     private static class SQLTreeVisitor extends Walk.BaseSQLNodeVisitor {
 
         final VarDependencies vars;
+        final CompilationContext ctx;
 
         /**
          * Map variable unique names to WithSelect
@@ -58,8 +62,9 @@ public class ComputeFromItems {
          */
         final Map<String, WithSelect> whereToGetTheVar = new HashMap<>();
 
-        SQLTreeVisitor(final VarDependencies vars) {
+        SQLTreeVisitor(final VarDependencies vars, final CompilationContext ctx) {
             this.vars = vars;
+            this.ctx = ctx;
         }
 
         @Override
@@ -73,7 +78,7 @@ public class ComputeFromItems {
             // Iterate over used variables to compute where they might come from.
             // In this loop we only check if they come from another WithSelect.
             usedVars.forEach(var -> {
-                FromItem fromItem = new FromItem();
+                FromItem fromItem = new FromItem(ctx);
                 fromItem.variables.add(var);
 
                 // The var will be fetched from another SELECT.
@@ -97,7 +102,7 @@ public class ComputeFromItems {
                     .filter(x -> x instanceof NodeOrRelVar && !whereToGetTheVar.containsKey(x.uniqueName))
                     .forEach(var -> {
 
-                FromItem fromItem = new FromItem();
+                FromItem fromItem = new FromItem(ctx);
                 fromItem.variables.add(var);
                 // The var will be fetched from the table source it comes from.
                 fromItems.add(fromItem);
@@ -129,7 +134,7 @@ public class ComputeFromItems {
                     public void visitVariable(ExprVar expr) {
 
                         // Search for the FromItem that provide the variable var
-                        FromItem fromItem = new FromItem();
+                        FromItem fromItem = new FromItem(ctx);
                         fromItem.variables.add(expr.var);
 
                         WithSelect source = whereToGetTheVar.get(expr.var.uniqueName);
@@ -190,7 +195,7 @@ public class ComputeFromItems {
                 // that it is using.
                 // (Does this contains indirect variable use?)
                 // If not -> then there is a bug in VarDependencies.
-                FromItem fromItem = new FromItem();
+                FromItem fromItem = new FromItem(ctx);
                 fromItem.source = x.getKey();
                 fromItem.variables = vars.getUsedAndIndirectUsedVars(x.getKey().varId).stream()
                         .collect(Collectors.toList());
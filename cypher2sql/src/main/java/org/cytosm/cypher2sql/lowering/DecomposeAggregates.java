@@ -0,0 +1,424 @@
+package org.cytosm.cypher2sql.lowering;
+
+import org.cytosm.cypher2sql.lowering.rendering.RenderingHelper;
+import org.cytosm.cypher2sql.lowering.sqltree.*;
+import org.cytosm.cypher2sql.lowering.sqltree.from.FromItem;
+import org.cytosm.cypher2sql.lowering.typeck.constexpr.ConstVal;
+import org.cytosm.cypher2sql.lowering.typeck.expr.Expr;
+import org.cytosm.cypher2sql.lowering.typeck.expr.ExprFn;
+import org.cytosm.cypher2sql.lowering.typeck.expr.ExprTree;
+import org.cytosm.cypher2sql.lowering.typeck.expr.ExprVar;
+import org.cytosm.cypher2sql.lowering.typeck.types.NumberType;
+import org.cytosm.cypher2sql.lowering.typeck.var.AliasVar;
+import org.cytosm.cypher2sql.lowering.typeck.var.TempVar;
+
+import java.util.*;
+
+/**
+ * This pass computes the aggregates of a RETURN reading a UNION
+ * on each branch of the UNION and combines them above it.
+ *
+ * A RETURN such as <pre>RETURN count(b), avg(b.length)</pre> is expanded
+ * into several cyphers, one per table <code>b</code> can come from. Each
+ * of them computes its own aggregates and the UNION of their results has
+ * one row per expanded cypher instead of one row.
+ *
+ * Each branch computes partial aggregates and the select reading the
+ * UNION combines them:
+ *
+ * <pre>
+ *     count(x)    partial: count(x)             combined: sum(partial)
+ *     sum(x)      partial: sum(x)               combined: sum(partial)
+ *     min(x)      partial: min(x)               combined: min(partial)
+ *     max(x)      partial: max(x)               combined: max(partial)
+ *     avg(x)      partial: sum(x) and count(x)  combined: sum(sum) / sum(count)
+ * </pre>
+ *
+ * An aggregate with a DISTINCT can only be decomposed that way if the branches
+ * can't see the same values: see {@link DisjointBranches#aggregatesDisjoint(List)}.
+ * Otherwise the branches return the values aggregated and the aggregates
+ * are only computed above the UNION.
+ *
+ * UNIONs can be nested: a branch reading a UNION combines the partial
+ * aggregates of its own branches into partial aggregates.
+ *
+ * Only RETURNs where every item is an aggregate are decomposed.
+ * This pass must run on the merged tree, before {@link PruneUnusedColumns}.
+ */
+public class DecomposeAggregates {
+
+    /**
+     * Prefix of the columns holding the partial aggregates.
+     */
+    private static final String PARTIAL_COLUMN = "__agg";
+
+    /**
+     * What a select must return.
+     */
+    private enum Output {
+        // The values aggregated.
+        VALUES,
+        // The partial aggregates.
+        PARTIALS,
+        // The aggregates of the RETURN.
+        RESULT,
+    }
+
+    /**
+     * Decompose the aggregates of the RETURN of the tree.
+     * @param sqltree is the root of the SQL tree.
+     * @param disjoint is true if the expanded cyphers merged in the tree can't
+     *                 aggregate the same values with a DISTINCT.
+     * @param ctx is the compilation context.
+     */
+    public static void decompose(ScopeSelect sqltree, boolean disjoint, CompilationContext ctx) {
+        SimpleSelect ret = sqltree.ret;
+        UnionSelect union = unionRead(ret);
+        if (union == null) {
+            return;
+        }
+        SimpleSelect template = ret;
+        int size;
+        if (ret instanceof SelectAll) {
+            template = firstReturn(union);
+            if (template == null) {
+                return;
+            }
+            // The columns added for the ORDER BY aren't returned.
+            size = template.exportedItems.size() - ((SelectAll) ret).hiddenColumns.size();
+        } else {
+            size = ret.exportedItems.size();
+        }
+
+        List<ExprFn> aggregates = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            ExprFn fn = aggregate(template.exportedItems.get(i));
+            if (fn == null) {
+                return;
+            }
+            aggregates.add(fn);
+        }
+        if (aggregates.isEmpty() || !isDecomposable(ret, aggregates)) {
+            return;
+        }
+
+        Decomposition decomposition = new Decomposition(template, aggregates, ctx);
+        sqltree.ret = decomposition.rewrite(ret, Output.RESULT, disjoint);
+    }
+
+    /**
+     * Returns the UNION the select reads or null if it reads something else.
+     */
+    private static UnionSelect unionRead(SimpleSelect select) {
+        if (select.fromItem.size() != 1 || !select.joinList().isEmpty() || select.whereCondition != null) {
+            return null;
+        }
+        WithSelect source = select.fromItem.get(0).source;
+        if (source == null || !(source.subquery instanceof UnionSelect)) {
+            return null;
+        }
+        return (UnionSelect) source.subquery;
+    }
+
+    /**
+     * Returns the RETURN of the first expanded cypher of a merged UNION.
+     */
+    private static SimpleSelect firstReturn(UnionSelect union) {
+        BaseSelect select = union;
+        while (true) {
+            if (select instanceof UnionSelect) {
+                List<SimpleOrScopeSelect> unions = ((UnionSelect) select).unions;
+                if (unions.isEmpty()) {
+                    return null;
+                }
+                select = unions.get(0);
+            } else if (select instanceof ScopeSelect) {
+                select = ((ScopeSelect) select).ret;
+            } else if (select instanceof SelectAll) {
+                select = unionRead((SelectAll) select);
+                if (select == null) {
+                    return null;
+                }
+            } else {
+                return (SimpleSelect) select;
+            }
+        }
+    }
+
+    /**
+     * Returns the aggregate function exported or null if the expression isn't one.
+     */
+    private static ExprFn aggregate(Expr expr) {
+        if (expr instanceof ExprTree.AliasExpr) {
+            expr = ((ExprTree.AliasExpr) expr).expr;
+        } else if (expr instanceof ExprVar && ((ExprVar) expr).var instanceof AliasVar) {
+            expr = ((AliasVar) ((ExprVar) expr).var).aliased;
+        }
+        if (!(expr instanceof ExprFn)) {
+            return null;
+        }
+        ExprFn fn = (ExprFn) expr;
+        if (fn.name == null || fn.name == ExprFn.Name.NULLIF || fn.args.size() != 1) {
+            return null;
+        }
+        return fn;
+    }
+
+    /**
+     * Check that all the selects below the UNION compute the same aggregates.
+     */
+    private static boolean isDecomposable(BaseSelect select, List<ExprFn> aggregates) {
+        if (select instanceof UnionSelect) {
+            List<SimpleOrScopeSelect> unions = ((UnionSelect) select).unions;
+            return !unions.isEmpty() && unions.stream().allMatch(child -> isDecomposable(child, aggregates));
+        } else if (select instanceof ScopeSelect) {
+            return isDecomposable(((ScopeSelect) select).ret, aggregates);
+        } else if (select instanceof SelectAll) {
+            UnionSelect union = unionRead((SelectAll) select);
+            return union != null && isDecomposable(union, aggregates);
+        }
+        SimpleSelect simpleSelect = (SimpleSelect) select;
+        if (simpleSelect.exportedItems.size() < aggregates.size()) {
+            return false;
+        }
+        for (int i = 0; i < aggregates.size(); i++) {
+            ExprFn fn = aggregate(simpleSelect.exportedItems.get(i));
+            if (fn == null || fn.name != aggregates.get(i).name || fn.distinct != aggregates.get(i).distinct) {
+                return false;
+            }
+        }
+        UnionSelect union = unionRead(simpleSelect);
+        return union == null || isDecomposable(union, aggregates);
+    }
+
+    private static class Decomposition {
+        private final List<ExprFn> aggregates;
+        // The names of the aggregates returned, null when not aliased.
+        private final List<String> aliases = new ArrayList<>();
+        private final CompilationContext ctx;
+        private final RenderingHelper helper = new RenderingHelper();
+        // Selects are shared between expanded cyphers: only rewrite them once.
+        private final Map<SimpleSelect, SimpleSelect> rewritten = new IdentityHashMap<>();
+
+        Decomposition(SimpleSelect template, List<ExprFn> aggregates, CompilationContext ctx) {
+            this.aggregates = aggregates;
+            for (int i = 0; i < aggregates.size(); i++) {
+                aliases.add(alias(template.exportedItems.get(i)));
+            }
+            this.ctx = ctx;
+        }
+
+        /**
+         * An aggregate with a DISTINCT can't be combined from partial
+         * aggregates of branches that can see the same values.
+         */
+        private boolean needsValues() {
+            return aggregates.stream().anyMatch(fn -> fn.distinct &&
+                    fn.name != ExprFn.Name.MIN && fn.name != ExprFn.Name.MAX);
+        }
+
+        private void rewriteBranches(BaseSelect select, Output output, boolean disjoint) {
+            if (select instanceof UnionSelect) {
+                UnionSelect union = (UnionSelect) select;
+                // Two branches can return the same partial aggregates.
+                union.distinct = false;
+                for (SimpleOrScopeSelect child: union.unions) {
+                    rewriteBranches(child, output, disjoint);
+                }
+            } else if (select instanceof ScopeSelect) {
+                ScopeSelect scope = (ScopeSelect) select;
+                scope.ret = rewrite(scope.ret, output, disjoint);
+            } else {
+                rewrite((SimpleSelect) select, output, disjoint);
+            }
+        }
+
+        /**
+         * Rewrite the select so that it returns the expected output.
+         * @param disjoint is true if the branches of the UNION merging
+         *                 expanded cyphers are disjoint.
+         * @return Returns the rewritten select.
+         */
+        SimpleSelect rewrite(SimpleSelect select, Output output, boolean disjoint) {
+            SimpleSelect done = rewritten.get(select);
+            if (done != null) {
+                return done;
+            }
+            UnionSelect union = unionRead(select);
+            SimpleSelect result = union == null
+                    ? rewriteLeaf(select, output)
+                    : rewriteCombine(select, union, output, disjoint);
+            rewritten.put(select, result);
+            return result;
+        }
+
+        /**
+         * A select computing the aggregates on its rows.
+         */
+        private SimpleSelect rewriteLeaf(SimpleSelect select, Output output) {
+            List<Expr> exportedItems = new ArrayList<>();
+            for (int i = 0; i < aggregates.size(); i++) {
+                ExprFn fn = aggregate(select.exportedItems.get(i));
+                Expr value = fn.args.get(0);
+                if (output == Output.VALUES) {
+                    exportedItems.add(new ExprTree.AliasExpr(value, column(i, 0)));
+                } else {
+                    List<ExprFn> partials = partials(fn, value);
+                    for (int p = 0; p < partials.size(); p++) {
+                        exportedItems.add(new ExprTree.AliasExpr(partials.get(p), column(i, p)));
+                    }
+                }
+            }
+            // The list can be shared with clones of this select: replace it.
+            select.exportedItems = exportedItems;
+            clearOrderAndLimit(select);
+            return select;
+        }
+
+        /**
+         * A select reading a UNION: the aggregates of its branches are combined.
+         */
+        private SimpleSelect rewriteCombine(SimpleSelect select, UnionSelect union,
+                                            Output output, boolean disjoint) {
+            // Only the UNION of the expanded cyphers is read by a SelectAll.
+            boolean branchesDisjoint = select instanceof SelectAll && disjoint;
+            Output branchOutput = output == Output.VALUES || (needsValues() && !branchesDisjoint)
+                    ? Output.VALUES
+                    : Output.PARTIALS;
+            rewriteBranches(union, branchOutput, disjoint);
+
+            SimpleSelect combine = select;
+            if (select instanceof SelectAll) {
+                combine = new SimpleSelectWithInnerJoins();
+                combine.fromItem.addAll(select.fromItem);
+                combine.limit = select.limit;
+                combine.skip = select.skip;
+            }
+            FromItem fromItem = combine.fromItem.get(0);
+
+            List<Expr> exportedItems = new ArrayList<>();
+            for (int i = 0; i < aggregates.size(); i++) {
+                ExprFn fn = aggregates.get(i);
+                if (branchOutput == Output.VALUES) {
+                    Expr values = columnOf(fromItem, i, 0);
+                    if (output == Output.VALUES) {
+                        exportedItems.add(values);
+                    } else if (output == Output.PARTIALS) {
+                        List<ExprFn> partials = partials(fn, values);
+                        for (int p = 0; p < partials.size(); p++) {
+                            exportedItems.add(new ExprTree.AliasExpr(partials.get(p), column(i, p)));
+                        }
+                    } else {
+                        exportedItems.add(result(i, function(fn.name, fn.distinct, values)));
+                    }
+                } else {
+                    List<Expr> combined = new ArrayList<>();
+                    List<ExprFn> partials = partials(fn, null);
+                    for (int p = 0; p < partials.size(); p++) {
+                        combined.add(combining(partials.get(p), columnOf(fromItem, i, p)));
+                    }
+                    if (output == Output.PARTIALS) {
+                        for (int p = 0; p < combined.size(); p++) {
+                            exportedItems.add(new ExprTree.AliasExpr(combined.get(p), column(i, p)));
+                        }
+                    } else {
+                        exportedItems.add(result(i, finalValue(fn, combined)));
+                    }
+                }
+            }
+            combine.exportedItems = exportedItems;
+            combine.isDistinct = false;
+            // The RETURN has a single row: there is nothing to sort.
+            combine.orderBy = new ArrayList<>();
+            if (output != Output.RESULT) {
+                combine.limit = -1;
+                combine.skip = -1;
+            }
+            return combine;
+        }
+
+        /**
+         * The partial aggregates computed on each branch.
+         * @param value is the value aggregated, null if not known yet.
+         */
+        private List<ExprFn> partials(ExprFn fn, Expr value) {
+            if (fn.name == ExprFn.Name.AVG) {
+                return Arrays.asList(
+                        function(ExprFn.Name.SUM, fn.distinct, value),
+                        function(ExprFn.Name.COUNT, fn.distinct, value));
+            }
+            boolean distinct = fn.distinct && fn.name != ExprFn.Name.MIN && fn.name != ExprFn.Name.MAX;
+            return Collections.singletonList(function(fn.name, distinct, value));
+        }
+
+        /**
+         * The aggregate combining the partial aggregates of the branches.
+         */
+        private Expr combining(ExprFn partial, Expr column) {
+            switch (partial.name) {
+                case MIN:
+                case MAX:
+                    return function(partial.name, false, column);
+                default:
+                    return function(ExprFn.Name.SUM, false, column);
+            }
+        }
+
+        /**
+         * Compute the aggregate of the RETURN out of its combined partial aggregates.
+         */
+        private Expr finalValue(ExprFn fn, List<Expr> combined) {
+            if (fn.name == ExprFn.Name.AVG) {
+                Expr sum = new ExprTree.Mul(combined.get(0), new ConstVal.DoubleVal(1.0));
+                Expr count = new ExprFn(ExprFn.Name.NULLIF,
+                        Arrays.asList(combined.get(1), new ConstVal.LongVal(0)));
+                return new ExprTree.Div(sum, count);
+            }
+            return combined.get(0);
+        }
+
+        /**
+         * The aggregate is returned under the name of the RETURN.
+         */
+        private Expr result(int i, Expr value) {
+            return aliases.get(i) == null ? value : new ExprTree.AliasExpr(value, aliases.get(i));
+        }
+
+        private static String alias(Expr item) {
+            if (item instanceof ExprTree.AliasExpr) {
+                return ((ExprTree.AliasExpr) item).alias;
+            } else if (item instanceof ExprVar) {
+                return ((ExprVar) item).var.uniqueName;
+            }
+            return null;
+        }
+
+        private String column(int aggregate, int partial) {
+            return PARTIAL_COLUMN + aggregate + "_" + partial;
+        }
+
+        /**
+         * A column of the UNION read through the given FromItem.
+         */
+        private Expr columnOf(FromItem fromItem, int aggregate, int partial) {
+            TempVar var = new TempVar(ctx, new NumberType());
+            var.uniqueName = helper.renderEscapedColumnName(column(aggregate, partial));
+            fromItem.variables.add(var);
+            return new ExprVar(var);
+        }
+
+        private static ExprFn function(ExprFn.Name name, boolean distinct, Expr arg) {
+            ExprFn fn = new ExprFn(name, new ArrayList<>(Collections.singletonList(arg)));
+            fn.distinct = distinct;
+            return fn;
+        }
+
+        private static void clearOrderAndLimit(SimpleSelect select) {
+            // The rows of a branch are aggregated above: they must all be kept.
+            select.orderBy = new ArrayList<>();
+            select.limit = -1;
+            select.skip = -1;
+            select.isDistinct = false;
+        }
+    }
+}
@@ -0,0 +1,257 @@
+package org.cytosm.cypher2sql.lowering;
+
+import org.cytosm.common.gtop.GTopInterfaceImpl;
+import org.cytosm.common.gtop.abstraction.AbstractionNode;
+import org.cytosm.common.gtop.implementation.relational.ImplementationNode;
+import org.cytosm.cypher2sql.cypher.ast.SingleQuery;
+import org.cytosm.cypher2sql.cypher.ast.Statement;
+import org.cytosm.cypher2sql.cypher.ast.clause.Clause;
+import org.cytosm.cypher2sql.cypher.ast.clause.match.Match;
+import org.cytosm.cypher2sql.cypher.ast.clause.match.pattern.*;
+import org.cytosm.cypher2sql.cypher.ast.clause.projection.ProjectionClause;
+import org.cytosm.cypher2sql.cypher.ast.clause.projection.Return;
+import org.cytosm.cypher2sql.cypher.ast.clause.projection.ReturnItem;
+import org.cytosm.cypher2sql.cypher.ast.expression.Expression;
+import org.cytosm.cypher2sql.cypher.ast.expression.FunctionInvocation;
+import org.cytosm.cypher2sql.cypher.ast.expression.Variable;
+
+import java.util.*;
+
+/**
+ * Tells which expanded cyphers can return the same rows.
+ *
+ * Expanded cyphers are merged with a UNION ALL: this is what Cypher
+ * expects as long as the RETURN isn't DISTINCT. With a RETURN DISTINCT,
+ * two expanded cyphers can return the same row and the merge needs to
+ * remove duplicates, unless the two expanded cyphers are disjoint.
+ *
+ * Two expanded cyphers are disjoint if one of the nodes they return as
+ * a whole comes from different tables in each of them: those nodes can't
+ * be the same. Expanded cyphers that aren't disjoint are grouped together
+ * by {@link #overlappingGroups(List)}.
+ *
+ * The same reasoning applies to the nodes counted with a DISTINCT,
+ * such as <pre>RETURN count(DISTINCT b)</pre>: when they come from different
+ * tables, each expanded cypher can count its own nodes and the counts
+ * can be added. See {@link #aggregatesDisjoint(List)}.
+ */
+public final class DisjointBranches {
+
+    /**
+     * Whether or not the RETURN is DISTINCT.
+     */
+    public final boolean distinct;
+
+    /**
+     * For each returned item, the tables the node comes from.
+     * null if the item isn't a node or if its tables aren't known.
+     */
+    private final List<Set<String>> tables;
+
+    /**
+     * For each returned item, the tables of the node aggregated with a DISTINCT.
+     * null if the item isn't a DISTINCT aggregate, empty if its tables aren't known.
+     */
+    private final List<Set<String>> distinctArguments;
+
+    private DisjointBranches(final boolean distinct, final List<Set<String>> tables,
+                             final List<Set<String>> distinctArguments) {
+        this.distinct = distinct;
+        this.tables = tables;
+        this.distinctArguments = distinctArguments;
+    }
+
+    /**
+     * Analyze an expanded cypher.
+     * @param statement is the expanded cypher.
+     * @param gTop is the gTop used to find the tables of the labels.
+     * @return Returns the result of the analysis.
+     */
+    public static DisjointBranches of(final Statement statement, final GTopInterfaceImpl gTop) {
+        if (!(statement.query.part instanceof SingleQuery)) {
+            return new DisjointBranches(false, Collections.emptyList(), Collections.emptyList());
+        }
+        // Tables of the node variables in scope.
+        Map<String, Set<String>> nodes = new HashMap<>();
+        for (Clause clause: ((SingleQuery) statement.query.part).clauses) {
+            if (clause instanceof Match) {
+                for (PatternPart pp: ((Match) clause).pattern.patternParts) {
+                    collectNodes(pp.element, nodes, gTop);
+                }
+            } else if (clause instanceof Return) {
+                Return ret = (Return) clause;
+                List<Set<String>> tables = new ArrayList<>();
+                List<Set<String>> distinctArguments = new ArrayList<>();
+                for (ReturnItem item: ret.returnItems) {
+                    tables.add(item.expression instanceof Variable
+                            ? nodes.get(((Variable) item.expression).name)
+                            : null);
+                    distinctArguments.add(distinctArgument(item.expression, nodes));
+                }
+                return new DisjointBranches(ret.distinct, tables, distinctArguments);
+            } else if (clause instanceof ProjectionClause) {
+                nodes = project((ProjectionClause) clause, nodes);
+            }
+        }
+        return new DisjointBranches(false, Collections.emptyList(), Collections.emptyList());
+    }
+
+    /**
+     * @param other is the analysis of another expanded cypher of the same query.
+     * @return Returns true if the two expanded cyphers can't return the same row.
+     */
+    public boolean isDisjointFrom(final DisjointBranches other) {
+        for (int i = 0; i < tables.size() && i < other.tables.size(); i++) {
+            Set<String> mine = tables.get(i);
+            Set<String> theirs = other.tables.get(i);
+            if (mine != null && theirs != null && Collections.disjoint(mine, theirs)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param other is the analysis of another expanded cypher of the same query.
+     * @return Returns true if the nodes aggregated with a DISTINCT by the two
+     * expanded cyphers can't be the same.
+     */
+    public boolean aggregatesDisjointFrom(final DisjointBranches other) {
+        for (int i = 0; i < distinctArguments.size(); i++) {
+            Set<String> mine = distinctArguments.get(i);
+            if (mine == null) {
+                continue;
+            }
+            Set<String> theirs = i < other.distinctArguments.size() ? other.distinctArguments.get(i) : null;
+            if (mine.isEmpty() || theirs == null || theirs.isEmpty() || !Collections.disjoint(mine, theirs)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param branches are the analysis of the expanded cyphers.
+     * @return Returns true if no two expanded cyphers aggregate the same nodes with a DISTINCT.
+     */
+    public static boolean aggregatesDisjoint(final List<DisjointBranches> branches) {
+        for (int i = 0; i < branches.size(); i++) {
+            for (int j = i + 1; j < branches.size(); j++) {
+                if (!branches.get(i).aggregatesDisjointFrom(branches.get(j))) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Group the expanded cyphers that might return the same rows. Two
+     * expanded cyphers in different groups are disjoint. Groups are
+     * sorted by their first element.
+     * @param branches are the analysis of the expanded cyphers.
+     * @return Returns the indices of the expanded cyphers in each group.
+     */
+    public static List<List<Integer>> overlappingGroups(final List<DisjointBranches> branches) {
+        int[] group = new int[branches.size()];
+        for (int i = 0; i < group.length; i++) {
+            group[i] = i;
+        }
+        for (int i = 0; i < branches.size(); i++) {
+            for (int j = i + 1; j < branches.size(); j++) {
+                if (!branches.get(i).isDisjointFrom(branches.get(j))) {
+                    union(group, i, j);
+                }
+            }
+        }
+        Map<Integer, List<Integer>> groups = new TreeMap<>();
+        for (int i = 0; i < group.length; i++) {
+            groups.computeIfAbsent(find(group, i), k -> new ArrayList<>()).add(i);
+        }
+        List<List<Integer>> result = new ArrayList<>(groups.values());
+        result.sort(Comparator.comparing(g -> g.get(0)));
+        return result;
+    }
+
+    private static int find(final int[] group, int i) {
+        while (group[i] != i) {
+            group[i] = group[group[i]];
+            i = group[i];
+        }
+        return i;
+    }
+
+    private static void union(final int[] group, final int i, final int j) {
+        int a = find(group, i);
+        int b = find(group, j);
+        if (a != b) {
+            group[Math.max(a, b)] = Math.min(a, b);
+        }
+    }
+
+    private static void collectNodes(final PatternElement element, final Map<String, Set<String>> nodes,
+                                     final GTopInterfaceImpl gTop) {
+        if (element instanceof RelationshipChain) {
+            collectNodes(((RelationshipChain) element).element, nodes, gTop);
+            collectNodes(((RelationshipChain) element).rightNode, nodes, gTop);
+            return;
+        }
+        NodePattern node = (NodePattern) element;
+        if (!node.variable.isPresent() || node.labels.isEmpty()) {
+            return;
+        }
+        Set<String> tables = new HashSet<>();
+        for (AbstractionNode abstraction: gTop.getAbstractionNodesByTypes(node.labels.get(0).name)) {
+            List<ImplementationNode> implementations =
+                    gTop.getImplementationNodesByType(abstraction.getTypes().get(0));
+            if (implementations.isEmpty()) {
+                // Unknown tables, nothing can be proven.
+                return;
+            }
+            for (ImplementationNode implementation: implementations) {
+                tables.add(implementation.getTableName().toLowerCase());
+            }
+        }
+        if (tables.isEmpty()) {
+            return;
+        }
+        // The same variable can only be bound to rows present in both sets.
+        nodes.merge(node.variable.get().name, tables, (a, b) -> {
+            Set<String> both = new HashSet<>(a);
+            both.retainAll(b);
+            return both;
+        });
+    }
+
+    private static Set<String> distinctArgument(final Expression expression, final Map<String, Set<String>> nodes) {
+        if (!(expression instanceof FunctionInvocation) || !((FunctionInvocation) expression).distinct) {
+            return null;
+        }
+        List<Expression> args = ((FunctionInvocation) expression).args;
+        if (args.size() != 1 || !(args.get(0) instanceof Variable)) {
+            return Collections.emptySet();
+        }
+        return nodes.getOrDefault(((Variable) args.get(0)).name, Collections.emptySet());
+    }
+
+    /**
+     * Node variables still in scope after a WITH.
+     */
+    private static Map<String, Set<String>> project(final ProjectionClause with, final Map<String, Set<String>> nodes) {
+        Map<String, Set<String>> result = new HashMap<>();
+        for (ReturnItem item: with.returnItems) {
+            if (!(item.expression instanceof Variable)) {
+                continue;
+            }
+            Set<String> tables = nodes.get(((Variable) item.expression).name);
+            if (tables == null) {
+                continue;
+            }
+            String name = item instanceof ReturnItem.Aliased
+                    ? ((ReturnItem.Aliased) item).name()
+                    : ((Variable) item.expression).name;
+            result.put(name, tables);
+        }
+        return result;
+    }
+}
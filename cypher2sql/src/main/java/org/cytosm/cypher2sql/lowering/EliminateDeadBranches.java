@@ -0,0 +1,621 @@
+package org.cytosm.cypher2sql.lowering;
+
+import org.cytosm.common.gtop.GTopInterfaceImpl;
+import org.cytosm.common.gtop.implementation.relational.*;
+import org.cytosm.cypher2sql.lowering.exceptions.Cypher2SqlException;
+import org.cytosm.cypher2sql.lowering.sqltree.*;
+import org.cytosm.cypher2sql.lowering.sqltree.from.FromItem;
+import org.cytosm.cypher2sql.lowering.typeck.constexpr.ConstExprFolder;
+import org.cytosm.cypher2sql.lowering.typeck.constexpr.ConstVal;
+import org.cytosm.cypher2sql.lowering.typeck.expr.Expr;
+import org.cytosm.cypher2sql.lowering.typeck.expr.ExprFn;
+import org.cytosm.cypher2sql.lowering.typeck.expr.ExprTree;
+import org.cytosm.cypher2sql.lowering.typeck.expr.ExprVar;
+import org.cytosm.cypher2sql.lowering.typeck.expr.ExprWalk;
+import org.cytosm.cypher2sql.lowering.typeck.var.Var;
+
+import java.math.BigDecimal;
+import java.util.*;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import java.util.stream.Collectors;
+
+/**
+ * This pass removes the branches of the UNIONs that can't return any row.
+ *
+ * A label implemented by several tables gives one branch per table. The
+ * gTop can tell which rows of a table represent a node or a hop with
+ * restrictions ({@link ImplementationNode#getRestrictions()} and
+ * {@link TraversalHop#getRestriction()}), and the WHERE of a branch can
+ * contradict them:
+ *
+ * <pre>
+ *     MATCH (m:Message) WHERE m.kind = 'post' RETURN m.id
+ * </pre>
+ *
+ * If the rows of the Comment table are restricted to the ones whose
+ * <code>kind</code> is similar to <code>'comment'</code>, the branch reading
+ * the Comment table can't return any row and isn't rendered. A WHERE can also
+ * contradict itself, such as <code>n.age &gt; 10 AND n.age &lt; 5</code>.
+ *
+ * A select can't return any row if:
+ *  - the conditions of its WHERE, compared with constants folded by
+ *    {@link ConstExprFolder}, can't hold together on the rows of its tables,
+ *  - or if one of the selects it reads in its FROM or with an INNER JOIN can't
+ *    return any row,
+ * unless it computes an aggregate: the aggregate of no row is still a row.
+ *
+ * The analysis only needs to be right when it says that a select is empty.
+ * Anything it doesn't understand can hold. The collation of the database
+ * isn't known, so strings are compared in whichever way keeps the branch:
+ * two strings are the same only if they are exactly equal, and they only
+ * differ if they still do ignoring the case and the trailing spaces.
+ *
+ * This pass must run once the conditions have been moved in the selects
+ * reading the tables: see {@link PushDownPredicates}.
+ */
+public class EliminateDeadBranches {
+
+    /**
+     * Maximum number of alternatives of the ORs tried on a WHERE.
+     * Past it, the WHERE is assumed to hold.
+     */
+    private static final int MAX_ALTERNATIVES = 64;
+
+    /**
+     * Remove the branches of the UNIONs of the tree that can't return any row.
+     * The first branch of a UNION is kept when none of them can return a row.
+     * @param sqltree is the root of the SQL tree.
+     * @param gTopInterface is the gTop providing the restrictions of the tables.
+     */
+    public static void eliminate(ScopeSelect sqltree, GTopInterfaceImpl gTopInterface) {
+        new Analysis(gTopInterface, true).isEmpty(sqltree, new ArrayDeque<>());
+    }
+
+    /**
+     * Tells whether or not the tree can return a row.
+     * @param sqltree is the root of the SQL tree.
+     * @param gTopInterface is the gTop providing the restrictions of the tables.
+     * @return Returns true if the tree can't return any row.
+     */
+    public static boolean isEmpty(ScopeSelect sqltree, GTopInterfaceImpl gTopInterface) {
+        return new Analysis(gTopInterface, false).isEmpty(sqltree, new ArrayDeque<>());
+    }
+
+    private static class Analysis {
+        final GTopInterfaceImpl gTopInterface;
+        final boolean prune;
+        // Reading the restrictions goes through all the implementation
+        // elements of the gTop: only do it when a WHERE needs them.
+        Restrictions restrictions;
+        final Map<WithSelect, Boolean> empty = new IdentityHashMap<>();
+        int budget;
+
+        Analysis(final GTopInterfaceImpl gTopInterface, final boolean prune) {
+            this.gTopInterface = gTopInterface;
+            this.prune = prune;
+        }
+
+        boolean isEmpty(BaseSelect select, Deque<Map<String, WithSelect>> env) {
+            if (select instanceof ScopeSelect) {
+                ScopeSelect scope = (ScopeSelect) select;
+                Map<String, WithSelect> names = new HashMap<>();
+                env.push(names);
+                for (WithSelect withSelect: scope.withQueries) {
+                    empty.put(withSelect, isEmpty(withSelect.subquery, env));
+                    names.put(withSelect.subqueryName, withSelect);
+                }
+                boolean result = isEmpty(scope.ret, env);
+                env.pop();
+                return result;
+            } else if (select instanceof UnionSelect) {
+                UnionSelect union = (UnionSelect) select;
+                List<SimpleOrScopeSelect> live = new ArrayList<>();
+                for (SimpleOrScopeSelect child: union.unions) {
+                    if (!isEmpty(child, env)) {
+                        live.add(child);
+                    }
+                }
+                if (live.isEmpty()) {
+                    if (prune && !union.unions.isEmpty()) {
+                        live.add(union.unions.get(0));
+                        union.unions = live;
+                    }
+                    return true;
+                }
+                if (prune) {
+                    union.unions = live;
+                }
+                return false;
+            } else if (select instanceof SimpleSelect) {
+                SimpleSelect simpleSelect = (SimpleSelect) select;
+                if (simpleSelect.exportedItems.stream().anyMatch(EliminateDeadBranches::hasAggregate)) {
+                    return false;
+                }
+                // The rows of a LEFT JOIN don't need to exist.
+                List<FromItem> inputs = simpleSelect instanceof SimpleSelectWithLeftJoins ?
+                        simpleSelect.fromItem : simpleSelect.dependencies();
+                for (FromItem fromItem: inputs) {
+                    if (fromItem.source != null && empty.getOrDefault(lookup(env, fromItem.source), false)) {
+                        return true;
+                    }
+                }
+                if (simpleSelect.whereCondition == null) {
+                    return false;
+                }
+                budget = MAX_ALTERNATIVES;
+                return !satisfiable(conjuncts(simpleSelect.whereCondition), patterns(simpleSelect));
+            }
+            return false;
+        }
+
+        /**
+         * The patterns the columns of the tables read by the select match.
+         */
+        private Map<Property, List<Pattern>> patterns(SimpleSelect select) {
+            Map<Property, List<Pattern>> patterns = new HashMap<>();
+            for (FromItem fromItem: select.dependencies()) {
+                if (fromItem.sourceTableName == null || fromItem.variables.size() != 1) {
+                    continue;
+                }
+                Var var = fromItem.variables.get(0);
+                if (restrictions == null) {
+                    restrictions = Restrictions.of(gTopInterface);
+                }
+                for (Restriction restriction: restrictions.of(fromItem.sourceTableName)) {
+                    patterns.computeIfAbsent(new Property(var, restriction.column), p -> new ArrayList<>())
+                            .add(restriction.pattern);
+                }
+            }
+            return patterns;
+        }
+
+        /**
+         * Tells whether or not the conditions can hold together.
+         * An OR is tried one alternative at a time.
+         */
+        private boolean satisfiable(List<Expr> conditions, Map<Property, List<Pattern>> patterns) {
+            if (--budget < 0) {
+                return true;
+            }
+            Map<Property, Domain> domains = new HashMap<>();
+            patterns.forEach((property, list) -> domains.put(property, new Domain(list)));
+
+            List<Expr> disjunctions = new ArrayList<>();
+            for (Expr condition: conditions) {
+                if (!alternatives(condition).isEmpty()) {
+                    disjunctions.add(condition);
+                } else if (!assume(condition, domains)) {
+                    return false;
+                }
+            }
+            if (domains.values().stream().anyMatch(Domain::isEmpty)) {
+                return false;
+            }
+            if (disjunctions.isEmpty()) {
+                return true;
+            }
+
+            List<Expr> others = new ArrayList<>(conditions);
+            others.remove(disjunctions.get(0));
+            for (Expr alternative: alternatives(disjunctions.get(0))) {
+                List<Expr> candidate = new ArrayList<>(others);
+                candidate.addAll(conjuncts(alternative));
+                if (satisfiable(candidate, patterns)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private static WithSelect lookup(Deque<Map<String, WithSelect>> env, WithSelect source) {
+            for (Map<String, WithSelect> names: env) {
+                WithSelect found = names.get(source.subqueryName);
+                if (found != null) {
+                    return found;
+                }
+            }
+            return source;
+        }
+    }
+
+    /**
+     * Record what the condition tells about the properties it compares with constants.
+     * @return Returns false if the condition is a constant that is false.
+     */
+    private static boolean assume(Expr condition, Map<Property, Domain> domains) {
+        ConstVal.Literal value = fold(condition);
+        if (value instanceof ConstVal.BoolVal) {
+            return ((ConstVal.BoolVal) value).value;
+        }
+        if (condition instanceof ExprTree.IsNull) {
+            Property property = Property.of(((ExprTree.IsNull) condition).unary);
+            if (property != null) {
+                domain(domains, property).isNull = true;
+            }
+            return true;
+        }
+        if (!(condition instanceof ExprTree.LhsRhs)) {
+            return true;
+        }
+        ExprTree.LhsRhs comparison = (ExprTree.LhsRhs) condition;
+        boolean flipped = false;
+        Property property = Property.of(comparison.lhs);
+        Object constant = constant(comparison.rhs);
+        if (property == null || constant == null) {
+            flipped = true;
+            property = Property.of(comparison.rhs);
+            constant = constant(comparison.lhs);
+        }
+        if (property == null || constant == null) {
+            return true;
+        }
+
+        Domain domain = domain(domains, property);
+        if (condition instanceof ExprTree.Eq) {
+            domain.equal(constant);
+        } else if (condition instanceof ExprTree.Neq) {
+            domain.different.add(constant);
+        } else if (condition instanceof ExprTree.LessThan || condition instanceof ExprTree.LessThanOrEqual) {
+            domain.bound(constant, !flipped, condition instanceof ExprTree.LessThan);
+        } else if (condition instanceof ExprTree.GreaterThan || condition instanceof ExprTree.GreaterThanOrEqueal) {
+            domain.bound(constant, flipped, condition instanceof ExprTree.GreaterThan);
+        } else {
+            return true;
+        }
+        domain.compared = true;
+        return true;
+    }
+
+    private static Domain domain(Map<Property, Domain> domains, Property property) {
+        return domains.computeIfAbsent(property, p -> new Domain(Collections.emptyList()));
+    }
+
+    /**
+     * The alternatives of an OR or of an IN on a list. Empty for any other condition.
+     */
+    private static List<Expr> alternatives(Expr condition) {
+        if (condition instanceof ExprTree.Or) {
+            List<Expr> result = new ArrayList<>();
+            result.addAll(disjuncts(((ExprTree.Or) condition).lhs));
+            result.addAll(disjuncts(((ExprTree.Or) condition).rhs));
+            return result;
+        }
+        if (condition instanceof ExprTree.In && ((ExprTree.In) condition).rhs instanceof ExprTree.ListExpr) {
+            Expr lhs = ((ExprTree.In) condition).lhs;
+            return ((ExprTree.ListExpr) ((ExprTree.In) condition).rhs).exprs.stream()
+                    .map(item -> new ExprTree.Eq(lhs, item))
+                    .collect(Collectors.toList());
+        }
+        return Collections.emptyList();
+    }
+
+    private static List<Expr> disjuncts(Expr expr) {
+        if (expr instanceof ExprTree.Or) {
+            return alternatives(expr);
+        }
+        return Collections.singletonList(expr);
+    }
+
+    private static List<Expr> conjuncts(Expr expr) {
+        List<Expr> result = new ArrayList<>();
+        if (expr instanceof ExprTree.And) {
+            result.addAll(conjuncts(((ExprTree.And) expr).lhs));
+            result.addAll(conjuncts(((ExprTree.And) expr).rhs));
+        } else {
+            result.add(expr);
+        }
+        return result;
+    }
+
+    /**
+     * Fold the expression if it is a constant.
+     * @return Returns the value or null if it isn't known.
+     */
+    private static ConstVal.Literal fold(Expr expr) {
+        try {
+            ConstVal.Literal value = ExprWalk.fold(new ConstExprFolder(), expr);
+            return value instanceof ConstVal.ParamVal ? null : value;
+        } catch (Cypher2SqlException | RuntimeException e) {
+            // The folder only knows about constants.
+            return null;
+        }
+    }
+
+    /**
+     * The value of a constant that can be compared: a number or a string.
+     * @return Returns the value or null if it isn't known.
+     */
+    private static Object constant(Expr expr) {
+        ConstVal.Literal value = fold(expr);
+        if (value instanceof ConstVal.LongVal) {
+            return BigDecimal.valueOf(((ConstVal.LongVal) value).value);
+        } else if (value instanceof ConstVal.DoubleVal) {
+            double number = ((ConstVal.DoubleVal) value).value;
+            return Double.isNaN(number) || Double.isInfinite(number) ? null : BigDecimal.valueOf(number);
+        } else if (value instanceof ConstVal.StrVal) {
+            return ((ConstVal.StrVal) value).value;
+        }
+        return null;
+    }
+
+    private static boolean hasAggregate(Expr expr) {
+        boolean[] found = {false};
+        ExprWalk.walk(new ExprWalk.BaseVisitor() {
+            @Override
+            public void visitFn(ExprFn expr) {
+                found[0] |= expr.name != ExprFn.Name.NULLIF;
+            }
+        }, expr);
+        return found[0];
+    }
+
+    /**
+     * A property of a variable.
+     */
+    private static final class Property {
+        final Var var;
+        final String name;
+
+        Property(final Var var, final String name) {
+            this.var = var;
+            this.name = name;
+        }
+
+        static Property of(Expr expr) {
+            if (expr instanceof ExprTree.PropertyAccess &&
+                    ((ExprTree.PropertyAccess) expr).expression instanceof ExprVar) {
+                ExprTree.PropertyAccess access = (ExprTree.PropertyAccess) expr;
+                return new Property(((ExprVar) access.expression).var, access.propertyAccessed);
+            }
+            return null;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Property && ((Property) o).var == var && ((Property) o).name.equals(name);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(var) + name.hashCode();
+        }
+    }
+
+    /**
+     * The values a property can take.
+     */
+    private static final class Domain {
+        final List<Pattern> patterns;
+        final List<Object> different = new ArrayList<>();
+        Object equal;
+        boolean contradiction = false;
+        BigDecimal lower;
+        boolean lowerStrict;
+        BigDecimal upper;
+        boolean upperStrict;
+        boolean isNull = false;
+        boolean compared = false;
+
+        Domain(final List<Pattern> patterns) {
+            this.patterns = patterns;
+        }
+
+        void equal(Object value) {
+            if (equal == null) {
+                equal = value;
+            } else if (differ(equal, value)) {
+                contradiction = true;
+            }
+        }
+
+        void bound(Object value, boolean isUpper, boolean strict) {
+            if (!(value instanceof BigDecimal)) {
+                return;
+            }
+            BigDecimal number = (BigDecimal) value;
+            if (isUpper) {
+                int c = upper == null ? 1 : upper.compareTo(number);
+                if (c > 0 || c == 0 && strict) {
+                    upper = number;
+                    upperStrict = strict;
+                }
+            } else {
+                int c = lower == null ? -1 : lower.compareTo(number);
+                if (c < 0 || c == 0 && strict) {
+                    lower = number;
+                    lowerStrict = strict;
+                }
+            }
+        }
+
+        boolean isEmpty() {
+            if (contradiction || isNull && compared) {
+                return true;
+            }
+            if (lower != null && upper != null) {
+                int c = lower.compareTo(upper);
+                if (c > 0 || c == 0 && (lowerStrict || upperStrict)) {
+                    return true;
+                }
+            }
+            if (equal == null) {
+                return false;
+            }
+            if (different.stream().anyMatch(value -> same(equal, value))) {
+                return true;
+            }
+            if (equal instanceof BigDecimal) {
+                BigDecimal number = (BigDecimal) equal;
+                if (lower != null && (lowerStrict ? number.compareTo(lower) <= 0 : number.compareTo(lower) < 0)) {
+                    return true;
+                }
+                if (upper != null && (upperStrict ? number.compareTo(upper) >= 0 : number.compareTo(upper) > 0)) {
+                    return true;
+                }
+            } else {
+                String string = (String) equal;
+                String trimmed = trimTrailing(string);
+                return patterns.stream()
+                        .anyMatch(p -> !p.matcher(string).matches() && !p.matcher(trimmed).matches());
+            }
+            return false;
+        }
+
+        /**
+         * Strings are compared exactly: with a case insensitive collation
+         * <code>'a' &lt;&gt; 'A'</code> is false and the branch must be kept.
+         * @return Returns true if the two values are surely the same.
+         */
+        private static boolean same(Object a, Object b) {
+            if (a instanceof BigDecimal && b instanceof BigDecimal) {
+                return ((BigDecimal) a).compareTo((BigDecimal) b) == 0;
+            }
+            return a instanceof String && a.equals(b);
+        }
+
+        /**
+         * Strings are only different if they still are ignoring the case
+         * and the trailing spaces, which some collations ignore.
+         * @return Returns true if the two values are surely different.
+         */
+        private static boolean differ(Object a, Object b) {
+            if (a instanceof BigDecimal && b instanceof BigDecimal) {
+                return ((BigDecimal) a).compareTo((BigDecimal) b) != 0;
+            }
+            if (a instanceof String && b instanceof String) {
+                return !trimTrailing((String) a).equalsIgnoreCase(trimTrailing((String) b));
+            }
+            return false;
+        }
+
+        private static String trimTrailing(String value) {
+            int end = value.length();
+            while (end > 0 && value.charAt(end - 1) == ' ') {
+                end--;
+            }
+            return value.substring(0, end);
+        }
+    }
+
+    /**
+     * A column of a table only contains values similar to the pattern.
+     */
+    private static final class Restriction {
+        final String column;
+        final Pattern pattern;
+
+        Restriction(final String column, final Pattern pattern) {
+            this.column = column;
+            this.pattern = pattern;
+        }
+    }
+
+    /**
+     * The restrictions of the gTop by table. A table implementing
+     * several nodes or hops isn't restricted: its rows can be any of them.
+     */
+    private static final class Restrictions {
+        final Map<String, List<Restriction>> byTable = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+
+        static Restrictions of(GTopInterfaceImpl gTop) {
+            Map<String, List<List<RestrictionClauses>>> clauses = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+            for (ImplementationNode node: gTop.getImplementationNodes()) {
+                clauses.computeIfAbsent(node.getTableName(), t -> new ArrayList<>()).add(node.getRestrictions());
+            }
+            Set<TraversalHop> hops = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (ImplementationEdge edge: gTop.getImplementationEdges()) {
+                for (TraversalPath path: edge.getPaths()) {
+                    hops.addAll(path.getTraversalHops());
+                }
+            }
+            for (TraversalHop hop: hops) {
+                if (hop.getJoinTableName() != null) {
+                    clauses.computeIfAbsent(hop.getJoinTableName(), t -> new ArrayList<>()).add(hop.getRestriction());
+                }
+            }
+
+            Restrictions result = new Restrictions();
+            clauses.forEach((table, implementations) -> {
+                if (implementations.size() != 1 || implementations.get(0) == null) {
+                    return;
+                }
+                List<Restriction> restrictions = implementations.get(0).stream()
+                        .map(r -> restriction(table, r))
+                        .filter(Objects::nonNull)
+                        .collect(Collectors.toList());
+                result.byTable.put(table, restrictions);
+            });
+            return result;
+        }
+
+        List<Restriction> of(String table) {
+            return byTable.getOrDefault(table, Collections.emptyList());
+        }
+
+        /**
+         * The clauses are alternatives: they restrict the table only if
+         * they are all on the same column of this table.
+         */
+        private static Restriction restriction(String table, RestrictionClauses restriction) {
+            List<RestrictionClause> clauses = restriction.getRestrictionClause();
+            if (clauses == null || clauses.isEmpty()) {
+                return null;
+            }
+            String column = clauses.get(0).getColumnName();
+            List<String> regexes = new ArrayList<>();
+            for (RestrictionClause clause: clauses) {
+                if (column == null || !column.equals(clause.getColumnName()) ||
+                        clause.getTableName() != null && !clause.getTableName().equalsIgnoreCase(table)) {
+                    return null;
+                }
+                String regex = similarTo(clause.getPattern());
+                if (regex == null) {
+                    return null;
+                }
+                regexes.add("(?:" + regex + ")");
+            }
+            try {
+                return new Restriction(column, Pattern.compile(String.join("|", regexes),
+                        Pattern.CASE_INSENSITIVE | Pattern.DOTALL));
+            } catch (PatternSyntaxException e) {
+                return null;
+            }
+        }
+
+        /**
+         * Translate a SQL92 regular expression, as used by SIMILAR TO, into a Java one.
+         * @return Returns the Java regular expression or null if it isn't supported.
+         */
+        private static String similarTo(String pattern) {
+            if (pattern == null) {
+                return null;
+            }
+            StringBuilder regex = new StringBuilder();
+            boolean inClass = false;
+            for (char c: pattern.toCharArray()) {
+                if (c == '\\') {
+                    // The escape character isn't known.
+                    return null;
+                } else if (inClass) {
+                    inClass = c != ']';
+                    regex.append(c == '[' ? "\\[" : String.valueOf(c));
+                } else if (c == '%') {
+                    regex.append(".*");
+                } else if (c == '_') {
+                    regex.append('.');
+                } else if ("|*+?(){}".indexOf(c) >= 0) {
+                    regex.append(c);
+                } else if (c == '[') {
+                    inClass = true;
+                    regex.append(c);
+                } else if (Character.isLetterOrDigit(c) || c == ',' || c == ' ') {
+                    regex.append(c);
+                } else {
+                    regex.append('\\').append(c);
+                }
+            }
+            return inClass ? null : regex.toString();
+        }
+    }
+}
@@ -37,14 +37,17 @@ public class ExpandNodeVarWithGtop {
      *
      * @param sqltree is the tree that will be consumed.
      * @param gTopInterface is the gtop implementation.
+     * @param ctx is the compilation context.
      * @return Returns the new SQL tree.
      */
-    public static ScopeSelect computeTableNamesOnFromItems(ScopeSelect sqltree, GTopInterfaceImpl gTopInterface)
+    public static ScopeSelect computeTableNamesOnFromItems(ScopeSelect sqltree, GTopInterfaceImpl gTopInterface,
+                                                           CompilationContext ctx)
             throws Cypher2SqlException
     {
 
-        ScopeSelect newTree = (ScopeSelect) Walk.fold(new ExpandSelectInUnionAndComputeTableNames(gTopInterface), sqltree);
-        return BubbleUnions.bubbleAllThoseUnions(newTree);
+        ScopeSelect newTree = (ScopeSelect) Walk.fold(
+                new ExpandSelectInUnionAndComputeTableNames(gTopInterface, ctx), sqltree);
+        return BubbleUnions.bubbleAllThoseUnions(newTree, ctx);
     }
 
     /**
@@ -79,9 +82,12 @@ public class ExpandNodeVarWithGtop {
     private static class ExpandSelectInUnionAndComputeTableNames extends Walk.IdentityFolder<Cypher2SqlException> {
 
         final GTopInterfaceImpl gTopInterface;
+        final CompilationContext ctx;
 
-        ExpandSelectInUnionAndComputeTableNames(final GTopInterfaceImpl gTopInterface) {
+        ExpandSelectInUnionAndComputeTableNames(final GTopInterfaceImpl gTopInterface,
+                                                final CompilationContext ctx) {
             this.gTopInterface = gTopInterface;
+            this.ctx = ctx;
         }
 
         @Override
@@ -126,7 +132,7 @@ public class ExpandNodeVarWithGtop {
                             .filter(n -> var.labels.stream()
                                     .allMatch(l -> n.getTypes().stream().anyMatch(s -> s.equalsIgnoreCase(l)))
                             )
-                            .collect(Collectors.toSet());
+                            .collect(Collectors.toCollection(LinkedHashSet::new));
 
                     // If we have only one node:
                     if (implNodes.size() == 1) {
@@ -137,7 +143,7 @@ public class ExpandNodeVarWithGtop {
                         // Otherwise transform into as many as needed FromItem
                         // that points to the correct table.
                         possibilities.add(implNodes.stream().map(node -> {
-                            FromItem newFrom = new FromItem();
+                            FromItem newFrom = new FromItem(ctx);
                             newFrom.sourceTableName = node.getTableName();
                             newFrom.variables = fromItem.variables;
                             return newFrom;
@@ -167,7 +173,8 @@ public class ExpandNodeVarWithGtop {
 
             for (int i = 0; i < numberOfQueries; i++) {
                 // FIXME: Interesting.. We need to propagate SKIP, LIMIT, ORDER BT to the Union or
-                // FIXME: wrap everything in a ScopeSelect.
+                // FIXME: wrap everything in a ScopeSelect. This is only done for the RETURN
+                // FIXME: when the unions are bubbled up (see BubbleUnions).
                 SimpleSelect newQuery = shallowClone(select, false);
 
                 int j = 1;
@@ -229,9 +236,12 @@ public class ExpandNodeVarWithGtop {
         /**
          * Bubble all unions and returns the new tree.
          * @param oldSqlTree is the old tree that will be consumed (should not be used afterwards).
+         * @param ctx is the compilation context.
          * @return Returns the new SQL tree.
          */
-        public static ScopeSelect bubbleAllThoseUnions(ScopeSelect oldSqlTree) throws Cypher2SqlException {
+        public static ScopeSelect bubbleAllThoseUnions(ScopeSelect oldSqlTree, CompilationContext ctx)
+                throws Cypher2SqlException
+        {
 
             // 1. Calculate the number of new ScopeSelect required.
             int numberOfNewScopeSelects = oldSqlTree.withQueries.stream()
@@ -257,9 +267,9 @@ public class ExpandNodeVarWithGtop {
             // 4. Create the outer ScopeSelect
             ScopeSelect newSqlTree = new ScopeSelect();
             WithSelect wrapper = new WithSelect(unionSelect);
-            NameSubqueries.nameSubquery(wrapper);
+            NameSubqueries.nameSubquery(wrapper, ctx);
             newSqlTree.withQueries.add(wrapper);
-            newSqlTree.ret = createReturnForOuterScopeSelect(oldSqlTree.ret, wrapper);
+            newSqlTree.ret = createReturnForOuterScopeSelect(oldSqlTree.ret, wrapper, ctx);
 
             return newSqlTree;
         }
@@ -277,6 +287,8 @@ public class ExpandNodeVarWithGtop {
         private static ScopeSelect partialClone(ScopeSelect oldSqlTree, int selectId) throws Cypher2SqlException {
             ScopeSelect partialClone = new ScopeSelect();
             partialClone.varId = oldSqlTree.varId;
+            // The outer return orders, limits and skips the rows of all the branches.
+            // Each branch is restricted to its top rows by ComputeExports.
             partialClone.ret = shallowClone(oldSqlTree.ret, true);
 
             int j = 1;
@@ -336,14 +348,13 @@ public class ExpandNodeVarWithGtop {
         }
 
         private static FromItem shallowCloneWithLookup(final FromItem old, final Map<String, WithSelect> lookup) {
-            FromItem newFromItem = new FromItem();
+            FromItem newFromItem = new FromItem(old.sourceVariableName);
 
             if (old.source != null) {
                 newFromItem.source = lookup.get(old.source.subqueryName);
             }
 
             newFromItem.sourceTableName = old.sourceTableName;
-            newFromItem.sourceVariableName = old.sourceVariableName;
             newFromItem.variables = old.variables;
 
             return newFromItem;
@@ -352,15 +363,16 @@ public class ExpandNodeVarWithGtop {
         /**
          * Create a Select for the outer ScopeSelect.
          */
-        private static SimpleSelect createReturnForOuterScopeSelect(SimpleSelect oldReturn, WithSelect wrappedUnion)
+        private static SimpleSelect createReturnForOuterScopeSelect(SimpleSelect oldReturn, WithSelect wrappedUnion,
+                                                                    CompilationContext ctx)
                 throws Cypher2SqlException
         {
             // Doesn't matter which class we choose here
             SimpleSelect res = shallowClone(oldReturn, false);
-            FromItem fetchFrom = new FromItem();
+            FromItem fetchFrom = new FromItem(ctx);
             fetchFrom.source = wrappedUnion;
             fetchFrom.variables = oldReturn.fromItem.stream().flatMap(fi -> fi.variables.stream())
-                    .collect(Collectors.toSet()).stream().collect(Collectors.toList());
+                    .distinct().collect(Collectors.toList());
             res.fromItem.add(fetchFrom);
             return res;
         }
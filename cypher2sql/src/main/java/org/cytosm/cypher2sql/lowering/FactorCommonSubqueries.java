@@ -0,0 +1,238 @@
+package org.cytosm.cypher2sql.lowering;
+
+import org.cytosm.cypher2sql.lowering.exceptions.Cypher2SqlException;
+import org.cytosm.cypher2sql.lowering.exceptions.Unreachable;
+import org.cytosm.cypher2sql.lowering.sqltree.*;
+import org.cytosm.cypher2sql.lowering.sqltree.from.FromItem;
+
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * This pass hoists the {@link WithSelect}s that are repeated in the
+ * branches of a union into the enclosing {@link ScopeSelect}.
+ *
+ * Expanded cyphers that only differ in their last hops are lowered into
+ * ScopeSelects whose first WithSelects are identical, except for the
+ * names generated by their {@link CompilationContext}. Without this
+ * pass the database plans and runs those prefixes once per branch.
+ *
+ * Two WithSelects are considered identical if their SQL is the same once
+ * the generated names have been replaced by their order of appearance,
+ * and if the WithSelects they depend on are themselves identical. Every
+ * WithSelect found in at least two ScopeSelects is moved to the enclosing
+ * ScopeSelect and all the {@link FromItem}s are updated to use the single
+ * remaining copy.
+ *
+ * This pass is run by {@link MergeExpandedCyphers} on the merged tree, before
+ * {@link DecomposeAggregates} and {@link PruneUnusedColumns}. A hoisted
+ * WithSelect is then read by several branches: the passes running after this
+ * one must take all its readers into account.
+ */
+public class FactorCommonSubqueries {
+
+    private static final Pattern GENERATED_NAME = Pattern.compile("\\b(?:__src|__tmp|SUB_)[0-9_]+");
+
+    /**
+     * Hoist the WithSelects shared by the branches into the result.
+     * @param result is the ScopeSelect that will contain the shared WithSelects.
+     *               They are added in front of its existing WithSelects.
+     * @param branches are the ScopeSelects sharing WithSelects. They must be
+     *                 reachable from the result.
+     * @param ctx is the compilation context providing the names of the hoisted WithSelects.
+     */
+    public static void factor(ScopeSelect result, List<ScopeSelect> branches, CompilationContext ctx)
+            throws Cypher2SqlException
+    {
+        List<ScopeSelect> scopes = new ArrayList<>();
+        for (ScopeSelect branch: branches) {
+            collectScopes(branch, scopes);
+        }
+
+        // 1. Give the same class to identical WithSelects.
+        Map<String, Integer> classes = new HashMap<>();
+        Map<WithSelect, Integer> classOf = new IdentityHashMap<>();
+        List<Set<ScopeSelect>> occurrences = new ArrayList<>();
+        for (ScopeSelect scope: scopes) {
+            Map<String, Integer> siblings = new HashMap<>();
+            for (WithSelect withSelect: scope.withQueries) {
+                String key = canonicalKey(withSelect, siblings);
+                Integer id = classes.get(key);
+                if (id == null) {
+                    id = classes.size();
+                    classes.put(key, id);
+                    occurrences.add(Collections.newSetFromMap(new IdentityHashMap<>()));
+                }
+                occurrences.get(id).add(scope);
+                classOf.putIfAbsent(withSelect, id);
+                siblings.put(withSelect.subqueryName, id);
+            }
+        }
+
+        // 2. Keep the first WithSelect of every class found in more than one scope.
+        // A WithSelect depends only on WithSelects that are at least as shared,
+        // so the hoisted WithSelects only depend on other hoisted WithSelects.
+        SortedMap<Integer, WithSelect> hoisted = new TreeMap<>();
+        Map<WithSelect, WithSelect> replacements = new IdentityHashMap<>();
+        for (ScopeSelect scope: scopes) {
+            for (WithSelect withSelect: scope.withQueries) {
+                int id = classOf.get(withSelect);
+                if (occurrences.get(id).size() >= 2) {
+                    hoisted.putIfAbsent(id, withSelect);
+                    replacements.put(withSelect, hoisted.get(id));
+                }
+            }
+        }
+        if (hoisted.isEmpty()) {
+            return;
+        }
+
+        // 3. Make every FROM use the kept WithSelects. This is computed while
+        // the WithSelects are still in their scope because FromItems are
+        // resolved by name. A FromItem shared by two scopes where its name
+        // doesn't resolve to the same WithSelect prevents the factoring.
+        Map<FromItem, WithSelect> sources = new IdentityHashMap<>();
+        for (ScopeSelect branch: branches) {
+            if (!resolve(branch, new ArrayDeque<>(), replacements, sources)) {
+                return;
+            }
+        }
+        sources.forEach((fromItem, source) -> fromItem.source = source);
+
+        // 4. Move them into the result, in dependency order, under a new name.
+        for (ScopeSelect scope: scopes) {
+            scope.withQueries.removeIf(replacements::containsKey);
+        }
+        List<WithSelect> withQueries = new ArrayList<>(hoisted.values());
+        for (WithSelect withSelect: withQueries) {
+            NameSubqueries.nameSubquery(withSelect, ctx);
+        }
+        withQueries.addAll(result.withQueries);
+        result.withQueries = withQueries;
+    }
+
+    private static void collectScopes(ScopeSelect scope, List<ScopeSelect> scopes) {
+        scopes.add(scope);
+        for (WithSelect withSelect: scope.withQueries) {
+            collectNestedScopes(withSelect.subquery, scopes);
+        }
+    }
+
+    private static void collectNestedScopes(BaseSelect select, List<ScopeSelect> scopes) {
+        if (select instanceof ScopeSelect) {
+            collectScopes((ScopeSelect) select, scopes);
+        } else if (select instanceof UnionSelect) {
+            for (SimpleOrScopeSelect child: ((UnionSelect) select).unions) {
+                collectNestedScopes(child, scopes);
+            }
+        }
+    }
+
+    /**
+     * Renders the WithSelect with the generated names replaced. The names of the
+     * siblings it depends on are replaced by their class, the other generated names
+     * by their order of appearance.
+     */
+    private static String canonicalKey(WithSelect withSelect, Map<String, Integer> siblings) {
+        Set<String> local = new HashSet<>();
+        collectNames(withSelect.subquery, local);
+
+        Map<String, String> renaming = new HashMap<>();
+        Matcher matcher = GENERATED_NAME.matcher(withSelect.subquery.toSQLString());
+        StringBuffer sb = new StringBuffer();
+        while (matcher.find()) {
+            String name = matcher.group();
+            String replacement = renaming.get(name);
+            if (replacement == null) {
+                if (siblings.containsKey(name) && !local.contains(name)) {
+                    replacement = "#" + siblings.get(name);
+                } else {
+                    replacement = "$" + renaming.size();
+                }
+                renaming.put(name, replacement);
+            }
+            matcher.appendReplacement(sb, Matcher.quoteReplacement(replacement));
+        }
+        matcher.appendTail(sb);
+        return sb.toString();
+    }
+
+    private static void collectNames(BaseSelect select, Set<String> names) {
+        if (select instanceof ScopeSelect) {
+            for (WithSelect withSelect: ((ScopeSelect) select).withQueries) {
+                names.add(withSelect.subqueryName);
+                collectNames(withSelect.subquery, names);
+            }
+        } else if (select instanceof UnionSelect) {
+            for (SimpleOrScopeSelect child: ((UnionSelect) select).unions) {
+                collectNames(child, names);
+            }
+        }
+    }
+
+    /**
+     * Compute the new source of every FromItem. Sources are looked up by name
+     * in the enclosing scopes because a FromItem can refer to a previous
+     * copy of the WithSelect living in its scope.
+     *
+     * @return false if a FromItem gets two different sources.
+     */
+    private static boolean resolve(BaseSelect select, Deque<Map<String, WithSelect>> env,
+                                   Map<WithSelect, WithSelect> replacements, Map<FromItem, WithSelect> sources)
+            throws Cypher2SqlException
+    {
+        if (select instanceof WithSelect) {
+            return resolve(((WithSelect) select).subquery, env, replacements, sources);
+        } else if (select instanceof UnionSelect) {
+            for (SimpleOrScopeSelect child: ((UnionSelect) select).unions) {
+                if (!resolve(child, env, replacements, sources)) {
+                    return false;
+                }
+            }
+            return true;
+        } else if (select instanceof SimpleSelect) {
+            for (FromItem fromItem: ((SimpleSelect) select).dependencies()) {
+                if (fromItem.source != null) {
+                    WithSelect source = lookup(env, fromItem.source);
+                    source = replacements.getOrDefault(source, source);
+                    WithSelect previous = sources.putIfAbsent(fromItem, source);
+                    if (previous != null && previous != source) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        } else if (select instanceof ScopeSelect) {
+            ScopeSelect scope = (ScopeSelect) select;
+            Map<String, WithSelect> names = new HashMap<>();
+            for (WithSelect child: scope.withQueries) {
+                names.put(child.subqueryName, child);
+            }
+            env.push(names);
+            boolean resolved = true;
+            for (WithSelect child: scope.withQueries) {
+                resolved = resolved && resolve(child, env, replacements, sources);
+            }
+            resolved = resolved && resolve(scope.ret, env, replacements, sources);
+            env.pop();
+            return resolved;
+        } else if (select instanceof RecursiveSelect) {
+            // It reads a table, itself and the FromItem of its source node,
+            // which is resolved with the select reading it.
+            return true;
+        } else {
+            throw new Unreachable();
+        }
+    }
+
+    private static WithSelect lookup(Deque<Map<String, WithSelect>> env, WithSelect source) {
+        for (Map<String, WithSelect> names: env) {
+            WithSelect found = names.get(source.subqueryName);
+            if (found != null) {
+                return found;
+            }
+        }
+        return source;
+    }
+}
@@ -0,0 +1,144 @@
+package org.cytosm.cypher2sql.lowering;
+
+import org.cytosm.cypher2sql.lowering.sqltree.*;
+import org.cytosm.cypher2sql.lowering.sqltree.from.FromItem;
+import org.cytosm.cypher2sql.lowering.typeck.expr.Expr;
+import org.cytosm.cypher2sql.lowering.typeck.expr.ExprTree;
+import org.cytosm.cypher2sql.lowering.typeck.expr.ExprVar;
+import org.cytosm.cypher2sql.lowering.typeck.var.Var;
+
+import java.util.*;
+
+/**
+ * This pass removes the {@link WithSelect}s that only forward
+ * the columns of another WithSelect.
+ *
+ * A chain such as <pre>MATCH (p) WITH p WITH p RETURN p.firstName</pre>
+ * creates one WithSelect per WITH, each one selecting the columns
+ * of the previous one:
+ *
+ * <pre>
+ *     SUB_1 AS (SELECT __src2.__cytosm7$8_firstName FROM SUB_0 AS __src2)
+ * </pre>
+ *
+ * A WithSelect is a pass through if it reads from a single other WithSelect
+ * without any JOIN, WHERE, DISTINCT, ORDER BY, LIMIT or SKIP and if all its
+ * exported items are variables of that WithSelect or properties of them: they
+ * are columns of the WithSelect that keep their name. The FromItems using a
+ * pass through are updated to use its source instead, which exports the same
+ * columns under the same names.
+ *
+ * This pass must run after {@link UnwrapAliasExpr}: exports must be final.
+ */
+public class InlinePassThroughSelects {
+
+    /**
+     * Remove all the pass through WithSelects of the tree.
+     * @param sqltree is the root of the SQL tree.
+     */
+    public static void inline(ScopeSelect sqltree) {
+        inline(sqltree, new ArrayDeque<>());
+    }
+
+    private static void inline(ScopeSelect scope, Deque<Map<String, WithSelect>> env) {
+        // Resolve the sources by name, like the database will do.
+        Map<String, WithSelect> names = new HashMap<>();
+        for (WithSelect withSelect: scope.withQueries) {
+            names.put(withSelect.subqueryName, withSelect);
+        }
+
+        // Find the WithSelect that will replace each pass through.
+        Map<String, WithSelect> targets = new HashMap<>();
+        for (WithSelect withSelect: scope.withQueries) {
+            WithSelect source = passThroughSource(withSelect, names);
+            if (source != null) {
+                targets.put(withSelect.subqueryName, targets.getOrDefault(source.subqueryName, source));
+            } else {
+                targets.put(withSelect.subqueryName, withSelect);
+            }
+        }
+
+        env.push(targets);
+        for (WithSelect withSelect: scope.withQueries) {
+            redirect(withSelect.subquery, env);
+        }
+        redirect(scope.ret, env);
+        env.pop();
+
+        scope.withQueries.removeIf(withSelect -> targets.get(withSelect.subqueryName) != withSelect);
+    }
+
+    private static void redirect(BaseSelect select, Deque<Map<String, WithSelect>> env) {
+        if (select instanceof ScopeSelect) {
+            inline((ScopeSelect) select, env);
+        } else if (select instanceof UnionSelect) {
+            for (SimpleOrScopeSelect child: ((UnionSelect) select).unions) {
+                redirect(child, env);
+            }
+        } else if (select instanceof SimpleSelect) {
+            for (FromItem fromItem: ((SimpleSelect) select).dependencies()) {
+                if (fromItem.source != null) {
+                    fromItem.source = lookup(env, fromItem.source);
+                }
+            }
+        }
+    }
+
+    private static WithSelect lookup(Deque<Map<String, WithSelect>> env, WithSelect source) {
+        for (Map<String, WithSelect> targets: env) {
+            WithSelect found = targets.get(source.subqueryName);
+            if (found != null) {
+                return found;
+            }
+        }
+        return source;
+    }
+
+    /**
+     * @return Returns the WithSelect whose columns are forwarded or null if
+     * the WithSelect isn't a pass through.
+     */
+    private static WithSelect passThroughSource(WithSelect withSelect, Map<String, WithSelect> names) {
+        if (!(withSelect.subquery instanceof SimpleSelect) || withSelect.subquery instanceof SelectAll) {
+            return null;
+        }
+        SimpleSelect select = (SimpleSelect) withSelect.subquery;
+        if (select.fromItem.size() != 1 || !select.joinList().isEmpty() || select.whereCondition != null ||
+                select.isDistinct || select.limit >= 0 || select.skip >= 0 || !select.orderBy.isEmpty() ||
+                select.exportedItems.isEmpty()) {
+            return null;
+        }
+        FromItem fromItem = select.fromItem.get(0);
+        if (fromItem.source == null) {
+            return null;
+        }
+        WithSelect source = names.get(fromItem.source.subqueryName);
+        if (source == null || source == withSelect) {
+            return null;
+        }
+
+        // Every exported item must be rendered as columns of the source without an alias.
+        for (Expr expr: select.exportedItems) {
+            if (!forwardsColumns(expr, fromItem)) {
+                return null;
+            }
+        }
+        return source;
+    }
+
+    /**
+     * Returns true if the exported item is a variable provided by the FromItem
+     * or a property of one: it is rendered as columns of the FromItem under
+     * their own names.
+     */
+    private static boolean forwardsColumns(Expr expr, FromItem fromItem) {
+        if (expr instanceof ExprTree.PropertyAccess) {
+            expr = ((ExprTree.PropertyAccess) expr).expression;
+        }
+        if (!(expr instanceof ExprVar)) {
+            return false;
+        }
+        Var var = ((ExprVar) expr).var;
+        return fromItem.variables.stream().anyMatch(v -> v == var);
+    }
+}
@@ -0,0 +1,364 @@
+package org.cytosm.cypher2sql.lowering;
+
+import org.cytosm.common.gtop.GTopInterfaceImpl;
+import org.cytosm.common.gtop.implementation.relational.ImplementationEdge;
+import org.cytosm.common.gtop.implementation.relational.ImplementationNode;
+import org.cytosm.common.gtop.implementation.relational.TraversalHop;
+import org.cytosm.common.gtop.implementation.relational.TraversalPath;
+import org.cytosm.cypher2sql.lowering.exceptions.BugFound;
+import org.cytosm.cypher2sql.lowering.exceptions.Cypher2SqlException;
+import org.cytosm.cypher2sql.lowering.exceptions.UnsupportedPattern;
+import org.cytosm.cypher2sql.lowering.sqltree.ScopeSelect;
+import org.cytosm.cypher2sql.lowering.sqltree.SimpleSelect;
+import org.cytosm.cypher2sql.lowering.sqltree.from.FromItem;
+import org.cytosm.cypher2sql.lowering.sqltree.visitor.Walk;
+import org.cytosm.cypher2sql.lowering.typeck.constexpr.ConstVal;
+import org.cytosm.cypher2sql.lowering.typeck.expr.Expr;
+import org.cytosm.cypher2sql.lowering.typeck.expr.ExprExists;
+import org.cytosm.cypher2sql.lowering.typeck.expr.ExprTree;
+import org.cytosm.cypher2sql.lowering.typeck.expr.ExprVar;
+import org.cytosm.cypher2sql.lowering.typeck.expr.ExprWalk;
+import org.cytosm.cypher2sql.lowering.typeck.rel.Relationship;
+import org.cytosm.cypher2sql.lowering.typeck.var.AliasVar;
+import org.cytosm.cypher2sql.lowering.typeck.var.TempVar;
+import org.cytosm.cypher2sql.lowering.typeck.var.Var;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.cytosm.cypher2sql.lowering.exceptions.fns.LambdaExceptionUtil.rethrowFunction;
+
+/**
+ * This pass translates the patterns used as predicates into
+ * correlated <code>EXISTS</code> subqueries:
+ *
+ * <pre>
+ *     MATCH (a:Person {id: 1}), (b:Person) WHERE NOT (a)-[:KNOWS]->(b) RETURN b.id
+ * </pre>
+ *
+ * Each relationship of the pattern reads the join table of an
+ * implementation edge whose tables are the ones of the nodes it
+ * relates. The bound nodes are related to the rows of the enclosing
+ * select, the anonymous ones only need to exist:
+ *
+ * <pre>
+ *     WHERE NOT (EXISTS (SELECT 1 FROM person_knows_person AS __src7
+ *                        WHERE ((__src4.__cytosm7$8_id = __src7.person_id) AND
+ *                               (__src5.__cytosm27$28_id = __src7.other_person_id))))
+ * </pre>
+ *
+ * The properties of a node are conditions of the subquery. An anonymous
+ * node with properties is read from its table, joined to the join table
+ * of its relationship.
+ *
+ * When several edges match, for instance with a relationship without
+ * type or followed in both directions, each of them gives a subquery
+ * and the pattern is their disjunction. It is false when none does.
+ * A pattern matching an edge that isn't a single join table, with
+ * several hops or a foreign key, is rejected.
+ *
+ * This pass must run after {@link PopulateJoins}: the tables of the
+ * variables must be known.
+ */
+public class LowerPatternPredicates {
+
+    /**
+     * Lower the pattern predicates of all the selects of the tree.
+     * @param tree is the SQL tree.
+     * @param gTopInterface is the gtop implementation.
+     * @param ctx is the compilation context.
+     * @throws Cypher2SqlException is thrown if a variable of a pattern can't be found
+     *                             or if a pattern can't be used as a predicate.
+     */
+    public static void lowerPatternPredicates(ScopeSelect tree, GTopInterfaceImpl gTopInterface,
+                                              CompilationContext ctx) throws Cypher2SqlException {
+        Walk.walkSQLNode(new Visitor(gTopInterface, ctx), tree);
+    }
+
+    private static class Visitor extends Walk.BaseSQLNodeVisitor {
+
+        private final GTopInterfaceImpl gTopInterface;
+        private final CompilationContext ctx;
+
+        Visitor(GTopInterfaceImpl gTopInterface, CompilationContext ctx) {
+            this.gTopInterface = gTopInterface;
+            this.ctx = ctx;
+        }
+
+        @Override
+        public void visitSimpleSelect(SimpleSelect simpleSelect) throws Cypher2SqlException {
+            PatternFolder folder = new PatternFolder(simpleSelect.dependencies(), gTopInterface, ctx);
+            simpleSelect.whereCondition = ExprWalk.fold(folder, simpleSelect.whereCondition);
+            simpleSelect.exportedItems = simpleSelect.exportedItems.stream()
+                    .<Expr>map(rethrowFunction(e -> ExprWalk.<Expr, Cypher2SqlException>fold(folder, e)))
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static class PatternFolder extends ExprWalk.IdentityFolder<Cypher2SqlException> {
+
+        private final List<FromItem> dependencies;
+        private final GTopInterfaceImpl gTopInterface;
+        private final CompilationContext ctx;
+
+        PatternFolder(List<FromItem> dependencies, GTopInterfaceImpl gTopInterface, CompilationContext ctx) {
+            this.dependencies = dependencies;
+            this.gTopInterface = gTopInterface;
+            this.ctx = ctx;
+        }
+
+        @Override
+        public Expr foldExists(ExprExists expr) throws Cypher2SqlException {
+            if (expr.fromItems != null) {
+                return super.foldExists(expr);
+            }
+            if (expr.unsupported != null) {
+                throw new UnsupportedPattern(expr.unsupported);
+            }
+
+            // The tables each node can be read from, null if any.
+            List<Set<String>> tables = new ArrayList<>();
+            for (int i = 0; i < expr.nodes.size(); i++) {
+                Set<String> allowed = tablesForLabels(expr.labels.get(i));
+                Var var = expr.nodes.get(i);
+                if (var != null) {
+                    String table = originTable(var);
+                    if (allowed != null && !allowed.contains(table)) {
+                        return new ConstVal.BoolVal(false);
+                    }
+                    allowed = Collections.singleton(table);
+                }
+                tables.add(allowed);
+            }
+
+            List<List<Hop>> routes = new ArrayList<>();
+            collectRoutes(expr, tables, null, new ArrayList<>(), routes);
+
+            Expr result = null;
+            for (List<Hop> route: routes) {
+                Expr exists = createExists(expr, route);
+                result = result == null ? exists : new ExprTree.Or(result, exists);
+            }
+            return result == null ? new ConstVal.BoolVal(false) : result;
+        }
+
+        /**
+         * Find the sequences of hops going through the tables
+         * of the nodes in the directions of the relationships.
+         */
+        private void collectRoutes(ExprExists expr, List<Set<String>> tables, String table,
+                                   List<Hop> route, List<List<Hop>> routes) throws UnsupportedPattern {
+            int i = route.size();
+            if (i == expr.directions.size()) {
+                routes.add(new ArrayList<>(route));
+                return;
+            }
+            for (ImplementationEdge edge: edges(expr.types.get(i))) {
+                Relationship.Direction direction = expr.directions.get(i);
+                for (boolean forward: new boolean[]{true, false}) {
+                    if ((forward && direction == Relationship.Direction.LEFT) ||
+                        (!forward && direction == Relationship.Direction.RIGHT)) {
+                        continue;
+                    }
+                    TraversalHop traversalHop = joinTableHop(edge);
+                    if (traversalHop == null) {
+                        // The edge can't be read as a join table: only a pattern it can't match is translated.
+                        for (TraversalPath path: edge.getPaths()) {
+                            List<TraversalHop> hops = path.getTraversalHops();
+                            Hop first = new Hop(hops.get(forward ? 0 : hops.size() - 1), forward);
+                            Hop last = new Hop(hops.get(forward ? hops.size() - 1 : 0), forward);
+                            if (matches(first.leftTable(), tables.get(i), table) &&
+                                    matches(last.rightTable(), tables.get(i + 1), null)) {
+                                throw new UnsupportedPattern("A pattern predicate can only follow a relationship " +
+                                        "implemented with a single join table: " + edge.getTypes() + " isn't.");
+                            }
+                        }
+                        continue;
+                    }
+                    Hop hop = new Hop(traversalHop, forward);
+                    if (!matches(hop.leftTable(), tables.get(i), table) ||
+                            !matches(hop.rightTable(), tables.get(i + 1), null)) {
+                        continue;
+                    }
+                    // A self loop followed in both directions from and to the same table.
+                    if (!forward && direction == Relationship.Direction.BOTH &&
+                            traversalHop.getSourceTableName().equals(traversalHop.getDestinationTableName()) &&
+                            traversalHop.getSourceTableColumn().equals(traversalHop.getDestinationTableColumn()) &&
+                            expr.nodes.get(i) == null && expr.nodes.get(i + 1) == null) {
+                        continue;
+                    }
+                    route.add(hop);
+                    collectRoutes(expr, tables, hop.rightTable(), route, routes);
+                    route.remove(route.size() - 1);
+                }
+            }
+        }
+
+        private static boolean matches(String table, Set<String> allowed, String previous) {
+            return (allowed == null || allowed.contains(table)) && (previous == null || previous.equals(table));
+        }
+
+        /**
+         * Create the subquery following the given hops.
+         */
+        private ExprExists createExists(ExprExists expr, List<Hop> route) {
+            ExprExists res = expr.withCondition(null);
+            res.fromItems = new ArrayList<>();
+            List<Expr> conditions = new ArrayList<>();
+
+            Var previous = null;
+            Hop previousHop = null;
+            for (int i = 0; i < route.size(); i++) {
+                Hop hop = route.get(i);
+                Var joinVar = newFromItem(res, hop.traversalHop.getJoinTableName());
+                Var node = expr.nodes.get(i);
+                Map<String, Expr> properties = expr.properties.get(i);
+                if (node != null) {
+                    conditions.add(eq(hop.leftNodeColumn(), node, hop.leftJoinColumn(), joinVar));
+                } else if (!properties.isEmpty() ||
+                        (previous != null && !previousHop.rightNodeColumn().equals(hop.leftNodeColumn()))) {
+                    // An anonymous node read from its table.
+                    node = newFromItem(res, hop.leftTable());
+                    if (previous != null) {
+                        conditions.add(eq(previousHop.rightNodeColumn(), node,
+                                previousHop.rightJoinColumn(), previous));
+                    }
+                    conditions.add(eq(hop.leftNodeColumn(), node, hop.leftJoinColumn(), joinVar));
+                } else if (previous != null) {
+                    // An anonymous node between two hops.
+                    conditions.add(eq(previousHop.rightJoinColumn(), previous, hop.leftJoinColumn(), joinVar));
+                }
+                addPropertyConditions(conditions, node, properties);
+                previous = joinVar;
+                previousHop = hop;
+            }
+            Var last = expr.nodes.get(route.size());
+            Map<String, Expr> properties = expr.properties.get(route.size());
+            if (last == null && !properties.isEmpty()) {
+                last = newFromItem(res, previousHop.rightTable());
+            }
+            if (last != null) {
+                conditions.add(eq(previousHop.rightNodeColumn(), last, previousHop.rightJoinColumn(), previous));
+            }
+            addPropertyConditions(conditions, last, properties);
+
+            res.condition = conditions.stream().reduce(ExprTree.And::new).orElse(new ConstVal.BoolVal(true));
+            return res;
+        }
+
+        /**
+         * Require the properties of the node, bound or read by the subquery.
+         */
+        private static void addPropertyConditions(List<Expr> conditions, Var node, Map<String, Expr> properties) {
+            properties.forEach((name, value) ->
+                    conditions.add(new ExprTree.Eq(new ExprTree.PropertyAccess(name, new ExprVar(node)), value)));
+        }
+
+        private Var newFromItem(ExprExists exists, String tableName) {
+            FromItem fromItem = new FromItem(ctx);
+            fromItem.sourceTableName = tableName;
+            TempVar var = new TempVar(ctx);
+            fromItem.variables.add(var);
+            exists.fromItems.add(fromItem);
+            return var;
+        }
+
+        private static Expr eq(String lhsColumn, Var lhs, String rhsColumn, Var rhs) {
+            return new ExprTree.Eq(
+                    new ExprTree.PropertyAccess(lhsColumn, new ExprVar(lhs)),
+                    new ExprTree.PropertyAccess(rhsColumn, new ExprVar(rhs))
+            );
+        }
+
+        private List<ImplementationEdge> edges(List<String> types) {
+            return types.isEmpty()
+                    ? gTopInterface.getImplementationEdges()
+                    : types.stream()
+                        .flatMap(type -> gTopInterface.getImplementationEdgeByType(type).stream())
+                        .distinct()
+                        .collect(Collectors.toList());
+        }
+
+        /**
+         * The hop of an edge implemented with a single join table, null for
+         * the edges with several paths or hops and the foreign keys.
+         */
+        private static TraversalHop joinTableHop(ImplementationEdge edge) {
+            if (edge.getPaths().size() != 1 || edge.getPaths().get(0).getTraversalHops().size() != 1) {
+                return null;
+            }
+            TraversalHop hop = edge.getPaths().get(0).getTraversalHops().get(0);
+            if (hop.getJoinTableName() == null || hop.getJoinTableName().isEmpty()) {
+                return null;
+            }
+            return hop;
+        }
+
+        /**
+         * The tables implementing all the labels, null if there's no label.
+         */
+        private Set<String> tablesForLabels(List<String> labels) {
+            Set<String> result = null;
+            for (String label: labels) {
+                Set<String> tables = gTopInterface.getImplementationNodesByType(label).stream()
+                        .map(ImplementationNode::getTableName)
+                        .collect(Collectors.toSet());
+                if (result == null) {
+                    result = tables;
+                } else {
+                    result.retainAll(tables);
+                }
+            }
+            return result;
+        }
+
+        private String originTable(Var var) throws Cypher2SqlException {
+            Var resolved = AliasVar.resolveAliasVar(var);
+            Optional<FromItem> fromItem = dependencies.stream()
+                    .filter(fi -> fi.variables.stream().anyMatch(v -> v == var || v == resolved))
+                    .findAny();
+            if (!fromItem.isPresent()) {
+                throw new BugFound("Variable of a pattern came from nowhere!! -> '" + var.name + "'");
+            }
+            return PopulateJoins.getOriginTableName(var, fromItem.get());
+        }
+    }
+
+    /**
+     * A traversal hop followed forward, from its source table to its
+     * destination table, or backward.
+     */
+    private static class Hop {
+        final TraversalHop traversalHop;
+        final boolean forward;
+
+        Hop(TraversalHop traversalHop, boolean forward) {
+            this.traversalHop = traversalHop;
+            this.forward = forward;
+        }
+
+        String leftTable() {
+            return forward ? traversalHop.getSourceTableName() : traversalHop.getDestinationTableName();
+        }
+
+        String rightTable() {
+            return forward ? traversalHop.getDestinationTableName() : traversalHop.getSourceTableName();
+        }
+
+        String leftNodeColumn() {
+            return forward ? traversalHop.getSourceTableColumn() : traversalHop.getDestinationTableColumn();
+        }
+
+        String rightNodeColumn() {
+            return forward ? traversalHop.getDestinationTableColumn() : traversalHop.getSourceTableColumn();
+        }
+
+        String leftJoinColumn() {
+            return forward ? traversalHop.getJoinTableSourceColumn() : traversalHop.getJoinTableDestinationColumn();
+        }
+
+        String rightJoinColumn() {
+            return forward ? traversalHop.getJoinTableDestinationColumn() : traversalHop.getJoinTableSourceColumn();
+        }
+    }
+}
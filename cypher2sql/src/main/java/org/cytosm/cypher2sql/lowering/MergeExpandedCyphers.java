@@ -1,48 +1,225 @@
 package org.cytosm.cypher2sql.lowering;
 
+import org.cytosm.cypher2sql.lowering.exceptions.BugFound;
+import org.cytosm.cypher2sql.lowering.exceptions.Cypher2SqlException;
+import org.cytosm.cypher2sql.lowering.exceptions.UnsupportedPattern;
 import org.cytosm.cypher2sql.lowering.sqltree.*;
 import org.cytosm.cypher2sql.lowering.sqltree.from.FromItem;
+import org.cytosm.cypher2sql.lowering.rendering.RenderingContext;
+import org.cytosm.cypher2sql.lowering.typeck.expr.Expr;
+import org.cytosm.cypher2sql.lowering.typeck.expr.ExprTree;
+import org.cytosm.cypher2sql.lowering.typeck.expr.ExprVar;
 import org.cytosm.cypher2sql.lowering.typeck.var.TempVar;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.Collectors;
 
 /**
  * This pass transform many Cyphers that have been converted into
  * ScopeSelect into one ScopeSelect tree. It union them together essentially.
  *
+ * The WithSelects the queries have in common are computed only once:
+ * see {@link FactorCommonSubqueries}. Duplicates are only removed where
+ * a RETURN DISTINCT requires it: see {@link DisjointBranches}.
+ *
+ * The ORDER BY, LIMIT and SKIP of the RETURN are applied on the union.
+ * With a LIMIT, each query also returns only its first SKIP + LIMIT rows.
+ *
  */
 public class MergeExpandedCyphers {
 
+    /**
+     * Prefix of the columns added to sort on expressions that aren't returned.
+     */
+    private static final String ORDER_COLUMN = "__order";
 
     /**
      * Merge the provided queries into one.
      * @param queries is the list of query to merge.
+     * @param ctx is the compilation context.
+     * @return Returns the SQL tree resulting of the merge.
+     */
+    public static ScopeSelect merge(List<ScopeSelect> queries, CompilationContext ctx)
+            throws Cypher2SqlException
+    {
+        return merge(queries, null, ctx);
+    }
+
+    /**
+     * Merge the provided queries into one. If the RETURN is DISTINCT, the duplicated
+     * rows of the queries that aren't disjoint are removed with a UNION. All the other
+     * queries are merged with a UNION ALL.
+     * @param queries is the list of query to merge.
+     * @param branches is the analysis of each query or null if it isn't known.
+     * @param ctx is the compilation context.
      * @return Returns the SQL tree resulting of the merge.
+     * @throws UnsupportedPattern if there is no query to merge: the pattern has no match on the gTop.
      */
-    public static ScopeSelect merge(List<ScopeSelect> queries) {
-        if (queries.size() == 1) {
+    public static ScopeSelect merge(List<ScopeSelect> queries, List<DisjointBranches> branches,
+                                    CompilationContext ctx)
+            throws Cypher2SqlException
+    {
+        if (queries.isEmpty()) {
+            throw new UnsupportedPattern("The pattern has no match on the gTop: there is no query to merge.");
+        } else if (queries.size() == 1) {
             return queries.get(0);
         } else {
-            // Create the result.
-            ScopeSelect result = new ScopeSelect();
+            // The ORDER BY, LIMIT and SKIP of the RETURN apply to all the rows:
+            // take them out of the queries before they become branches.
+            OrderAndLimit order = takeOrderAndLimit(queries, ctx);
 
             // Create the union
             UnionSelect union = new UnionSelect();
-            union.unions.addAll(queries);
+            if (branches == null || branches.size() != queries.size() || !branches.get(0).distinct) {
+                union.unions.addAll(queries);
+            } else {
+                List<List<Integer>> groups = DisjointBranches.overlappingGroups(branches);
+                if (groups.size() == 1) {
+                    union.unions.addAll(queries);
+                    union.distinct = true;
+                    queries.forEach(MergeExpandedCyphers::removeRedundantDistinct);
+                } else {
+                    for (List<Integer> group: groups) {
+                        if (group.size() == 1) {
+                            union.unions.add(queries.get(group.get(0)));
+                            continue;
+                        }
+                        UnionSelect overlapping = new UnionSelect();
+                        overlapping.distinct = true;
+                        for (int i: group) {
+                            removeRedundantDistinct(queries.get(i));
+                            overlapping.unions.add(queries.get(i));
+                        }
+                        union.unions.add(wrap(overlapping, ctx));
+                    }
+                }
+            }
 
-            // Wrap the union
-            WithSelect withSelect = new WithSelect(union);
-            NameSubqueries.nameSubquery(withSelect);
-            result.withQueries.add(withSelect);
+            ScopeSelect result = wrap(union, ctx);
+            SelectAll ret = (SelectAll) result.ret;
+            ret.orderBy = order.orderBy;
+            ret.limit = order.limit;
+            ret.skip = order.skip;
+            ret.hiddenColumns = order.hiddenColumns;
+            for (SimpleSelect.OrderItem item: order.orderBy) {
+                ret.fromItem.get(0).variables.add(((ExprVar) item.item).var);
+            }
 
-            // Create the blind return.
-            result.ret = new SelectAll();
-            FromItem fromItem = new FromItem();
-            fromItem.source = withSelect;
-            fromItem.variables.add(new TempVar()); // Adding a fake variable.
-            result.ret.fromItem.add(fromItem);
+            // Share the WithSelects repeated across the queries.
+            FactorCommonSubqueries.factor(result, queries, ctx);
 
             return result;
         }
     }
+
+    /**
+     * The ORDER BY, LIMIT and SKIP applied on the rows of the union.
+     */
+    private static class OrderAndLimit {
+        // Items are columns of the union.
+        final List<SimpleSelect.OrderItem> orderBy = new ArrayList<>();
+        // Columns added to sort on expressions that aren't returned.
+        final List<String> hiddenColumns = new ArrayList<>();
+        long limit;
+        long skip;
+    }
+
+    /**
+     * Every query has the ORDER BY, LIMIT and SKIP of the RETURN. Each of
+     * them now only keeps the rows that can make it to the result (see
+     * {@link SimpleSelect#restrictToTopRows()}) and the returned ORDER BY,
+     * LIMIT and SKIP must be applied on the union.
+     */
+    private static OrderAndLimit takeOrderAndLimit(List<ScopeSelect> queries, CompilationContext ctx)
+            throws Cypher2SqlException
+    {
+        if (queries.isEmpty()) {
+            throw new BugFound("There is no query to take the ORDER BY and LIMIT from.");
+        }
+        OrderAndLimit order = new OrderAndLimit();
+        SimpleSelect first = queries.get(0).ret;
+        order.limit = first.limit;
+        order.skip = first.skip;
+
+        RenderingContext export = new RenderingContext(first.dependencies(), RenderingContext.Location.Export);
+        RenderingContext other = new RenderingContext(first.dependencies(), RenderingContext.Location.Other);
+        List<String> columns = first.exportedItems.stream()
+                .map(e -> e.toSQLString(export))
+                .collect(Collectors.toList());
+
+        List<Integer> hidden = new ArrayList<>();
+        for (int i = 0; i < first.orderBy.size(); i++) {
+            SimpleSelect.OrderItem item = first.orderBy.get(i);
+            String rendered = item.item.toSQLString(other);
+            String column = null;
+            for (String exported: columns) {
+                int as = exported.lastIndexOf(" AS ");
+                if (as >= 0 && (exported.substring(0, as).equals(rendered) ||
+                        exported.substring(as + 4).equals(rendered))) {
+                    column = exported.substring(as + 4);
+                    break;
+                }
+            }
+            if (column == null) {
+                // Not returned: add a column to sort on.
+                column = other.renderEscapedColumnName(ORDER_COLUMN + i);
+                order.hiddenColumns.add(column);
+                hidden.add(i);
+            }
+            TempVar var = new TempVar(ctx);
+            var.uniqueName = column;
+            SimpleSelect.OrderItem sorted = new SimpleSelect.OrderItem();
+            sorted.item = new ExprVar(var);
+            sorted.descending = item.descending;
+            order.orderBy.add(sorted);
+        }
+
+        for (ScopeSelect query: queries) {
+            SimpleSelect ret = query.ret;
+            if (!hidden.isEmpty()) {
+                // The list can be shared with clones of this select: replace it.
+                List<Expr> exportedItems = new ArrayList<>(ret.exportedItems);
+                for (int i: hidden) {
+                    exportedItems.add(new ExprTree.AliasExpr(ret.orderBy.get(i).item, ORDER_COLUMN + i));
+                }
+                ret.exportedItems = exportedItems;
+            }
+            ret.restrictToTopRows();
+        }
+        return order;
+    }
+
+    /**
+     * Creates a ScopeSelect returning all the rows of the union.
+     */
+    private static ScopeSelect wrap(UnionSelect union, CompilationContext ctx) {
+        // Create the result.
+        ScopeSelect result = new ScopeSelect();
+
+        // Wrap the union
+        WithSelect withSelect = new WithSelect(union);
+        NameSubqueries.nameSubquery(withSelect, ctx);
+        result.withQueries.add(withSelect);
+
+        // Create the blind return.
+        result.ret = new SelectAll();
+        FromItem fromItem = new FromItem(ctx);
+        fromItem.source = withSelect;
+        fromItem.variables.add(new TempVar(ctx)); // Adding a fake variable.
+        result.ret.fromItem.add(fromItem);
+
+        return result;
+    }
+
+    /**
+     * The DISTINCT of a query is useless when the UNION removes duplicates,
+     * unless it's applied before a LIMIT, a SKIP or an ORDER BY.
+     */
+    private static void removeRedundantDistinct(ScopeSelect query) {
+        SimpleSelect ret = query.ret;
+        if (ret.limit < 0 && ret.skip < 0 && ret.orderBy.isEmpty()) {
+            ret.isDistinct = false;
+        }
+    }
 }
@@ -8,41 +8,38 @@ import org.cytosm.cypher2sql.lowering.sqltree.*;
  */
 public class NameSubqueries {
 
-    private static final String SUBQUERY_CONST = "SUB_";
-    private static long subquery_count = 0;
-
     /**
      * Give a name to each sub query.
      * @param sqltree is the root of the SQL tree.
+     * @param ctx is the compilation context providing the names.
      */
-    public static void nameSubqueries(ScopeSelect sqltree) throws Cypher2SqlException {
-        subquery_count = nameSubqueries(sqltree, subquery_count);
+    public static void nameSubqueries(ScopeSelect sqltree, CompilationContext ctx) throws Cypher2SqlException {
+        nameAll(sqltree, ctx);
     }
 
     /**
      * Give a name to a provided With sub query.
      * @param withSelect is the sub query to name.
+     * @param ctx is the compilation context providing the name.
      */
-    public static void nameSubquery(WithSelect withSelect) {
-        withSelect.subqueryName = SUBQUERY_CONST + subquery_count++;
+    public static void nameSubquery(WithSelect withSelect, CompilationContext ctx) {
+        withSelect.subqueryName = ctx.genSubqueryName();
     }
 
-    private static long nameSubqueries(BaseSelect sqltree, long count) throws Cypher2SqlException {
+    private static void nameAll(BaseSelect sqltree, CompilationContext ctx) throws Cypher2SqlException {
         if (sqltree instanceof WithSelect) {
-            ((WithSelect) sqltree).subqueryName = SUBQUERY_CONST + count++;
-            return nameSubqueries(((WithSelect) sqltree).subquery, count);
+            nameSubquery((WithSelect) sqltree, ctx);
+            nameAll(((WithSelect) sqltree).subquery, ctx);
         } else if (sqltree instanceof UnionSelect) {
             for (SimpleOrScopeSelect child: ((UnionSelect) sqltree).unions) {
-                count = nameSubqueries(child, count);
+                nameAll(child, ctx);
             }
-            return count;
         } else if (sqltree instanceof SimpleSelect) {
-            return count;
+            return;
         } else if (sqltree instanceof ScopeSelect) {
             for (WithSelect child: ((ScopeSelect) sqltree).withQueries) {
-                count = nameSubqueries(child, count);
+                nameAll(child, ctx);
             }
-            return count;
         } else {
             throw new Unreachable();
         }
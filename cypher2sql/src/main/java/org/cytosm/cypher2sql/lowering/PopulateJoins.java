@@ -3,9 +3,11 @@ package org.cytosm.cypher2sql.lowering;
 import org.cytosm.common.gtop.GTopInterfaceImpl;
 import org.cytosm.common.gtop.implementation.relational.ImplementationEdge;
 import org.cytosm.common.gtop.implementation.relational.TraversalHop;
+import org.cytosm.cypher2sql.cypher.ast.clause.match.pattern.PatternPart;
 import org.cytosm.cypher2sql.lowering.exceptions.BugFound;
 import org.cytosm.cypher2sql.lowering.exceptions.Cypher2SqlException;
 import org.cytosm.cypher2sql.lowering.exceptions.Unreachable;
+import org.cytosm.cypher2sql.lowering.exceptions.UnsupportedPattern;
 import org.cytosm.cypher2sql.lowering.sqltree.*;
 import org.cytosm.cypher2sql.lowering.sqltree.from.FromItem;
 import org.cytosm.cypher2sql.lowering.sqltree.join.BaseJoin;
@@ -13,6 +15,7 @@ import org.cytosm.cypher2sql.lowering.sqltree.join.InnerJoin;
 import org.cytosm.cypher2sql.lowering.sqltree.join.LeftJoin;
 import org.cytosm.cypher2sql.lowering.sqltree.visitor.Walk;
 import org.cytosm.cypher2sql.lowering.typeck.VarDependencies;
+import org.cytosm.cypher2sql.lowering.typeck.constexpr.ConstVal;
 import org.cytosm.cypher2sql.lowering.typeck.expr.Expr;
 import org.cytosm.cypher2sql.lowering.typeck.expr.ExprVar;
 import org.cytosm.cypher2sql.lowering.typeck.rel.Relationship;
@@ -44,12 +47,22 @@ public class PopulateJoins {
      * @param sqltree is the tree where JOIN will be populated.
      * @param vars contains all the information about variable in the original cypher.
      * @param gTopInterface is the gtop implementation.
+     * @param ctx is the compilation context.
      */
-    public static ScopeSelect populateJoins(ScopeSelect sqltree, VarDependencies vars, GTopInterfaceImpl gTopInterface)
+    public static ScopeSelect populateJoins(ScopeSelect sqltree, VarDependencies vars, GTopInterfaceImpl gTopInterface,
+                                            CompilationContext ctx)
             throws Cypher2SqlException
     {
 
-        Walk.walkSQLNode(new ExpandRelsAsJoins(vars, gTopInterface), sqltree);
+        ExpandRelsAsJoins visitor = new ExpandRelsAsJoins(vars, gTopInterface, ctx);
+        Walk.walkSQLNode(visitor, sqltree);
+
+        // The recursive selects only read tables: they go first.
+        if (!visitor.recursiveSelects.isEmpty()) {
+            List<WithSelect> withQueries = new ArrayList<>(visitor.recursiveSelects);
+            withQueries.addAll(sqltree.withQueries);
+            sqltree.withQueries = withQueries;
+        }
         return sqltree;
     }
 
@@ -99,15 +112,28 @@ public class PopulateJoins {
      *     As we can see, the first SELECT (__sub0) will have the joining condition
      *     split on two JOINs whereas the second case will have them on only one.
      *
+     *
+     *   - A variable length relationship is joined on a {@link RecursiveSelect}
+     *     over the joining table instead of the joining table itself. It
+     *     relates the two nodes with the number of hops as an additional
+     *     condition, and only starts from the rows of the source node.
+     *
+     *   - The relationship of a shortestPath(...) is joined on a
+     *     {@link ShortestPathSelect} instead. It already takes the minimum
+     *     number of hops into account.
+     *
      */
     private static class ExpandRelsAsJoins extends Walk.BaseSQLNodeVisitor {
 
         private final VarDependencies vars;
         private final GTopInterfaceImpl gTopInterface;
+        private final CompilationContext ctx;
+        final List<WithSelect> recursiveSelects = new ArrayList<>();
 
-        ExpandRelsAsJoins(final VarDependencies vars, GTopInterfaceImpl gTopInterface) {
+        ExpandRelsAsJoins(final VarDependencies vars, GTopInterfaceImpl gTopInterface, CompilationContext ctx) {
             this.vars = vars;
             this.gTopInterface = gTopInterface;
+            this.ctx = ctx;
         }
 
         @Override
@@ -162,11 +188,28 @@ public class PopulateJoins {
                 // First we create the Join itself and a TempVar
                 // (the tempVar is special is that it is allowed to be created there.
                 BaseJoin join = createJoin(simpleSelect);
-                TempVar joinVar = new TempVar();
+                TempVar joinVar = new TempVar(ctx);
 
                 // Then we create the different part of the Join.
-                FromItem joiningFrom = new FromItem();
-                joiningFrom.sourceTableName = traversalHop.getJoinTableName();
+                FromItem joiningFrom = new FromItem(ctx);
+                String joinTableSourceColumn = traversalHop.getJoinTableSourceColumn();
+                String joinTableDestinationColumn = traversalHop.getJoinTableDestinationColumn();
+                boolean shortest = rel.selector != PatternPart.Selector.EVERY_PATH;
+                boolean recursive = (rel.isVariableLength() || shortest) &&
+                        traversalHop.getJoinTableName() != null && !traversalHop.getJoinTableName().isEmpty() &&
+                        traversalHop.getSourceTableName().equals(traversalHop.getDestinationTableName());
+                if (shortest && !recursive) {
+                    throw new UnsupportedPattern("shortestPath requires a relationship implemented by " +
+                            "a join table between the same table.");
+                }
+                if (recursive) {
+                    joiningFrom.source = createRecursiveSelect(traversalHop, rel);
+                    joinVar.uniqueName = RecursiveSelect.VARIABLE;
+                    joinTableSourceColumn = RecursiveSelect.SOURCE;
+                    joinTableDestinationColumn = RecursiveSelect.DESTINATION;
+                } else {
+                    joiningFrom.sourceTableName = traversalHop.getJoinTableName();
+                }
                 joiningFrom.variables.add(joinVar);
                 join.joiningItem = joiningFrom;
 
@@ -176,7 +219,7 @@ public class PopulateJoins {
                         rightNode, rightNodeOriginTableName);
                 Expr conditionOnSource = new ExprTree.Eq(
                         new ExprTree.PropertyAccess(traversalHop.getSourceTableColumn(), new ExprVar(source)),
-                        new ExprTree.PropertyAccess(traversalHop.getJoinTableSourceColumn(), new ExprVar(joinVar))
+                        new ExprTree.PropertyAccess(joinTableSourceColumn, new ExprVar(joinVar))
                 );
 
                 // Condition on destination:
@@ -189,7 +232,7 @@ public class PopulateJoins {
                 }
                 Expr conditionOnDestination = new ExprTree.Eq(
                         new ExprTree.PropertyAccess(traversalHop.getDestinationTableColumn(), new ExprVar(destination)),
-                        new ExprTree.PropertyAccess(traversalHop.getJoinTableDestinationColumn(), new ExprVar(joinVar))
+                        new ExprTree.PropertyAccess(joinTableDestinationColumn, new ExprVar(joinVar))
                 );
 
                 // TODO(Joan): Write a test for this.
@@ -233,9 +276,59 @@ public class PopulateJoins {
                     // Additional join.
                     simpleSelect.addJoin(rightNodeJoin);
                 }
+
+                if (recursive) {
+                    RecursiveSelect hops = (RecursiveSelect) joiningFrom.source.subquery;
+                    hops.reader = simpleSelect;
+                    hops.sourceNode = source == rel.leftNode ? leftNodeFi : rightNodeFi;
+                    hops.sourceKey = new ExprTree.PropertyAccess(traversalHop.getSourceTableColumn(),
+                            new ExprVar(source));
+                }
+                if (shortest) {
+                    ShortestPathSelect search = (ShortestPathSelect) joiningFrom.source.subquery;
+                    search.destinationNode = destination == rel.leftNode ? leftNodeFi : rightNodeFi;
+                    search.destinationKey = new ExprTree.PropertyAccess(traversalHop.getDestinationTableColumn(),
+                            new ExprVar(destination));
+                }
+                if (shortest && rel.path != null) {
+                    rel.path.dynamicLength = new ExprTree.PropertyAccess(RecursiveSelect.DEPTH, new ExprVar(joinVar));
+                }
+                if (recursive && !shortest && rel.minHops > 1) {
+                    join.condition = new ExprTree.And(join.condition, new ExprTree.GreaterThanOrEqueal(
+                            new ExprTree.PropertyAccess(RecursiveSelect.DEPTH, new ExprVar(joinVar)),
+                            new ConstVal.LongVal(rel.minHops)
+                    ));
+                }
             }
         }
 
+        /**
+         * Create the recursive select following the joining table of
+         * the traversal hop for the given relationship.
+         * @return Returns the WithSelect wrapping it.
+         */
+        private WithSelect createRecursiveSelect(TraversalHop traversalHop, Relationship rel) {
+            RecursiveSelect recursiveSelect;
+            if (rel.selector != PatternPart.Selector.EVERY_PATH) {
+                ShortestPathSelect shortestPathSelect = new ShortestPathSelect();
+                shortestPathSelect.selector = rel.selector;
+                shortestPathSelect.minHops = rel.minHops;
+                recursiveSelect = shortestPathSelect;
+            } else {
+                recursiveSelect = new RecursiveSelect();
+            }
+            recursiveSelect.joinTableName = traversalHop.getJoinTableName();
+            recursiveSelect.joinTableSourceColumn = traversalHop.getJoinTableSourceColumn();
+            recursiveSelect.joinTableDestinationColumn = traversalHop.getJoinTableDestinationColumn();
+            recursiveSelect.direction = rel.direction;
+            recursiveSelect.maxHops = rel.maxHops;
+
+            WithSelect withSelect = recursiveSelect.wrapper;
+            NameSubqueries.nameSubquery(withSelect, ctx);
+            recursiveSelects.add(withSelect);
+            return withSelect;
+        }
+
         @Override
         public void visitScopeSelect(ScopeSelect scopeSelect) throws Cypher2SqlException {
             scopeSelect.withQueries.forEach(rethrowConsumer(this::visitWithSelect));
@@ -268,36 +361,39 @@ public class PopulateJoins {
                     tableName
             );
         }
+    }
 
-        private static String getOriginTableName(Var var, FromItem sourceForVar) throws Cypher2SqlException {
-            return getOrigin(var, sourceForVar).sourceTableName;
-        }
-
-        private static FromItem getOrigin(Var var, FromItem origin) throws Cypher2SqlException {
-            if (origin.sourceTableName != null) {
-                return origin;
-            } else {
-                // We only expect to see a source of type SimpleSelect
-                // Unions should have bubbled up and be hidden.
-                if (origin.source.subquery instanceof SimpleSelect) {
-                    SimpleSelect source = (SimpleSelect) origin.source.subquery;
-
-                    Optional<FromItem> newSourceForVar = source.dependencies().stream()
-                            .filter(varProvider -> varProvider.variables.stream().anyMatch(v -> v == var))
-                            .findAny();
-
-                    Var resolvedVar = AliasVar.resolveAliasVar(var);
+    /**
+     * Returns the table providing the rows of the given variable.
+     */
+    static String getOriginTableName(Var var, FromItem sourceForVar) throws Cypher2SqlException {
+        return getOrigin(var, sourceForVar).sourceTableName;
+    }
 
-                    if (newSourceForVar.isPresent()) {
-                        return getOrigin(var, newSourceForVar.get());
-                    } else if (resolvedVar != var) {
-                        return getOrigin(resolvedVar, origin);
-                    } else {
-                        throw new BugFound("Variable came from nowhere!! -> '" + var.name + "'");
-                    }
+    private static FromItem getOrigin(Var var, FromItem origin) throws Cypher2SqlException {
+        if (origin.sourceTableName != null) {
+            return origin;
+        } else {
+            // We only expect to see a source of type SimpleSelect
+            // Unions should have bubbled up and be hidden.
+            if (origin.source.subquery instanceof SimpleSelect) {
+                SimpleSelect source = (SimpleSelect) origin.source.subquery;
+
+                Optional<FromItem> newSourceForVar = source.dependencies().stream()
+                        .filter(varProvider -> varProvider.variables.stream().anyMatch(v -> v == var))
+                        .findAny();
+
+                Var resolvedVar = AliasVar.resolveAliasVar(var);
+
+                if (newSourceForVar.isPresent()) {
+                    return getOrigin(var, newSourceForVar.get());
+                } else if (resolvedVar != var) {
+                    return getOrigin(resolvedVar, origin);
                 } else {
-                    throw new BugFound("Pass is ran too late. We shouldn't see any Union here.");
+                    throw new BugFound("Variable came from nowhere!! -> '" + var.name + "'");
                 }
+            } else {
+                throw new BugFound("Pass is ran too late. We shouldn't see any Union here.");
             }
         }
     }
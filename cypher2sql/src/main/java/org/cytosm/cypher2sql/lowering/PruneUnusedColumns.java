@@ -0,0 +1,401 @@
+package org.cytosm.cypher2sql.lowering;
+
+import org.cytosm.cypher2sql.lowering.rendering.RenderingContext;
+import org.cytosm.cypher2sql.lowering.rendering.RenderingHelper;
+import org.cytosm.cypher2sql.lowering.sqltree.*;
+import org.cytosm.cypher2sql.lowering.sqltree.from.FromItem;
+import org.cytosm.cypher2sql.lowering.sqltree.join.BaseJoin;
+import org.cytosm.cypher2sql.lowering.typeck.expr.Expr;
+import org.cytosm.cypher2sql.lowering.typeck.expr.ExprTree;
+import org.cytosm.cypher2sql.lowering.typeck.expr.ExprVar;
+import org.cytosm.cypher2sql.lowering.typeck.expr.ExprWalk;
+import org.cytosm.cypher2sql.lowering.typeck.types.NodeType;
+import org.cytosm.cypher2sql.lowering.typeck.var.AliasVar;
+import org.cytosm.cypher2sql.lowering.typeck.var.NodeVar;
+import org.cytosm.cypher2sql.lowering.typeck.var.Var;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * This pass removes the columns exported by a {@link WithSelect}
+ * that are never read by the selects using it.
+ *
+ * {@link ComputeExports} decides what each select exports while the
+ * tree is built for a single expanded cypher. Once the expanded cyphers
+ * are merged, some of those columns are no longer used: a WITH that
+ * forwards a node exports all the properties required anywhere on it,
+ * even in the branches that don't read them.
+ *
+ * This is a backward liveness analysis. WithSelects are visited from
+ * the last consumers down to the tables. The columns live in a WithSelect
+ * are the ones read by all the selects using it: the variables and the
+ * properties they access through the {@link FromItem} of the WithSelect.
+ * An exported item is kept if one of its columns is live. A node only
+ * keeps its live properties. A select that only has dead columns keeps
+ * one of them because a SELECT must export something.
+ *
+ * Only the WithSelects wrapping a non DISTINCT {@link SimpleSelect} or a
+ * UNION ALL of them are pruned: removing columns there doesn't change the
+ * rows. The columns of a UNION are named after its first branch, the same
+ * columns are removed from all the branches.
+ *
+ * The {@link SelectAll}s are also given the explicit list of columns they
+ * select. This pass must run on the final tree, right before the rendering.
+ */
+public class PruneUnusedColumns {
+
+    private static final RenderingHelper HELPER = new RenderingHelper();
+
+    /**
+     * Remove unused columns from the tree.
+     * @param sqltree is the root of the SQL tree.
+     */
+    public static void prune(ScopeSelect sqltree) {
+        Analysis analysis = new Analysis();
+        analysis.visit(sqltree, new ArrayDeque<>(), null);
+
+        // Visit the WithSelects once all the selects using them have been pruned.
+        Set<WithSelect> done = Collections.newSetFromMap(new IdentityHashMap<>());
+        boolean progress = true;
+        while (progress) {
+            progress = false;
+            for (WithSelect withSelect: analysis.withSelects) {
+                if (done.contains(withSelect)) {
+                    continue;
+                }
+                List<Read> reads = analysis.reads.getOrDefault(withSelect, Collections.emptyList());
+                boolean ready = reads.stream()
+                        .allMatch(read -> read.owner == null || read.owner == withSelect || done.contains(read.owner));
+                if (ready) {
+                    pruneWithSelect(withSelect, reads);
+                    done.add(withSelect);
+                    progress = true;
+                }
+            }
+        }
+
+        for (Read read: analysis.selectAlls) {
+            SelectAll selectAll = (SelectAll) read.select;
+            selectAll.columns = columnsOf(read.fromItem.source).stream()
+                    .filter(column -> !selectAll.hiddenColumns.contains(column))
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static void pruneWithSelect(WithSelect withSelect, List<Read> reads) {
+        Set<String> live = new HashSet<>();
+        for (Read read: reads) {
+            if (read.select instanceof SelectAll) {
+                return;
+            }
+            live.addAll(columnsRead(read));
+        }
+
+        List<SimpleSelect> selects = prunable(withSelect.subquery);
+        if (selects.isEmpty()) {
+            return;
+        }
+        List<List<Column>> columns = selects.stream().map(PruneUnusedColumns::columns).collect(Collectors.toList());
+        List<Column> first = columns.get(0);
+        if (first.isEmpty() || columns.stream().anyMatch(branch -> branch.size() != first.size())) {
+            return;
+        }
+
+        // Columns are matched by position between the branches.
+        boolean[] keep = new boolean[first.size()];
+        boolean any = false;
+        for (int i = 0; i < keep.length; i++) {
+            keep[i] = first.get(i).name == null || live.contains(first.get(i).name);
+            any |= keep[i];
+        }
+        if (!any) {
+            keep[0] = true;
+        }
+        for (int i = 0; i < selects.size(); i++) {
+            restrict(selects.get(i), columns.get(i), keep);
+        }
+    }
+
+    /**
+     * The selects whose exported items are the columns of the subquery of a WithSelect,
+     * one per branch for a UNION. Empty if removing columns could change the rows.
+     */
+    private static List<SimpleSelect> prunable(BaseSelect subquery) {
+        List<SimpleSelect> selects = new ArrayList<>();
+        if (subquery instanceof UnionSelect) {
+            UnionSelect union = (UnionSelect) subquery;
+            if (union.distinct) {
+                return Collections.emptyList();
+            }
+            for (SimpleOrScopeSelect branch: union.unions) {
+                selects.add(branch instanceof ScopeSelect ? ((ScopeSelect) branch).ret : (SimpleSelect) branch);
+            }
+        } else if (subquery instanceof SimpleSelect) {
+            selects.add((SimpleSelect) subquery);
+        }
+        if (selects.stream().anyMatch(select -> select instanceof SelectAll || select.isDistinct)) {
+            return Collections.emptyList();
+        }
+        return selects;
+    }
+
+    /**
+     * Only keep the exported items of a select that have a column to keep.
+     * A node is restricted to the properties kept.
+     */
+    private static void restrict(SimpleSelect select, List<Column> columns, boolean[] keep) {
+        List<Expr> kept = new ArrayList<>();
+        for (Expr expr: select.exportedItems) {
+            Set<String> properties = new HashSet<>();
+            int exported = 0;
+            boolean live = false;
+            for (int i = 0; i < columns.size(); i++) {
+                Column column = columns.get(i);
+                if (column.item != expr) {
+                    continue;
+                }
+                exported++;
+                if (keep[i]) {
+                    live = true;
+                    if (column.property != null) {
+                        properties.add(column.property);
+                    }
+                }
+            }
+            if (!live) {
+                continue;
+            }
+            if (expr instanceof ExprVar && !properties.isEmpty() && properties.size() < exported) {
+                // The ExprVar can be shared with a clone of this select: create a new one.
+                ExprVar pruned = new ExprVar(((ExprVar) expr).var);
+                pruned.properties = properties;
+                kept.add(pruned);
+            } else {
+                kept.add(expr);
+            }
+        }
+        // The list can be shared with a clone of this select: replace it.
+        select.exportedItems = kept;
+    }
+
+    /**
+     * Returns the names of the columns exported by a WithSelect.
+     */
+    private static List<String> columnsOf(WithSelect withSelect) {
+        BaseSelect select = withSelect.subquery;
+        while (select instanceof UnionSelect || select instanceof ScopeSelect) {
+            if (select instanceof UnionSelect) {
+                List<SimpleOrScopeSelect> unions = ((UnionSelect) select).unions;
+                if (unions.isEmpty()) {
+                    return Collections.emptyList();
+                }
+                select = unions.get(0);
+            } else {
+                select = ((ScopeSelect) select).ret;
+            }
+        }
+        SimpleSelect simpleSelect = (SimpleSelect) select;
+        if (simpleSelect instanceof SelectAll) {
+            return ((SelectAll) simpleSelect).columns;
+        }
+        List<String> names = new ArrayList<>();
+        for (Column column: columns(simpleSelect)) {
+            if (column.name == null) {
+                // Select them all.
+                return Collections.emptyList();
+            }
+            names.add(column.name);
+        }
+        return names;
+    }
+
+    /**
+     * The columns exported by a select, in the order they are rendered.
+     * A node has one column per property.
+     */
+    private static List<Column> columns(SimpleSelect select) {
+        RenderingContext ctx = new RenderingContext(select.dependencies(), RenderingContext.Location.Export);
+        List<Column> columns = new ArrayList<>();
+        for (Expr expr: select.exportedItems) {
+            if (expr instanceof ExprVar && ((ExprVar) expr).var.type() instanceof NodeType) {
+                ExprVar exprVar = (ExprVar) expr;
+                NodeVar node = (NodeVar) AliasVar.resolveAliasVar(exprVar.var);
+                for (String prop: node.propertiesRequired) {
+                    if (exprVar.properties == null || exprVar.properties.contains(prop)) {
+                        columns.add(new Column(expr, prop, exprVar.var.uniqueName + "_" + prop));
+                    }
+                }
+            } else if (expr instanceof ExprVar) {
+                columns.add(new Column(expr, null, ((ExprVar) expr).var.uniqueName));
+            } else if (expr instanceof ExprTree.AliasExpr) {
+                columns.add(new Column(expr, null, HELPER.renderEscapedColumnName(((ExprTree.AliasExpr) expr).alias)));
+            } else if (expr instanceof ExprTree.PropertyAccess &&
+                    ((ExprTree.PropertyAccess) expr).expression instanceof ExprVar) {
+                ExprTree.PropertyAccess access = (ExprTree.PropertyAccess) expr;
+                Var var = ((ExprVar) access.expression).var;
+                boolean table = ctx.getSource(var).map(fromItem -> fromItem.source == null).orElse(false);
+                columns.add(new Column(expr, null, table
+                        ? access.propertyAccessed
+                        : var.uniqueName + "_" + access.propertyAccessed));
+            } else {
+                // Named by the database.
+                columns.add(new Column(expr, null, null));
+            }
+        }
+        return columns;
+    }
+
+    /**
+     * The names of the columns a select reads through one of its FromItems.
+     */
+    private static Set<String> columnsRead(Read read) {
+        ColumnsRead visitor = new ColumnsRead(read.fromItem);
+        SimpleSelect select = read.select;
+        select.exportedItems.forEach(expr -> ExprWalk.walk(visitor, expr));
+        if (select.whereCondition != null) {
+            ExprWalk.walk(visitor, select.whereCondition);
+        }
+        select.orderBy.forEach(item -> ExprWalk.walk(visitor, item.item));
+        for (BaseJoin join: select.joinList()) {
+            if (join.condition != null) {
+                ExprWalk.walk(visitor, join.condition);
+            }
+        }
+        return visitor.columns;
+    }
+
+    /**
+     * Collect the columns of the variables provided by a FromItem, named
+     * like {@link RenderingContext} renders them.
+     */
+    private static class ColumnsRead extends ExprWalk.BaseVisitor {
+        private final FromItem fromItem;
+        final Set<String> columns = new HashSet<>();
+
+        ColumnsRead(FromItem fromItem) {
+            this.fromItem = fromItem;
+        }
+
+        private boolean provides(Var var) {
+            return fromItem.variables.stream().anyMatch(v -> v == var);
+        }
+
+        @Override
+        public void visitVariable(ExprVar expr) {
+            Var resolved = AliasVar.resolveAliasVar(expr.var);
+            if (resolved instanceof NodeVar) {
+                NodeVar node = (NodeVar) resolved;
+                Var provided = provides(expr.var) ? expr.var : provides(node) ? node : null;
+                if (provided != null) {
+                    for (String prop: node.propertiesRequired) {
+                        if (expr.properties == null || expr.properties.contains(prop)) {
+                            columns.add(provided.uniqueName + "_" + prop);
+                        }
+                    }
+                    return;
+                }
+            } else if (provides(expr.var)) {
+                columns.add(expr.var.uniqueName);
+                return;
+            }
+            super.visitVariable(expr);
+        }
+
+        @Override
+        public void visitPropertyAccess(ExprTree.PropertyAccess expr) {
+            if (expr.expression instanceof ExprVar && provides(((ExprVar) expr.expression).var)) {
+                columns.add(((ExprVar) expr.expression).var.uniqueName + "_" + expr.propertyAccessed);
+                return;
+            }
+            super.visitPropertyAccess(expr);
+        }
+    }
+
+    /**
+     * A column exported by a select: an exported item or one property of a node.
+     */
+    private static class Column {
+        final Expr item;
+        // The property of a node, null for the other items.
+        final String property;
+        // Null if the column is named by the database.
+        final String name;
+
+        Column(Expr item, String property, String name) {
+            this.item = item;
+            this.property = property;
+            this.name = name;
+        }
+    }
+
+    /**
+     * A select reading a WithSelect through one of its FromItems.
+     */
+    private static class Read {
+        final SimpleSelect select;
+        final FromItem fromItem;
+        // The WithSelect containing the select, null for a ScopeSelect return.
+        final WithSelect owner;
+
+        Read(SimpleSelect select, FromItem fromItem, WithSelect owner) {
+            this.select = select;
+            this.fromItem = fromItem;
+            this.owner = owner;
+        }
+    }
+
+    /**
+     * Finds which select reads which WithSelect. FromItems are resolved
+     * by name in the enclosing scopes, like the database will do.
+     */
+    private static class Analysis {
+        final List<WithSelect> withSelects = new ArrayList<>();
+        final Map<WithSelect, List<Read>> reads = new IdentityHashMap<>();
+        final List<Read> selectAlls = new ArrayList<>();
+
+        void visit(BaseSelect select, Deque<Map<String, WithSelect>> env, WithSelect owner) {
+            if (select instanceof ScopeSelect) {
+                ScopeSelect scope = (ScopeSelect) select;
+                Map<String, WithSelect> names = new HashMap<>();
+                for (WithSelect withSelect: scope.withQueries) {
+                    names.put(withSelect.subqueryName, withSelect);
+                    withSelects.add(withSelect);
+                }
+                env.push(names);
+                for (WithSelect withSelect: scope.withQueries) {
+                    visit(withSelect.subquery, env, withSelect);
+                }
+                visit(scope.ret, env, null);
+                env.pop();
+            } else if (select instanceof UnionSelect) {
+                for (SimpleOrScopeSelect child: ((UnionSelect) select).unions) {
+                    visit(child, env, owner);
+                }
+            } else if (select instanceof SimpleSelect) {
+                SimpleSelect simpleSelect = (SimpleSelect) select;
+                for (FromItem fromItem: simpleSelect.dependencies()) {
+                    if (fromItem.source == null) {
+                        continue;
+                    }
+                    WithSelect source = lookup(env, fromItem.source);
+                    Read read = new Read(simpleSelect, fromItem, owner);
+                    reads.computeIfAbsent(source, k -> new ArrayList<>()).add(read);
+                    if (simpleSelect instanceof SelectAll) {
+                        selectAlls.add(read);
+                    }
+                }
+            }
+        }
+
+        private static WithSelect lookup(Deque<Map<String, WithSelect>> env, WithSelect source) {
+            for (Map<String, WithSelect> names: env) {
+                WithSelect found = names.get(source.subqueryName);
+                if (found != null) {
+                    return found;
+                }
+            }
+            return source;
+        }
+    }
+}
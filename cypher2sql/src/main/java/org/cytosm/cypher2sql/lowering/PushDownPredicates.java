@@ -0,0 +1,233 @@
+package org.cytosm.cypher2sql.lowering;
+
+import org.cytosm.cypher2sql.lowering.sqltree.*;
+import org.cytosm.cypher2sql.lowering.sqltree.from.FromItem;
+import org.cytosm.cypher2sql.lowering.typeck.expr.Expr;
+import org.cytosm.cypher2sql.lowering.typeck.expr.ExprFn;
+import org.cytosm.cypher2sql.lowering.typeck.expr.ExprTree;
+import org.cytosm.cypher2sql.lowering.typeck.expr.ExprVar;
+import org.cytosm.cypher2sql.lowering.typeck.expr.ExprWalk;
+import org.cytosm.cypher2sql.lowering.typeck.var.Var;
+
+import java.util.*;
+
+/**
+ * This pass moves the conditions of a WHERE into the selects
+ * that provide the variables they use.
+ *
+ * {@link MoveRestrictionInPattern} puts the restrictions in the select
+ * of the pattern that declares them. A WHERE written after a WITH or
+ * on a MATCH with several pattern parts ends up in a select reading
+ * other WithSelects:
+ *
+ * <pre>
+ *     MATCH (p:Person)-[:KNOWS]-(f:Person) WITH p, f WHERE f.firstName = 'x' RETURN p.id
+ * </pre>
+ *
+ * Here the WHERE filters the rows once all the joins have been computed.
+ * It is moved into the WithSelect reading the Person table of <code>f</code>
+ * so that the rows are filtered before the joins.
+ *
+ * Each condition of the AND is moved as low as possible. A condition can
+ * be moved into a WithSelect if:
+ *  - all the variables it uses come from that WithSelect,
+ *  - the WithSelect is only used there,
+ *  - the selects of the WithSelect provide all those variables and have
+ *    no LIMIT, SKIP or function in their exports (counting must see all rows).
+ * When the WithSelect is a UNION, the condition is copied into every branch.
+ *
+ * This pass must run after {@link UnwrapAliasVar}: variables must be final.
+ */
+public class PushDownPredicates {
+
+    /**
+     * Move down the conditions of all the WHERE of the tree.
+     * @param sqltree is the root of the SQL tree.
+     */
+    public static void pushDown(ScopeSelect sqltree) {
+        Analysis analysis = new Analysis();
+        analysis.visit(sqltree, new ArrayDeque<>());
+
+        for (SimpleSelect select: analysis.selects) {
+            if (select.whereCondition == null) {
+                continue;
+            }
+            List<Expr> remaining = new ArrayList<>();
+            for (Expr condition: conjuncts(select.whereCondition)) {
+                if (!sink(condition, select, analysis)) {
+                    remaining.add(condition);
+                }
+            }
+            select.whereCondition = and(remaining);
+        }
+    }
+
+    /**
+     * Try to move the condition below the given select.
+     * @return Returns true if the condition has been moved.
+     */
+    private static boolean sink(Expr condition, SimpleSelect select, Analysis analysis) {
+        Set<Var> vars = variables(condition);
+        if (vars.isEmpty()) {
+            return false;
+        }
+        for (FromItem fromItem: select.dependencies()) {
+            if (fromItem.source == null || !provides(Collections.singletonList(fromItem), vars)) {
+                continue;
+            }
+            // Filtering the right side of a LEFT JOIN before the join isn't the same.
+            if (select instanceof SimpleSelectWithLeftJoins && !select.fromItem.contains(fromItem)) {
+                return false;
+            }
+            WithSelect source = analysis.resolved.get(fromItem);
+            if (source == null || analysis.reads.getOrDefault(source, 0) != 1) {
+                return false;
+            }
+            List<SimpleSelect> targets = new ArrayList<>();
+            if (!collectTargets(source.subquery, vars, targets)) {
+                return false;
+            }
+            for (SimpleSelect target: targets) {
+                if (!sink(condition, target, analysis)) {
+                    target.whereCondition = and(Arrays.asList(target.whereCondition, condition));
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Collect the selects that will receive the condition.
+     * @return Returns false if one of them can't receive it.
+     */
+    private static boolean collectTargets(BaseSelect select, Set<Var> vars, List<SimpleSelect> targets) {
+        if (select instanceof UnionSelect) {
+            for (SimpleOrScopeSelect child: ((UnionSelect) select).unions) {
+                if (!collectTargets(child, vars, targets)) {
+                    return false;
+                }
+            }
+            return true;
+        } else if (select instanceof ScopeSelect) {
+            return collectTargets(((ScopeSelect) select).ret, vars, targets);
+        } else if (select instanceof SimpleSelect && !(select instanceof SelectAll)) {
+            SimpleSelect simpleSelect = (SimpleSelect) select;
+            if (simpleSelect.limit >= 0 || simpleSelect.skip >= 0 ||
+                    simpleSelect.exportedItems.stream().anyMatch(PushDownPredicates::hasFunction) ||
+                    !provides(simpleSelect.dependencies(), vars)) {
+                return false;
+            }
+            targets.add(simpleSelect);
+            return true;
+        }
+        return false;
+    }
+
+    private static boolean provides(List<FromItem> fromItems, Set<Var> vars) {
+        return vars.stream().allMatch(var -> fromItems.stream()
+                .anyMatch(fromItem -> fromItem.variables.stream().anyMatch(v -> v == var)));
+    }
+
+    private static Set<Var> variables(Expr expr) {
+        Set<Var> vars = Collections.newSetFromMap(new IdentityHashMap<>());
+        ExprWalk.walk(new ExprWalk.BaseVisitor() {
+            @Override
+            public void visitVariable(ExprVar expr) {
+                vars.add(expr.var);
+            }
+        }, expr);
+        return vars;
+    }
+
+    private static boolean hasFunction(Expr expr) {
+        boolean[] found = {false};
+        ExprWalk.walk(new ExprWalk.BaseVisitor() {
+            @Override
+            public void visitFn(ExprFn expr) {
+                found[0] = true;
+            }
+        }, expr);
+        return found[0];
+    }
+
+    private static List<Expr> conjuncts(Expr expr) {
+        List<Expr> result = new ArrayList<>();
+        if (expr instanceof ExprTree.And) {
+            result.addAll(conjuncts(((ExprTree.And) expr).lhs));
+            result.addAll(conjuncts(((ExprTree.And) expr).rhs));
+        } else {
+            result.add(expr);
+        }
+        return result;
+    }
+
+    private static Expr and(List<Expr> conditions) {
+        Expr result = null;
+        for (Expr condition: conditions) {
+            if (condition == null) {
+                continue;
+            }
+            result = result == null ? condition : new ExprTree.And(result, condition);
+        }
+        return result;
+    }
+
+    /**
+     * Resolves the sources of the FromItems by name in the enclosing
+     * scopes, like the database will do, and counts how many times
+     * each WithSelect is used.
+     */
+    private static class Analysis {
+        final List<SimpleSelect> selects = new ArrayList<>();
+        final Map<FromItem, WithSelect> resolved = new IdentityHashMap<>();
+        final Map<WithSelect, Integer> reads = new IdentityHashMap<>();
+
+        void visit(BaseSelect select, Deque<Map<String, WithSelect>> env) {
+            if (select instanceof ScopeSelect) {
+                ScopeSelect scope = (ScopeSelect) select;
+                Map<String, WithSelect> names = new HashMap<>();
+                for (WithSelect withSelect: scope.withQueries) {
+                    names.put(withSelect.subqueryName, withSelect);
+                }
+                env.push(names);
+                // Visit the consumers first so that conditions go down in one pass.
+                visit(scope.ret, env);
+                for (int i = scope.withQueries.size() - 1; i >= 0; i--) {
+                    visit(scope.withQueries.get(i).subquery, env);
+                }
+                env.pop();
+            } else if (select instanceof UnionSelect) {
+                for (SimpleOrScopeSelect child: ((UnionSelect) select).unions) {
+                    visit(child, env);
+                }
+            } else if (select instanceof SimpleSelect) {
+                SimpleSelect simpleSelect = (SimpleSelect) select;
+                selects.add(simpleSelect);
+                for (FromItem fromItem: simpleSelect.dependencies()) {
+                    if (fromItem.source == null) {
+                        continue;
+                    }
+                    WithSelect source = lookup(env, fromItem.source);
+                    if (resolved.containsKey(fromItem) && resolved.get(fromItem) != source) {
+                        // A FromItem shared between scopes: its source isn't known.
+                        resolved.put(fromItem, null);
+                    } else if (!resolved.containsKey(fromItem)) {
+                        resolved.put(fromItem, source);
+                    }
+                    reads.merge(source, 1, Integer::sum);
+                }
+            }
+        }
+
+        private static WithSelect lookup(Deque<Map<String, WithSelect>> env, WithSelect source) {
+            for (Map<String, WithSelect> names: env) {
+                WithSelect found = names.get(source.subqueryName);
+                if (found != null) {
+                    return found;
+                }
+            }
+            return source;
+        }
+    }
+}
@@ -90,7 +90,11 @@ public class SelectTreeBuilder {
                             .collect(Collectors.toList())
                     );
                 } else if (clause instanceof With) {
-                    top.withQueries.add(new WithSelect(this.foldWith((With) clause)));
+                    With with = (With) clause;
+                    top.withQueries.add(new WithSelect(this.foldWith(with)));
+                    if (with.where.isPresent()) {
+                        top.withQueries.add(new WithSelect(this.foldWithWhere(with.where.get())));
+                    }
                 } else if (clause instanceof Return) {
                     top.ret = this.foldReturn((Return) clause);
                     return top;
@@ -103,6 +107,19 @@ public class SelectTreeBuilder {
             return foldProjectionClause(with);
         }
 
+        /**
+         * The WHERE of a WITH filters the projected rows. It can use
+         * the aliases defined by the WITH, so it gets its own SELECT.
+         */
+        SimpleSelect foldWithWhere(Where where) throws SelectTreeException {
+            SimpleSelect select = new SimpleSelectWithInnerJoins();
+            select.varId = new ClauseId(where);
+            select.whereCondition = ExprTreeBuilder.buildFromCypherExpression(
+                    where.expression, varDependencies.getReachableVars(new ClauseId(where))
+            );
+            return select;
+        }
+
         SimpleSelect foldReturn(Return retnode) throws SelectTreeException {
             return foldProjectionClause(retnode);
         }
@@ -14,7 +14,6 @@ import org.cytosm.cypher2sql.lowering.typeck.constexpr.ConstVal;
 import static org.cytosm.cypher2sql.lowering.exceptions.fns.LambdaExceptionUtil.rethrowFunction;
 import static org.cytosm.cypher2sql.lowering.exceptions.fns.LambdaExceptionUtil.rethrowConsumer;
 
-import java.util.HashMap;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -33,74 +32,37 @@ import java.util.stream.Collectors;
 public class TransformFunctions {
 
     /**
-     * Look for all function COUNT uses and turn them as appropriate
-     * into either a
-     * @param tree is the SQL tree where COUNT will be updated.
+     * Look for all the aggregate functions (count, sum, min, max and avg)
+     * and give them their SQL name. Aggregates of a node are computed
+     * on the id of the node.
+     *
+     * How aggregates reading a UNION are combined is decided once the
+     * expanded cyphers are merged: see {@link DecomposeAggregates}.
+     *
+     * @param tree is the SQL tree where aggregates will be updated.
      * @param gTopInterface is the implementation gTop.
      */
-    public static void convertCypherCountFn(ScopeSelect tree, GTopInterfaceImpl gTopInterface)
+    public static void convertCypherAggregateFns(ScopeSelect tree, GTopInterfaceImpl gTopInterface)
             throws Cypher2SqlException
     {
-        HashMap<ScopeSelect, Boolean> scopeIsLeaf = new HashMap<>();
-        Walk.walkSQLNode(new ScopeSelectIsLeaf(scopeIsLeaf), tree);
-        Walk.walkSQLNode(new CountVisitor(scopeIsLeaf, gTopInterface), tree);
-    }
-
-    private static class ScopeSelectIsLeaf extends Walk.BaseSQLNodeVisitor {
-
-        private final HashMap<ScopeSelect, Boolean> scopeIsLeaf;
-        private ScopeSelect parentScope;
-
-        ScopeSelectIsLeaf(HashMap<ScopeSelect, Boolean> scopeIsLeaf) {
-            this.scopeIsLeaf = scopeIsLeaf;
-        }
-
-        @Override
-        public void visitScopeSelect(ScopeSelect scopeSelect) throws Cypher2SqlException {
-            ScopeSelect parentScope = this.parentScope;
-            this.switchScopeSelect(scopeSelect);
-            super.visitScopeSelect(scopeSelect);
-            this.parentScope = parentScope;
-        }
-
-        private void switchScopeSelect(ScopeSelect newScope) {
-            if (parentScope != null) {
-                this.scopeIsLeaf.put(parentScope, false);
-            }
-            this.scopeIsLeaf.put(newScope, true);
-            this.parentScope = newScope;
-        }
+        Walk.walkSQLNode(new AggregateVisitor(gTopInterface), tree);
     }
 
-    private static class CountVisitor extends Walk.BaseSQLNodeVisitor {
+    private static class AggregateVisitor extends Walk.BaseSQLNodeVisitor {
 
-        private static final String COUNT = "count";
-        private final HashMap<ScopeSelect, Boolean> scopeIsLeaf;
-        private final GTopInterfaceImpl gtop;
+        private final NameFnExpr namer;
 
-        CountVisitor(HashMap<ScopeSelect, Boolean> scopeIsLeaf, GTopInterfaceImpl gtop) {
-            this.scopeIsLeaf = scopeIsLeaf;
-            this.gtop = gtop;
+        AggregateVisitor(GTopInterfaceImpl gtop) {
+            this.namer = new NameFnExpr(gtop);
         }
 
         @Override
         public void visitSimpleSelect(SimpleSelect simpleSelect) throws Cypher2SqlException {
-            // In a simple select that does not represent a Cypher RETURN
-            // (only the ScopeSelect "ret" can and it is not captured by that pass)
-            // we always go from the cypher name count to the SQL count.
-
-            NameFnExpr namer = new NameFnExpr(gtop, COUNT, ExprFn.Name.COUNT);
             simpleSelect.exportedItems.forEach(e -> ExprWalk.walk(namer, e));
         }
 
         @Override
         public void visitScopeSelect(ScopeSelect scopeSelect) throws Cypher2SqlException {
-            NameFnExpr namer;
-            if (this.scopeIsLeaf.get(scopeSelect)) {
-                namer = new NameFnExpr(gtop, COUNT, ExprFn.Name.COUNT);
-            } else {
-                namer = new NameFnExpr(gtop, COUNT, ExprFn.Name.SUM);
-            }
             scopeSelect.ret.exportedItems.forEach(e -> ExprWalk.walk(namer, e));
             scopeSelect.withQueries.forEach(rethrowConsumer(this::visitWithSelect));
         }
@@ -108,21 +70,19 @@ public class TransformFunctions {
 
     private static class NameFnExpr extends ExprWalk.BaseVisitor {
 
-        private final String fnCypherName;
-        private final ExprFn.Name fnName;
         private final GTopInterfaceImpl gtop;
 
-        NameFnExpr(GTopInterfaceImpl gtop, String fnCypherName, ExprFn.Name fnName) {
+        NameFnExpr(GTopInterfaceImpl gtop) {
             this.gtop = gtop;
-            this.fnCypherName = fnCypherName;
-            this.fnName = fnName;
         }
 
         @Override
         public void visitFn(ExprFn expr) {
-            if (expr.cypherName.equalsIgnoreCase(fnCypherName)) {
-                expr.name = fnName;
+            ExprFn.Name name = aggregateName(expr.cypherName);
+            if (name == null) {
+                return;
             }
+            expr.name = name;
             // FIXME: Is is always a correct way of folding the argument?
             expr.args = expr.args.stream()
                     .map(x -> {
@@ -149,6 +109,26 @@ public class TransformFunctions {
     }
 
 
+    /**
+     * Returns the SQL aggregate function for the given cypher function.
+     * @param cypherName is the name of the cypher function.
+     * @return Returns the SQL aggregate or null if it isn't an aggregate.
+     */
+    static ExprFn.Name aggregateName(String cypherName) {
+        if (cypherName == null) {
+            return null;
+        }
+        switch (cypherName.toLowerCase()) {
+            case "count": return ExprFn.Name.COUNT;
+            case "sum": return ExprFn.Name.SUM;
+            case "min": return ExprFn.Name.MIN;
+            case "max": return ExprFn.Name.MAX;
+            case "avg": return ExprFn.Name.AVG;
+            default: return null;
+        }
+    }
+
+
     /**
      * Transform all uses of length(p) into the length of the path.
      *
@@ -183,6 +163,10 @@ public class TransformFunctions {
                     Expr arg = expr.args.get(0);
                     if (arg instanceof ExprVar && ((ExprVar) arg).var.type() instanceof PathType) {
                         PathVar pathVar = (PathVar) AliasVar.resolveAliasVar(((ExprVar) arg).var);
+                        if (pathVar.dynamicLength != null) {
+                            // The variable is rendered as its length.
+                            return arg;
+                        }
                         return new ConstVal.LongVal(pathVar.length);
                     }
                 }
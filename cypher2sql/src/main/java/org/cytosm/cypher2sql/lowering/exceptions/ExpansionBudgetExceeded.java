@@ -0,0 +1,12 @@
+package org.cytosm.cypher2sql.lowering.exceptions;
+
+/**
+ * Raised when the expansion of a query into its variants
+ * goes over the configured {@link org.cytosm.cypher2sql.expandpaths.ExpansionBudget}.
+ */
+public class ExpansionBudgetExceeded extends Cypher2SqlException {
+
+    public ExpansionBudgetExceeded(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,12 @@
+package org.cytosm.cypher2sql.lowering.exceptions;
+
+/**
+ * Throw this exception when a valid cypher pattern can't be
+ * translated on the gTop it is used with.
+ */
+public class UnsupportedPattern extends Cypher2SqlException {
+
+    public UnsupportedPattern(String description) {
+        super(description);
+    }
+}
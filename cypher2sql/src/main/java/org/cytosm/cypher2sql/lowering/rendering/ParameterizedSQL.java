@@ -0,0 +1,147 @@
+package org.cytosm.cypher2sql.lowering.rendering;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The result of a translation: a SQL string where each query parameter
+ * has been replaced by a JDBC placeholder (<pre>?</pre>) and the ordered
+ * list of parameter names, one per placeholder.
+ *
+ * The same Cypher parameter can appear several times in the list, for
+ * instance when it ends up in several branches of a UNION.
+ *
+ * When the translation was made with literals extracted from the Cypher,
+ * the values of those literals are carried in {@link #constants} and
+ * automatically bound by {@link #bind(Map)}.
+ */
+public class ParameterizedSQL {
+
+    static final String MARKER_START = "?{";
+
+    /**
+     * The SQL with JDBC placeholders.
+     */
+    public final String sql;
+
+    /**
+     * Name of the parameter for each placeholder, in order.
+     */
+    public final List<String> parameters;
+
+    /**
+     * Values of the parameters that were extracted from the Cypher literals.
+     */
+    public final Map<String, Object> constants;
+
+    public ParameterizedSQL(final String sql, final List<String> parameters) {
+        this(sql, parameters, Collections.emptyMap());
+    }
+
+    public ParameterizedSQL(final String sql, final List<String> parameters, final Map<String, Object> constants) {
+        this.sql = sql;
+        this.parameters = Collections.unmodifiableList(new ArrayList<>(parameters));
+        this.constants = Collections.unmodifiableMap(new HashMap<>(constants));
+    }
+
+    /**
+     * Returns a copy of this translation with different extracted constants.
+     * The SQL and its parameters are shared.
+     *
+     * @param constants is the value of the extracted literals.
+     * @return Returns the new translation.
+     */
+    public ParameterizedSQL withConstants(final Map<String, Object> constants) {
+        return new ParameterizedSQL(sql, parameters, constants);
+    }
+
+    /**
+     * Same as {@link #bind(Map)} for a query without any user provided parameter.
+     *
+     * @return Returns the list of values, one per placeholder.
+     * @throws IllegalArgumentException if a parameter has no value.
+     */
+    public List<Object> bind() {
+        return bind(Collections.emptyMap());
+    }
+
+    /**
+     * Returns the values to bind to the placeholders of {@link #sql}, in order.
+     *
+     * Extracted constants take precedence over the provided values.
+     *
+     * @param values is a map from parameter names to their values.
+     * @return Returns the list of values, one per placeholder.
+     * @throws IllegalArgumentException if a parameter has no value.
+     */
+    public List<Object> bind(final Map<String, ?> values) {
+        List<Object> result = new ArrayList<>(parameters.size());
+        for (String name: parameters) {
+            if (constants.containsKey(name)) {
+                result.add(constants.get(name));
+                continue;
+            }
+            if (!values.containsKey(name)) {
+                throw new IllegalArgumentException("Missing value for parameter '" + name + "'.");
+            }
+            result.add(values.get(name));
+        }
+        return result;
+    }
+
+    /**
+     * Replace the parameter markers emitted by {@link RenderingHelper#renderParameter(String)}
+     * with JDBC placeholders, collecting the parameter names in the order they appear.
+     * Markers are only recognized outside of quoted literals and identifiers.
+     *
+     * @param rendered is the rendered SQL.
+     * @return Returns the SQL with placeholders and its parameters.
+     */
+    public static ParameterizedSQL fromRenderedSQL(final String rendered) {
+        StringBuilder sql = new StringBuilder(rendered.length());
+        List<String> parameters = new ArrayList<>();
+        char quote = 0;
+        int i = 0;
+        while (i < rendered.length()) {
+            char c = rendered.charAt(i);
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                }
+                sql.append(c);
+                i++;
+            } else if (c == '\'' || c == '"') {
+                quote = c;
+                sql.append(c);
+                i++;
+            } else if (rendered.startsWith(MARKER_START, i)) {
+                int start = i;
+                StringBuilder name = new StringBuilder();
+                i += MARKER_START.length();
+                while (i < rendered.length() && rendered.charAt(i) != '}') {
+                    if (rendered.charAt(i) == '\\') {
+                        i++;
+                    }
+                    if (i < rendered.length()) {
+                        name.append(rendered.charAt(i));
+                        i++;
+                    }
+                }
+                if (i >= rendered.length()) {
+                    throw new IllegalArgumentException("Unterminated parameter marker at " + start
+                            + " in the rendered SQL.");
+                }
+                i++;
+                parameters.add(name.toString());
+                sql.append('?');
+            } else {
+                sql.append(c);
+                i++;
+            }
+        }
+        return new ParameterizedSQL(sql.toString(), parameters);
+    }
+}
@@ -4,6 +4,7 @@ import org.cytosm.cypher2sql.lowering.sqltree.SQLNode;
 import org.cytosm.cypher2sql.lowering.sqltree.from.FromItem;
 import org.cytosm.cypher2sql.lowering.typeck.expr.ExprVar;
 import org.cytosm.cypher2sql.lowering.typeck.var.AliasVar;
+import org.cytosm.cypher2sql.lowering.typeck.var.PathVar;
 import org.cytosm.cypher2sql.lowering.typeck.var.Var;
 
 import java.util.List;
@@ -69,6 +70,16 @@ public class RenderingContext {
         return this.helper.renderStringLiteral(literal);
     }
 
+    /**
+     * Render a query parameter. See {@link RenderingHelper#renderParameter(String)}.
+     *
+     * @param name is the name of the parameter.
+     * @return Returns a rendered version of the parameter.
+     */
+    public String renderParameter(String name) {
+        return this.helper.renderParameter(name);
+    }
+
     /**
      * Render the provided property access on the given variable when the variable
      * is used somewhere.
@@ -102,6 +113,8 @@ public class RenderingContext {
         Optional<FromItem> fromItem = getSource(var);
         if (fromItem.isPresent()) {
             return fromItem.get().sourceVariableName + "." + var.uniqueName;
+        } else if (var instanceof PathVar) {
+            return renderPathLength((PathVar) var);
         } else {
             return var.uniqueName;
         }
@@ -120,11 +133,24 @@ public class RenderingContext {
             return src.get().sourceVariableName + "." + var.uniqueName;
         } else if (var instanceof AliasVar) {
             return ((AliasVar) var).aliased.toSQLString(this) + " AS " + var.uniqueName;
+        } else if (var instanceof PathVar) {
+            return renderPathLength((PathVar) var) + " AS " + var.uniqueName;
         } else {
             return var.uniqueName;
         }
     }
 
+    /**
+     * A path is only known by its length: this is how it is
+     * rendered where it is matched.
+     */
+    private String renderPathLength(PathVar var) {
+        if (var.dynamicLength == null) {
+            return Integer.toString(var.length);
+        }
+        return var.dynamicLength.toSQLString(new RenderingContext(this, Location.Other));
+    }
+
     /**
      * Returns the source for a particular variable
      * @param var is the variable.
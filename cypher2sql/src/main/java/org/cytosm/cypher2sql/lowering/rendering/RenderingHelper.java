@@ -40,4 +40,18 @@ public class RenderingHelper {
         // FIXME: Again, we need the factory to have this behavior driver-specific.
         return "'" + literal + "'";
     }
+
+    /**
+     * Render a query parameter. The SQL tree is rendered in pieces that
+     * are concatenated afterward so the position of a parameter in the final
+     * string is unknown at this point. We emit a marker that records the
+     * parameter name and {@link ParameterizedSQL#fromRenderedSQL(String)}
+     * turns all markers into JDBC placeholders once the rendering is done.
+     *
+     * @param name is the name of the parameter.
+     * @return Returns a marker for the parameter.
+     */
+    public String renderParameter(String name) {
+        return ParameterizedSQL.MARKER_START + name.replace("\\", "\\\\").replace("}", "\\}") + "}";
+    }
 }
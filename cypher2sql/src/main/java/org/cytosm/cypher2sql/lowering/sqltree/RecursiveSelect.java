@@ -0,0 +1,209 @@
+package org.cytosm.cypher2sql.lowering.sqltree;
+
+import org.cytosm.cypher2sql.lowering.rendering.RenderingContext;
+import org.cytosm.cypher2sql.lowering.sqltree.from.FromItem;
+import org.cytosm.cypher2sql.lowering.typeck.expr.Expr;
+import org.cytosm.cypher2sql.lowering.typeck.expr.ExprExists;
+import org.cytosm.cypher2sql.lowering.typeck.expr.ExprFn;
+import org.cytosm.cypher2sql.lowering.typeck.expr.ExprTree;
+import org.cytosm.cypher2sql.lowering.typeck.expr.ExprVar;
+import org.cytosm.cypher2sql.lowering.typeck.expr.ExprWalk;
+import org.cytosm.cypher2sql.lowering.typeck.rel.Relationship;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * A recursive select computing the sequences of hops through
+ * a join table that relates rows of the same table. It is
+ * always wrapped in a {@link WithSelect} that is rendered
+ * within a <code>WITH RECURSIVE</code>:
+ *
+ * <pre>
+ *     SUB_0 AS (
+ *         SELECT e.src AS __hops_source, e.dst AS __hops_destination,
+ *                1 AS __hops_depth, ',' || e.id || ',' AS __hops_trail
+ *         FROM (edges) AS e WHERE e.src IN (sources)
+ *         UNION ALL
+ *         SELECT h.__hops_source, e.dst, h.__hops_depth + 1, h.__hops_trail || e.id || ','
+ *         FROM SUB_0 AS h JOIN (edges) AS e ON (e.src = h.__hops_destination)
+ *         WHERE h.__hops_depth &lt; 3 AND h.__hops_trail NOT LIKE '%,' || e.id || ',%'
+ *     )
+ * </pre>
+ *
+ * Each row of the join table is a relationship, numbered in the order of
+ * its columns. Rows with the same columns are distinct relationships. Like
+ * in cypher, a relationship can't be used twice in the same sequence: the
+ * trail contains the relationships already used. It also guarantees that
+ * the recursion ends when there's no upper bound.
+ *
+ * The conditions of the reading select on the source restrict the rows
+ * the sequences start from, so only the sequences that can be joined are
+ * computed.
+ */
+public class RecursiveSelect extends BaseSelect {
+
+    /**
+     * Name of the variable reading this select. It prefixes its columns.
+     */
+    public static final String VARIABLE = "__hops";
+
+    /**
+     * Column of the row the sequence starts from.
+     */
+    public static final String SOURCE = "source";
+
+    /**
+     * Column of the row the sequence ends on.
+     */
+    public static final String DESTINATION = "destination";
+
+    /**
+     * Column of the number of hops of the sequence.
+     */
+    public static final String DEPTH = "depth";
+
+    /**
+     * Column of the relationships used by the sequence.
+     */
+    public static final String TRAIL = "trail";
+
+    /**
+     * The WithSelect wrapping this select. The recursive part reads it.
+     */
+    public final WithSelect wrapper;
+
+    public String joinTableName;
+    public String joinTableSourceColumn;
+    public String joinTableDestinationColumn;
+
+    /**
+     * The direction in which the join table is followed.
+     */
+    public Relationship.Direction direction;
+
+    /**
+     * The maximum number of hops, -1 if there's none.
+     */
+    public long maxHops;
+
+    /**
+     * The select joining this one. Its WHERE conditions on the
+     * source restrict the search.
+     */
+    public SimpleSelect reader;
+
+    /**
+     * The rows the sequences start from, joined on {@link #sourceKey}.
+     */
+    public FromItem sourceNode;
+    public Expr sourceKey;
+
+    public RecursiveSelect() {
+        this.wrapper = new WithSelect(this);
+    }
+
+    @Override
+    public String toSQLString() {
+        String edges = "(" + edges() + ") AS e";
+        String sources = restrictedRows(sourceNode, sourceKey);
+        String base = "SELECT e.src AS " + column(SOURCE) + ", e.dst AS " + column(DESTINATION) +
+                ", 1 AS " + column(DEPTH) + ", ',' || e.id || ',' AS " + column(TRAIL) +
+                " FROM " + edges + (sources != null ? " WHERE e.src IN (" + sources + ")" : "");
+        String step = "SELECT h." + column(SOURCE) + ", e.dst, h." + column(DEPTH) + " + 1, h." +
+                column(TRAIL) + " || e.id || ','" +
+                " FROM " + wrapper.subqueryName + " AS h JOIN " + edges +
+                " ON (e.src = h." + column(DESTINATION) + ")" +
+                " WHERE " + (maxHops >= 0 ? "h." + column(DEPTH) + " < " + maxHops + " AND " : "") +
+                "h." + column(TRAIL) + " NOT LIKE '%,' || e.id || ',%'";
+        return base + "\nUNION ALL\n" + step;
+    }
+
+    /**
+     * The relationships followed in the right direction, identified by the
+     * number of their row in the join table. Both directions of a row share
+     * its number, and the numbers are the same each time the rows are read.
+     */
+    protected String edges() {
+        String rows = "(SELECT " + joinTableSourceColumn + ", " + joinTableDestinationColumn +
+                ", ROW_NUMBER() OVER (ORDER BY " + joinTableSourceColumn + ", " + joinTableDestinationColumn +
+                ") AS id FROM " + joinTableName + ") AS r";
+        String forward = "SELECT " + joinTableSourceColumn + " AS src, " + joinTableDestinationColumn +
+                " AS dst, id FROM " + rows;
+        String backward = "SELECT " + joinTableDestinationColumn + " AS src, " + joinTableSourceColumn +
+                " AS dst, id FROM " + rows;
+        switch (direction) {
+            case LEFT:
+                return backward;
+            case RIGHT:
+                return forward;
+            default:
+                return forward + " UNION ALL " + backward;
+        }
+    }
+
+    /**
+     * Render the keys of the rows of the node, as a single column <code>node</code>.
+     * The rows are the ones of the subquery of the node, or the ones of its
+     * table kept by the WHERE conditions of the reading select that only use this node.
+     * @return Returns null if the rows aren't restricted.
+     */
+    protected String restrictedRows(final FromItem node, final Expr key) {
+        if (reader == null || node == null || key == null || !(reader instanceof SimpleSelectWithInnerJoins)) {
+            return null;
+        }
+        List<Expr> restrictions = conjuncts(reader.whereCondition).stream()
+                .filter(condition -> onlyUses(condition, node))
+                .collect(Collectors.toList());
+        if (restrictions.isEmpty() && node.source == null) {
+            return null;
+        }
+        RenderingContext ctx = new RenderingContext(Collections.singletonList(node), RenderingContext.Location.Other);
+        return "SELECT " + key.toSQLString(ctx) + " AS node FROM " + node.toSQLString() +
+                (restrictions.isEmpty() ? "" : " WHERE " + restrictions.stream()
+                        .map(condition -> condition.toSQLString(ctx)).collect(Collectors.joining(" AND ")));
+    }
+
+    private static boolean onlyUses(final Expr condition, final FromItem node) {
+        boolean[] usesNode = {false};
+        boolean[] usesOther = {false};
+        ExprWalk.walk(new ExprWalk.BaseVisitor() {
+            @Override
+            public void visitVariable(ExprVar expr) {
+                if (node.variables.stream().anyMatch(var -> var == expr.var)) {
+                    usesNode[0] = true;
+                } else {
+                    usesOther[0] = true;
+                }
+            }
+
+            @Override
+            public void visitFn(ExprFn expr) {
+                usesOther[0] = true;
+            }
+
+            @Override
+            public void visitExists(ExprExists expr) {
+                usesOther[0] = true;
+            }
+        }, condition);
+        return usesNode[0] && !usesOther[0];
+    }
+
+    private static List<Expr> conjuncts(final Expr expr) {
+        List<Expr> result = new ArrayList<>();
+        if (expr instanceof ExprTree.And) {
+            result.addAll(conjuncts(((ExprTree.And) expr).lhs));
+            result.addAll(conjuncts(((ExprTree.And) expr).rhs));
+        } else if (expr != null) {
+            result.add(expr);
+        }
+        return result;
+    }
+
+    protected static String column(String name) {
+        return VARIABLE + "_" + name;
+    }
+}
@@ -29,7 +29,14 @@ public class ScopeSelect extends SimpleOrScopeSelect {
 
     @Override
     public String toSQLString() {
-        return "WITH " + withQueries.stream()
+        if (withQueries.isEmpty()) {
+            // All of them have been hoisted into an enclosing ScopeSelect.
+            return ret.toSQLString();
+        }
+        // A recursive select can read itself.
+        boolean recursive = withQueries.stream()
+                .anyMatch(withSelect -> withSelect.subquery instanceof RecursiveSelect);
+        return (recursive ? "WITH RECURSIVE " : "WITH ") + withQueries.stream()
                 .map(SQLNode::toSQLString)
                 .collect(Collectors.joining(", ")) + "\n" +
                 ret.toSQLString();
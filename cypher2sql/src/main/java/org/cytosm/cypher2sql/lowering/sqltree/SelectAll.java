@@ -7,16 +7,33 @@ import org.cytosm.cypher2sql.lowering.sqltree.join.BaseJoin;
 
 import java.util.Collections;
 import java.util.List;
+import java.util.stream.Collectors;
 
 /**
  * A 'SELECT *' with no JOINs.
  */
 public class SelectAll extends SimpleSelect {
 
+    /**
+     * Columns selected, rendered instead of '*' when known.
+     */
+    public List<String> columns = Collections.emptyList();
+
+    /**
+     * Columns of the source that are only used to sort the
+     * rows. They aren't part of the columns selected.
+     */
+    public List<String> hiddenColumns = Collections.emptyList();
 
     @Override
     protected String renderExportedVariable(RenderingContext ctx) {
-        return "SELECT * \n";
+        if (columns.isEmpty() || fromItem.size() != 1) {
+            return "SELECT * \n";
+        }
+        String alias = fromItem.get(0).sourceVariableName;
+        return "SELECT " + columns.stream()
+                .map(column -> alias + "." + column)
+                .collect(Collectors.joining(", ")) + "\n";
     }
 
     @Override
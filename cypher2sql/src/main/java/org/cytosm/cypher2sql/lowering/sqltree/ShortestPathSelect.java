@@ -0,0 +1,177 @@
+package org.cytosm.cypher2sql.lowering.sqltree;
+
+import org.cytosm.cypher2sql.cypher.ast.clause.match.pattern.PatternPart;
+import org.cytosm.cypher2sql.lowering.sqltree.from.FromItem;
+import org.cytosm.cypher2sql.lowering.typeck.expr.Expr;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A {@link RecursiveSelect} that only keeps the shortest sequences
+ * of hops between two rows.
+ *
+ * For <code>shortestPath(...)</code> the search is a breadth first
+ * search with one row per source and depth. The row holds the frontier,
+ * the rows first reached at this depth, and the rows visited before:
+ *
+ * <pre>
+ *     SUB_0 AS (
+ *         WITH RECURSIVE __bfs(source, depth, frontier, visited) AS (
+ *             SELECT e.src, 1, ',' || STRING_AGG(DISTINCT e.dst, ',') || ',', ',' || e.src || ','
+ *             FROM (edges) AS e WHERE e.src IN (sources) GROUP BY e.src
+ *             UNION ALL
+ *             SELECT h.source, h.depth + 1,
+ *                    ',' || (SELECT STRING_AGG(DISTINCT e.dst, ',') FROM (edges) AS e
+ *                            WHERE h.frontier LIKE '%,' || e.src || ',%'
+ *                            AND h.visited NOT LIKE '%,' || e.dst || ',%'
+ *                            AND h.frontier NOT LIKE '%,' || e.dst || ',%') || ',',
+ *                    h.visited || SUBSTRING(h.frontier FROM 2)
+ *             FROM __bfs AS h
+ *             WHERE h.frontier IS NOT NULL AND h.depth &lt; 6
+ *             AND EXISTS (SELECT 1 FROM (destinations) WHERE not yet reached)
+ *         )
+ *         SELECT h.source AS __hops_source, n.dst AS __hops_destination, h.depth AS __hops_depth
+ *         FROM __bfs AS h JOIN (SELECT DISTINCT e.dst FROM (edges) AS e) AS n
+ *         ON (h.frontier LIKE '%,' || n.dst || ',%')
+ *     )
+ * </pre>
+ *
+ * A row is never expanded again once reached, so each row is returned
+ * once, at its shortest depth, and the search ends when the frontier
+ * is empty even without an upper bound. The conditions of the reading
+ * select on the source restrict the sources the search starts from,
+ * and the ones on the destination stop the search of a source at the
+ * first depth where all its possible destinations are reached. With a
+ * minimum number of hops, the rows reached before that depth are still
+ * expanded: a longer sequence can reach them again.
+ *
+ * For <code>allShortestPaths(...)</code> each path is a row. The same
+ * search first gives the depth at which each row is reached, then the
+ * paths only follow the hops to the rows reached at the next depth:
+ *
+ * <pre>
+ *     WITH RECURSIVE __bfs(...) AS (...),
+ *     __layers(source, node, depth) AS (
+ *         SELECT h.source, n.dst, h.depth FROM __bfs AS h JOIN (...) AS n ON (...)
+ *     ), __paths(source, destination, depth, visited) AS (
+ *         SELECT e.src, e.dst, 1, ',' || e.src || ',' || e.dst || ','
+ *         FROM (edges) AS e JOIN __layers AS l ON (l.source = e.src AND l.node = e.dst AND l.depth = 1)
+ *         UNION ALL
+ *         SELECT h.source, e.dst, h.depth + 1, h.visited || e.dst || ','
+ *         FROM __paths AS h JOIN (edges) AS e ON (e.src = h.destination)
+ *         JOIN __layers AS l ON (l.source = h.source AND l.node = e.dst AND l.depth = h.depth + 1)
+ *         WHERE h.visited NOT LIKE '%,' || e.dst || ',%'
+ *     )
+ *     SELECT ... FROM __paths AS p
+ * </pre>
+ *
+ * Every path built is a shortest one, so no path longer than the depth
+ * of its destination is ever expanded, and the search of the layers
+ * stops like the one of <code>shortestPath(...)</code>.
+ */
+public class ShortestPathSelect extends RecursiveSelect {
+
+    /**
+     * Either {@link PatternPart.Selector#SHORTEST_PATH} or
+     * {@link PatternPart.Selector#ALL_SHORTEST_PATHS}.
+     */
+    public PatternPart.Selector selector;
+
+    /**
+     * The minimum number of hops.
+     */
+    public long minHops;
+
+    /**
+     * The rows the sequences end on, joined on {@link #destinationKey}.
+     */
+    public FromItem destinationNode;
+    public Expr destinationKey;
+
+    @Override
+    public String toSQLString() {
+        if (selector == PatternPart.Selector.ALL_SHORTEST_PATHS) {
+            return allShortestPaths();
+        }
+        return shortestPath();
+    }
+
+    private String shortestPath() {
+        return "WITH RECURSIVE " + search() + "\n" +
+                "SELECT h.source AS " + column(SOURCE) + ", n.dst AS " + column(DESTINATION) +
+                ", h.depth AS " + column(DEPTH) + " FROM " + reached(true);
+    }
+
+    private String allShortestPaths() {
+        String edges = "(" + edges() + ") AS e";
+        String layers = "__layers(source, node, depth) AS (SELECT h.source, n.dst, h.depth FROM " + reached(false) + ")";
+        String paths = "__paths(source, destination, depth, visited) AS (" +
+                "SELECT e.src, e.dst, 1, ',' || " + node("e.src") + " || ',' || " + node("e.dst") + " || ','" +
+                " FROM " + edges + " JOIN __layers AS l ON (l.source = e.src AND l.node = e.dst AND l.depth = 1)" +
+                "\nUNION ALL\n" +
+                "SELECT h.source, e.dst, h.depth + 1, h.visited || " + node("e.dst") + " || ','" +
+                " FROM __paths AS h JOIN " + edges + " ON (e.src = h.destination)" +
+                " JOIN __layers AS l ON (l.source = h.source AND l.node = e.dst AND l.depth = h.depth + 1)" +
+                " WHERE h.visited NOT LIKE '%,' || " + node("e.dst") + " || ',%')";
+        return "WITH RECURSIVE " + search() + ",\n" + layers + ",\n" + paths + "\n" +
+                "SELECT p.source AS " + column(SOURCE) + ", p.destination AS " + column(DESTINATION) +
+                ", p.depth AS " + column(DEPTH) + " FROM __paths AS p" +
+                (minHops > 1 ? " WHERE p.depth >= " + minHops : "");
+    }
+
+    /**
+     * Render the breadth first search <code>__bfs(source, depth, frontier, visited)</code>.
+     */
+    private String search() {
+        String edges = "(" + edges() + ") AS e";
+        String sources = restrictedRows(sourceNode, sourceKey);
+        String destinations = restrictedRows(destinationNode, destinationKey);
+
+        String anchor = "SELECT e.src, 1, ',' || STRING_AGG(DISTINCT " + node("e.dst") + ", ',') || ','" +
+                ", ',' || " + node("e.src") + " || ','" +
+                " FROM " + edges + (sources != null ? " WHERE e.src IN (" + sources + ")" : "") +
+                " GROUP BY e.src";
+
+        // The frontier is only marked as visited from the minimum depth.
+        String notInFrontier = "h.frontier NOT LIKE '%,' || " + node("e.dst") + " || ',%'";
+        String frontier = "(SELECT STRING_AGG(DISTINCT " + node("e.dst") + ", ',') FROM " + edges +
+                " WHERE h.frontier LIKE '%,' || " + node("e.src") + " || ',%'" +
+                " AND h.visited NOT LIKE '%,' || " + node("e.dst") + " || ',%'" +
+                " AND " + (minHops > 1 ? "(h.depth < " + minHops + " OR " + notInFrontier + ")" : notInFrontier) +
+                ")";
+        String visited = minHops > 1
+                ? "h.visited || CASE WHEN h.depth >= " + minHops + " THEN SUBSTRING(h.frontier FROM 2) ELSE '' END"
+                : "h.visited || SUBSTRING(h.frontier FROM 2)";
+
+        List<String> conditions = new ArrayList<>();
+        conditions.add("h.frontier IS NOT NULL");
+        if (maxHops >= 0) {
+            conditions.add("h.depth < " + maxHops);
+        }
+        if (destinations != null) {
+            String unreached = "EXISTS (SELECT 1 FROM (" + destinations + ") AS t" +
+                    " WHERE (h.visited || h.frontier) NOT LIKE '%,' || " + node("t.node") + " || ',%')";
+            conditions.add(minHops > 1 ? "(h.depth < " + minHops + " OR " + unreached + ")" : unreached);
+        }
+        String step = "SELECT h.source, h.depth + 1, ',' || " + frontier + " || ','" + ", " + visited +
+                " FROM __bfs AS h WHERE " + String.join(" AND ", conditions);
+
+        return "__bfs(source, depth, frontier, visited) AS (" + anchor + "\nUNION ALL\n" + step + ")";
+    }
+
+    /**
+     * Render the rows <code>n.dst</code> of the frontiers of the search, along
+     * with their search <code>h</code>.
+     * @param fromMinimum only keeps the frontiers from the minimum number of hops.
+     */
+    private String reached(final boolean fromMinimum) {
+        return "__bfs AS h JOIN (SELECT DISTINCT e.dst FROM (" + edges() + ") AS e) AS n" +
+                " ON (h.frontier LIKE '%,' || " + node("n.dst") + " || ',%')" +
+                (fromMinimum && minHops > 1 ? " WHERE h.depth >= " + minHops : "");
+    }
+
+    private static String node(String column) {
+        return "CAST(" + column + " AS VARCHAR)";
+    }
+}
@@ -112,9 +112,25 @@ public abstract class SimpleSelect extends SimpleOrScopeSelect {
                 "\n";
     }
 
+    /**
+     * Make this select a branch of a UNION whose rows are then ordered,
+     * limited and skipped like this select was. The branch only needs to
+     * return the rows that can make it to the result: the first
+     * SKIP + LIMIT rows in the same order.
+     */
+    public void restrictToTopRows() {
+        if (limit >= 0) {
+            limit += Math.max(skip, 0);
+        } else {
+            // The order of the branch is lost in the UNION.
+            orderBy = new ArrayList<>();
+        }
+        skip = -1;
+    }
+
     private String renderSkip() {
         if (skip > 0) {
-            return "SKIP " + skip + "\n";
+            return "OFFSET " + skip + "\n";
         }
         return "";
     }
@@ -17,6 +17,12 @@ public class UnionSelect extends BaseSelect {
      */
     public List<SimpleOrScopeSelect> unions = new ArrayList<>();
 
+    /**
+     * Whether or not duplicated rows must be removed. If false
+     * this is rendered as a UNION ALL.
+     */
+    public boolean distinct = false;
+
     @Override
     public String toSQLString() {
         return unions.stream()
@@ -27,6 +33,6 @@ public class UnionSelect extends BaseSelect {
                         return x.toSQLString();
                     }
                 })
-                .collect(Collectors.joining("UNION ALL\n"));
+                .collect(Collectors.joining(distinct ? "UNION\n" : "UNION ALL\n"));
     }
 }
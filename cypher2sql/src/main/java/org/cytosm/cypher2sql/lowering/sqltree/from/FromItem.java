@@ -1,7 +1,7 @@
 package org.cytosm.cypher2sql.lowering.sqltree.from;
 
+import org.cytosm.cypher2sql.lowering.CompilationContext;
 import org.cytosm.cypher2sql.lowering.sqltree.WithSelect;
-import org.cytosm.cypher2sql.lowering.typeck.NameProvider;
 import org.cytosm.cypher2sql.lowering.typeck.var.NodeOrTempOrRelVar;
 import org.cytosm.cypher2sql.lowering.typeck.var.Var;
 
@@ -49,7 +49,23 @@ public class FromItem {
      * Name of the source for the scope where variables are
      * used and this FromItem provides values for them.
      */
-    public String sourceVariableName = NameProvider.genFromItemName();
+    public String sourceVariableName;
+
+    /**
+     * Create a FromItem with a new source name.
+     * @param ctx is the compilation context providing the name.
+     */
+    public FromItem(final CompilationContext ctx) {
+        this(ctx.genFromItemName());
+    }
+
+    /**
+     * Create a FromItem with the given source name.
+     * @param sourceVariableName is the name of the source.
+     */
+    public FromItem(final String sourceVariableName) {
+        this.sourceVariableName = sourceVariableName;
+    }
 
     /**
      * Returns the table name or the origin select
@@ -115,8 +115,17 @@ public class ComputeAliasVarType {
 
         @Override
         public AType foldFn(ExprFn expr) throws Cypher2SqlException {
-            if (expr.cypherName.equalsIgnoreCase("count")) {
-                return new NumberType();
+            switch (expr.cypherName.toLowerCase()) {
+                case "count":
+                case "sum":
+                case "avg":
+                    return new NumberType();
+                case "min":
+                case "max":
+                    if (expr.args.size() == 1) {
+                        return ExprWalk.fold(this, expr.args.get(0));
+                    }
+                    break;
             }
             throw new Unimplemented();
         }
@@ -130,6 +139,11 @@ public class ComputeAliasVarType {
         public AType foldAliasExpr(ExprTree.AliasExpr expr) throws Cypher2SqlException {
             throw new BugFound("Congratulations! You have created a bug.");
         }
+
+        @Override
+        public AType foldExists(ExprExists expr) throws Cypher2SqlException {
+            return new BoolType();
+        }
     }
 
     private static AType merge(AType one, AType other) throws Cypher2SqlException {
@@ -16,9 +16,6 @@ public class NameProvider {
 
     private NameProvider() {}
 
-    private static int lastSourceName = 0;
-    private static int lastTemporary = 0;
-
     public static String getName(NodePattern np) {
         if (np.variable.isPresent()) {
             return np.variable.get().name;
@@ -48,14 +45,6 @@ public class NameProvider {
         return getUniqueNameForVariable(var);
     }
 
-    public static String genFromItemName() {
-        return "__src" + lastSourceName++;
-    }
-
-    public static String getUniqueTempVarName() {
-        return "__tmp" + lastTemporary++;
-    }
-
     private static String getUniqueNameForVariable(Variable var) {
         return "__cytosm" + var.span.lo + "$" + var.span.hi;
     }
@@ -1,5 +1,6 @@
 package org.cytosm.cypher2sql.lowering.typeck;
 
+import org.cytosm.cypher2sql.lowering.exceptions.UnsupportedPattern;
 import org.cytosm.cypher2sql.lowering.typeck.expr.Expr;
 import org.cytosm.cypher2sql.lowering.typeck.expr.ExprVar;
 import org.cytosm.cypher2sql.lowering.typeck.rel.Relationship;
@@ -31,7 +32,8 @@ import java.util.stream.Collectors;
  * There are many possible
  *
  * In case of dependency error, the constructor throw a RuntimeException with
- * an error message that tries to explain the source of the error.
+ * an error message that tries to explain the source of the error. Patterns
+ * that are valid but can't be translated raise an {@link UnsupportedPattern}.
  *
  *
  * There's room for improvements at this level.
@@ -58,7 +60,12 @@ public class VarDependencies {
      */
     private List<Expr> returnExprs = new ArrayList<>();
 
-    public VarDependencies(final Statement statement) {
+    /**
+     * Compute the dependencies of the statement.
+     * @param statement is the statement.
+     * @throws UnsupportedPattern if a pattern of the statement can't be translated.
+     */
+    public VarDependencies(final Statement statement) throws UnsupportedPattern {
         ClauseVisitor visitor = new ClauseVisitor(
                 this.usedVariablesInClause, this.reachableVariables,
                 this.returnExprs, this.relationships);
@@ -120,7 +127,7 @@ public class VarDependencies {
      */
     public List<Var> getUsedAndIndirectUsedVars(ClauseId clauseId) {
         // Start with the used variable.
-        Set<Var> result = new HashSet<>(this.getUsedVars(clauseId));
+        Set<Var> result = new LinkedHashSet<>(this.getUsedVars(clauseId));
         Stack<Var> stack = new Stack<>();
 
         List<Relationship> relsToInspect = relationships.entrySet().stream()
@@ -221,7 +228,7 @@ public class VarDependencies {
             this.relationships = relationships;
         }
 
-        void visitQuery(final SingleQuery query) {
+        void visitQuery(final SingleQuery query) throws UnsupportedPattern {
             Iterator<Clause> iter = query.clauses.iterator();
             while (iter.hasNext()) {
                 Clause el = iter.next();
@@ -283,7 +290,8 @@ public class VarDependencies {
             this.availablesVariables = new AvailableVariables(newAvailablesVariables);
 
             with.orderBy.ifPresent(ob -> reachableVariables.put(new ClauseId(ob), availablesVariables));
-            with.where.ifPresent(w -> reachableVariables.put(new ClauseId(w), availablesVariables));
+            // The WHERE filters the rows of the WITH: it uses all its variables.
+            with.where.ifPresent(w -> this.visitWhere(w, newAvailablesVariables));
         }
 
         private void visitReturnItemInWith(final ReturnItem rt, final List<Var> variableList) {
@@ -310,9 +318,10 @@ public class VarDependencies {
             variableList.add(newVar);
         }
 
-        private void visitMatch(Match m) {
+        private void visitMatch(Match m) throws UnsupportedPattern {
 
             Iterator<PatternPart> iterpp = m.pattern.patternParts.iterator();
+            List<Var> matchedVariables = new ArrayList<>();
 
             // Each pattern part will either reuse previously defined
             // variables or create new ones.
@@ -321,11 +330,24 @@ public class VarDependencies {
 
                 List<Var> newVarList = this.newClauseID(pp.span, ClauseId.ClauseKind.MATCH);
 
+                PathVar path = null;
                 if (pp instanceof NamedPatternPart) {
-                    newVarList.add(new PathVar((NamedPatternPart) pp));
+                    path = new PathVar((NamedPatternPart) pp);
+                    addVariable(newVarList, path);
                 }
                 collectVariable(pp.element, newVarList);
-                collectRelationships(pp.element, this.relationships.get(this.currentClauseId));
+                List<Relationship> rels = this.relationships.get(this.currentClauseId);
+                collectRelationships(pp.element, rels);
+                if (pp.selector != PatternPart.Selector.EVERY_PATH) {
+                    if (rels.size() != 1) {
+                        throw new UnsupportedPattern("shortestPath requires a pattern with a single relationship.");
+                    }
+                    rels.get(0).selector = pp.selector;
+                    rels.get(0).path = path;
+                }
+                newVarList.stream()
+                        .filter(v -> matchedVariables.stream().noneMatch(x -> x == v))
+                        .forEach(matchedVariables::add);
             }
 
             // Where contains mainly restriction on properties
@@ -350,7 +372,16 @@ public class VarDependencies {
             //     together.
             //
             // For now we only register the where as a valid id to access variables.
-            m.where.ifPresent(w -> reachableVariables.put(new ClauseId(w), availablesVariables));
+            // When the MATCH has several pattern parts, the WHERE ends up in its own
+            // SELECT joining them: it uses all the variables of the MATCH.
+            m.where.ifPresent(w -> this.visitWhere(w, matchedVariables));
+        }
+
+        private void visitWhere(final Where where, final List<Var> usedVars) {
+            ClauseId id = new ClauseId(where);
+            reachableVariables.put(id, availablesVariables);
+            usedVariables.put(id, new ArrayList<>(usedVars));
+            relationships.put(id, new ArrayList<>());
         }
 
         private List<Var> newClauseID(final Span pos, final ClauseId.ClauseKind kind) {
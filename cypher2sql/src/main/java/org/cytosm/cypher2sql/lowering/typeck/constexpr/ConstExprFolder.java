@@ -1,6 +1,7 @@
 package org.cytosm.cypher2sql.lowering.typeck.constexpr;
 
 import org.cytosm.cypher2sql.lowering.exceptions.Cypher2SqlException;
+import org.cytosm.cypher2sql.lowering.typeck.expr.ExprExists;
 import org.cytosm.cypher2sql.lowering.typeck.expr.ExprTree;
 import org.cytosm.cypher2sql.lowering.typeck.expr.ExprVar;
 import org.cytosm.cypher2sql.lowering.typeck.types.MapType;
@@ -124,4 +125,9 @@ public class ConstExprFolder implements ExprWalk.Folder<ConstVal.Literal, Cypher
     public ConstVal.Literal foldAliasExpr(AliasExpr expr) throws Cypher2SqlException {
         return ExprWalk.fold(this, expr.expr);
     }
+
+    @Override
+    public ConstVal.Literal foldExists(ExprExists expr) throws Cypher2SqlException {
+        throw new UnknownOperation("Can't fold a pattern.");
+    }
 }
@@ -390,4 +390,46 @@ public class ConstVal {
             return new BoolVal(this.value ^ other.asBool());
         }
     }
+
+    /**
+     * A query parameter. Its value is only known when the SQL is executed,
+     * so no constant folding can go through it.
+     */
+    public static class ParamVal extends Literal {
+        public String name;
+
+        public ParamVal(final String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String toSQLString(RenderingContext ctx) {
+            return ctx.renderParameter(name);
+        }
+
+        @Override
+        public String className() {
+            return "ParamVal";
+        }
+
+        @Override
+        public boolean asBool() throws ConstExprException {
+            throw new UnknownOperation("The value of parameter '" + name + "' is unknown.");
+        }
+
+        @Override
+        public String asStr() throws ConstExprException {
+            throw new UnknownOperation("The value of parameter '" + name + "' is unknown.");
+        }
+
+        @Override
+        public double asDouble() throws ConstExprException {
+            throw new UnknownOperation("The value of parameter '" + name + "' is unknown.");
+        }
+
+        @Override
+        public long asLong() throws ConstExprException {
+            throw new UnknownOperation("The value of parameter '" + name + "' is unknown.");
+        }
+    }
 }
@@ -0,0 +1,111 @@
+package org.cytosm.cypher2sql.lowering.typeck.expr;
+
+import org.cytosm.cypher2sql.lowering.rendering.RenderingContext;
+import org.cytosm.cypher2sql.lowering.sqltree.from.FromItem;
+import org.cytosm.cypher2sql.lowering.typeck.rel.Relationship;
+import org.cytosm.cypher2sql.lowering.typeck.var.Var;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * A pattern used as a predicate, such as:
+ *
+ * <pre>
+ *     MATCH (a:Person), (b:Person) WHERE NOT (a)-[:KNOWS]-(b) RETURN a.id
+ * </pre>
+ *
+ * It is true when the pattern exists between the variables it
+ * uses. It is rendered as a correlated <code>EXISTS</code> subquery
+ * over the join tables of its relationships:
+ *
+ * <pre>
+ *     NOT (EXISTS (SELECT 1 FROM person_knows_person AS __src4
+ *                  WHERE __src4.person_id = __src0.id AND __src4.other_person_id = __src1.id))
+ * </pre>
+ *
+ * The pattern is only known by its nodes and relationships until
+ * {@link org.cytosm.cypher2sql.lowering.LowerPatternPredicates} has
+ * found the join tables in the gTop.
+ */
+public class ExprExists implements Expr {
+
+    /**
+     * The variables of the nodes of the pattern, from left to
+     * right. Anonymous nodes are null.
+     */
+    public List<Var> nodes = new ArrayList<>();
+
+    /**
+     * The labels of each node of the pattern.
+     */
+    public List<List<String>> labels = new ArrayList<>();
+
+    /**
+     * The properties required on each node of the pattern,
+     * empty when the node has no property map.
+     */
+    public List<Map<String, Expr>> properties = new ArrayList<>();
+
+    /**
+     * The types of each relationship of the pattern, empty
+     * when any type matches.
+     */
+    public List<List<String>> types = new ArrayList<>();
+
+    /**
+     * The direction of each relationship of the pattern.
+     */
+    public List<Relationship.Direction> directions = new ArrayList<>();
+
+    /**
+     * Why the pattern can't be lowered, null if it can. The error
+     * is reported once the pattern is lowered.
+     */
+    public String unsupported;
+
+    /**
+     * The tables read by the subquery. Null until the pattern is lowered.
+     */
+    public List<FromItem> fromItems;
+
+    /**
+     * The condition of the subquery, relating the tables
+     * it reads to the variables of the enclosing select.
+     */
+    public Expr condition;
+
+    /**
+     * Copy of the pattern with a new condition.
+     * @param condition is the new condition.
+     * @return Returns the new expression.
+     */
+    public ExprExists withCondition(Expr condition) {
+        ExprExists res = new ExprExists();
+        res.nodes = nodes;
+        res.labels = labels;
+        res.properties = properties;
+        res.types = types;
+        res.directions = directions;
+        res.unsupported = unsupported;
+        res.fromItems = fromItems;
+        res.condition = condition;
+        return res;
+    }
+
+    @Override
+    public String toSQLString(RenderingContext ctx) {
+        if (fromItems == null) {
+            throw new RuntimeException("Unimplemented code reached");
+        }
+        List<FromItem> visible = new ArrayList<>(ctx.fromItems);
+        visible.addAll(fromItems);
+        RenderingContext conditionCtx = new RenderingContext(visible, RenderingContext.Location.Other);
+        return "EXISTS (SELECT 1 FROM " +
+                fromItems.stream().map(FromItem::toSQLString).collect(Collectors.joining(", ")) +
+                " WHERE " + condition.toSQLString(conditionCtx) + ")";
+    }
+}
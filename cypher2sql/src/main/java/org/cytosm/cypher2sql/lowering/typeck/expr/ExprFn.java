@@ -11,8 +11,9 @@ import java.util.stream.Collectors;
  * as variables because the mapping is more complex than the rest
  * of the expression tree.
  *
- * In particular COUNT function in Cypher is transformed in a mixed
- * of COUNT and SUM functions in SQL.
+ * In particular the aggregate functions of a RETURN reading a UNION
+ * are computed on each branch and combined by the select reading
+ * the UNION: see {@link org.cytosm.cypher2sql.lowering.DecomposeAggregates}.
  */
 public class ExprFn implements Expr {
 
@@ -22,7 +23,11 @@ public class ExprFn implements Expr {
      */
     public enum Name {
         COUNT,
-        SUM
+        SUM,
+        MIN,
+        MAX,
+        AVG,
+        NULLIF
     }
 
     /**
@@ -42,6 +47,11 @@ public class ExprFn implements Expr {
      */
     public List<Expr> args;
 
+    /**
+     * Whether or not the function only applies on distinct values.
+     */
+    public boolean distinct = false;
+
     ExprFn(String cypherName, List<Expr> args) {
         this.cypherName = cypherName;
         this.args = args;
@@ -54,15 +64,15 @@ public class ExprFn implements Expr {
 
 
     public String toSQLString(RenderingContext ctx) {
+        if (name == null) {
+            throw new RuntimeException("Unimplemented code reached");
+        }
+        // The arguments are used, not exported.
+        RenderingContext argsCtx = new RenderingContext(ctx, RenderingContext.Location.Other);
         String args = this.args.stream()
-                .map(x -> x.toSQLString(ctx))
+                .map(x -> x.toSQLString(argsCtx))
                 .collect(Collectors.joining(", "));
-        if (name.equals(Name.COUNT)) {
-            return "count(" + args + ")";
-        } else if (name.equals(Name.SUM)) {
-            return "sum(" + args + ")";
-        }
-        throw new RuntimeException("Unimplemented code reached");
+        return name.name().toLowerCase() + "(" + (distinct ? "DISTINCT " : "") + args + ")";
     }
 
 }
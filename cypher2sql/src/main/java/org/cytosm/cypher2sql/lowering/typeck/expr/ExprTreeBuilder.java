@@ -1,18 +1,22 @@
 package org.cytosm.cypher2sql.lowering.typeck.expr;
 
 import org.cytosm.cypher2sql.lowering.typeck.AvailableVariables;
+import org.cytosm.cypher2sql.lowering.typeck.rel.Relationship;
 import org.cytosm.cypher2sql.lowering.typeck.var.Var;
 import org.cytosm.cypher2sql.cypher.visitor.Walk;
 import org.cytosm.cypher2sql.lowering.typeck.constexpr.ConstVal;
 import org.apache.commons.lang3.tuple.ImmutablePair;
 import org.apache.commons.lang3.tuple.Pair;
 import org.apache.log4j.Logger;
+import org.cytosm.cypher2sql.cypher.ast.clause.match.pattern.*;
 import org.cytosm.cypher2sql.cypher.ast.expression.*;
 import org.cytosm.cypher2sql.cypher.ast.expression.Binary.*;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Iterator;
+import java.util.Map;
 import java.util.Optional;
 import java.util.stream.Collectors;
 
@@ -77,6 +81,11 @@ public class ExprTreeBuilder {
             }
         }
 
+        @Override
+        public Expr foldParameter(Parameter expression) throws ExprTreeException {
+            return new ConstVal.ParamVal(expression.name);
+        }
+
         @Override
         public Expr foldProperty(Property expression) throws ExprTreeException {
             return new ExprTree.PropertyAccess(
@@ -101,7 +110,60 @@ public class ExprTreeBuilder {
             while (iter.hasNext()) {
                 args.add(Walk.foldExpression(this, iter.next()));
             }
-            return new ExprFn(expression.functionName.name, args);
+            ExprFn fn = new ExprFn(expression.functionName.name, args);
+            fn.distinct = expression.distinct;
+            return fn;
+        }
+
+        @Override
+        public Expr foldPatternExpression(PatternExpression expression) throws ExprTreeException {
+            // The join tables are only known once the tables of
+            // the variables are: see LowerPatternPredicates.
+            ExprExists res = new ExprExists();
+            PatternElement element = expression.element;
+            while (element instanceof RelationshipChain) {
+                RelationshipChain chain = (RelationshipChain) element;
+                RelationshipPattern rel = chain.relationship;
+                if (rel.variable.isPresent()) {
+                    res.unsupported = "A pattern used as a predicate can't bind the relationship '" +
+                            rel.variable.get().name + "'.";
+                } else if (rel.properties.isPresent()) {
+                    res.unsupported = "A pattern used as a predicate can't have relationship properties.";
+                } else if (rel.length.isPresent()) {
+                    res.unsupported = "A pattern used as a predicate can't have a variable length relationship.";
+                }
+                addNode(res, chain.rightNode);
+                res.types.add(0, rel.types.stream().map(t -> t.name).collect(Collectors.toList()));
+                if (rel.direction.equals(RelationshipPattern.SemanticDirection.INCOMING)) {
+                    res.directions.add(0, Relationship.Direction.LEFT);
+                } else if (rel.direction.equals(RelationshipPattern.SemanticDirection.OUTGOING)) {
+                    res.directions.add(0, Relationship.Direction.RIGHT);
+                } else {
+                    res.directions.add(0, Relationship.Direction.BOTH);
+                }
+                element = chain.element;
+            }
+            addNode(res, (NodePattern) element);
+            return res;
+        }
+
+        /**
+         * Prepend a node of the pattern. The variables of a pattern
+         * predicate must have been introduced before.
+         */
+        private void addNode(ExprExists res, NodePattern node) throws ExprTreeException {
+            Map<String, Expr> properties = new LinkedHashMap<>();
+            if (node.properties.isPresent()) {
+                properties.putAll(((ExprTree.MapExpr) foldMapExpression(node.properties.get())).props);
+            }
+            res.properties.add(0, properties);
+            Var var = null;
+            if (node.variable.isPresent()) {
+                String name = node.variable.get().name;
+                var = this.availablesVariables.get(name).orElseThrow(() -> new UndefinedVariableException(name));
+            }
+            res.nodes.add(0, var);
+            res.labels.add(0, node.labels.stream().map(l -> l.name).collect(Collectors.toList()));
         }
 
         // =========================================================
@@ -204,13 +266,6 @@ public class ExprTreeBuilder {
                     Walk.foldExpression(this, expression.rhs));
         }
 
-        @Override
-        public Expr foldPatternExpression(PatternExpression expression) throws ExprTreeException {
-            // FIXME: We propably want to throw an exception here because we can't fold a PatternExpression
-            // FIXME: into a SQL expression. It needs some pre-processing.
-            throw new UnimplementedException();
-        }
-
         @Override
         public Expr foldUnaryAdd(Unary.Add expression) throws ExprTreeException {
             return new ExprTree.UnaryAdd(Walk.foldExpression(this, expression.lhs));
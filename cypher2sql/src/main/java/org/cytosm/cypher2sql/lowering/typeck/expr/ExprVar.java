@@ -8,6 +8,7 @@ import org.cytosm.cypher2sql.lowering.typeck.var.NodeVar;
 import org.cytosm.cypher2sql.lowering.typeck.var.Var;
 
 import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -24,6 +25,12 @@ public class ExprVar implements Expr {
      */
     public Var var;
 
+    /**
+     * For a node, the properties exported. All the properties
+     * required on the node are exported when null.
+     */
+    public Set<String> properties = null;
+
     public ExprVar(Var var) {
         this.var = var;
     }
@@ -36,6 +43,7 @@ public class ExprVar implements Expr {
                 return this.renderPropertiesWithVarContext(
                     ctx,
                     resolvedVar.propertiesRequired.stream()
+                        .filter(prop -> properties == null || properties.contains(prop))
                 );
             } else {
                 return ctx.renderVariableForExport(this);
@@ -7,6 +7,7 @@ import org.apache.commons.lang3.tuple.ImmutablePair;
 import org.apache.commons.lang3.tuple.Pair;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -32,6 +33,7 @@ public class ExprWalk {
         void visitFn(ExprFn expr);
         void visitCaseExpr(ExprTree.CaseExpr expr);
         void visitAliasExpr(ExprTree.AliasExpr expr);
+        void visitExists(ExprExists expr);
     }
 
     public static abstract class BaseVisitor implements Visitor {
@@ -94,6 +96,14 @@ public class ExprWalk {
                 walk(this, ((AliasVar) expr.var).aliased);
             }
         }
+
+        @Override
+        public void visitExists(ExprExists expr) {
+            expr.properties.forEach(props -> props.values().forEach(value -> walk(this, value)));
+            if (expr.condition != null) {
+                walk(this, expr.condition);
+            }
+        }
     }
 
     public static void walk(Visitor visitor, Expr expr) {
@@ -117,6 +127,8 @@ public class ExprWalk {
             visitor.visitCaseExpr((ExprTree.CaseExpr) expr);
         } else if (expr instanceof ExprTree.AliasExpr) {
             visitor.visitAliasExpr((ExprTree.AliasExpr) expr);
+        } else if (expr instanceof ExprExists) {
+            visitor.visitExists((ExprExists) expr);
         } else {
             throw new RuntimeException("Unreachable code reached in walk.");
         }
@@ -138,6 +150,7 @@ public class ExprWalk {
         T foldFn(ExprFn expr) throws E;
         T foldCaseExpr(ExprTree.CaseExpr expr) throws E;
         T foldAliasExpr(ExprTree.AliasExpr expr) throws E;
+        T foldExists(ExprExists expr) throws E;
     }
 
     public static class IdentityFolder<E extends Throwable> implements Folder<Expr, E> {
@@ -189,7 +202,10 @@ public class ExprWalk {
             for (Expr oldArg: expr.args) {
                 args.add(fold(this, oldArg));
             }
-            return new ExprFn(expr.name, args);
+            ExprFn res = new ExprFn(expr.name, args);
+            res.cypherName = expr.cypherName;
+            res.distinct = expr.distinct;
+            return res;
         }
 
         @Override
@@ -269,6 +285,20 @@ public class ExprWalk {
         public Expr foldAliasExpr(ExprTree.AliasExpr expr) throws E {
             return new ExprTree.AliasExpr(fold(this, expr.expr), expr.alias);
         }
+
+        @Override
+        public Expr foldExists(ExprExists expr) throws E {
+            ExprExists res = expr.withCondition(fold(this, expr.condition));
+            res.properties = new ArrayList<>();
+            for (Map<String, Expr> props: expr.properties) {
+                Map<String, Expr> folded = new LinkedHashMap<>();
+                for (Map.Entry<String, Expr> prop: props.entrySet()) {
+                    folded.put(prop.getKey(), fold(this, prop.getValue()));
+                }
+                res.properties.add(folded);
+            }
+            return res;
+        }
     }
 
     public static <T, E extends Throwable> T fold(Folder<T, E> folder, Expr expr) throws E {
@@ -294,6 +324,8 @@ public class ExprWalk {
             return folder.foldCaseExpr((ExprTree.CaseExpr) expr);
         } else if (expr instanceof ExprTree.AliasExpr) {
             return folder.foldAliasExpr((ExprTree.AliasExpr) expr);
+        } else if (expr instanceof ExprExists) {
+            return folder.foldExists((ExprExists) expr);
         } else {
             throw new RuntimeException("Unreahable code reached in walk.");
         }
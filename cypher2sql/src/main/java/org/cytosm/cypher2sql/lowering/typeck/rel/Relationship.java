@@ -3,16 +3,20 @@ package org.cytosm.cypher2sql.lowering.typeck.rel;
 import org.cytosm.cypher2sql.lowering.typeck.AvailableVariables;
 import org.cytosm.cypher2sql.lowering.typeck.NameProvider;
 import org.cytosm.cypher2sql.lowering.typeck.var.NodeVar;
+import org.cytosm.cypher2sql.lowering.typeck.var.PathVar;
 import org.cytosm.cypher2sql.lowering.typeck.expr.Expr;
 import org.cytosm.cypher2sql.lowering.typeck.var.Var;
 import org.cytosm.cypher2sql.lowering.typeck.var.AliasVar;
 import org.cytosm.cypher2sql.lowering.typeck.expr.ExprTreeBuilder;
 import org.cytosm.cypher2sql.cypher.ast.clause.match.pattern.NodePattern;
+import org.cytosm.cypher2sql.cypher.ast.clause.match.pattern.PatternPart;
+import org.cytosm.cypher2sql.cypher.ast.clause.match.pattern.Range;
 import org.cytosm.cypher2sql.cypher.ast.clause.match.pattern.RelationshipChain;
 import org.cytosm.cypher2sql.cypher.ast.clause.match.pattern.RelationshipPattern.SemanticDirection;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
 import java.util.stream.Collectors;
 
 /**
@@ -48,6 +52,25 @@ public class Relationship {
     public Direction direction;
     public Expr properties;
 
+    /**
+     * The bounds on the number of hops. Both are 1 unless the
+     * relationship has a variable length, an upper bound of -1
+     * means that there's no upper bound.
+     */
+    public long minHops = 1;
+    public long maxHops = 1;
+
+    /**
+     * Which of the paths going through this relationship are
+     * kept, set by <code>shortestPath(...)</code>.
+     */
+    public PatternPart.Selector selector = PatternPart.Selector.EVERY_PATH;
+
+    /**
+     * The named path of a shortestPath(...), if any.
+     */
+    public PathVar path;
+
     public Relationship(final RelationshipChain rel, final AvailableVariables availablesVariables) {
         this.rightNode = availablesVariables.get(NameProvider.getName(rel.rightNode)).get();
         if (rel.element instanceof NodePattern) {
@@ -70,8 +93,21 @@ public class Relationship {
             );
         }
 
+        if (rel.relationship.length.isPresent()) {
+            Optional<Range> range = rel.relationship.length.get();
+            this.minHops = range.flatMap(r -> r.lower).map(l -> l.value).orElse(1L);
+            this.maxHops = range.flatMap(r -> r.upper).map(u -> u.value).orElse(-1L);
+        }
+
         labels = rel.relationship.types.stream().map(x -> x.name).collect(Collectors.toList());
     }
 
+    /**
+     * @return Returns true if this relationship can have more than one hop.
+     */
+    public boolean isVariableLength() {
+        return minHops != 1 || maxHops != 1;
+    }
+
 
 }
@@ -4,6 +4,7 @@ import org.cytosm.cypher2sql.cypher.ast.clause.match.pattern.NamedPatternPart;
 import org.cytosm.cypher2sql.cypher.ast.clause.match.pattern.NodePattern;
 import org.cytosm.cypher2sql.cypher.ast.clause.match.pattern.PatternElement;
 import org.cytosm.cypher2sql.cypher.ast.clause.match.pattern.RelationshipChain;
+import org.cytosm.cypher2sql.lowering.typeck.expr.Expr;
 import org.cytosm.cypher2sql.lowering.typeck.types.AType;
 import org.cytosm.cypher2sql.lowering.typeck.types.PathType;
 
@@ -11,12 +12,18 @@ import org.cytosm.cypher2sql.lowering.typeck.types.PathType;
  * Represent a Path variable. The only information
  * we have (that is always known statically thanks to GTop) is
  * the length of the Path.
- * Note that theoretically we can have dynamic length but cypher2sqlOnExpandedPaths does
- * not support them.
+ * The only dynamic length supported is the one of a shortestPath(...):
+ * it is the number of hops found by the recursive select.
  */
 public class PathVar extends Var {
     public int length;
 
+    /**
+     * The expression computing the length of the path when it
+     * is only known at run time, null otherwise.
+     */
+    public Expr dynamicLength;
+
     public AType type() {
         return new PathType();
     }
@@ -29,7 +36,7 @@ public class PathVar extends Var {
 
     private int recComputeLength(PatternElement rl) {
         if (rl instanceof NodePattern) {
-            return 1;
+            return 0;
         }
         return 1 + recComputeLength(((RelationshipChain) rl).element);
     }
@@ -1,6 +1,6 @@
 package org.cytosm.cypher2sql.lowering.typeck.var;
 
-import org.cytosm.cypher2sql.lowering.typeck.NameProvider;
+import org.cytosm.cypher2sql.lowering.CompilationContext;
 import org.cytosm.cypher2sql.lowering.typeck.types.AType;
 import org.cytosm.cypher2sql.lowering.typeck.types.NodeType;
 
@@ -12,12 +12,25 @@ import org.cytosm.cypher2sql.lowering.typeck.types.NodeType;
  */
 public class TempVar extends NodeOrTempOrRelVar {
 
+    private final AType type;
+
     public AType type() {
+        return type;
+    }
+
+    public TempVar(final CompilationContext ctx) {
         // FIXME
-        return new NodeType();
+        this(ctx, new NodeType());
     }
 
-    public TempVar() {
-        this.uniqueName = NameProvider.getUniqueTempVarName();
+    /**
+     * Temporary variable holding a value of the given type,
+     * such as a column computed by a subquery.
+     * @param ctx is the compilation context.
+     * @param type is the type of the value.
+     */
+    public TempVar(final CompilationContext ctx, final AType type) {
+        this.uniqueName = ctx.genTempVarName();
+        this.type = type;
     }
 }
@@ -0,0 +1,70 @@
+package org.cytosm.cypher2sql.cache;
+
+import org.cytosm.common.gtop.GTopInterfaceImpl;
+import org.cytosm.common.gtop.RelationalGTopInterface;
+import org.cytosm.cypher2sql.PassAvailables;
+import org.cytosm.cypher2sql.lowering.BaseLDBCTests;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+
+/**
+ */
+public class TranslationCacheTests extends BaseLDBCTests {
+
+    @Test
+    public void testNormalizeCollapseWhitespaceOutsideOfStrings() {
+        Assert.assertEquals(
+                "MATCH (a {name: 'foo  bar'}) RETURN a.id",
+                TranslationCache.normalize("  MATCH (a {name: 'foo  bar'})\n\t RETURN   a.id \n")
+        );
+    }
+
+    @Test
+    public void testRepeatedQueriesHitTheCache() throws Exception {
+        GTopInterfaceImpl gTop = getGTopInterface();
+        TranslationCache<String> cache = new TranslationCache<>();
+        String sql1 = PassAvailables.cypher2sql(cache, gTop, "MATCH (a:Person) RETURN a.firstName");
+        String sql2 = PassAvailables.cypher2sql(cache, gTop, "MATCH (a:Person)\nRETURN a.firstName");
+
+        Assert.assertSame(sql1, sql2);
+        Assert.assertEquals(1, cache.missCount());
+        Assert.assertEquals(1, cache.hitCount());
+        Assert.assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testGTopIsPartOfTheKey() throws Exception {
+        TranslationCache<String> cache = new TranslationCache<>();
+        String cypher = "MATCH (a) RETURN a.id";
+        cache.get(getGTopInterface(), cypher, (g, c) -> "ldbc");
+        // Another instance with the same content has the same fingerprint.
+        Assert.assertEquals("ldbc", cache.get(getGTopInterface(), cypher, (g, c) -> "other"));
+
+        String path = "src" + File.separatorChar + "test" + File.separatorChar + "resources";
+        GTopInterfaceImpl northwind = new RelationalGTopInterface(new File(path + "/northwind.gtop"));
+        Assert.assertEquals("northwind", cache.get(northwind, cypher, (g, c) -> "northwind"));
+        Assert.assertEquals(2, cache.missCount());
+        Assert.assertEquals(1, cache.hitCount());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIsEvicted() throws Exception {
+        GTopInterfaceImpl gTop = getGTopInterface();
+        TranslationCache<String> cache = new TranslationCache<>(2);
+        cache.get(gTop, "a", (g, c) -> c);
+        cache.get(gTop, "b", (g, c) -> c);
+        cache.get(gTop, "a", (g, c) -> c);
+        cache.get(gTop, "c", (g, c) -> c);
+
+        Assert.assertEquals(2, cache.size());
+        Assert.assertEquals(1, cache.evictionCount());
+
+        // "a" was used more recently than "b".
+        cache.get(gTop, "a", (g, c) -> c);
+        Assert.assertEquals(2, cache.hitCount());
+        cache.get(gTop, "b", (g, c) -> c);
+        Assert.assertEquals(4, cache.missCount());
+    }
+}
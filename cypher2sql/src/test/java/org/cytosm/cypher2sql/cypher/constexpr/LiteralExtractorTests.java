@@ -0,0 +1,94 @@
+package org.cytosm.cypher2sql.cypher.constexpr;
+
+import org.cytosm.common.gtop.GTopInterfaceImpl;
+import org.cytosm.common.gtop.implementation.relational.ImplementationNode;
+import org.cytosm.common.gtop.implementation.relational.RestrictionClause;
+import org.cytosm.common.gtop.implementation.relational.RestrictionClauses;
+import org.cytosm.cypher2sql.PassAvailables;
+import org.cytosm.cypher2sql.cache.TranslationCache;
+import org.cytosm.cypher2sql.lowering.BaseLDBCTests;
+import org.cytosm.cypher2sql.lowering.rendering.ParameterizedSQL;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ */
+public class LiteralExtractorTests extends BaseLDBCTests {
+
+    @Test
+    public void testWhereAndPatternLiterals() {
+        LiteralExtractor.Extraction res = LiteralExtractor.extract(
+                "MATCH (a:Person {id: 42})-[:KNOWS]-(b) WHERE b.firstName = 'Jan' AND b.age > 30 RETURN b.id");
+        Assert.assertEquals(
+                "MATCH (a:Person {id: $lit0})-[:KNOWS]-(b) WHERE b.firstName = $lit1 AND b.age > $lit2 RETURN b.id",
+                res.cypher);
+        Assert.assertEquals(Arrays.asList("lit0", "lit1", "lit2"), Arrays.asList(res.values.keySet().toArray()));
+        Assert.assertEquals(Arrays.asList(42L, "Jan", 30L), Arrays.asList(res.values.values().toArray()));
+    }
+
+    @Test
+    public void testLiteralsKeptAsIs() {
+        String cypher = "MATCH (a:Person)-[:KNOWS*1..3]-(b) RETURN b.id, 1 AS one LIMIT 10";
+        LiteralExtractor.Extraction res = LiteralExtractor.extract(cypher);
+        Assert.assertEquals(cypher, res.cypher);
+        Assert.assertTrue(res.values.isEmpty());
+    }
+
+    @Test
+    public void testExistingParametersAreNotReused() {
+        LiteralExtractor.Extraction res = LiteralExtractor.extract(
+                "MATCH (a:Person) WHERE a.id = $lit0 AND a.firstName = 'Jan' RETURN a.id");
+        Assert.assertEquals(
+                "MATCH (a:Person) WHERE a.id = $lit0 AND a.firstName = $lit1 RETURN a.id",
+                res.cypher);
+        Assert.assertEquals(Collections.singletonMap("lit1", "Jan"), res.values);
+    }
+
+    @Test
+    public void testLiteralsComparedTogetherAreKept() throws Exception {
+        String cypher = "MATCH (m:Message {id: 3}) WHERE m.id > 10 AND m.id < 5 AND m.content = 'a' RETURN m.id";
+        LiteralExtractor.Extraction res = LiteralExtractor.extract(cypher);
+        Assert.assertEquals(
+                "MATCH (m:Message {id: 3}) WHERE m.id > 10 AND m.id < 5 AND m.content = $lit0 RETURN m.id",
+                res.cypher);
+
+        // The contradiction still removes the branches.
+        ParameterizedSQL sql = PassAvailables.cypher2sqlAutoParameterized(getGTopInterface(), cypher);
+        Assert.assertEquals(1, count(sql.sql, "FROM Comment") + count(sql.sql, "FROM Post"));
+    }
+
+    @Test
+    public void testLiteralsOnRestrictedColumnsAreKept() throws Exception {
+        GTopInterfaceImpl gTop = getGTopInterface();
+        for (ImplementationNode node: gTop.getImplementationNodes()) {
+            if (node.getTableName().equals("Post")) {
+                node.setRestrictions(Collections.singletonList(new RestrictionClauses(Collections.singletonList(
+                        new RestrictionClause("Post", "browserUsed", "Chrome|Firefox")))));
+            }
+        }
+        String cypher = "MATCH (m:Message) WHERE m.browserUsed = 'Safari' AND m.content = 'a' RETURN m.id";
+        Assert.assertEquals("MATCH (m:Message) WHERE m.browserUsed = 'Safari' AND m.content = $lit0 RETURN m.id",
+                LiteralExtractor.extract(cypher, gTop).cypher);
+
+        ParameterizedSQL sql = PassAvailables.cypher2sqlAutoParameterized(gTop, cypher);
+        Assert.assertTrue(sql.sql.contains("FROM Comment"));
+        Assert.assertFalse(sql.sql.contains("FROM Post"));
+    }
+
+    @Test
+    public void testSameShapeSharesTranslation() throws Exception {
+        TranslationCache<ParameterizedSQL> cache = new TranslationCache<>();
+        ParameterizedSQL first = PassAvailables.cypher2sqlAutoParameterized(cache, getGTopInterface(),
+                "MATCH (a:Person) WHERE a.id = 1 RETURN a.firstName");
+        ParameterizedSQL second = PassAvailables.cypher2sqlAutoParameterized(cache, getGTopInterface(),
+                "MATCH (a:Person) WHERE a.id = 2 RETURN a.firstName");
+        Assert.assertEquals(1, cache.missCount());
+        Assert.assertEquals(1, cache.hitCount());
+        Assert.assertEquals(first.sql, second.sql);
+        Assert.assertEquals(Collections.singletonList(1L), first.bind());
+        Assert.assertEquals(Collections.singletonList(2L), second.bind());
+    }
+}
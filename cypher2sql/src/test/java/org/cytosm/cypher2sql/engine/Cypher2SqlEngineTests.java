@@ -0,0 +1,119 @@
+package org.cytosm.cypher2sql.engine;
+
+import org.cytosm.common.gtop.GTopInterfaceImpl;
+import org.cytosm.common.gtop.frozen.GTopInterner;
+import org.cytosm.common.gtop.frozen.Interned;
+import org.cytosm.cypher2sql.PassAvailables;
+import org.cytosm.cypher2sql.cache.GTopFingerprint;
+import org.cytosm.cypher2sql.lowering.BaseLDBCTests;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ */
+public class Cypher2SqlEngineTests extends BaseLDBCTests {
+
+    private static final String[] CYPHERS = {
+            "MATCH (a:Person) RETURN a.firstName",
+            "MATCH (a:Person)-[:KNOWS]-(b:Person) WHERE a.id = $id RETURN b.firstName",
+            "MATCH (a:Person)-[:KNOWS]-(b:Person)\nWITH a, b\nMATCH (b)-[]-(e)\nRETURN a.id, b.firstName, e.id",
+    };
+
+    @Test
+    public void testPrecompiledGTopAnswersLikeTheOriginal() throws Exception {
+        GTopInterfaceImpl original = getGTopInterface();
+        PrecompiledGTop precompiled = new PrecompiledGTop(original);
+
+        Assert.assertEquals(GTopFingerprint.of(original), GTopFingerprint.of(precompiled));
+        Assert.assertEquals(original.getAllNodeTypes(), precompiled.getAllNodeTypes());
+        for (String type: original.getAllNodeTypes()) {
+            Assert.assertEquals(original.getAbstractionNodesByTypes(type),
+                    precompiled.getAbstractionNodesByTypes(type.toUpperCase()));
+            Assert.assertEquals(original.getImplementationNodesByType(type),
+                    precompiled.getImplementationNodesByType(type));
+        }
+        for (String type: original.getAllEdgeTypes()) {
+            Assert.assertEquals(original.getAbstractionEdgesByTypes(type),
+                    precompiled.getAbstractionEdgesByTypes(type));
+            Assert.assertEquals(original.getImplementationEdgeByType(type),
+                    precompiled.getImplementationEdgeByType(type));
+        }
+        original.getAbstractionEdges().forEach(edge -> {
+            Assert.assertEquals(original.getSourceNodesForEdge(edge), precompiled.getSourceNodesForEdge(edge));
+            Assert.assertEquals(original.getDestinationNodesForEdge(edge),
+                    precompiled.getDestinationNodesForEdge(edge));
+            Assert.assertSame(original.findEdgeImplementation(edge), precompiled.findEdgeImplementation(edge));
+        });
+        Assert.assertTrue(precompiled.getAbstractionNodesByTypes("unknown").isEmpty());
+    }
+
+    @Test
+    public void testEngineMatchesPassAvailables() throws Exception {
+        GTopInterfaceImpl gTop = getGTopInterface();
+        Cypher2SqlEngine engine = Cypher2SqlEngine.builder(gTop).cacheSize(0).build();
+        Assert.assertNull(engine.getCache());
+        for (String cypher: CYPHERS) {
+            Assert.assertEquals(PassAvailables.cypher2sql(gTop, cypher), engine.translate(cypher));
+        }
+    }
+
+    @Test
+    public void testEngineCachesTranslations() throws Exception {
+        Cypher2SqlEngine engine = Cypher2SqlEngine.builder(getGTopInterface()).build();
+        engine.translateAutoParameterized("MATCH (a:Person) WHERE a.id = 1 RETURN a.firstName");
+        engine.translateAutoParameterized("MATCH (a:Person) WHERE a.id = 2 RETURN a.firstName");
+        Assert.assertEquals(1, engine.getCache().missCount());
+        Assert.assertEquals(1, engine.getCache().hitCount());
+    }
+
+    @Test
+    public void testConcurrentTranslations() throws Exception {
+        Cypher2SqlEngine engine = Cypher2SqlEngine.builder(getGTopInterface()).cacheSize(0).build();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 12; i++) {
+                String cypher = CYPHERS[i % CYPHERS.length];
+                results.add(executor.submit(() -> engine.translate(cypher)));
+            }
+            for (int i = 0; i < results.size(); i++) {
+                Assert.assertEquals(engine.translate(CYPHERS[i % CYPHERS.length]), results.get(i).get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testEnginesShareTheFrozenElements() throws Exception {
+        GTopInterfaceImpl first = Cypher2SqlEngine.builder(getGTopInterface()).build().getGTop();
+        GTopInterfaceImpl second = Cypher2SqlEngine.builder(getGTopInterface()).build().getGTop();
+        Assert.assertTrue(first.getAbstractionNodes().get(0) instanceof Interned);
+        Assert.assertTrue(first.getImplementationEdges().get(0) instanceof Interned);
+        for (int i = 0; i < first.getAbstractionEdges().size(); i++) {
+            Assert.assertSame(first.getAbstractionEdges().get(i), second.getAbstractionEdges().get(i));
+        }
+        Assert.assertEquals(GTopFingerprint.of(first), GTopFingerprint.of(second));
+    }
+
+    @Test
+    public void testEnginesFreezeWithTheirInterner() throws Exception {
+        GTopInterner interner = new GTopInterner();
+        GTopInterfaceImpl own = Cypher2SqlEngine.builder(getGTopInterface()).interner(interner).build().getGTop();
+        GTopInterfaceImpl shared = Cypher2SqlEngine.builder(getGTopInterface()).build().getGTop();
+        Assert.assertEquals(own.getAbstractionNodes().size(), interner.getAbstractionNodeCount());
+        Assert.assertNotSame(shared.getAbstractionNodes().get(0), own.getAbstractionNodes().get(0));
+        Assert.assertSame(interner.intern(shared.getAbstractionNodes().get(0)), own.getAbstractionNodes().get(0));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testPrecompiledGTopIsReadOnly() throws Exception {
+        new PrecompiledGTop(getGTopInterface()).setAbstractionNodes(new ArrayList<>());
+    }
+}
@@ -0,0 +1,159 @@
+package org.cytosm.cypher2sql.engine;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.apache.commons.io.FileUtils;
+import org.cytosm.common.gtop.RelationalGTopInterface;
+import org.cytosm.common.gtop.frozen.GTopInterner;
+import org.cytosm.cypher2sql.cache.LabelDependencies;
+import org.cytosm.cypher2sql.lowering.BaseLDBCTests;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ */
+public class GTopRegistryTests extends BaseLDBCTests {
+
+    private static final String PERSONS = "MATCH (a:Person)-[:KNOWS]-(b:Person) RETURN b.firstName";
+    private static final String TAGS = "MATCH (t:Tag) RETURN t.name";
+
+    private String ldbc() throws IOException {
+        String path = "src" + File.separatorChar + "test" + File.separatorChar + "resources";
+        return FileUtils.readFileToString(new File(path + "/ldbc.gtop"));
+    }
+
+    /**
+     * The ldbc gTop with the table of the given node type renamed,
+     * and its types replaced if new ones are provided.
+     */
+    private String withTable(final String type, final String table, final String... types) throws IOException {
+        ObjectMapper mapper = new ObjectMapper();
+        JsonNode gtop = mapper.readTree(ldbc());
+        for (JsonNode node: gtop.get("implementationLevel").get("implementationNodes")) {
+            if (node.get("types").get(0).asText().equals(type)) {
+                ((ObjectNode) node).put("tableName", table);
+                if (types.length > 0) {
+                    ArrayNode newTypes = ((ObjectNode) node).putArray("types");
+                    Arrays.stream(types).forEach(newTypes::add);
+                }
+            }
+        }
+        return mapper.writeValueAsString(gtop);
+    }
+
+    @Test
+    public void testReloadPublishesANewVersion() throws Exception {
+        GTopRegistry registry = new GTopRegistry(getGTopInterface());
+        GTopRegistry.Version first = registry.current();
+        Assert.assertEquals(1, first.getNumber());
+        Assert.assertFalse(first.getChangedLabels().isPresent());
+        Assert.assertTrue(registry.translate(TAGS).contains("Tag"));
+
+        GTopRegistry.Version second = registry.reload(withTable("tag", "TagV2"));
+        Assert.assertEquals(2, second.getNumber());
+        Assert.assertSame(second, registry.current());
+        Assert.assertEquals(new HashSet<>(Arrays.asList("tag")), second.getChangedLabels().get());
+        Assert.assertTrue(registry.translate(TAGS).contains("TagV2"));
+
+        // Translations started on the first version keep its gTop.
+        Assert.assertFalse(first.getEngine().translate(TAGS).contains("TagV2"));
+    }
+
+    @Test
+    public void testTranslationsOfUnchangedLabelsAreRetained() throws Exception {
+        GTopRegistry registry = new GTopRegistry(getGTopInterface());
+        String persons = registry.translate(PERSONS);
+        registry.translate(TAGS);
+        registry.translate("MATCH (a:Person)-[]-(t:Tag) RETURN a.id");
+
+        GTopRegistry.Version second = registry.reload(withTable("tag", "TagV2"));
+        Assert.assertEquals(1, second.getRetainedTranslations());
+        Assert.assertEquals(1, second.getEngine().getCache().size());
+        Assert.assertEquals(persons, registry.translate(PERSONS));
+        Assert.assertEquals(1, second.getEngine().getCache().hitCount());
+
+        // A change of the graph metadata affects every translation.
+        String json = ldbc().replace("\"IGNORETIME\"", "\"SNAPSHOT\"");
+        Assert.assertNotEquals(ldbc(), json);
+        GTopRegistry.Version third = registry.reload(json);
+        Assert.assertFalse(third.getChangedLabels().isPresent());
+        Assert.assertEquals(0, third.getRetainedTranslations());
+    }
+
+    @Test
+    public void testTypesSharedThroughAbstractionNodesAreDependencies() throws Exception {
+        // Only the abstraction node of the comments is a message.
+        String messages = "MATCH (m:Message) RETURN m.id";
+        GTopRegistry registry = new GTopRegistry(new RelationalGTopInterface(withTable("comment", "Comment", "comment")));
+        Assert.assertTrue(registry.translate(messages).contains("Comment"));
+        Assert.assertTrue(LabelDependencies.ofQuery(registry.current().getGTop(), messages).get().contains("comment"));
+
+        GTopRegistry.Version second = registry.reload(withTable("comment", "Comment2", "comment"));
+        Assert.assertEquals(new HashSet<>(Arrays.asList("comment")), second.getChangedLabels().get());
+        Assert.assertEquals(0, second.getRetainedTranslations());
+        Assert.assertTrue(registry.translate(messages).contains("Comment2"));
+    }
+
+    @Test
+    public void testVersionsDontGrowTheSharedInterner() throws Exception {
+        GTopRegistry registry = new GTopRegistry(getGTopInterface());
+        int shared = GTopInterner.shared().getImplementationNodeCount();
+        registry.reload(withTable("tag", "TagV2"));
+        registry.reload(withTable("tag", "TagV3"));
+        Assert.assertEquals(shared, GTopInterner.shared().getImplementationNodeCount());
+        Assert.assertTrue(registry.translate(TAGS).contains("TagV3"));
+    }
+
+    @Test
+    public void testInvalidGTopIsRejected() throws Exception {
+        GTopRegistry registry = new GTopRegistry(getGTopInterface());
+        try {
+            registry.reload(withTable("tag", ""));
+            Assert.fail("A node without table must be rejected.");
+        } catch (IllegalArgumentException e) {
+            Assert.assertTrue(e.getMessage().startsWith("Invalid gTop"));
+        }
+        try {
+            registry.reload("{\"version\": \"1.0\", \"abstractionLevel\": 3}");
+            Assert.fail("A malformed gTop must be rejected.");
+        } catch (IOException e) {
+            // expected
+        }
+        Assert.assertEquals(1, registry.current().getNumber());
+    }
+
+    @Test
+    public void testReloadInTheBackground() throws Exception {
+        GTopRegistry registry = new GTopRegistry(getGTopInterface(), builder -> builder.cacheSize(16));
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            GTopRegistry.Version version = registry.reloadAsync(withTable("forum", "ForumV2"), executor).get();
+            Assert.assertEquals(2, version.getNumber());
+            Assert.assertEquals(16, version.getEngine().getCache().maximumSize());
+            Assert.assertTrue(registry.translate("MATCH (f:Forum) RETURN f.id").contains("ForumV2"));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testQueryDependencies() throws Exception {
+        GTopRegistry registry = new GTopRegistry(getGTopInterface());
+        Optional<Set<String>> labels = LabelDependencies.ofQuery(registry.current().getGTop(),
+                "MATCH (a:Person)-[:HAS_INTEREST]->(t) WHERE (a)-[:KNOWS]-(:Person) RETURN t.name");
+        Assert.assertEquals(new HashSet<>(Arrays.asList("person", "has_interest", "tag", "knows")), labels.get());
+        Assert.assertFalse(LabelDependencies.ofQuery(registry.current().getGTop(),
+                "MATCH (a:Person), (b) RETURN a.id").isPresent());
+    }
+}
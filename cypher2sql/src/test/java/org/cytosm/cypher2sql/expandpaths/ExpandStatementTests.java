@@ -0,0 +1,93 @@
+package org.cytosm.cypher2sql.expandpaths;
+
+import org.cytosm.common.gtop.GTopInterfaceImpl;
+import org.cytosm.cypher2sql.cypher.ast.SingleQuery;
+import org.cytosm.cypher2sql.cypher.ast.Statement;
+import org.cytosm.cypher2sql.cypher.ast.clause.match.Match;
+import org.cytosm.cypher2sql.cypher.ast.clause.match.pattern.*;
+import org.cytosm.cypher2sql.cypher.parser.ASTBuilder;
+import org.cytosm.cypher2sql.lowering.BaseLDBCTests;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ */
+public class ExpandStatementTests extends BaseLDBCTests {
+
+    @Test
+    public void testSameVariantsAsCypherExpansion() throws Exception {
+        GTopInterfaceImpl gTop = getGTopInterface();
+        String[] cyphers = {
+                "MATCH (a:Person)-[:KNOWS]-(b:Person) RETURN a.id",
+                "MATCH (a:Person)-[]-(b) RETURN a.id, b.id",
+                "MATCH (a:Person)-[:KNOWS]-(b:Person)\nWITH a, b\nMATCH (b)-[]-(e)\nRETURN a.id, b.firstName, e.id",
+                "MATCH (a:Person)-[:KNOWS*1..2]-(b:Person) RETURN a.id",
+                "MATCH (a:Person {id: 42})<-[:HAS_CREATOR]-(m) RETURN m.id",
+        };
+        for (String cypher: cyphers) {
+            List<String> expected = ExpandCypher.expandCypher(gTop, cypher).stream()
+                    .map(ASTBuilder::parse)
+                    .map(ExpandStatementTests::signature)
+                    .sorted()
+                    .collect(Collectors.toList());
+            List<String> actual = ExpandStatement.expandStatement(gTop, cypher).stream()
+                    .map(ExpandStatementTests::signature)
+                    .sorted()
+                    .collect(Collectors.toList());
+            Assert.assertFalse(actual.isEmpty());
+            Assert.assertEquals(cypher, expected, actual);
+        }
+    }
+
+    @Test
+    public void testClausesAreShared() throws Exception {
+        String cypher = "MATCH (a:Person)-[]-(b) WHERE a.id = 42 RETURN b.id";
+        List<Statement> statements = ExpandStatement.expandStatement(getGTopInterface(), cypher);
+        Assert.assertTrue(statements.size() > 1);
+        SingleQuery first = (SingleQuery) statements.get(0).query.part;
+        SingleQuery second = (SingleQuery) statements.get(1).query.part;
+        Assert.assertSame(((Match) first.clauses.get(0)).where.get(), ((Match) second.clauses.get(0)).where.get());
+        Assert.assertSame(first.clauses.get(1), second.clauses.get(1));
+    }
+
+    @Test
+    public void testVariableLengthIsExpandedIntoHops() throws Exception {
+        String cypher = "MATCH (a:Person)-[:KNOWS*1..2]-(b:Person) RETURN a.id";
+        List<Statement> statements = ExpandStatement.expandStatement(getGTopInterface(), cypher);
+        Assert.assertEquals(2, statements.size());
+        for (Statement st: statements) {
+            Assert.assertTrue(signature(st).startsWith("(a:person)-[:knows]-("));
+            Assert.assertTrue(signature(st).endsWith("(b:person)"));
+        }
+    }
+
+    /**
+     * Renders the patterns of the statement with only the variables,
+     * the labels, the types and the directions.
+     */
+    private static String signature(final Statement statement) {
+        return ((SingleQuery) statement.query.part).clauses.stream()
+                .filter(clause -> clause instanceof Match)
+                .flatMap(clause -> ((Match) clause).pattern.patternParts.stream())
+                .map(pp -> signature(pp.element))
+                .collect(Collectors.joining(", "));
+    }
+
+    private static String signature(final PatternElement element) {
+        if (element instanceof NodePattern) {
+            NodePattern node = (NodePattern) element;
+            return "(" + node.variable.map(v -> v.name).orElse("") + ":" +
+                    node.labels.stream().map(l -> l.name).collect(Collectors.joining(":")) + ")";
+        }
+        RelationshipChain chain = (RelationshipChain) element;
+        RelationshipPattern rel = chain.relationship;
+        String types = rel.types.stream().map(t -> t.name).collect(Collectors.joining("|"));
+        String left = rel.direction == RelationshipPattern.SemanticDirection.INCOMING ? "<-" : "-";
+        String right = rel.direction == RelationshipPattern.SemanticDirection.OUTGOING ? "->" : "-";
+        return signature(chain.element) + left + "[" + rel.variable.map(v -> v.name).orElse("") + ":" + types + "]"
+                + right + signature(chain.rightNode);
+    }
+}
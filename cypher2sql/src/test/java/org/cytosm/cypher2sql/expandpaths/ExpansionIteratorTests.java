@@ -0,0 +1,61 @@
+package org.cytosm.cypher2sql.expandpaths;
+
+import org.cytosm.common.gtop.GTopInterfaceImpl;
+import org.cytosm.cypher2sql.PassAvailables;
+import org.cytosm.cypher2sql.cypher.ast.Statement;
+import org.cytosm.cypher2sql.engine.Cypher2SqlEngine;
+import org.cytosm.cypher2sql.lowering.BaseLDBCTests;
+import org.cytosm.cypher2sql.lowering.exceptions.ExpansionBudgetExceeded;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+
+/**
+ */
+public class ExpansionIteratorTests extends BaseLDBCTests {
+
+    private static final String WIDE = "MATCH (a:Person)-[]-(b)\nWITH a, b\nMATCH (b)-[]-(e)\nRETURN a.id, e.id";
+
+    @Test
+    public void testVariantsAreProducedOnDemand() throws Exception {
+        GTopInterfaceImpl gTop = getGTopInterface();
+        List<Statement> all = ExpandStatement.expandStatement(gTop, WIDE);
+        Assert.assertTrue(all.size() > 2);
+
+        ExpansionIterator iterator = ExpandStatement.expand(gTop, WIDE, ExpansionBudget.UNLIMITED);
+        Assert.assertEquals(0, iterator.producedCount());
+        iterator.next();
+        Assert.assertEquals(1, iterator.producedCount());
+        Assert.assertEquals(all.size() - 1, iterator.toList().size());
+        Assert.assertFalse(iterator.hasNext());
+    }
+
+    @Test
+    public void testBudgetLargeEnough() throws Exception {
+        GTopInterfaceImpl gTop = getGTopInterface();
+        int count = ExpandStatement.expandStatement(gTop, WIDE).size();
+        ExpansionIterator iterator = ExpandStatement.expand(gTop, WIDE, ExpansionBudget.ofVariants(count));
+        Assert.assertEquals(count, iterator.toList().size());
+    }
+
+    @Test(expected = ExpansionBudgetExceeded.class)
+    public void testVariantBudgetExceeded() throws Exception {
+        PassAvailables.cypher2sqlWithParameters(getGTopInterface(), WIDE, null, ExpansionBudget.ofVariants(2));
+    }
+
+    @Test
+    public void testEngineBudget() throws Exception {
+        Cypher2SqlEngine engine = Cypher2SqlEngine.builder(getGTopInterface())
+                .expansionBudget(ExpansionBudget.ofVariants(1))
+                .build();
+        engine.translate("MATCH (a:Person)-[:KNOWS]-(b:Person) RETURN a.id");
+        try {
+            engine.translate(WIDE);
+            Assert.fail("The budget should have been exceeded.");
+        } catch (ExpansionBudgetExceeded e) {
+            Assert.assertTrue(e.getMessage().contains("more than 1 variants"));
+        }
+        Assert.assertEquals(1, engine.getCache().size());
+    }
+}
@@ -0,0 +1,68 @@
+package org.cytosm.cypher2sql.expandpaths;
+
+import org.cytosm.cypher2sql.cypher.ast.SingleQuery;
+import org.cytosm.cypher2sql.cypher.ast.Statement;
+import org.cytosm.cypher2sql.cypher.ast.clause.match.Match;
+import org.cytosm.cypher2sql.cypher.ast.clause.match.pattern.PatternPart;
+import org.cytosm.cypher2sql.cypher.parser.ASTBuilder;
+import org.cytosm.cypher2sql.lowering.BaseLDBCTests;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ */
+public class LabelBindingsTests extends BaseLDBCTests {
+
+    @Test
+    public void testBindAndUndo() {
+        LabelBindings bindings = new LabelBindings();
+        Assert.assertTrue(bindings.bind("a", "person"));
+        int mark = bindings.mark();
+        Assert.assertTrue(bindings.bind("a", "person"));
+        Assert.assertFalse(bindings.bind("a", "forum"));
+        Assert.assertTrue(bindings.bind("b", "forum"));
+        bindings.undo(mark);
+        Assert.assertEquals("person", bindings.get("a"));
+        Assert.assertNull(bindings.get("b"));
+    }
+
+    @Test
+    public void testFailedSegmentBindsNothing() {
+        LabelBindings bindings = new LabelBindings();
+        bindings.bind("b", "forum");
+        List<LabelBindings.Binding> segment = Arrays.asList(
+                new LabelBindings.Binding("a", "person"),
+                new LabelBindings.Binding("b", "person"));
+        Assert.assertFalse(bindings.bindAll(segment));
+        Assert.assertNull(bindings.get("a"));
+        Assert.assertEquals("forum", bindings.get("b"));
+    }
+
+    @Test
+    public void testExpandedCyphersHaveConsistentLabels() throws Exception {
+        String cypher = "MATCH (a:Person)-[]-(b)\nWITH a, b\nMATCH (b)-[]-(e)\nRETURN a.id, e.id";
+        List<String> cyphers = ExpandCypher.expandCypher(getGTopInterface(), cypher);
+        Assert.assertFalse(cyphers.isEmpty());
+        for (String expanded: cyphers) {
+            Assert.assertTrue(expanded, consistent(ASTBuilder.parse(expanded)));
+        }
+        Assert.assertEquals(cyphers.size(), ExpandStatement.expandStatement(getGTopInterface(), cypher).size());
+    }
+
+    private static boolean consistent(final Statement statement) {
+        LabelBindings bindings = new LabelBindings();
+        for (Object clause: ((SingleQuery) statement.query.part).clauses) {
+            if (clause instanceof Match) {
+                for (PatternPart pp: ((Match) clause).pattern.patternParts) {
+                    if (!bindings.bindAll(LabelBindings.of(pp.element))) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+}
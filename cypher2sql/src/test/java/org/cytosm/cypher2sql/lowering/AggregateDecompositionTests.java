@@ -0,0 +1,44 @@
+package org.cytosm.cypher2sql.lowering;
+
+import org.cytosm.cypher2sql.PassAvailables;
+import org.junit.Assert;
+import org.junit.Test;
+
+
+/**
+ */
+public class AggregateDecompositionTests extends BaseLDBCTests {
+
+    @Test
+    public void testCountIsSummedOverTheUnion() throws Exception {
+        String sql = PassAvailables.cypher2sql(getGTopInterface(),
+                "MATCH (a:Person {id: 1})-[:IS_LOCATED_IN|STUDY_AT]->(b) RETURN count(b)");
+        Assert.assertEquals(2, count(sql, "count(__"));
+        Assert.assertTrue(sql.contains("SELECT sum(__src0.\"__agg0_0\") AS \"count(b)\""));
+    }
+
+    @Test
+    public void testAvgIsComputedFromSumAndCount() throws Exception {
+        String sql = PassAvailables.cypher2sql(getGTopInterface(),
+                "MATCH (a:Message) RETURN min(a.length), avg(a.length)");
+        Assert.assertTrue(sql.contains("min(__src0.\"__agg0_0\") AS \"min(a.length)\""));
+        Assert.assertTrue(sql.contains("nullif(sum(__src0.\"__agg1_1\"), 0)"));
+        Assert.assertFalse(sql.contains("avg(__"));
+    }
+
+    @Test
+    public void testDistinctCountOnDisjointBranchesIsSummed() throws Exception {
+        String sql = PassAvailables.cypher2sql(getGTopInterface(),
+                "MATCH (a:Person {id: 1})-[:IS_LOCATED_IN|STUDY_AT]->(b) RETURN count(DISTINCT b)");
+        Assert.assertEquals(2, count(sql, "count(DISTINCT __"));
+        Assert.assertTrue(sql.contains("sum(__src0.\"__agg0_0\")"));
+    }
+
+    @Test
+    public void testDistinctCountOnOverlappingBranchesIsComputedOnce() throws Exception {
+        String sql = PassAvailables.cypher2sql(getGTopInterface(),
+                "MATCH (b) RETURN count(DISTINCT b.firstName)");
+        Assert.assertEquals(1, count(sql, "count(DISTINCT __"));
+        Assert.assertTrue(sql.contains("SELECT count(DISTINCT __src0.\"__agg0_0\")"));
+    }
+}
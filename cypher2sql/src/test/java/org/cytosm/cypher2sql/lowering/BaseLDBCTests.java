@@ -6,6 +6,7 @@ import org.apache.commons.io.FileUtils;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.regex.Pattern;
 
 /**
  */
@@ -17,4 +18,11 @@ public class BaseLDBCTests {
         return new RelationalGTopInterface(jsonInString);
     }
 
+    /**
+     * @return the number of occurrences of the pattern in the sql.
+     */
+    protected static int count(final String sql, final String pattern) {
+        return sql.split(Pattern.quote(pattern), -1).length - 1;
+    }
+
 }
@@ -0,0 +1,68 @@
+package org.cytosm.cypher2sql.lowering;
+
+import org.cytosm.cypher2sql.PassAvailables;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ */
+public class CompilationContextTests extends BaseLDBCTests {
+
+    private static final String CYPHER = "" +
+            "MATCH (a:Person)-[:KNOWS]-(b:Person)\n" +
+            "WITH a, b\n" +
+            "MATCH (b)-[]-(e)\n" +
+            "RETURN a.id, b.firstName, e.id";
+
+    @Test
+    public void testNamesAreGeneratedPerTranslation() {
+        CompilationContext ctx = new CompilationContext();
+        Assert.assertEquals("__src0", ctx.genFromItemName());
+        Assert.assertEquals("__src1", ctx.genFromItemName());
+        Assert.assertEquals("__tmp0", ctx.genTempVarName());
+        Assert.assertEquals("SUB_0", ctx.genSubqueryName());
+        Assert.assertEquals("__src0", new CompilationContext().genFromItemName());
+    }
+
+    @Test
+    public void testBranchesHaveTheirOwnNamespace() {
+        CompilationContext ctx = new CompilationContext();
+        CompilationContext branch = ctx.branch(3);
+        Assert.assertEquals("__src3_0", branch.genFromItemName());
+        Assert.assertEquals("SUB_3_0", branch.genSubqueryName());
+        Assert.assertEquals("__tmp3_1_0", branch.branch(1).genTempVarName());
+        Assert.assertEquals("__src0", ctx.genFromItemName());
+        Assert.assertEquals("__src3_0", ctx.branch(3).genFromItemName());
+    }
+
+    @Test
+    public void testSameInputGivesSameSQL() throws Exception {
+        String first = PassAvailables.cypher2sql(getGTopInterface(), CYPHER);
+        String second = PassAvailables.cypher2sql(getGTopInterface(), CYPHER);
+        Assert.assertTrue(first.contains("UNION"));
+        Assert.assertEquals(first, second);
+    }
+
+    @Test
+    public void testConcurrentTranslationsGiveSameSQL() throws Exception {
+        String expected = PassAvailables.cypher2sql(getGTopInterface(), CYPHER);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                results.add(executor.submit(() -> PassAvailables.cypher2sql(getGTopInterface(), CYPHER)));
+            }
+            for (Future<String> result: results) {
+                Assert.assertEquals(expected, result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -170,8 +170,9 @@ public class ComputeFromItemsTests {
         Statement st = PassAvailables.parseCypher(cypher);
         VarDependencies vars = new VarDependencies(st);
         ScopeSelect tree = SelectTreeBuilder.createQueryTree(vars, st);
-        NameSubqueries.nameSubqueries(tree);
-        ComputeFromItems.computeFromItems(tree, vars);
+        CompilationContext ctx = new CompilationContext();
+        NameSubqueries.nameSubqueries(tree, ctx);
+        ComputeFromItems.computeFromItems(tree, vars, ctx);
         return tree;
     }
 
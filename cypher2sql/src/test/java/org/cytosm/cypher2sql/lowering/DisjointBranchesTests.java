@@ -0,0 +1,76 @@
+package org.cytosm.cypher2sql.lowering;
+
+import org.cytosm.common.gtop.GTopInterfaceImpl;
+import org.cytosm.cypher2sql.PassAvailables;
+import org.cytosm.cypher2sql.cypher.ast.Statement;
+import org.cytosm.cypher2sql.cypher.parser.ASTBuilder;
+import org.cytosm.cypher2sql.expandpaths.ExpandStatement;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ */
+public class DisjointBranchesTests extends BaseLDBCTests {
+
+    @Test
+    public void testNodesFromDifferentTablesAreDisjoint() throws Exception {
+        GTopInterfaceImpl gTop = getGTopInterface();
+        DisjointBranches persons = DisjointBranches.of(
+                ASTBuilder.parse("MATCH (a:person)-[:knows]-(b:person) RETURN DISTINCT b"), gTop);
+        DisjointBranches cities = DisjointBranches.of(
+                ASTBuilder.parse("MATCH (a:person)-[:isLocatedIn]-(b:city) RETURN DISTINCT b"), gTop);
+        DisjointBranches moderators = DisjointBranches.of(
+                ASTBuilder.parse("MATCH (a:person)-[:hasModerator]-(b:person) RETURN DISTINCT b"), gTop);
+        Assert.assertTrue(persons.distinct);
+        Assert.assertTrue(persons.isDisjointFrom(cities));
+        Assert.assertFalse(persons.isDisjointFrom(moderators));
+        Assert.assertEquals(
+                Arrays.asList(Arrays.asList(0, 2), Arrays.asList(1)),
+                DisjointBranches.overlappingGroups(Arrays.asList(persons, cities, moderators)));
+    }
+
+    @Test
+    public void testPropertiesAreNeverDisjoint() throws Exception {
+        GTopInterfaceImpl gTop = getGTopInterface();
+        DisjointBranches persons = DisjointBranches.of(
+                ASTBuilder.parse("MATCH (a:person)-[:knows]-(b:person) RETURN DISTINCT b.id"), gTop);
+        DisjointBranches cities = DisjointBranches.of(
+                ASTBuilder.parse("MATCH (a:person)-[:isLocatedIn]-(b:city) RETURN DISTINCT b.id"), gTop);
+        Assert.assertFalse(persons.isDisjointFrom(cities));
+    }
+
+    @Test
+    public void testNodesAreFollowedThroughWith() throws Exception {
+        GTopInterfaceImpl gTop = getGTopInterface();
+        DisjointBranches persons = DisjointBranches.of(
+                ASTBuilder.parse("MATCH (a:person)-[:knows]-(b:person) WITH b AS c RETURN DISTINCT c"), gTop);
+        DisjointBranches cities = DisjointBranches.of(
+                ASTBuilder.parse("MATCH (a:person)-[:isLocatedIn]-(b:city) WITH b AS c RETURN DISTINCT c"), gTop);
+        Assert.assertTrue(persons.isDisjointFrom(cities));
+    }
+
+    @Test
+    public void testUnionOnlyWhenDistinctIsRequired() throws Exception {
+        GTopInterfaceImpl gTop = getGTopInterface();
+        String all = PassAvailables.cypher2sql(gTop, "MATCH (a:Person {id: 1})-[]-(b) RETURN b.id");
+        Assert.assertFalse(all.contains(")UNION\n"));
+
+        String distinct = PassAvailables.cypher2sql(gTop, "MATCH (a:Person {id: 1})-[]-(b) RETURN DISTINCT b.id");
+        Assert.assertTrue(distinct.contains(")UNION\n"));
+
+        // Every expanded cypher returns a different table except the messages and the forums.
+        String nodes = PassAvailables.cypher2sql(gTop, "MATCH (a:Person {id: 1})-[]-(b) RETURN DISTINCT b");
+        List<Statement> variants = ExpandStatement.expandStatement(gTop, "MATCH (a:Person {id: 1})-[]-(b) RETURN DISTINCT b");
+        List<List<Integer>> groups = DisjointBranches.overlappingGroups(variants.stream()
+                .map(st -> DisjointBranches.of(st, gTop))
+                .collect(Collectors.toList()));
+        Assert.assertTrue(groups.size() > 1);
+        Assert.assertTrue(groups.size() < variants.size());
+        Assert.assertTrue(nodes.contains(")UNION\n"));
+        Assert.assertTrue(nodes.contains(")UNION ALL\n"));
+    }
+}
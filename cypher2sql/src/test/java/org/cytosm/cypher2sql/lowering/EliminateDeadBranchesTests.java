@@ -0,0 +1,104 @@
+package org.cytosm.cypher2sql.lowering;
+
+import org.cytosm.common.gtop.GTopInterfaceImpl;
+import org.cytosm.common.gtop.implementation.relational.ImplementationNode;
+import org.cytosm.common.gtop.implementation.relational.RestrictionClause;
+import org.cytosm.common.gtop.implementation.relational.RestrictionClauses;
+import org.cytosm.cypher2sql.PassAvailables;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collections;
+
+/**
+ */
+public class EliminateDeadBranchesTests extends BaseLDBCTests {
+
+    @Test
+    public void testBranchContradictingTheRestrictionOfItsTableIsRemoved() throws Exception {
+        String sql = PassAvailables.cypher2sql(getRestrictedGTop(),
+                "MATCH (m:Message) WHERE m.browserUsed = 'Chrome' RETURN m.id");
+        Assert.assertFalse(sql.contains("FROM Comment"));
+        Assert.assertTrue(sql.contains("FROM Post"));
+    }
+
+    @Test
+    public void testRestrictionsAreOnlyUsedOnTheirTable() throws Exception {
+        String sql = PassAvailables.cypher2sql(getRestrictedGTop(),
+                "MATCH (m:Message) WHERE m.browserUsed = 'SAFARI' OR m.browserUsed = 'Opera Mini' RETURN m.id");
+        Assert.assertTrue(sql.contains("FROM Comment"));
+        Assert.assertFalse(sql.contains("FROM Post"));
+    }
+
+    @Test
+    public void testBranchesAreKeptWithoutRestrictions() throws Exception {
+        String sql = PassAvailables.cypher2sql(getGTopInterface(),
+                "MATCH (m:Message) WHERE m.browserUsed = 'Chrome' RETURN m.id");
+        Assert.assertTrue(sql.contains("FROM Comment"));
+        Assert.assertTrue(sql.contains("FROM Post"));
+    }
+
+    @Test
+    public void testAllBranchesEmptyKeepsOne() throws Exception {
+        String sql = PassAvailables.cypher2sql(getGTopInterface(),
+                "MATCH (m:Message) WHERE m.id > 10 AND m.id < 5 RETURN m.id");
+        Assert.assertEquals(1, count(sql, "FROM Comment") + count(sql, "FROM Post"));
+        Assert.assertTrue(sql.contains("AS \"m.id\""));
+    }
+
+    @Test
+    public void testAggregateOfNoRowIsKept() throws Exception {
+        String sql = PassAvailables.cypher2sql(getGTopInterface(),
+                "MATCH (m:Message) WHERE m.id = 3 AND m.id = 4 RETURN count(m)");
+        Assert.assertTrue(sql.contains("FROM Comment"));
+        Assert.assertTrue(sql.contains("FROM Post"));
+    }
+
+    @Test
+    public void testStringsDifferingByTheCaseAreNotTheSame() throws Exception {
+        String sql = PassAvailables.cypher2sql(getGTopInterface(),
+                "MATCH (m:Message) WHERE m.content = 'a' AND m.content <> 'A' RETURN m.id");
+        Assert.assertTrue(sql.contains("FROM Comment"));
+        Assert.assertTrue(sql.contains("FROM Post"));
+    }
+
+    @Test
+    public void testStringsDifferingByTheCaseAreNotDifferent() throws Exception {
+        String sql = PassAvailables.cypher2sql(getGTopInterface(),
+                "MATCH (m:Message) WHERE m.content = 'a' AND m.content = 'A ' RETURN m.id");
+        Assert.assertTrue(sql.contains("FROM Comment"));
+        Assert.assertTrue(sql.contains("FROM Post"));
+
+        sql = PassAvailables.cypher2sql(getGTopInterface(),
+                "MATCH (m:Message) WHERE m.content = 'a' AND m.content = 'b' RETURN m.id");
+        Assert.assertEquals(1, count(sql, "FROM Comment") + count(sql, "FROM Post"));
+    }
+
+    @Test
+    public void testParametersAreNotFolded() throws Exception {
+        String sql = PassAvailables.cypher2sql(getGTopInterface(),
+                "MATCH (m:Message) WHERE m.id = $a AND m.id = 4 RETURN m.id");
+        Assert.assertTrue(sql.contains("FROM Comment"));
+        Assert.assertTrue(sql.contains("FROM Post"));
+    }
+
+    /**
+     * The ldbc gTop where the Post and Comment tables only
+     * contain rows of different browsers.
+     */
+    private GTopInterfaceImpl getRestrictedGTop() throws Exception {
+        GTopInterfaceImpl gTop = getGTopInterface();
+        for (ImplementationNode node: gTop.getImplementationNodes()) {
+            if (node.getTableName().equals("Post")) {
+                node.setRestrictions(Collections.singletonList(restriction("Post", "Chrome|Firefox")));
+            } else if (node.getTableName().equals("Comment")) {
+                node.setRestrictions(Collections.singletonList(restriction("Comment", "Safari|Opera%")));
+            }
+        }
+        return gTop;
+    }
+
+    private static RestrictionClauses restriction(String table, String pattern) {
+        return new RestrictionClauses(Collections.singletonList(new RestrictionClause(table, "browserUsed", pattern)));
+    }
+}
@@ -0,0 +1,50 @@
+package org.cytosm.cypher2sql.lowering;
+
+import org.cytosm.common.gtop.GTopInterfaceImpl;
+import org.cytosm.cypher2sql.PassAvailables;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ */
+public class FactorCommonSubqueriesTests extends BaseLDBCTests {
+
+    private static final String[] CYPHERS = {
+            "MATCH (a:Person {id: 42})-[:KNOWS]-(b:Person)\nWITH b\nMATCH (b)<-[:HAS_CREATOR]-(m)\nRETURN b.id, m.id",
+            "MATCH (a:Person)-[:KNOWS]-(b:Person)\nWITH a, b\nMATCH (b)-[]-(e)\nRETURN a.id, b.firstName, e.id",
+            "MATCH (a:Person)-[]-(b) RETURN a.id, b.id",
+            "MATCH (a:Person)-[:KNOWS*1..2]-(b:Person) RETURN a.id",
+    };
+
+    @Test
+    public void testSharedPrefixIsComputedOnce() throws Exception {
+        String sql = PassAvailables.cypher2sql(getGTopInterface(), CYPHERS[0]);
+        Assert.assertEquals(1, count(sql, " person_knows_person "));
+        Assert.assertEquals(1, count(sql, " comment_hasCreator_person "));
+        Assert.assertEquals(1, count(sql, " post_hasCreator_person "));
+    }
+
+    @Test
+    public void testEverySubqueryIsDefined() throws Exception {
+        GTopInterfaceImpl gTop = getGTopInterface();
+        Pattern reference = Pattern.compile("(?:FROM|JOIN) (SUB_[0-9_]+) AS");
+        Pattern definition = Pattern.compile("(SUB_[0-9_]+) AS \\(");
+        for (String cypher: CYPHERS) {
+            String sql = PassAvailables.cypher2sql(gTop, cypher);
+            Set<String> defined = new HashSet<>();
+            Matcher matcher = definition.matcher(sql);
+            while (matcher.find()) {
+                defined.add(matcher.group(1));
+            }
+            matcher = reference.matcher(sql);
+            while (matcher.find()) {
+                Assert.assertTrue(cypher + "\n" + sql, defined.contains(matcher.group(1)));
+            }
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package org.cytosm.cypher2sql.lowering;
+
+import org.cytosm.common.gtop.GTopInterfaceImpl;
+import org.cytosm.cypher2sql.PassAvailables;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ */
+public class InlinePassThroughSelectsTests extends BaseLDBCTests {
+
+    @Test
+    public void testWithChainIsInlined() throws Exception {
+        String sql = PassAvailables.cypher2sql(getGTopInterface(),
+                "MATCH (p:Person) WITH p WITH p WITH p RETURN p.firstName");
+        Assert.assertEquals(1, countSubqueries(sql));
+        Assert.assertTrue(sql.contains("FROM Person AS"));
+    }
+
+    @Test
+    public void testForwardedComputedColumnIsInlined() throws Exception {
+        String sql = PassAvailables.cypher2sql(getGTopInterface(),
+                "MATCH (p:Person) WITH p, count(p) AS n WITH p, n RETURN p.firstName, n");
+        // The second WITH only forwards the columns of the first one.
+        Assert.assertEquals(2, countSubqueries(sql));
+        Assert.assertTrue(sql.contains("count(") && sql.endsWith("FROM SUB_1 AS __src7\n"));
+    }
+
+    @Test
+    public void testRenamingIsKept() throws Exception {
+        String sql = PassAvailables.cypher2sql(getGTopInterface(),
+                "MATCH (p:Person)-[:KNOWS]-(f:Person) WITH p, f.firstName AS name WITH p, name RETURN p.id, name");
+        Assert.assertEquals(2, countSubqueries(sql));
+    }
+
+    @Test
+    public void testDistinctIsKept() throws Exception {
+        GTopInterfaceImpl gTop = getGTopInterface();
+        String distinct = PassAvailables.cypher2sql(gTop,
+                "MATCH (p:Person) WITH DISTINCT p WITH p RETURN p.firstName");
+        Assert.assertEquals(2, countSubqueries(distinct));
+        Assert.assertTrue(distinct.contains("SELECT DISTINCT"));
+    }
+
+    private static int countSubqueries(final String sql) {
+        return sql.split(" AS \\(", -1).length - 1;
+    }
+}
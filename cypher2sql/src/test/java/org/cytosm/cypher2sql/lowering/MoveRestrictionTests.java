@@ -22,7 +22,7 @@ public class MoveRestrictionTests {
         Statement query = PassAvailables.parseCypher(cypher);
         VarDependencies vars = new VarDependencies(query);
         ScopeSelect tree = SelectTreeBuilder.createQueryTree(vars, query);
-        NameSubqueries.nameSubqueries(tree);
+        NameSubqueries.nameSubqueries(tree, new CompilationContext());
         MoveRestrictionInPattern.moveRestrictionInPatterns(tree, vars);
 
         // Assertions:
@@ -40,7 +40,7 @@ public class MoveRestrictionTests {
         Statement query = PassAvailables.parseCypher(cypher);
         VarDependencies vars = new VarDependencies(query);
         ScopeSelect tree = SelectTreeBuilder.createQueryTree(vars, query);
-        NameSubqueries.nameSubqueries(tree);
+        NameSubqueries.nameSubqueries(tree, new CompilationContext());
         MoveRestrictionInPattern.moveRestrictionInPatterns(tree, vars);
 
         // Assertions:
@@ -62,7 +62,7 @@ public class MoveRestrictionTests {
         Statement query = PassAvailables.parseCypher(cypher);
         VarDependencies vars = new VarDependencies(query);
         ScopeSelect tree = SelectTreeBuilder.createQueryTree(vars, query);
-        NameSubqueries.nameSubqueries(tree);
+        NameSubqueries.nameSubqueries(tree, new CompilationContext());
         MoveRestrictionInPattern.moveRestrictionInPatterns(tree, vars);
 
         // Assertions:
@@ -86,7 +86,7 @@ public class MoveRestrictionTests {
         Statement query = PassAvailables.parseCypher(cypher);
         VarDependencies vars = new VarDependencies(query);
         ScopeSelect tree = SelectTreeBuilder.createQueryTree(vars, query);
-        NameSubqueries.nameSubqueries(tree);
+        NameSubqueries.nameSubqueries(tree, new CompilationContext());
         MoveRestrictionInPattern.moveRestrictionInPatterns(tree, vars);
 
         // Assertions:
@@ -108,7 +108,7 @@ public class MoveRestrictionTests {
         Statement query = PassAvailables.parseCypher(cypher);
         VarDependencies vars = new VarDependencies(query);
         ScopeSelect tree = SelectTreeBuilder.createQueryTree(vars, query);
-        NameSubqueries.nameSubqueries(tree);
+        NameSubqueries.nameSubqueries(tree, new CompilationContext());
         MoveRestrictionInPattern.moveRestrictionInPatterns(tree, vars);
 
         // Assertions
@@ -134,7 +134,7 @@ public class MoveRestrictionTests {
         Statement query = PassAvailables.parseCypher(cypher);
         VarDependencies vars = new VarDependencies(query);
         ScopeSelect tree = SelectTreeBuilder.createQueryTree(vars, query);
-        NameSubqueries.nameSubqueries(tree);
+        NameSubqueries.nameSubqueries(tree, new CompilationContext());
         MoveRestrictionInPattern.moveRestrictionInPatterns(tree, vars);
 
         // Assertions
@@ -0,0 +1,48 @@
+package org.cytosm.cypher2sql.lowering;
+
+import org.cytosm.cypher2sql.PassAvailables;
+import org.cytosm.cypher2sql.lowering.exceptions.UnsupportedPattern;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.regex.Pattern;
+
+/**
+ */
+public class OrderAndLimitPropagationTests extends BaseLDBCTests {
+
+    @Test
+    public void testTopRowsOfEachBranch() throws Exception {
+        String sql = PassAvailables.cypher2sql(getGTopInterface(),
+                "MATCH (a:Person {id: 1})-[]-(b) RETURN b.id, b.name ORDER BY b.id DESC SKIP 5 LIMIT 10");
+        Assert.assertTrue(sql.endsWith("ORDER BY __src0.\"b.id\" DESC\nLIMIT 10\nOFFSET 5\n"));
+        // Each branch returns its first SKIP + LIMIT rows.
+        Assert.assertTrue(count(sql, "LIMIT 15\n") > 1);
+        Assert.assertEquals(count(sql, "ORDER BY") - 1, count(sql, "LIMIT 15\n"));
+        Assert.assertEquals(1, count(sql, "OFFSET"));
+    }
+
+    @Test
+    public void testSortOnColumnNotReturned() throws Exception {
+        String sql = PassAvailables.cypher2sql(getGTopInterface(),
+                "MATCH (a:Person {id: 1})-[]-(b) RETURN b.id ORDER BY b.name SKIP 5");
+        Assert.assertTrue(sql.endsWith("SELECT __src0.\"b.id\"\nFROM SUB_0 AS __src0\n" +
+                "ORDER BY __src0.\"__order0\" ASC\nOFFSET 5\n"));
+        // Without a LIMIT, the branches don't need to be sorted.
+        Assert.assertEquals(1, count(sql, "ORDER BY"));
+    }
+
+    @Test(expected = UnsupportedPattern.class)
+    public void testNoQueryToMerge() throws Exception {
+        // KNOWS never leads to a Forum: every expansion is removed.
+        PassAvailables.cypher2sql(getGTopInterface(),
+                "MATCH (a:Person)-[:KNOWS]->(b:Forum) RETURN b.id ORDER BY b.id LIMIT 10");
+    }
+
+    @Test
+    public void testSingleQueryKeepsItsOrder() throws Exception {
+        String sql = PassAvailables.cypher2sql(getGTopInterface(),
+                "MATCH (a:Person {id: 1})-[:KNOWS]-(b:Person) RETURN b.id ORDER BY b.id SKIP 2 LIMIT 10");
+        Assert.assertTrue(sql.endsWith("ASC\nLIMIT 10\nOFFSET 2\n"));
+    }
+}
@@ -0,0 +1,86 @@
+package org.cytosm.cypher2sql.lowering;
+
+import org.cytosm.common.gtop.GTopInterfaceImpl;
+import org.cytosm.common.gtop.abstraction.AbstractionEdge;
+import org.cytosm.common.gtop.abstraction.AbstractionNode;
+import org.cytosm.cypher2sql.PassAvailables;
+import org.cytosm.cypher2sql.engine.Cypher2SqlEngine;
+import org.cytosm.cypher2sql.lowering.rendering.ParameterizedSQL;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+/**
+ */
+public class ParallelLoweringTests extends BaseLDBCTests {
+
+    private static final String[] CYPHERS = {
+            "MATCH (a:Person) WHERE a.id = $id RETURN a.firstName",
+            "MATCH (a:Person)-[:KNOWS]-(b:Person)\nWITH a, b\nMATCH (b)-[]-(e)\nRETURN a.id, b.firstName, e.id",
+            "MATCH (a:Person)-[]-(b) RETURN a.id, b.id",
+    };
+
+    @Test
+    public void testParallelLoweringGivesSameSQL() throws Exception {
+        GTopInterfaceImpl gTop = getGTopInterface();
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (String cypher: CYPHERS) {
+                ParameterizedSQL sequential = PassAvailables.cypher2sqlWithParameters(gTop, cypher);
+                for (int i = 0; i < 4; i++) {
+                    ParameterizedSQL parallel = PassAvailables.cypher2sqlWithParameters(gTop, cypher, pool);
+                    Assert.assertEquals(sequential.sql, parallel.sql);
+                    Assert.assertEquals(sequential.parameters, parallel.parameters);
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testAbstractionLevelIsSortedBeforeTheLowerings() throws Exception {
+        GTopInterfaceImpl gTop = getGTopInterface();
+        for (AbstractionNode node: gTop.getAbstractionNodes()) {
+            Collections.reverse(node.getAttributes());
+        }
+        for (AbstractionEdge edge: gTop.getAbstractionEdges()) {
+            Collections.reverse(edge.getAttributes());
+        }
+        // Nothing is left to sort once the lowerings can run concurrently.
+        Executor executor = task -> {
+            for (AbstractionNode node: gTop.getAbstractionNodes()) {
+                Assert.assertTrue(isSorted(node.getTypes()) && isSorted(node.getAttributes()));
+            }
+            for (AbstractionEdge edge: gTop.getAbstractionEdges()) {
+                Assert.assertTrue(isSorted(edge.getTypes()) && isSorted(edge.getAttributes()) &&
+                        isSorted(edge.getSourceType()) && isSorted(edge.getDestinationType()));
+            }
+            task.run();
+        };
+        PassAvailables.cypher2sqlWithParameters(gTop, CYPHERS[2], executor);
+    }
+
+    private static boolean isSorted(List<String> list) {
+        return list == null || list.stream().sorted().collect(Collectors.toList()).equals(list);
+    }
+
+    @Test
+    public void testEngineWithExecutor() throws Exception {
+        GTopInterfaceImpl gTop = getGTopInterface();
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            Cypher2SqlEngine engine = Cypher2SqlEngine.builder(gTop).cacheSize(0).executor(pool).build();
+            for (String cypher: CYPHERS) {
+                Assert.assertEquals(PassAvailables.cypher2sql(gTop, cypher), engine.translate(cypher));
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
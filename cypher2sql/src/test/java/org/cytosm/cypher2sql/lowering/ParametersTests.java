@@ -0,0 +1,59 @@
+package org.cytosm.cypher2sql.lowering;
+
+import org.cytosm.cypher2sql.PassAvailables;
+import org.cytosm.cypher2sql.lowering.rendering.ParameterizedSQL;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ */
+public class ParametersTests extends BaseLDBCTests {
+
+    @Test
+    public void testParameterInWhere() throws Exception {
+        String cypher = "" +
+                "MATCH (a:Person) WHERE a.id = $id AND a.firstName <> $0\n" +
+                "RETURN a.firstName";
+        ParameterizedSQL res = PassAvailables.cypher2sqlWithParameters(getGTopInterface(), cypher);
+        Assert.assertEquals(Arrays.asList("id", "0"), res.parameters);
+    }
+
+    @Test
+    public void testParameterInPatternProperties() throws Exception {
+        String cypher = "" +
+                "MATCH (a:Person {id: $id})-[:KNOWS]-(b:Person)\n" +
+                "RETURN b.firstName";
+        ParameterizedSQL res = PassAvailables.cypher2sqlWithParameters(getGTopInterface(), cypher);
+        Assert.assertEquals(Arrays.asList("id"), res.parameters);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnterminatedMarkerIsRejected() {
+        ParameterizedSQL.fromRenderedSQL("SELECT * FROM person WHERE id = ?{id");
+    }
+
+    @Test
+    public void testParameterRepeatedInUnionBranches() throws Exception {
+        String cypher = "MATCH (a) WHERE a.id = $id RETURN a.id";
+        ParameterizedSQL res = PassAvailables.cypher2sqlWithParameters(getGTopInterface(), cypher);
+        long placeholders = res.sql.chars().filter(c -> c == '?').count();
+        Assert.assertTrue(placeholders > 1);
+        Assert.assertEquals(placeholders, res.parameters.size());
+        Assert.assertTrue(res.parameters.stream().allMatch("id"::equals));
+    }
+
+    @Test
+    public void testBind() throws Exception {
+        ParameterizedSQL res = ParameterizedSQL.fromRenderedSQL(
+                "SELECT '?{no}' FROM t WHERE a = ?{b} AND c = ?{a\\}b}");
+        Assert.assertEquals("SELECT '?{no}' FROM t WHERE a = ? AND c = ?", res.sql);
+        Map<String, Object> values = new HashMap<>();
+        values.put("a}b", 1);
+        values.put("b", "foo");
+        Assert.assertEquals(Arrays.asList("foo", 1), res.bind(values));
+    }
+}
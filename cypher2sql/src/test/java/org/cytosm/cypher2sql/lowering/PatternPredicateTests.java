@@ -0,0 +1,98 @@
+package org.cytosm.cypher2sql.lowering;
+
+import org.apache.commons.io.FileUtils;
+import org.cytosm.common.gtop.GTopInterfaceImpl;
+import org.cytosm.common.gtop.RelationalGTopInterface;
+import org.cytosm.common.gtop.implementation.relational.TraversalHop;
+import org.cytosm.cypher2sql.PassAvailables;
+import org.cytosm.cypher2sql.lowering.exceptions.UnsupportedPattern;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ */
+public class PatternPredicateTests extends BaseLDBCTests {
+
+    @Test
+    public void testNotPatternBetweenBoundNodes() throws Exception {
+        String sql = PassAvailables.cypher2sql(getGTopInterface(),
+                "MATCH (a:Person {id: 1}), (b:Person) WHERE NOT (a)-[:KNOWS]-(b) RETURN b.id");
+        Assert.assertTrue(sql.contains("NOT((EXISTS (SELECT 1 FROM person_knows_person AS "));
+        Assert.assertEquals(2, count(sql, "EXISTS (SELECT 1 FROM person_knows_person AS "));
+        Assert.assertEquals(1, count(sql, ") OR EXISTS ("));
+    }
+
+    @Test
+    public void testPatternToAnAnonymousNode() throws Exception {
+        String sql = PassAvailables.cypher2sql(getGTopInterface(),
+                "MATCH (a:Person {id: 1}) WHERE (a)-[:KNOWS]->() RETURN a.id");
+        Assert.assertEquals(1, count(sql, "EXISTS (SELECT 1 FROM person_knows_person AS "));
+        Assert.assertTrue(Pattern.compile("WHERE \\(__src\\d+\\.id = __src\\d+\\.person_id\\)\\)")
+                .matcher(sql).find());
+    }
+
+    @Test
+    public void testPatternToALabelledNode() throws Exception {
+        String sql = PassAvailables.cypher2sql(getGTopInterface(),
+                "MATCH (a:Person) WHERE (a)-[:HAS_INTEREST]->(:Tag) RETURN a.id");
+        Assert.assertEquals(1, count(sql, "EXISTS (SELECT 1 FROM person_hasInterest_tag AS "));
+    }
+
+    @Test
+    public void testChainOfRelationshipsJoinsTheJoinTables() throws Exception {
+        String sql = PassAvailables.cypher2sql(getGTopInterface(),
+                "MATCH (a:Person {id: 1}), (b:Person) WHERE (a)-[:KNOWS]->()-[:KNOWS]->(b) RETURN b.id");
+        Assert.assertTrue(Pattern.compile("FROM person_knows_person AS (__src\\d+), person_knows_person AS (__src\\d+)" +
+                " WHERE .*\\1\\.other_person_id = \\2\\.person_id").matcher(sql).find());
+    }
+
+    @Test
+    public void testPatternInTheWhereOfAWith() throws Exception {
+        String sql = PassAvailables.cypher2sql(getGTopInterface(),
+                "MATCH (a:Person {id: 1})-[:KNOWS]-(b:Person) WITH a, b WHERE NOT (b)-[:KNOWS]->(a) RETURN b.id");
+        Assert.assertEquals(1, count(sql, "NOT(EXISTS (SELECT 1 FROM person_knows_person AS "));
+    }
+
+    @Test
+    public void testPropertiesOfAnAnonymousNodeAreConditionsOfTheSubquery() throws Exception {
+        String sql = PassAvailables.cypher2sql(getGTopInterface(),
+                "MATCH (a:Person) WHERE (a)-[:KNOWS]->(:Person {firstName: 'Bob'}) RETURN a.id");
+        Assert.assertTrue(Pattern.compile("EXISTS \\(SELECT 1 FROM person_knows_person AS (__src\\d+)," +
+                " Person AS (__src\\d+) WHERE .*\\(\\2\\.id = \\1\\.other_person_id\\).*\\(\\2\\.firstName = 'Bob'\\)").matcher(sql).find());
+    }
+
+    @Test
+    public void testPropertiesOfABoundNodeAreConditionsOfTheSubquery() throws Exception {
+        String sql = PassAvailables.cypher2sql(getGTopInterface(),
+                "MATCH (a:Person), (b:Person) WHERE (a)-[:KNOWS]->(b {firstName: 'Bob'}) RETURN a.id");
+        Assert.assertTrue(Pattern.compile("EXISTS \\(SELECT 1 FROM person_knows_person AS __src\\d+ WHERE .*" +
+                "\\(__src\\d+\\.__cytosm\\d+\\$\\d+_firstName = 'Bob'\\)").matcher(sql).find());
+    }
+
+    @Test(expected = UnsupportedPattern.class)
+    public void testBoundRelationshipIsRejected() throws Exception {
+        PassAvailables.cypher2sql(getGTopInterface(), "MATCH (a:Person) WHERE (a)-[r:KNOWS]->(:Person) RETURN a.id");
+    }
+
+    @Test(expected = UnsupportedPattern.class)
+    public void testRelationshipWithSeveralHopsIsRejected() throws Exception {
+        GTopInterfaceImpl gTop = getGTopInterface();
+        List<TraversalHop> hops = gTop.getImplementationEdgeByType("HAS_INTEREST").get(0)
+                .getPaths().get(0).getTraversalHops();
+        hops.add(0, gTop.getImplementationEdgeByType("KNOWS").get(0).getPaths().get(0).getTraversalHops().get(0));
+        PassAvailables.cypher2sql(gTop, "MATCH (a:Person) WHERE (a)-[:HAS_INTEREST]->(:Tag) RETURN a.id");
+    }
+
+    @Test(expected = UnsupportedPattern.class)
+    public void testRelationshipThroughAForeignKeyIsRejected() throws Exception {
+        String path = "src" + File.separatorChar + "test" + File.separatorChar + "resources";
+        GTopInterfaceImpl northwind = new RelationalGTopInterface(
+                FileUtils.readFileToString(new File(path + "/northwind.gtop")));
+        PassAvailables.cypher2sql(northwind, "MATCH (a:Employees) " +
+                "WHERE (a)-[:employees_employeeid_employees_reportsto]->() RETURN a.EmployeeID");
+    }
+}
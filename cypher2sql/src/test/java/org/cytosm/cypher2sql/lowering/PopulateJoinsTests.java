@@ -72,10 +72,11 @@ public class PopulateJoinsTests extends BaseLDBCTests {
         Statement st = PassAvailables.parseCypher(cypher);
         VarDependencies vars = new VarDependencies(st);
         ScopeSelect tree = SelectTreeBuilder.createQueryTree(vars, st);
-        NameSubqueries.nameSubqueries(tree);
-        ComputeFromItems.computeFromItems(tree, vars);
+        CompilationContext ctx = new CompilationContext();
+        NameSubqueries.nameSubqueries(tree, ctx);
+        ComputeFromItems.computeFromItems(tree, vars, ctx);
         MoveRestrictionInPattern.moveRestrictionInPatterns(tree, vars);
-        tree = ExpandNodeVarWithGtop.computeTableNamesOnFromItems(tree, getGTopInterface());
-        return PopulateJoins.populateJoins(tree, vars, getGTopInterface());
+        tree = ExpandNodeVarWithGtop.computeTableNamesOnFromItems(tree, getGTopInterface(), ctx);
+        return PopulateJoins.populateJoins(tree, vars, getGTopInterface(), ctx);
     }
 }
@@ -0,0 +1,86 @@
+package org.cytosm.cypher2sql.lowering;
+
+import org.cytosm.cypher2sql.PassAvailables;
+import org.cytosm.cypher2sql.lowering.sqltree.*;
+import org.cytosm.cypher2sql.lowering.sqltree.from.FromItem;
+import org.cytosm.cypher2sql.lowering.typeck.constexpr.ConstVal;
+import org.cytosm.cypher2sql.lowering.typeck.expr.ExprTree;
+import org.cytosm.cypher2sql.lowering.typeck.expr.ExprVar;
+import org.cytosm.cypher2sql.lowering.typeck.types.NumberType;
+import org.cytosm.cypher2sql.lowering.typeck.var.TempVar;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ */
+public class PruneUnusedColumnsTests extends BaseLDBCTests {
+
+    @Test
+    public void testUnreadColumnsAreRemoved() throws Exception {
+        String sql = PassAvailables.cypher2sql(getGTopInterface(),
+                "MATCH (p:Person)-[:KNOWS]-(f:Person) WITH p, f.firstName AS name WITH p, name RETURN p.id, name");
+        // Only the id of p is read, not the one of f.
+        Assert.assertEquals(1, count(sql, ".id AS "));
+        Assert.assertEquals(1, count(sql, ".firstName AS "));
+    }
+
+    @Test
+    public void testMergedSelectListsItsColumns() throws Exception {
+        String sql = PassAvailables.cypher2sql(getGTopInterface(),
+                "MATCH (a:Person {id: 1})-[]-(b) RETURN b.id");
+        Assert.assertFalse(sql.contains("SELECT *"));
+        Assert.assertTrue(sql.contains(".\"b.id\"\nFROM"));
+    }
+
+    @Test
+    public void testDistinctSelectKeepsItsColumns() throws Exception {
+        String sql = PassAvailables.cypher2sql(getGTopInterface(),
+                "MATCH (p:Person)-[:KNOWS]-(f:Person) WITH DISTINCT p, f RETURN p.id");
+        // The id of f isn't returned but tells the rows apart.
+        Assert.assertEquals(2, count(sql, ".id AS "));
+    }
+
+    @Test
+    public void testBranchesOfAUnionLoseTheSameColumns() throws Exception {
+        CompilationContext ctx = new CompilationContext();
+        UnionSelect union = new UnionSelect();
+        for (String table: new String[]{"Person", "Forum"}) {
+            SimpleSelect branch = new SimpleSelectWithInnerJoins();
+            FromItem fromItem = new FromItem(ctx);
+            fromItem.sourceTableName = table;
+            fromItem.variables.add(new TempVar(ctx));
+            branch.fromItem.add(fromItem);
+            branch.exportedItems.add(new ExprTree.AliasExpr(new ConstVal.LongVal(1), "a"));
+            branch.exportedItems.add(new ExprTree.AliasExpr(new ConstVal.LongVal(2), "b"));
+            union.unions.add(branch);
+        }
+        WithSelect withSelect = new WithSelect(union);
+        withSelect.subqueryName = "SUB_0";
+
+        // Only the column b of the union is read.
+        TempVar b = new TempVar(ctx, new NumberType());
+        b.uniqueName = "\"b\"";
+        ScopeSelect tree = new ScopeSelect();
+        tree.withQueries.add(withSelect);
+        tree.ret = new SimpleSelectWithInnerJoins();
+        FromItem fromItem = new FromItem(ctx);
+        fromItem.source = withSelect;
+        fromItem.variables.add(b);
+        tree.ret.fromItem.add(fromItem);
+        tree.ret.exportedItems.add(new ExprVar(b));
+
+        PruneUnusedColumns.prune(tree);
+        for (SimpleOrScopeSelect branch: union.unions) {
+            Assert.assertTrue(branch.toSQLString().startsWith("SELECT 2 AS \"b\"\n"));
+        }
+
+        // Removing a column from a UNION DISTINCT changes its rows.
+        union.distinct = true;
+        union.unions.forEach(branch -> ((SimpleSelect) branch).exportedItems
+                .add(0, new ExprTree.AliasExpr(new ConstVal.LongVal(1), "a")));
+        PruneUnusedColumns.prune(tree);
+        for (SimpleOrScopeSelect branch: union.unions) {
+            Assert.assertTrue(branch.toSQLString().startsWith("SELECT 1 AS \"a\", 2 AS \"b\"\n"));
+        }
+    }
+}
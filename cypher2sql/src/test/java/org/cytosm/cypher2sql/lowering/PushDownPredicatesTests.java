@@ -0,0 +1,48 @@
+package org.cytosm.cypher2sql.lowering;
+
+import org.cytosm.cypher2sql.PassAvailables;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.regex.Pattern;
+
+/**
+ */
+public class PushDownPredicatesTests extends BaseLDBCTests {
+
+    @Test
+    public void testWhereAfterWithIsMovedToTheScan() throws Exception {
+        String sql = PassAvailables.cypher2sql(getGTopInterface(),
+                "MATCH (p:Person)-[:KNOWS]-(f:Person) WITH p, f WHERE f.firstName = 'x' RETURN p.id");
+        Assert.assertEquals(1, count(sql, "WHERE"));
+        Assert.assertTrue(Pattern.compile("JOIN Person AS (\\w+) .*\nWHERE \\(\\1\\.firstName = 'x'\\)")
+                .matcher(sql).find());
+    }
+
+    @Test
+    public void testWhereOnAliasIsKept() throws Exception {
+        String sql = PassAvailables.cypher2sql(getGTopInterface(),
+                "MATCH (p:Person)-[:KNOWS]-(f:Person) WITH p, f.firstName AS name WHERE name = 'x' RETURN p.id, name");
+        Assert.assertEquals(1, count(sql, "WHERE"));
+        Assert.assertTrue(sql.contains(" = 'x')"));
+    }
+
+    @Test
+    public void testOnlyJoinConditionsStayAboveTheParts() throws Exception {
+        String sql = PassAvailables.cypher2sql(getGTopInterface(),
+                "MATCH (a:Person), (b:Person) WHERE a.id = 5 AND a.id = b.id AND b.firstName = 'y' RETURN a.id");
+        Assert.assertTrue(Pattern.compile("FROM Person AS (\\w+)\nWHERE \\(\\1\\.id = 5\\)").matcher(sql).find());
+        Assert.assertTrue(Pattern.compile("FROM Person AS (\\w+)\nWHERE \\(\\1\\.firstName = 'y'\\)")
+                .matcher(sql).find());
+        Assert.assertEquals(3, count(sql, "WHERE"));
+    }
+
+    @Test
+    public void testConditionIsCopiedInEachBranch() throws Exception {
+        String sql = PassAvailables.cypher2sql(getGTopInterface(),
+                "MATCH (a:Person {id: 1})-[]-(b) WITH a, b WHERE b.id = 5 RETURN a.id");
+        int branches = count(sql, "WHERE");
+        Assert.assertTrue(branches > 1);
+        Assert.assertEquals(branches, count(sql, ".id = 5)"));
+    }
+}
@@ -0,0 +1,118 @@
+package org.cytosm.cypher2sql.lowering;
+
+import org.apache.commons.io.FileUtils;
+import org.cytosm.common.gtop.GTopInterfaceImpl;
+import org.cytosm.common.gtop.RelationalGTopInterface;
+import org.cytosm.cypher2sql.PassAvailables;
+import org.cytosm.cypher2sql.expandpaths.ExpansionBudget;
+import org.cytosm.cypher2sql.expandpaths.VariableLengthTranslation;
+import org.cytosm.cypher2sql.lowering.exceptions.UnsupportedPattern;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.regex.Pattern;
+
+/**
+ */
+public class RecursiveTraversalTests extends BaseLDBCTests {
+
+    @Test
+    public void testSizeDoesNotDependOnTheUpperBound() throws Exception {
+        String small = recursive("MATCH (a:Person {id: 1})-[:KNOWS*1..2]->(b:Person) RETURN b.id");
+        String large = recursive("MATCH (a:Person {id: 1})-[:KNOWS*1..20]->(b:Person) RETURN b.id");
+        Assert.assertTrue(small.startsWith("WITH RECURSIVE"));
+        Assert.assertTrue(small.contains("__hops_depth < 2"));
+        Assert.assertTrue(large.contains("__hops_depth < 20"));
+        Assert.assertEquals(small.length() + 1, large.length());
+        Assert.assertEquals(2, count(large, "FROM person_knows_person"));
+    }
+
+    @Test
+    public void testUnboundedRelationship() throws Exception {
+        String sql = recursive("MATCH (a:Person {id: 1})-[:KNOWS*]-(b:Person) RETURN b.id");
+        Assert.assertFalse(sql.contains("__hops_depth <"));
+        Assert.assertFalse(sql.contains("__hops_depth >="));
+        Assert.assertTrue(sql.contains("NOT LIKE"));
+        // Both directions are followed.
+        Assert.assertTrue(sql.contains("SELECT other_person_id AS src, person_id AS dst"));
+    }
+
+    @Test
+    public void testSearchStartsFromTheSource() throws Exception {
+        String sql = recursive("MATCH (a:Person {id: 1})-[:KNOWS*1..3]->(b:Person) RETURN b.id");
+        Assert.assertTrue(sql.contains("AS e WHERE e.src IN (SELECT "));
+        Assert.assertEquals(2, count(sql, ".id = 1)"));
+
+        // Without restriction every row is a source.
+        sql = recursive("MATCH (a:Person)-[:KNOWS*1..3]->(b:Person) RETURN b.id");
+        Assert.assertFalse(sql.contains("e.src IN"));
+    }
+
+    @Test
+    public void testRowsWithTheSameEndsAreDistinctRelationships() throws Exception {
+        String sql = recursive("MATCH (a:Person {id: 1})-[:KNOWS*1..3]-(b:Person) RETURN b.id");
+        Assert.assertTrue(sql.contains("ROW_NUMBER() OVER (ORDER BY person_id, other_person_id) AS id"));
+        Assert.assertFalse(sql.contains("'-'"));
+        // Both directions of a row share its number.
+        Assert.assertEquals(4, count(sql, "ROW_NUMBER()"));
+    }
+
+    @Test
+    public void testLowerBoundIsAJoinCondition() throws Exception {
+        String sql = recursive("MATCH (a:Person {id: 1})-[:KNOWS*3..]->(b:Person) RETURN b.id");
+        Assert.assertTrue(sql.contains("__hops_depth >= 3"));
+        Assert.assertFalse(sql.contains("__hops_depth <"));
+    }
+
+    @Test
+    public void testRecursiveSelectIsSharedByTheVariants() throws Exception {
+        String sql = recursive("MATCH (a:Person {id: 1})-[:KNOWS*1..3]-(b:Person)-[:IS_LOCATED_IN|STUDY_AT]->(c) " +
+                "RETURN c.id");
+        Assert.assertEquals(1, count(sql, "UNION ALL\nSELECT h."));
+    }
+
+    @Test
+    public void testRelationshipWithPropertiesIsExpanded() throws Exception {
+        String sql = recursive("MATCH (a:Person {id: 1})-[:KNOWS*1..2 {creationDate: 3}]->(b:Person) RETURN b.id");
+        Assert.assertFalse(sql.contains("RECURSIVE"));
+    }
+
+    @Test
+    public void testExpansionIsTheDefault() throws Exception {
+        String sql = PassAvailables.cypher2sql(getGTopInterface(),
+                "MATCH (a:Person {id: 1})-[:KNOWS*1..2]->(b:Person) RETURN b.id");
+        Assert.assertFalse(sql.contains("RECURSIVE"));
+    }
+
+    @Test
+    public void testForeignKeyHopIsExpanded() throws Exception {
+        // The reportsto hop of northwind has an empty join table.
+        String cypher = "MATCH (a:Employees {EmployeeID: 1})" +
+                "-[:employees_employeeid_employees_reportsto*1..2]-(b:Employees) RETURN b.EmployeeID";
+        String sql = recursive(northwind(), cypher);
+        Assert.assertFalse(sql.contains("RECURSIVE"));
+        Assert.assertEquals(PassAvailables.cypher2sql(northwind(), cypher), sql);
+    }
+
+    @Test(expected = UnsupportedPattern.class)
+    public void testShortestPathOverAForeignKeyHopIsRejected() throws Exception {
+        recursive(northwind(), "MATCH p = shortestPath((a:Employees {EmployeeID: 1})" +
+                "-[:employees_employeeid_employees_reportsto*]-(b:Employees)) RETURN b.EmployeeID");
+    }
+
+    private String recursive(final String cypher) throws Exception {
+        return recursive(getGTopInterface(), cypher);
+    }
+
+    private static String recursive(final GTopInterfaceImpl gTop, final String cypher) throws Exception {
+        return PassAvailables.cypher2sqlWithParameters(gTop, cypher, null,
+                ExpansionBudget.UNLIMITED, VariableLengthTranslation.RECURSIVE_CTE).sql;
+    }
+
+    private static GTopInterfaceImpl northwind() throws IOException {
+        String path = "src" + File.separatorChar + "test" + File.separatorChar + "resources";
+        return new RelationalGTopInterface(FileUtils.readFileToString(new File(path + "/northwind.gtop")));
+    }
+}
@@ -13,7 +13,7 @@ import org.junit.Test;
 public class SelectTreeBuilderTests {
 
     @Test
-    public void testStructure() {
+    public void testStructure() throws Exception {
         String cypher = "" +
                 "MATCH (a)\n" +
                 "MATCH (a)\n" +
@@ -32,7 +32,7 @@ public class SelectTreeBuilderTests {
     }
 
     @Test
-    public void testSkipRet() {
+    public void testSkipRet() throws Exception {
         String cypher = "" +
                 "MATCH (a) RETURN a.firstName SKIP 2 + 4*10";
         ScopeSelect tree = PassAvailables.buildQueryTree(cypher);
@@ -40,7 +40,7 @@ public class SelectTreeBuilderTests {
     }
 
     @Test
-    public void testSkipWith() {
+    public void testSkipWith() throws Exception {
         String cypher = "" +
                 "MATCH (a) WITH a SKIP 2 + 4*10 RETURN a";
         ScopeSelect tree = PassAvailables.buildQueryTree(cypher);
@@ -48,7 +48,7 @@ public class SelectTreeBuilderTests {
     }
 
     @Test
-    public void testLimitRet() {
+    public void testLimitRet() throws Exception {
         String cypher = "" +
                 "MATCH (a) RETURN a.firstName LIMIT 2 + 4*10";
         ScopeSelect tree = PassAvailables.buildQueryTree(cypher);
@@ -56,7 +56,7 @@ public class SelectTreeBuilderTests {
     }
 
     @Test
-    public void testLimitWith() {
+    public void testLimitWith() throws Exception {
         String cypher = "" +
                 "MATCH (a) WITH a.firstName AS afirstName LIMIT 2 + 4*10 RETURN 50";
         ScopeSelect tree = PassAvailables.buildQueryTree(cypher);
@@ -64,21 +64,21 @@ public class SelectTreeBuilderTests {
     }
 
     @Test
-    public void testOrderByASC() {
+    public void testOrderByASC() throws Exception {
         String cypher = "MATCH (a) RETURN a.firstName ORDER BY a.firstName ASC";
         ScopeSelect tree = PassAvailables.buildQueryTree(cypher);
         Assert.assertEquals(tree.ret.orderBy.get(0).descending, false);
     }
 
     @Test
-    public void testOrderByDESC() {
+    public void testOrderByDESC() throws Exception {
         String cypher = "MATCH (a) RETURN a.firstName ORDER BY a.firstName DESC";
         ScopeSelect tree = PassAvailables.buildQueryTree(cypher);
         Assert.assertEquals(tree.ret.orderBy.get(0).descending, true);
     }
 
     @Test
-    public void testOptionalMatchNormalMatch() {
+    public void testOptionalMatchNormalMatch() throws Exception {
         String cypher = "" +
                 "MATCH (a:Person {id: 0})\n" +
                 "OPTIONAL MATCH (a)-[:KNOWS]-(b:Person)\n" +
@@ -0,0 +1,106 @@
+package org.cytosm.cypher2sql.lowering;
+
+import org.cytosm.cypher2sql.PassAvailables;
+import org.cytosm.cypher2sql.lowering.exceptions.UnsupportedPattern;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.regex.Pattern;
+
+/**
+ */
+public class ShortestPathTests extends BaseLDBCTests {
+
+    @Test
+    public void testShortestPathKeepsTheFirstDepth() throws Exception {
+        String sql = PassAvailables.cypher2sql(getGTopInterface(),
+                "MATCH (a:Person {id: 1}), (b:Person {id: 2}), p = shortestPath((a)-[:KNOWS*..6]-(b)) RETURN b.id");
+        Assert.assertTrue(sql.startsWith("WITH RECURSIVE"));
+        Assert.assertTrue(sql.contains("\nUNION ALL\nSELECT h.source, h.depth + 1, ',' || (SELECT STRING_AGG("));
+        Assert.assertTrue(sql.contains("AND h.visited NOT LIKE '%,' || CAST(e.dst AS VARCHAR) || ',%'" +
+                " AND h.frontier NOT LIKE '%,' || CAST(e.dst AS VARCHAR) || ',%')"));
+        Assert.assertTrue(sql.contains("h.visited || SUBSTRING(h.frontier FROM 2) FROM __bfs AS h" +
+                " WHERE h.frontier IS NOT NULL AND h.depth < 6 AND EXISTS ("));
+        Assert.assertTrue(sql.contains("h.depth AS __hops_depth FROM __bfs AS h JOIN"));
+        Assert.assertEquals(1, count(sql, "WITH RECURSIVE __bfs"));
+    }
+
+    @Test
+    public void testShortestPathStartsFromTheSourcesAndStopsOnTheDestinations() throws Exception {
+        String sql = PassAvailables.cypher2sql(getGTopInterface(),
+                "MATCH p = shortestPath((a:Person)-[:KNOWS*]-(b:Person)) WHERE a.id = 1 AND b.id = 2 RETURN b.id");
+        Assert.assertTrue(Pattern.compile("AS e WHERE e\\.src IN \\(SELECT (__src\\d+)\\.id AS node" +
+                " FROM Person AS \\1 WHERE \\(\\1\\.id = 1\\)\\) GROUP BY e\\.src").matcher(sql).find());
+        Assert.assertTrue(Pattern.compile("WHERE h\\.frontier IS NOT NULL AND EXISTS \\(SELECT 1 FROM" +
+                " \\(SELECT (__src\\d+)\\.id AS node FROM Person AS \\1 WHERE \\(\\1\\.id = 2\\)\\) AS t" +
+                " WHERE \\(h\\.visited \\|\\| h\\.frontier\\) NOT LIKE").matcher(sql).find());
+        Assert.assertFalse(sql.contains("COUNT(*)"));
+    }
+
+    @Test
+    public void testUnboundedShortestPathEndsWithTheFrontier() throws Exception {
+        String sql = PassAvailables.cypher2sql(getGTopInterface(),
+                "MATCH shortestPath((a:Person {id: 1})-[:KNOWS*2..]->(b:Person)) RETURN b.id");
+        Assert.assertTrue(sql.contains("FROM __bfs AS h WHERE h.frontier IS NOT NULL)"));
+        Assert.assertTrue(sql.contains("AND (h.depth < 2 OR h.frontier NOT LIKE"));
+        Assert.assertTrue(sql.contains("ON (h.frontier LIKE '%,' || CAST(n.dst AS VARCHAR) || ',%')"
+                + " WHERE h.depth >= 2"));
+        Assert.assertFalse(sql.contains("COUNT(*)"));
+    }
+
+    @Test
+    public void testAllShortestPathsKeepsEveryPathOfTheFirstDepth() throws Exception {
+        String sql = PassAvailables.cypher2sql(getGTopInterface(),
+                "MATCH allShortestPaths((a:Person {id: 1})-[:KNOWS*2..]-(b:Person)) RETURN b.id");
+        Assert.assertTrue(sql.contains("\nUNION ALL\nSELECT h.source, e.dst, h.depth + 1, h.visited"));
+        Assert.assertTrue(sql.contains("FROM __paths AS p WHERE p.depth >= 2"));
+        Assert.assertFalse(sql.contains("__hops_depth >="));
+    }
+
+    @Test
+    public void testAllShortestPathsOnlyFollowTheLayersOfTheSearch() throws Exception {
+        String sql = PassAvailables.cypher2sql(getGTopInterface(),
+                "MATCH allShortestPaths((a:Person {id: 1})-[:KNOWS*]-(b:Person {id: 2})) RETURN b.id");
+        // The layers stop at the depth of the destination.
+        Assert.assertTrue(sql.contains("WITH RECURSIVE __bfs(source, depth, frontier, visited) AS ("));
+        Assert.assertTrue(sql.contains("AND EXISTS (SELECT 1 FROM (SELECT "));
+        Assert.assertTrue(sql.contains("JOIN __layers AS l ON (l.source = h.source AND l.node = e.dst" +
+                " AND l.depth = h.depth + 1)"));
+        Assert.assertFalse(sql.contains("COUNT(*)"));
+        Assert.assertFalse(sql.contains("MIN("));
+    }
+
+    @Test
+    public void testLengthOfAShortestPathIsTheDepth() throws Exception {
+        String sql = PassAvailables.cypher2sql(getGTopInterface(),
+                "MATCH p = shortestPath((a:Person {id: 1})-[:KNOWS*]-(b:Person)) RETURN b.id, length(p)");
+        Assert.assertTrue(Pattern.compile("__hops_depth AS __cytosm\\d+\\$\\d+, ").matcher(sql).find());
+        Assert.assertTrue(Pattern.compile("__cytosm\\d+\\$\\d+ AS \"length\\(p\\)\"").matcher(sql).find());
+    }
+
+    @Test
+    public void testLengthOfAPath() throws Exception {
+        String sql = PassAvailables.cypher2sql(getGTopInterface(),
+                "MATCH p = (a:Person {id: 1})-[:KNOWS]-(b:Person) RETURN length(p)");
+        Assert.assertTrue(sql.contains("1 AS \"length(p)\""));
+    }
+
+    @Test(expected = UnsupportedPattern.class)
+    public void testShortestPathNeedsAJoinTable() throws Exception {
+        PassAvailables.cypher2sql(getGTopInterface(),
+                "MATCH shortestPath((a:Person {id: 1})-[:IS_LOCATED_IN*]->(b:City)) RETURN b.id");
+    }
+
+    @Test
+    public void testShortestPathNeedsATypedRelationship() throws Exception {
+        for (String relationship: new String[] {"[*..3]", "[:KNOWS|LIKES*..3]", "[r:KNOWS*..3]"}) {
+            try {
+                PassAvailables.cypher2sql(getGTopInterface(),
+                        "MATCH shortestPath((a:Person {id: 1})-" + relationship + "-(b:Person)) RETURN b.id");
+                Assert.fail("shortestPath over " + relationship + " must be rejected.");
+            } catch (UnsupportedPattern e) {
+                Assert.assertTrue(e.getMessage().startsWith("shortestPath requires"));
+            }
+        }
+    }
+}
@@ -2,6 +2,7 @@ package org.cytosm.cypher2sql.lowering.typeck;
 
 import org.cytosm.cypher2sql.PassAvailables;
 import org.cytosm.cypher2sql.cypher.ast.clause.projection.With;
+import org.cytosm.cypher2sql.lowering.exceptions.UnsupportedPattern;
 import org.cytosm.cypher2sql.lowering.typeck.expr.ExprVar;
 import org.cytosm.cypher2sql.lowering.typeck.rel.Relationship;
 import org.cytosm.cypher2sql.lowering.typeck.var.AliasVar;
@@ -29,7 +30,7 @@ public class VarDependenciesTest extends BaseVarTests {
      * and the RETURN statement.
      */
     @Test
-    public void testVariablesMatchReturn() {
+    public void testVariablesMatchReturn() throws Exception {
         String cypher = "MATCH (a) RETURN a.firstName";
         Statement st = PassAvailables.parseCypher(cypher);
         SingleQuery sq = (SingleQuery) st.query.part;
@@ -48,7 +49,7 @@ public class VarDependenciesTest extends BaseVarTests {
     }
 
     @Test
-    public void testReachableVariablesMatchMatchWithMatchReturn() {
+    public void testReachableVariablesMatchMatchWithMatchReturn() throws Exception {
         String cypher = "" +
                 "MATCH (a)--(b)\n" +     // match0
                 "MATCH (b)\n" +          // match1
@@ -77,7 +78,7 @@ public class VarDependenciesTest extends BaseVarTests {
     }
 
     @Test
-    public void testUsedVariablesMatchMatchWithMatchReturn() {
+    public void testUsedVariablesMatchMatchWithMatchReturn() throws Exception {
         String cypher = "" +
                 "MATCH (a)--(b)\n" +     // match0
                 "MATCH (b)\n" +          // match1
@@ -110,7 +111,7 @@ public class VarDependenciesTest extends BaseVarTests {
     }
 
     @Test
-    public void testVariablesHiddenInMapExpression1() {
+    public void testVariablesHiddenInMapExpression1() throws Exception {
         String cypher = "" +
                 "MATCH (a:Person)\n" +
                 "WITH a, {b: {c: \"test\", d: a.firstName}} AS b\n" +
@@ -137,7 +138,7 @@ public class VarDependenciesTest extends BaseVarTests {
     }
 
     @Test
-    public void testVariablesMatchCommaReturn() {
+    public void testVariablesMatchCommaReturn() throws Exception {
         String cypher = "" +
                 "MATCH (a), (b)\n" +
                 "RETURN a.firstName";
@@ -157,7 +158,7 @@ public class VarDependenciesTest extends BaseVarTests {
     }
 
     @Test
-    public void testRelationships() {
+    public void testRelationships() throws Exception {
         String cypher = "" +
                 "MATCH (a)--(b)\n" +
                 "RETURN 42";
@@ -173,7 +174,7 @@ public class VarDependenciesTest extends BaseVarTests {
     }
 
     @Test
-    public void testRelationshipsPathOrder() {
+    public void testRelationshipsPathOrder() throws Exception {
         String cypher = "" +
                 "MATCH (a)--(b)--(c)\n" +
                 "RETURN 42";
@@ -195,7 +196,7 @@ public class VarDependenciesTest extends BaseVarTests {
     }
 
     @Test
-    public void testGetUsedAndIndirectUsedVars1() {
+    public void testGetUsedAndIndirectUsedVars1() throws Exception {
         String cypher = "" +
                 "MATCH (a)--(b)\n" +
                 "MATCH (b)--(c)\n" +
@@ -219,7 +220,7 @@ public class VarDependenciesTest extends BaseVarTests {
     }
 
     @Test
-    public void testGetUsedAndIndirectUsedVars2() {
+    public void testGetUsedAndIndirectUsedVars2() throws Exception {
         String cypher = "" +
                 "MATCH (a)--(e)\n" +
                 "MATCH (b)--(c)\n" +
@@ -243,7 +244,7 @@ public class VarDependenciesTest extends BaseVarTests {
     }
 
     @Test
-    public void testVariableDefinedInReturn() {
+    public void testVariableDefinedInReturn() throws Exception {
         String cypher = "" +
                 "MATCH (a)\n" +
                 "RETURN a AS b ORDER BY b";
@@ -257,7 +258,7 @@ public class VarDependenciesTest extends BaseVarTests {
     }
 
     @Test
-    public void testReachableVarsInOrderBy() {
+    public void testReachableVarsInOrderBy() throws Exception {
         String cypher = "" +
                 "MATCH (a)\n" +
                 "WITH a.firstName AS foo ORDER BY foo\n" +
@@ -269,4 +270,10 @@ public class VarDependenciesTest extends BaseVarTests {
         AvailableVariables orderBy = deps.getReachableVars(new ClauseId(with.orderBy.get()));
         Assert.assertTrue(orderBy.get("foo").isPresent());
     }
-}
\ No newline at end of file
+
+    @Test(expected = UnsupportedPattern.class)
+    public void testShortestPathWithSeveralRelationships() throws Exception {
+        String cypher = "MATCH shortestPath((a)-[:KNOWS*]-(b)-[:KNOWS*]-(c)) RETURN c";
+        new VarDependencies(PassAvailables.parseCypher(cypher));
+    }
+}